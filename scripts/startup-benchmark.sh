@@ -0,0 +1,62 @@
+#!/usr/bin/env bash
+#
+# Measures time-to-first-request of the user service in its default mode and in fast-startup mode
+# (Spring AOT + class-data sharing + the fast-startup profile), and prints both side by side.
+#
+# Time-to-first-request is measured from launching the JVM until /actuator/health answers,
+# which is what the load balancer waits for before sending traffic to a new node.
+#
+# Usage: scripts/startup-benchmark.sh [runs]
+# Requires a reachable database (e.g. 'docker compose up postgres-db') and a jar built with
+# 'mvn -Pfast-startup package -DskipTests'.
+
+set -euo pipefail
+
+RUNS=${1:-5}
+PORT=${PORT:-8081}
+JAR=$(ls target/user-service-*.jar | grep -v plain | head -n 1)
+WORK=target/startup-benchmark
+
+# The JVM flags of the fast-startup mode. The CDS training run uses the same ones, so it loads the same classes.
+FAST_STARTUP_OPTS=(-Dspring.aot.enabled=true -Dspring.profiles.active=fast-startup)
+
+# Extract the jar and do a CDS training run once (same steps as a Dockerfile build with SPRING_AOT=true).
+if [ ! -f "$WORK/application/app.jsa" ]; then
+  rm -rf "$WORK" && mkdir -p "$WORK"
+  cp "$JAR" "$WORK/app.jar"
+  (cd "$WORK" && java -Djarmode=tools -jar app.jar extract --destination application)
+  (cd "$WORK/application" && java -XX:ArchiveClassesAtExit=app.jsa "${FAST_STARTUP_OPTS[@]}" -Dspring.context.exit=onRefresh \
+      -Dspring.flyway.enabled=false -Dspring.jpa.hibernate.ddl-auto=none \
+      -Dspring.jpa.properties.hibernate.boot.allow_jdbc_metadata_access=false \
+      -jar app.jar > /dev/null)
+fi
+
+# Starts the given command, waits for the first successful health response and prints the elapsed ms.
+time_to_first_request() {
+  local start end pid
+  start=$(date +%s%N)
+  "$@" > /dev/null 2>&1 &
+  pid=$!
+  until curl -sf -o /dev/null "http://localhost:${PORT}/actuator/health"; do
+    if ! kill -0 "$pid" 2> /dev/null; then
+      echo "application exited before serving a request" >&2
+      return 1
+    fi
+    sleep 0.05
+  done
+  end=$(date +%s%N)
+  kill "$pid" && wait "$pid" 2> /dev/null || true
+  echo $(( (end - start) / 1000000 ))
+}
+
+average() {
+  local total=0 mode=$1; shift
+  for _ in $(seq "$RUNS"); do
+    total=$(( total + $(time_to_first_request "$@") ))
+  done
+  printf '%-14s %6d ms (average of %d runs)\n' "$mode" $(( total / RUNS )) "$RUNS"
+}
+
+cd "$WORK/application"
+average "default" java -jar app.jar
+average "fast-startup" java -XX:SharedArchiveFile=app.jsa "${FAST_STARTUP_OPTS[@]}" -jar app.jar
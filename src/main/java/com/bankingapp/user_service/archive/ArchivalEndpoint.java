@@ -0,0 +1,33 @@
+package com.bankingapp.user_service.archive;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * {@code GET /actuator/archival} returns the {@link ArchivalReport} of the last archival run on this node
+ * (404 if it has not run yet, or another node ran it).
+ *
+ * <p>Like every actuator endpoint except health, it requires ROLE_ADMIN (see {@code SecurityConfig}).</p>
+ */
+
+
+@Component
+@ConditionalOnProperty(name = "app.archive.enabled", havingValue = "true")
+@Endpoint(id = "archival")
+public class ArchivalEndpoint {
+
+    private final UserArchivalJob userArchivalJob;
+
+    public ArchivalEndpoint(UserArchivalJob userArchivalJob) {
+        this.userArchivalJob = userArchivalJob;
+    }
+
+
+    @ReadOperation
+    public ArchivalReport lastReport() {
+        return userArchivalJob.lastReport();
+    }
+}
@@ -0,0 +1,24 @@
+package com.bankingapp.user_service.archive;
+
+import java.time.Instant;
+
+
+/**
+ * What one run of the {@link UserArchivalJob} did, and how the users table looked before and after it.
+ *
+ * @param archived  Users moved to the archive by the run.
+ * @param reindexed Whether the run rebuilt the users indexes; deleted rows only shrink an index when it is rebuilt.
+ */
+public record ArchivalReport(Instant startedAt, Instant finishedAt, long archived, boolean reindexed,
+                             TableStats before, TableStats after) {
+
+    /**
+     * @param rows               Rows in the users table, as estimated by the planner statistics (pg_class.reltuples).
+     * @param tableBytes         Size of the users table.
+     * @param indexBytes         Size of all indexes on the users table, including the email indexes used by logins.
+     * @param lookupMedianMicros Median time of the login query (user by email) for a sample of users.
+     * @param lookupP99Micros    99th percentile of the same sample.
+     */
+    public record TableStats(long rows, long tableBytes, long indexBytes, double lookupMedianMicros, double lookupP99Micros) {
+    }
+}
@@ -0,0 +1,24 @@
+package com.bankingapp.user_service.archive;
+
+import com.bankingapp.user_service.model.Role;
+import com.bankingapp.user_service.model.RoleMask;
+import com.bankingapp.user_service.model.User;
+
+import java.util.stream.Collectors;
+
+
+/**
+ * A user read from the archive for a login, so that the password can be checked before anything is written.
+ * Once it has been, {@code AuthService} moves the user back with {@link UserArchive#restore}.
+ *
+ * <p>It is never persisted and never cached: it only lives for the duration of one login.</p>
+ */
+public final class ArchivedUser extends User {
+
+    ArchivedUser(long id, String firstName, String lastName, String email, String password, boolean enabled, int rolesMask) {
+        super(firstName, lastName, email, password);
+        setId(id);
+        setEnabled(enabled);
+        setRoles(RoleMask.toSet(rolesMask).stream().map(Role::new).collect(Collectors.toSet()));
+    }
+}
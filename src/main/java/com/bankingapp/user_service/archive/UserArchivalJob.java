@@ -0,0 +1,243 @@
+package com.bankingapp.user_service.archive;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Moves accounts that have been idle for {@code app.archive.inactive-days} from {@code users} to the
+ * {@link UserArchive}, so that the users table and the email indexes every login reads stay small.
+ *
+ * <p>Each run walks the users table by id in batches of {@code app.archive.batch-size}, pausing between batches,
+ * and moves at most {@code app.archive.max-per-run} users. Afterwards the table is vacuumed; if the run archived
+ * at least {@code app.archive.reindex-min-fraction} of the users, its indexes are also rebuilt (concurrently),
+ * because deleted entries only give B-tree space back when the index is rebuilt.</p>
+ *
+ * <p>Every run ends with an {@link ArchivalReport}: row count, table and index size, and the latency of the login
+ * query for a sample of users, before and after. It is logged and served by {@code GET /actuator/archival}. The
+ * report does not scan the table it is meant to relieve: the row count is the planner's estimate, and the sample
+ * is drawn from a few random pages.</p>
+ *
+ * <p>Only one node runs the job at a time (a Postgres advisory lock); the others skip the run.</p>
+ */
+
+
+@Component
+@ConditionalOnProperty(name = "app.archive.enabled", havingValue = "true")
+public class UserArchivalJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserArchivalJob.class);
+
+    // Any constant that no other advisory lock in this database uses ("usrarchv").
+    private static final long ADVISORY_LOCK_KEY = 0x7573726172636876L;
+
+    // The columns of the users table, in table order. The login query is a natural-id load of the whole row.
+    private static final String USERS_COLUMNS_SQL = """
+            SELECT string_agg(quote_ident(attname), ', ' ORDER BY attnum)
+              FROM pg_attribute
+             WHERE attrelid = 'users'::regclass AND attnum > 0 AND NOT attisdropped
+            """;
+
+    private final UserArchive userArchive;
+    private final JdbcTemplate jdbcTemplate;
+    private final int inactiveDays;
+    private final int batchSize;
+    private final long batchPauseMs;
+    private final long maxPerRun;
+    private final double reindexMinFraction;
+    private final int latencySamples;
+
+    private volatile ArchivalReport lastReport;
+
+
+    public UserArchivalJob(UserArchive userArchive, JdbcTemplate jdbcTemplate,
+                           @Value("${app.sharding.enabled:false}") boolean shardingEnabled,
+                           @Value("${app.archive.inactive-days:365}") int inactiveDays,
+                           @Value("${app.archive.batch-size:500}") int batchSize,
+                           @Value("${app.archive.batch-pause-ms:100}") long batchPauseMs,
+                           @Value("${app.archive.max-per-run:100000}") long maxPerRun,
+                           @Value("${app.archive.reindex-min-fraction:0.1}") double reindexMinFraction,
+                           @Value("${app.archive.latency-samples:200}") int latencySamples) {
+        if (shardingEnabled) {
+            throw new IllegalStateException("Idle-account archival does not support app.sharding.enabled=true yet");
+        }
+        this.userArchive = userArchive;
+        this.jdbcTemplate = jdbcTemplate;
+        this.inactiveDays = inactiveDays;
+        this.batchSize = batchSize;
+        this.batchPauseMs = batchPauseMs;
+        this.maxPerRun = maxPerRun;
+        this.reindexMinFraction = reindexMinFraction;
+        this.latencySamples = latencySamples;
+    }
+
+
+    @Scheduled(fixedDelayString = "${app.archive.interval-ms:86400000}", initialDelayString = "${app.archive.initial-delay-ms:600000}")
+    public void run() {
+        try {
+            ArchivalReport report = archiveIdleUsers(Instant.now());
+            if (report != null) {
+                lastReport = report;
+            }
+        } catch (RuntimeException e) {
+            logger.error("Idle-account archival failed; it will be retried with the next run", e);
+        }
+    }
+
+
+    /**
+     * @return The report of the last completed run on this node, or {@code null} if there was none yet.
+     */
+    public ArchivalReport lastReport() {
+        return lastReport;
+    }
+
+
+    /**
+     * Runs the archival once, unless another node is running it.
+     *
+     * @return The run's report, or {@code null} if another node holds the lock.
+     */
+    ArchivalReport archiveIdleUsers(Instant now) {
+        // The lock is tied to this connection's session, so it is held on its own connection for the whole run.
+        return jdbcTemplate.execute((ConnectionCallback<ArchivalReport>) connection -> {
+            try (PreparedStatement lock = connection.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+                lock.setLong(1, ADVISORY_LOCK_KEY);
+                try (ResultSet rs = lock.executeQuery()) {
+                    if (!rs.next() || !rs.getBoolean(1)) {
+                        logger.info("Idle-account archival is running on another node; skipping this run");
+                        return null;
+                    }
+                }
+            }
+            try {
+                return archiveLocked(now);
+            } finally {
+                try (PreparedStatement unlock = connection.prepareStatement("SELECT pg_advisory_unlock(?)")) {
+                    unlock.setLong(1, ADVISORY_LOCK_KEY);
+                    unlock.execute();
+                }
+            }
+        });
+    }
+
+
+    private ArchivalReport archiveLocked(Instant now) {
+        Instant startedAt = Instant.now();
+        Instant idleSince = now.minus(Duration.ofDays(inactiveDays));
+        ArchivalReport.TableStats before = tableStats();
+
+        // 1. Move idle users in bounded batches.
+        long archived = 0;
+        long afterId = 0;
+        while (archived < maxPerRun) {
+            int limit = (int) Math.min(batchSize, maxPerRun - archived);
+            List<Long> ids = userArchive.archiveBatch(afterId, idleSince, limit);
+            archived += ids.size();
+            if (ids.size() < limit) {
+                break;
+            }
+            afterId = ids.get(ids.size() - 1);
+            pause();
+        }
+
+        // 2. Make the freed space reusable, refresh the planner statistics, and shrink the indexes if it pays off.
+        boolean reindexed = false;
+        if (archived > 0) {
+            jdbcTemplate.execute("VACUUM (ANALYZE) users, user_roles");
+            if (before.rows() > 0 && (double) archived / before.rows() >= reindexMinFraction) {
+                jdbcTemplate.execute("REINDEX TABLE CONCURRENTLY users");
+                reindexed = true;
+            }
+        }
+
+        ArchivalReport report = new ArchivalReport(startedAt, Instant.now(), archived, reindexed, before, tableStats());
+        logger.info("Archived {} users idle since {} (reindexed: {}). Rows {} -> {}, table {} -> {} KiB, "
+                        + "indexes {} -> {} KiB, login query median {} -> {} us, p99 {} -> {} us",
+                archived, idleSince, reindexed, before.rows(), report.after().rows(),
+                before.tableBytes() / 1024, report.after().tableBytes() / 1024,
+                before.indexBytes() / 1024, report.after().indexBytes() / 1024,
+                Math.round(before.lookupMedianMicros()), Math.round(report.after().lookupMedianMicros()),
+                Math.round(before.lookupP99Micros()), Math.round(report.after().lookupP99Micros()));
+        return report;
+    }
+
+
+    private ArchivalReport.TableStats tableStats() {
+        // As of the last (auto)vacuum or analyze; -1 if the table was never analyzed.
+        long rows = jdbcTemplate.queryForObject(
+                "SELECT GREATEST(reltuples, 0)::bigint FROM pg_class WHERE oid = 'users'::regclass", Long.class);
+        long tableBytes = jdbcTemplate.queryForObject("SELECT pg_table_size('users')", Long.class);
+        long indexBytes = jdbcTemplate.queryForObject("SELECT pg_indexes_size('users')", Long.class);
+        double[] latencies = sampleLookupMicros(rows);
+        return new ArchivalReport.TableStats(rows, tableBytes, indexBytes, percentile(latencies, 0.5), percentile(latencies, 0.99));
+    }
+
+
+    /**
+     * Times the login query for a random sample of users, on one connection. The sample is queried once
+     * before it is timed, so the numbers reflect lookups of cached pages, as for active users.
+     *
+     * <p>The sample comes from randomly chosen pages (TABLESAMPLE SYSTEM), sized from the estimated row count to
+     * yield about twice the samples needed, so that only those pages are read.</p>
+     */
+    private double[] sampleLookupMicros(long estimatedRows) {
+        double percent = estimatedRows > 0 ? Math.min(100, 200.0 * latencySamples / estimatedRows) : 100;
+        List<String> emails = jdbcTemplate.queryForList(
+                "SELECT email FROM users TABLESAMPLE SYSTEM (?) LIMIT ?", String.class, percent, latencySamples);
+        // Read from the schema, so that the query keeps reading the whole row as columns are added.
+        String lookupSql = "SELECT " + jdbcTemplate.queryForObject(USERS_COLUMNS_SQL, String.class) + " FROM users WHERE email = ?";
+        return jdbcTemplate.execute((ConnectionCallback<double[]>) connection -> {
+            double[] micros = new double[emails.size()];
+            try (PreparedStatement lookup = connection.prepareStatement(lookupSql)) {
+                for (int pass = 0; pass < 2; pass++) {
+                    for (int i = 0; i < emails.size(); i++) {
+                        long start = System.nanoTime();
+                        lookup.setString(1, emails.get(i));
+                        try (ResultSet rs = lookup.executeQuery()) {
+                            rs.next();
+                        }
+                        micros[i] = (System.nanoTime() - start) / 1_000.0;
+                    }
+                }
+            }
+            return micros;
+        });
+    }
+
+
+    static double percentile(double[] values, double fraction) {
+        if (values.length == 0) {
+            return 0;
+        }
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1)];
+    }
+
+
+    private void pause() {
+        if (batchPauseMs <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(batchPauseMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while archiving", e);
+        }
+    }
+}
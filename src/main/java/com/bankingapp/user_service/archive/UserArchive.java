@@ -0,0 +1,200 @@
+package com.bankingapp.user_service.archive;
+
+import com.bankingapp.user_service.dto.UserInfoResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+
+/**
+ * The cold archive of idle accounts ({@code users_archive}, see V12__user_archive).
+ *
+ * <p>{@link UserArchivalJob} moves idle users here in batches. Everything that looks users up by email or id
+ * falls back to the archive when the users table has no match: a login is checked against the archived row
+ * ({@link #findForLogin}) and restores the user (same id, version and roles) only once the password has been
+ * verified, bulk lookups read the archived details without restoring them, and registration treats archived
+ * emails as taken. Logins only look at the archive while {@code app.archive.enabled} is true.</p>
+ *
+ * <p>Every statement here is a single SQL statement, so each move is atomic without a surrounding transaction.
+ * Deleting a user from {@code users} publishes the usual change notification, so archived users are evicted
+ * from every node's caches.</p>
+ */
+
+
+@Component
+public class UserArchive {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserArchive.class);
+
+    // Moves the next batch of idle users (by id, starting after a given id) with their roles.
+    // Rows locked by a concurrent write (e.g. a profile update) are skipped; the next run picks them up.
+    private static final String ARCHIVE_BATCH = """
+            WITH candidates AS (
+                SELECT id
+                  FROM users
+                 WHERE id > ? AND GREATEST(last_login_at, updated_at) < ?
+                 ORDER BY id
+                 LIMIT ?
+                   FOR UPDATE SKIP LOCKED
+            ), archived AS (
+                INSERT INTO users_archive (id, first_name, last_name, email, password, is_enabled, roles_mask,
+                                           updated_at, version, last_login_at, login_count, role_ids)
+                SELECT u.id, u.first_name, u.last_name, u.email, u.password, u.is_enabled, u.roles_mask,
+                       u.updated_at, u.version, u.last_login_at, u.login_count,
+                       ARRAY(SELECT ur.role_id FROM user_roles ur WHERE ur.user_id = u.id)
+                  FROM users u
+                  JOIN candidates c ON c.id = u.id
+                RETURNING id
+            ), revoked AS (
+                DELETE FROM user_roles ur USING archived a WHERE ur.user_id = a.id
+            )
+            DELETE FROM users u USING archived a WHERE u.id = a.id
+            RETURNING u.id
+            """;
+
+    // Moves one user back as they were archived. The login that restores them is recorded by LastLoginTracker like
+    // any other; updated_at marks the move, so that the next archival run does not take them straight back before
+    // that login is written. Concurrent restores of the same user serialize on the archive row; the second one
+    // finds it gone and restores nothing.
+    private static final String RESTORE = """
+            WITH restored AS (
+                DELETE FROM users_archive WHERE email = ?
+                RETURNING *
+            ), reinserted AS (
+                INSERT INTO users (id, first_name, last_name, email, password, is_enabled, roles_mask,
+                                   updated_at, version, last_login_at, login_count)
+                SELECT id, first_name, last_name, email, password, is_enabled, roles_mask,
+                       now(), version, last_login_at, login_count
+                  FROM restored
+                RETURNING id
+            ), regranted AS (
+                INSERT INTO user_roles (user_id, role_id)
+                SELECT r.id, unnest(r.role_ids) FROM restored r
+            )
+            SELECT count(*) FROM reinserted
+            """;
+
+    private static final String FIND_FOR_LOGIN = """
+            SELECT id, first_name, last_name, email, password, is_enabled, roles_mask
+              FROM users_archive
+             WHERE email = ?
+            """;
+
+    private static final String FIND_INFO = """
+            SELECT id, first_name, last_name, email, roles_mask
+              FROM users_archive
+             WHERE id = ANY (?::bigint[]) OR email = ANY (?::text[])
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean loginEnabled;
+    // For the statements on the login path, which must not hold a login thread longer than loading a user may.
+    private final JdbcTemplate loginJdbcTemplate;
+    private final Counter archivedUsers;
+    private final Counter restoredUsers;
+
+
+    public UserArchive(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry,
+                       @Value("${app.archive.enabled:false}") boolean loginEnabled,
+                       @Value("${app.user-load.timeout-seconds:2}") int timeoutSeconds) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.loginEnabled = loginEnabled;
+        this.loginJdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.loginJdbcTemplate.setQueryTimeout(timeoutSeconds);
+        this.archivedUsers = Counter.builder("app.archive.archived")
+                .description("Idle users moved to the archive").register(meterRegistry);
+        this.restoredUsers = Counter.builder("app.archive.restored")
+                .description("Archived users moved back to the users table on login").register(meterRegistry);
+    }
+
+
+    /**
+     * Archives up to {@code limit} users with id above {@code afterId} whose last login (or, for users who never
+     * logged in, last change) is before {@code idleSince}.
+     *
+     * @return The ids of the archived users, ascending. Fewer than {@code limit} means no idle users are left.
+     */
+    List<Long> archiveBatch(long afterId, Instant idleSince, int limit) {
+        List<Long> ids = jdbcTemplate.queryForList(ARCHIVE_BATCH, Long.class, afterId, Timestamp.from(idleSince), limit);
+        archivedUsers.increment(ids.size());
+        return ids.stream().sorted().toList();
+    }
+
+
+    /**
+     * Reads an archived user for a login, without restoring them. A single indexed read, so a login with an unknown
+     * email costs no write.
+     *
+     * @param email A normalized email.
+     * @return The archived user, or empty if the email is not archived or archival is disabled.
+     */
+    public Optional<ArchivedUser> findForLogin(String email) {
+        if (!loginEnabled) {
+            return Optional.empty();
+        }
+        return loginJdbcTemplate.query(FIND_FOR_LOGIN,
+                (rs, rowNum) -> new ArchivedUser(rs.getLong("id"), rs.getString("first_name"), rs.getString("last_name"),
+                        rs.getString("email"), rs.getString("password"), rs.getBoolean("is_enabled"), rs.getInt("roles_mask")),
+                email).stream().findFirst();
+    }
+
+
+    /**
+     * Moves an archived user back to the users table, with the same id, version, roles and login bookkeeping.
+     * Only for a user whose login has been authenticated against {@link #findForLogin}.
+     *
+     * @param email A normalized email.
+     * @return Whether a user was restored; {@code false} if the email is not archived.
+     */
+    public boolean restore(String email) {
+        try {
+            Long restored = loginJdbcTemplate.queryForObject(RESTORE, Long.class, email);
+            if (restored == null || restored == 0) {
+                return false;
+            }
+        } catch (DuplicateKeyException e) {
+            // Someone registered the email while it was archived. The statement was rolled back, so the
+            // archived user is still there; the new account owns the email.
+            logger.warn("Archived user {} cannot be restored, the email is in use: {}", email, e.getMessage());
+            return false;
+        }
+        restoredUsers.increment();
+        logger.info("Restored archived user {}", email);
+        return true;
+    }
+
+
+    /**
+     * @param email A normalized email.
+     * @return Whether an archived user has this email.
+     */
+    public boolean isArchived(String email) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM users_archive WHERE email = ?)", Boolean.class, email));
+    }
+
+
+    /**
+     * The public details of the archived users matching any of the ids or emails, without restoring them.
+     */
+    public List<UserInfoResponse> findInfo(Collection<Long> ids, Collection<String> emails) {
+        return jdbcTemplate.query(FIND_INFO,
+                ps -> {
+                    ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids.toArray()));
+                    ps.setArray(2, ps.getConnection().createArrayOf("text", emails.toArray()));
+                },
+                (rs, rowNum) -> new UserInfoResponse(rs.getLong("id"), rs.getString("first_name"),
+                        rs.getString("last_name"), rs.getString("email"), rs.getInt("roles_mask")));
+    }
+}
@@ -0,0 +1,12 @@
+package com.bankingapp.user_service.cache;
+
+import com.bankingapp.user_service.model.User;
+
+/**
+ * A user held in the {@link PrincipalCache}, together with the time it was loaded from the database.
+ *
+ * @param user         The detached User entity. It is shared between requests and must be treated as read-only.
+ * @param loadedAtMillis When the user was read from the database (epoch millis).
+ */
+public record CachedPrincipal(User user, long loadedAtMillis) {
+}
@@ -0,0 +1,11 @@
+package com.bankingapp.user_service.cache;
+
+/**
+ * Thrown by {@link SingleFlight} when a caller gave up waiting for a load started by another thread.
+ */
+public class CoalescedLoadTimeoutException extends RuntimeException {
+
+    public CoalescedLoadTimeoutException(String message) {
+        super(message);
+    }
+}
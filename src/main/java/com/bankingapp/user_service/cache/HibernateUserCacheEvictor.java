@@ -0,0 +1,57 @@
+package com.bankingapp.user_service.cache;
+
+import com.bankingapp.user_service.model.User;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * Keeps this node's Hibernate second-level cache coherent with writes made on other nodes.
+ *
+ * <p>READ_WRITE regions are only invalidated by writes that go through this node's Hibernate session
+ * factory. Writes made by another node, or by plain SQL, reach us as {@link UserChange} notifications instead.</p>
+ *
+ * <p>Runs before the other listeners: caches such as the {@link PrincipalCache} reload through Hibernate, and a
+ * reload between their invalidation and this eviction would read the old row from the second-level cache and
+ * keep it as current.</p>
+ */
+
+
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class HibernateUserCacheEvictor implements UserChangeListener {
+
+    private static final String ROLES_COLLECTION = User.class.getName() + ".roles";
+
+    private final Cache cache;
+
+    public HibernateUserCacheEvictor(EntityManagerFactory entityManagerFactory) {
+        this.cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+    }
+
+
+    @Override
+    public void onUserChanged(UserChange change) {
+        cache.evictEntityData(User.class, change.userId());
+        cache.evictCollectionData(ROLES_COLLECTION, change.userId());
+
+        // Emails never change, so the email -> id resolution is only stale once the user is gone.
+        // Hibernate cannot evict a single natural id, so the (small) region is dropped as a whole.
+        if (change.isDelete()) {
+            cache.evictNaturalIdData(User.class);
+        }
+    }
+
+
+    @Override
+    public void onAllUsersChanged() {
+        cache.evictEntityData(User.class);
+        cache.evictCollectionData(ROLES_COLLECTION);
+        cache.evictNaturalIdData(User.class);
+        cache.evictQueryRegions();
+    }
+}
@@ -0,0 +1,198 @@
+package com.bankingapp.user_service.cache;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Listens on the Postgres {@code user_changes} channel and forwards every change to the
+ * {@link UserChangeListener}s of this node, so that no node keeps serving a stale principal.
+ *
+ * <p>The subscriber holds one dedicated connection to the primary (outside the connection pool) and
+ * polls it for notifications on a background thread. Notifications sent while the connection is
+ * down are lost, so after every (re)connect all listeners are told to drop everything they cache
+ * before normal operation resumes.</p>
+ *
+ * <p>With sharding enabled ({@code app.sharding.enabled}), changes are published by the shard that holds the
+ * user, so there is one subscription (and thread) per shard.</p>
+ */
+
+
+@Component
+@ConditionalOnProperty(name = "app.cache.invalidation.enabled", havingValue = "true", matchIfMissing = true)
+public class PgNotifyUserChangeSubscriber implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(PgNotifyUserChangeSubscriber.class);
+
+    static final String CHANNEL = "user_changes";
+
+    private final DataSourceProperties dataSourceProperties;
+    private final List<UserChangeListener> listeners;
+
+    @Value("${app.cache.invalidation.poll-timeout-ms:500}")
+    private int pollTimeoutMs;
+
+    @Value("${app.cache.invalidation.reconnect-delay-ms:2000}")
+    private long reconnectDelayMs;
+
+    @Value("${app.sharding.enabled:false}")
+    private boolean shardingEnabled;
+
+    @Value("${app.sharding.urls:}")
+    private List<String> shardUrls;
+
+    private volatile boolean running;
+    private final Map<String, Connection> connections = new ConcurrentHashMap<>();
+    private final List<Thread> threads = new ArrayList<>();
+
+
+    public PgNotifyUserChangeSubscriber(DataSourceProperties dataSourceProperties, List<UserChangeListener> listeners) {
+        this.dataSourceProperties = dataSourceProperties;
+        this.listeners = listeners;
+    }
+
+
+    @Override
+    public void start() {
+        running = true;
+
+        List<String> urls = new ArrayList<>();
+        urls.add(dataSourceProperties.determineUrl());
+        if (shardingEnabled) {
+            shardUrls.stream().filter(url -> !url.isBlank()).map(String::trim).forEach(urls::add);
+        }
+
+        for (int i = 0; i < urls.size(); i++) {
+            String url = urls.get(i);
+            Thread thread = new Thread(() -> listenLoop(url), urls.size() == 1 ? "user-change-subscriber" : "user-change-subscriber-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+    }
+
+
+    @Override
+    public void stop() {
+        running = false;
+        connections.values().forEach(PgNotifyUserChangeSubscriber::closeQuietly);
+        threads.forEach(Thread::interrupt);
+        threads.clear();
+    }
+
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+
+    private void listenLoop(String url) {
+        while (running) {
+            try (Connection conn = connect(url)) {
+                connections.put(url, conn);
+
+                // 1. Subscribe first, then drop everything: a change made between the two is still delivered.
+                try (Statement statement = conn.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                reconcile();
+                logger.info("Listening for user changes on channel '{}'", CHANNEL);
+
+                // 2. Block for notifications until the connection breaks or the application stops.
+                PGConnection pgConnection = conn.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(pollTimeoutMs);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            dispatch(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (running) {
+                    logger.warn("Lost the user change subscription, reconnecting in {} ms: {}", reconnectDelayMs, e.getMessage());
+                    sleep(reconnectDelayMs);
+                }
+            } finally {
+                connections.remove(url);
+            }
+        }
+    }
+
+
+    private Connection connect(String url) throws SQLException {
+        return DriverManager.getConnection(
+                url,
+                dataSourceProperties.determineUsername(),
+                dataSourceProperties.determinePassword());
+    }
+
+
+    void dispatch(String payload) {
+        UserChange change;
+        try {
+            change = UserChange.parse(payload);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Ignoring user change notification: {}", e.getMessage());
+            return;
+        }
+
+        for (UserChangeListener listener : listeners) {
+            try {
+                if (change.affectsAllUsers()) {
+                    listener.onAllUsersChanged();
+                } else {
+                    listener.onUserChanged(change);
+                }
+            } catch (RuntimeException e) {
+                // One broken listener must not stop the others from being invalidated.
+                logger.error("User change listener {} failed: {}", listener.getClass().getSimpleName(), e.getMessage());
+            }
+        }
+    }
+
+
+    // We may have missed notifications while disconnected, so nothing cached can be trusted.
+    private void reconcile() {
+        for (UserChangeListener listener : listeners) {
+            listener.onAllUsersChanged();
+        }
+    }
+
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    private static void closeQuietly(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException ignored) {
+                // Closing only unblocks the listener thread; there is nothing to recover.
+            }
+        }
+    }
+}
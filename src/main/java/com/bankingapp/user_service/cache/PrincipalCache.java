@@ -0,0 +1,191 @@
+package com.bankingapp.user_service.cache;
+
+import com.bankingapp.user_service.model.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A bounded, per-node cache of authenticated principals, keyed by normalized email.
+ *
+ * <p>This is what lets {@code AuthTokenFilter} authenticate a token without touching the database.
+ * Entries expire after a TTL. They are also evicted as soon as the user changes on any node,
+ * through the Postgres {@code user_changes} channel (see {@link PgNotifyUserChangeSubscriber}).</p>
+ *
+ * <p>Loads and invalidations can race: a load reads the old row, then the change commits and its
+ * invalidation arrives, and then the load puts the old row into the cache. To prevent that, callers take
+ * a {@link #stamp(String)} before reading from the database and pass it to {@link #putIfUnchanged}.
+ * The put is refused if any invalidation for that key (or for all keys) happened in between.
+ * Stamps are kept per stripe, not per key, so the bookkeeping has a fixed size.</p>
+ *
+ * <p>Entries older than the TTL are no longer served by {@link #get}, but they are kept for up to
+ * {@code app.cache.principals.max-staleness-ms}, so that {@link #getStale} can still authenticate tokens while
+ * the database is unavailable. An entry is only that stale because nobody asked for it again, so nothing is known
+ * to be wrong with it. Invalidations are different: they remove the entry for good, and so does
+ * {@link #invalidateAll()}, which runs when change notifications may have been missed (a user disabled meanwhile
+ * must not keep authenticating from this cache).</p>
+ */
+
+
+@Component
+public class PrincipalCache implements UserChangeListener {
+
+    private static final int STRIPES = 1024; // Must be a power of two.
+
+    private final Cache<String, CachedPrincipal> cache;
+
+    // Per-stripe invalidation counters. Bit 0..31 of a stamp is the stripe counter, the rest is the global epoch.
+    private final AtomicLongArray stripeVersions = new AtomicLongArray(STRIPES);
+    private final AtomicLong epoch = new AtomicLong();
+
+    // Counts every invalidation, for bulk loads that cannot take per-key stamps (see putAllIfUnchanged).
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final long ttlMs;
+
+
+    public PrincipalCache(@Value("${app.cache.principals.max-size:100000}") long maxSize,
+                          @Value("${app.cache.principals.ttl-ms:300000}") long ttlMs,
+                          @Value("${app.cache.principals.max-staleness-ms:600000}") long maxStalenessMs) {
+        this.ttlMs = ttlMs;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(Math.max(ttlMs, maxStalenessMs)))
+                .recordStats()
+                .build();
+    }
+
+
+    /**
+     * @return The cached principal for the given normalized email, or null if it is not cached or no longer fresh.
+     */
+    public CachedPrincipal get(String email) {
+        CachedPrincipal entry = cache.getIfPresent(email);
+        if (entry == null || System.currentTimeMillis() - entry.loadedAtMillis() >= ttlMs) {
+            return null;
+        }
+        return entry;
+    }
+
+
+    /**
+     * For use while the database is unavailable only: returns the cached principal even if it is past its TTL.
+     *
+     * @param maxAgeMs How long ago the principal may have been loaded at most.
+     * @return The cached principal, or null if it is not cached or older than {@code maxAgeMs}.
+     */
+    public CachedPrincipal getStale(String email, long maxAgeMs) {
+        CachedPrincipal entry = cache.getIfPresent(email);
+        if (entry == null || System.currentTimeMillis() - entry.loadedAtMillis() > maxAgeMs) {
+            return null;
+        }
+        return entry;
+    }
+
+
+    /**
+     * Takes a stamp that must be passed to {@link #putIfUnchanged} after the user was read from the database.
+     */
+    public long stamp(String email) {
+        return (epoch.get() << 32) | (stripeVersions.get(stripe(email)) & 0xFFFFFFFFL);
+    }
+
+
+    /**
+     * Caches the user unless the key was invalidated after {@code stamp} was taken.
+     *
+     * @return true if the user was cached.
+     */
+    public boolean putIfUnchanged(String email, User user, long stamp) {
+        CachedPrincipal entry = new CachedPrincipal(user, System.currentTimeMillis());
+
+        // Check while holding the key: an invalidation bumps the stamp before it removes the key, so one that
+        // raced with us has either bumped it already (and we put nothing), or removes our entry afterwards.
+        // A plain put followed by a check would briefly serve the old row after the invalidation completed.
+        return cache.asMap().compute(email, (key, current) -> stamp(email) == stamp ? entry : current) == entry;
+    }
+
+
+    /**
+     * Takes a stamp for a bulk load whose keys are not known up front, to be passed to {@link #putAllIfUnchanged}.
+     */
+    public long invalidationStamp() {
+        return invalidations.get();
+    }
+
+
+    /**
+     * Caches the users, as long as no invalidation happened after {@code invalidationStamp} was taken.
+     * This is coarser than {@link #putIfUnchanged}, so it is meant for bulk loads such as cache warming.
+     *
+     * @return true if all the users were cached.
+     */
+    public boolean putAllIfUnchanged(Collection<User> users, long invalidationStamp) {
+        long now = System.currentTimeMillis();
+        for (User user : users) {
+            // Same reasoning as in putIfUnchanged. Users cached before an invalidation are removed by it if it is theirs.
+            CachedPrincipal entry = new CachedPrincipal(user, now);
+            if (cache.asMap().compute(user.getEmail(), (key, current) -> invalidations.get() == invalidationStamp ? entry : current) != entry) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * @return Up to {@code limit} cached users, most frequently used first.
+     */
+    public List<User> hottest(int limit) {
+        return cache.policy().eviction()
+                .map(eviction -> eviction.hottest(limit).values().stream().map(CachedPrincipal::user).toList())
+                .orElse(List.of());
+    }
+
+
+    public void invalidate(String email) {
+        stripeVersions.incrementAndGet(stripe(email));
+        invalidations.incrementAndGet();
+        cache.invalidate(email);
+    }
+
+
+    /**
+     * Removes every cached principal, including from {@link #getStale}.
+     */
+    public void invalidateAll() {
+        epoch.incrementAndGet();
+        invalidations.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+
+    @Override
+    public void onUserChanged(UserChange change) {
+        invalidate(change.email());
+    }
+
+    @Override
+    public void onAllUsersChanged() {
+        invalidateAll();
+    }
+
+
+    private static int stripe(String email) {
+        int h = email.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+}
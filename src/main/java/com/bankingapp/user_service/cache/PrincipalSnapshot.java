@@ -0,0 +1,220 @@
+package com.bankingapp.user_service.cache;
+
+import com.bankingapp.user_service.model.User;
+import com.bankingapp.user_service.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Saves which principals are hot to a memory-mapped file, and warms the {@link PrincipalCache} from it on startup.
+ *
+ * <p>Without this, a freshly deployed node starts with an empty cache, and its first minutes of traffic run one
+ * {@code findByEmail} per active user against Postgres. With it, the node loads the same users in a handful of
+ * batched queries before it reports ready (application runners complete before the readiness state changes to
+ * ACCEPTING_TRAFFIC).</p>
+ *
+ * <p>Each record holds the user id, a hash of the email, the roles bitmask, the enabled flag and the
+ * modification time: no email and no password hash, so the file is not sensitive. On startup the users are
+ * re-read by id, which reconciles every difference against the database (changed rows are logged by comparing
+ * modification times, deleted and disabled users are skipped). The snapshot is written periodically and on shutdown.</p>
+ */
+
+
+@Component
+@ConditionalOnProperty(name = "app.cache.snapshot.file")
+public class PrincipalSnapshot implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(PrincipalSnapshot.class);
+
+    private static final int MAGIC = 0x50534e50; // "PSNP"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 20;   // magic, version, count, written-at millis
+    private static final int RECORD_BYTES = 32;   // id, email hash, updated-at millis, roles mask, flags
+
+    private static final int FLAG_ENABLED = 1;
+
+    private final PrincipalCache principalCache;
+    private final UserRepository userRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final Path file;
+
+    @Value("${app.cache.snapshot.max-entries:50000}")
+    private int maxEntries;
+
+    @Value("${app.cache.snapshot.batch-size:500}")
+    private int batchSize;
+
+
+    public PrincipalSnapshot(PrincipalCache principalCache, UserRepository userRepository,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${app.cache.snapshot.file}") String file) {
+        this.principalCache = principalCache;
+        this.userRepository = userRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.file = Path.of(file);
+    }
+
+
+    /**
+     * Warms the principal cache from the last snapshot, if there is one.
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        Map<Long, SnapshotRecord> records;
+        try {
+            records = read();
+        } catch (IOException | IllegalStateException e) {
+            logger.warn("Ignoring unreadable principal snapshot {}: {}", file, e.getMessage());
+            return;
+        }
+
+        int loaded = 0;
+        int changed = 0;
+        List<Long> ids = new ArrayList<>(records.keySet());
+
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<Long> batch = ids.subList(from, Math.min(from + batchSize, ids.size()));
+
+            long stamp = principalCache.invalidationStamp();
+            List<User> users = readOnlyTransaction.execute(status -> userRepository.findAllById(batch)).stream()
+                    .filter(User::isEnabled)
+                    .toList();
+
+            for (User user : users) {
+                if (records.get(user.getId()).differsFrom(user)) {
+                    changed++;
+                }
+            }
+            if (principalCache.putAllIfUnchanged(users, stamp)) {
+                loaded += users.size();
+            }
+        }
+
+        logger.info("Warmed principal cache with {} of {} users from {} ({} changed since the snapshot) in {} ms",
+                loaded, records.size(), file, changed, System.currentTimeMillis() - start);
+    }
+
+
+    @Scheduled(fixedDelayString = "${app.cache.snapshot.interval-ms:60000}", initialDelayString = "${app.cache.snapshot.interval-ms:60000}")
+    void write() {
+        List<User> hottest = principalCache.hottest(maxEntries);
+        if (hottest.isEmpty()) {
+            return; // Do not replace a useful snapshot with an empty one, e.g. before anybody has logged in.
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) hottest.size() * RECORD_BYTES);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(MAGIC).putInt(VERSION).putInt(hottest.size()).putLong(System.currentTimeMillis());
+
+                for (User user : hottest) {
+                    buffer.putLong(user.getId());
+                    buffer.putLong(emailHash(user.getEmail()));
+                    buffer.putLong(user.getUpdatedAt() == null ? 0 : user.getUpdatedAt().toEpochMilli());
+                    buffer.putInt(user.getRolesMask());
+                    buffer.putInt(user.isEnabled() ? FLAG_ENABLED : 0);
+                }
+                buffer.force();
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not write principal snapshot {}: {}", file, e.getMessage());
+        }
+    }
+
+
+    @PreDestroy
+    void writeOnShutdown() {
+        write();
+    }
+
+
+    // Returns the enabled users of the snapshot, keyed by id.
+    private Map<Long, SnapshotRecord> read() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IllegalStateException("not a principal snapshot, or written by an incompatible version");
+            }
+            int count = buffer.getInt();
+            buffer.getLong(); // written-at, informational only
+            if (buffer.remaining() < (long) count * RECORD_BYTES) {
+                throw new IllegalStateException("truncated");
+            }
+
+            Map<Long, SnapshotRecord> records = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                long id = buffer.getLong();
+                long emailHash = buffer.getLong();
+                long updatedAt = buffer.getLong();
+                buffer.getInt(); // roles mask, informational only: the roles are re-read with the user
+                int flags = buffer.getInt();
+                if ((flags & FLAG_ENABLED) != 0) {
+                    records.put(id, new SnapshotRecord(emailHash, updatedAt));
+                }
+            }
+            return records;
+        }
+    }
+
+
+    private static long emailHash(String email) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(email.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < 8; i++) {
+                hash = (hash << 8) | (digest[i] & 0xFF);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    private record SnapshotRecord(long emailHash, long updatedAtMillis) {
+
+        boolean differsFrom(User user) {
+            long updatedAt = user.getUpdatedAt() == null ? 0 : user.getUpdatedAt().toEpochMilli();
+            return updatedAt != updatedAtMillis || PrincipalSnapshot.emailHash(user.getEmail()) != emailHash;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.bankingapp.user_service.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+
+/**
+ * Coalesces concurrent loads of the same key into a single call ("single flight").
+ *
+ * <p>The first caller for a key becomes the leader and runs the loader on its own thread. Callers that
+ * arrive while the leader is still running wait for the leader's result instead of running the loader
+ * again. If the loader throws, every waiting caller gets the same exception. Followers wait at most
+ * the configured timeout and then fail with {@link CoalescedLoadTimeoutException}; the leader
+ * itself is never interrupted.</p>
+ *
+ * <p>Nothing is cached: once the leader finishes, the next caller starts a new load.</p>
+ *
+ * @param <K> The key type.
+ * @param <V> The value type.
+ */
+
+
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final long timeoutMs;
+
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+
+    public SingleFlight(long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
+
+    /**
+     * Returns the value for the key, either by running the loader or by joining a load already in flight.
+     *
+     * @param key    The key to load.
+     * @param loader Loads the value; only called if no load for this key is in flight.
+     * @return The loaded value.
+     */
+    public V execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> ours = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, ours);
+
+        if (existing == null) {
+            return lead(key, ours, loader);
+        }
+
+        coalesced.increment();
+        return follow(key, existing);
+    }
+
+
+    private V lead(K key, CompletableFuture<V> ours, Supplier<V> loader) {
+        executed.increment();
+        try {
+            V value = loader.get();
+            ours.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            ours.completeExceptionally(e);
+            throw e;
+        } finally {
+            // Only remove our own future; a later flight for the same key may already have started.
+            inFlight.remove(key, ours);
+        }
+    }
+
+
+    private V follow(K key, CompletableFuture<V> leader) {
+        try {
+            return leader.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timedOut.increment();
+            throw new CoalescedLoadTimeoutException("Timed out after " + timeoutMs + " ms waiting for the in-flight load of " + key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CoalescedLoadTimeoutException("Interrupted while waiting for the in-flight load of " + key);
+        } catch (ExecutionException e) {
+            // Re-throw what the leader threw, so followers see the same failure (e.g. UsernameNotFoundException).
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+
+    /** @return How many loads actually ran the loader. */
+    public long executedCount() {
+        return executed.sum();
+    }
+
+    /** @return How many calls joined a load that was already in flight. */
+    public long coalescedCount() {
+        return coalesced.sum();
+    }
+
+    /** @return How many coalesced calls gave up waiting. */
+    public long timedOutCount() {
+        return timedOut.sum();
+    }
+
+    /** @return The number of keys currently being loaded. */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,34 @@
+package com.bankingapp.user_service.cache;
+
+/**
+ * A change to a user that other nodes must know about, as published on the
+ * {@code user_changes} Postgres channel (see V5__user_change_notifications.sql).
+ *
+ * @param operation The SQL operation that caused the change: UPDATE, DELETE, or ALL for "drop everything".
+ * @param userId    The id of the changed user (0 for ALL).
+ * @param email     The (normalized) email of the changed user (empty for ALL).
+ */
+public record UserChange(String operation, long userId, String email) {
+
+    public static final String ALL = "ALL";
+
+    public boolean affectsAllUsers() {
+        return ALL.equals(operation);
+    }
+
+    public boolean isDelete() {
+        return "DELETE".equals(operation);
+    }
+
+
+    /**
+     * Parses a notification payload of the form {@code <operation>:<user id>:<email>}.
+     */
+    public static UserChange parse(String payload) {
+        String[] parts = payload.split(":", 3);
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Malformed user change payload: " + payload);
+        }
+        return new UserChange(parts[0], Long.parseLong(parts[1]), parts[2]);
+    }
+}
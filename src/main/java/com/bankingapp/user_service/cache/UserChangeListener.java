@@ -0,0 +1,22 @@
+package com.bankingapp.user_service.cache;
+
+/**
+ * Implemented by every in-process cache that holds user data and must be kept coherent across nodes.
+ * All beans of this type are notified by {@link PgNotifyUserChangeSubscriber}, in {@code @Order} order.
+ *
+ * <p>Callbacks run on the subscriber's thread, so they must be quick and must not block.</p>
+ */
+public interface UserChangeListener {
+
+    /**
+     * A single user was updated or deleted (on this or on any other node).
+     */
+    void onUserChanged(UserChange change);
+
+
+    /**
+     * Everything cached about users must be dropped. This happens when a change affects all users,
+     * and after the subscriber reconnects, because notifications sent while it was disconnected are lost.
+     */
+    void onAllUsersChanged();
+}
@@ -0,0 +1,97 @@
+package com.bankingapp.user_service.cache;
+
+import com.bankingapp.user_service.dto.UserInfoResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A per-node cache of the public user details served by the bulk lookup API, keyed by id,
+ * with a secondary email-to-id index.
+ *
+ * <p>Like the {@link PrincipalCache}, it is kept coherent across nodes through the {@code user_changes}
+ * channel. Bulk loads take an {@link #invalidationStamp()} before querying and are only cached if no
+ * invalidation happened in between.</p>
+ */
+
+
+@Component
+public class UserInfoCache implements UserChangeListener {
+
+    private final Cache<Long, UserInfoResponse> byId;
+    private final Cache<String, Long> idByEmail;
+    private final AtomicLong invalidations = new AtomicLong();
+
+
+    public UserInfoCache(@Value("${app.cache.user-info.max-size:100000}") long maxSize,
+                         @Value("${app.cache.user-info.ttl-ms:300000}") long ttlMs) {
+        this.byId = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .build();
+        this.idByEmail = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .build();
+    }
+
+
+    public UserInfoResponse getById(long id) {
+        return byId.getIfPresent(id);
+    }
+
+
+    /**
+     * @param email The normalized email.
+     */
+    public UserInfoResponse getByEmail(String email) {
+        Long id = idByEmail.getIfPresent(email);
+        return id == null ? null : byId.getIfPresent(id);
+    }
+
+
+    public long invalidationStamp() {
+        return invalidations.get();
+    }
+
+
+    /**
+     * Caches the users unless an invalidation happened after {@code invalidationStamp} was taken.
+     */
+    public void putAllIfUnchanged(Collection<UserInfoResponse> users, long invalidationStamp) {
+        for (UserInfoResponse user : users) {
+            byId.put(user.getId(), user);
+            idByEmail.put(user.getEmail(), user.getId());
+        }
+
+        // An invalidation that raced with the query either shows up here or removes the entries itself.
+        if (invalidations.get() != invalidationStamp) {
+            for (UserInfoResponse user : users) {
+                byId.invalidate(user.getId());
+                idByEmail.invalidate(user.getEmail());
+            }
+        }
+    }
+
+
+    @Override
+    public void onUserChanged(UserChange change) {
+        invalidations.incrementAndGet();
+        byId.invalidate(change.userId());
+        idByEmail.invalidate(change.email());
+    }
+
+
+    @Override
+    public void onAllUsersChanged() {
+        invalidations.incrementAndGet();
+        byId.invalidateAll();
+        idByEmail.invalidateAll();
+    }
+}
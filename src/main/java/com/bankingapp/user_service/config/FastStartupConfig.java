@@ -0,0 +1,45 @@
+package com.bankingapp.user_service.config;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.ReflectionUtils;
+
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * Decides which beans stay eager when lazy initialization is switched on
+ * ({@code spring.main.lazy-initialization=true}, see application-fast-startup.properties).
+ *
+ * <p>A lazy bean is only created when something asks for it, which is a problem for beans that
+ * have {@code @Scheduled} methods (nobody asks, so the job never runs) and for the database
+ * infrastructure (the first request would pay for opening the pool and building Hibernate's metadata).
+ * The filter has no effect when lazy initialization is off.</p>
+ */
+
+
+@Configuration
+public class FastStartupConfig {
+
+    @Bean
+    static LazyInitializationExcludeFilter eagerInfrastructureAndScheduledBeans() {
+        return (beanName, beanDefinition, beanType) ->
+                DataSource.class.isAssignableFrom(beanType)
+                        || EntityManagerFactory.class.isAssignableFrom(beanType)
+                        || hasScheduledMethods(beanType);
+    }
+
+
+    private static boolean hasScheduledMethods(Class<?> beanType) {
+        AtomicBoolean found = new AtomicBoolean();
+        ReflectionUtils.doWithMethods(beanType,
+                method -> found.set(true),
+                method -> !found.get() && AnnotatedElementUtils.hasAnnotation(method, Scheduled.class));
+        return found.get();
+    }
+}
@@ -0,0 +1,51 @@
+package com.bankingapp.user_service.config;
+
+import com.bankingapp.user_service.dto.JwtResponse;
+import com.bankingapp.user_service.dto.UserInfoResponse;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+
+
+/**
+ * Reflection and resource hints needed to run as a GraalVM native image ({@code mvn -Pnative native:compile}).
+ *
+ * <p>Spring's AOT engine works out most hints by itself. These are the cases it cannot see:</p>
+ * <ul>
+ *     <li>DTOs returned as {@code ResponseEntity<?>}, whose type is unknown at build time.</li>
+ *     <li>jjwt, which loads its implementation classes by name and through {@code ServiceLoader}.</li>
+ *     <li>ehcache.xml, which Hibernate loads as a classpath resource.</li>
+ * </ul>
+ */
+
+
+public class NativeHints implements RuntimeHintsRegistrar {
+
+    // jjwt-impl and jjwt-jackson are runtime-only dependencies, so they are referenced by name.
+    private static final String[] JJWT_TYPES = {
+            "io.jsonwebtoken.impl.DefaultJwtBuilder",
+            "io.jsonwebtoken.impl.DefaultJwtParserBuilder",
+            "io.jsonwebtoken.impl.DefaultJwtParser",
+            "io.jsonwebtoken.impl.compression.DefaultCompressionCodecResolver",
+            "io.jsonwebtoken.jackson.io.JacksonSerializer",
+            "io.jsonwebtoken.jackson.io.JacksonDeserializer",
+    };
+
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(),
+                JwtResponse.class, UserInfoResponse.class);
+
+        for (String type : JJWT_TYPES) {
+            hints.reflection().registerType(TypeReference.of(type),
+                    MemberCategory.INVOKE_DECLARED_CONSTRUCTORS, MemberCategory.INVOKE_PUBLIC_METHODS);
+        }
+
+        hints.resources().registerPattern("META-INF/services/io.jsonwebtoken.*");
+        hints.resources().registerPattern("ehcache.xml");
+    }
+}
@@ -0,0 +1,116 @@
+package com.bankingapp.user_service.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Wires the read/write split between the primary database and one or more read replicas.
+ *
+ * <p>This configuration is only active when {@code app.datasource.replicas.enabled=true}. Otherwise
+ * Spring Boot's default single DataSource is used and nothing changes.</p>
+ *
+ * <p>Any transaction declared with {@code @Transactional(readOnly = true)}, such as
+ * {@code UserDetailsServiceImpl.loadUserByUsername}, is served by a replica. All other work goes to the primary.</p>
+ */
+
+
+@Configuration
+@ConditionalOnProperty(name = "app.datasource.replicas.enabled", havingValue = "true")
+public class ReadReplicaRoutingConfig {
+
+    @Value("${app.datasource.replicas.urls}")
+    private List<String> replicaUrls;
+
+    @Value("${app.datasource.replicas.max-lag-ms:2000}")
+    private long maxLagMs;
+
+    @Value("${app.datasource.replicas.pool-size:10}")
+    private int replicaPoolSize;
+
+
+    /**
+     * The primary (read-write) pool, built from the regular {@code spring.datasource.*} settings.
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+
+    @Bean
+    public ReadReplicaRoutingDataSource readReplicaRoutingDataSource(HikariDataSource primaryDataSource, DataSourceProperties properties) {
+        List<DataSource> replicas = new ArrayList<>();
+
+        // Replicas share the primary's credentials; only the JDBC URL differs.
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("replica-" + i);
+            replica.setJdbcUrl(replicaUrls.get(i).trim());
+            replica.setUsername(properties.determineUsername());
+            replica.setPassword(properties.determinePassword());
+            replica.setDriverClassName(properties.determineDriverClassName());
+            replica.setMaximumPoolSize(replicaPoolSize);
+            replica.setConnectionTimeout(primaryDataSource.getConnectionTimeout());
+            replica.setReadOnly(true);
+            // Do not fail startup if a replica is down; reads simply stay on the primary until it recovers.
+            replica.setInitializationFailTimeout(-1);
+            replicas.add(replica);
+        }
+
+        ReadReplicaRoutingDataSource routing = new ReadReplicaRoutingDataSource(primaryDataSource, replicas, maxLagMs);
+        routing.afterPropertiesSet();
+        routing.checkReplicaHealth();
+        return routing;
+    }
+
+
+    /**
+     * The DataSource used by JPA and everything else in the application.
+     * The lazy proxy defers the routing decision until the first statement is executed.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadReplicaRoutingDataSource readReplicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(readReplicaRoutingDataSource);
+    }
+
+
+    @Bean
+    public ReplicaHealthChecker replicaHealthChecker(ReadReplicaRoutingDataSource readReplicaRoutingDataSource) {
+        return new ReplicaHealthChecker(readReplicaRoutingDataSource);
+    }
+
+
+    /**
+     * Periodically re-probes the replicas so that failed ones are removed and recovered ones return.
+     */
+    static class ReplicaHealthChecker {
+
+        private final ReadReplicaRoutingDataSource routingDataSource;
+
+        ReplicaHealthChecker(ReadReplicaRoutingDataSource routingDataSource) {
+            this.routingDataSource = routingDataSource;
+        }
+
+        @Scheduled(fixedDelayString = "${app.datasource.replicas.health-check-interval-ms:5000}")
+        void check() {
+            routingDataSource.checkReplicaHealth();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.bankingapp.user_service.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * A routing DataSource that sends read-only transactions to a healthy replica and everything
+ * else to the primary.
+ *
+ * <p>The lookup key is resolved when a physical connection is requested, so this DataSource must
+ * be wrapped in a {@code LazyConnectionDataSourceProxy}. That way the connection is fetched on the
+ * first statement, after Spring has marked the transaction as read-only.</p>
+ *
+ * <p>Replicas are probed periodically by {@link #checkReplicaHealth()}. A replica that cannot be
+ * reached, is not in recovery (i.e. it was promoted) or lags behind by more than the configured
+ * limit is taken out of rotation until a later probe succeeds. If no replica is healthy, reads
+ * fail over to the primary.</p>
+ */
+
+
+public class ReadReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReadReplicaRoutingDataSource.class);
+
+    static final String PRIMARY_KEY = "primary";
+
+    private final List<String> replicaKeys = new ArrayList<>();
+    private final Map<String, DataSource> replicas = new HashMap<>();
+    private final long maxLagMs;
+
+    // Replaced atomically by the health check; readers never see a partially built list.
+    private volatile List<String> healthyReplicas = List.of();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+
+    public ReadReplicaRoutingDataSource(DataSource primary, List<DataSource> replicaDataSources, long maxLagMs) {
+        this.maxLagMs = maxLagMs;
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY_KEY, primary);
+        for (int i = 0; i < replicaDataSources.size(); i++) {
+            String key = "replica-" + i;
+            replicaKeys.add(key);
+            replicas.put(key, replicaDataSources.get(i));
+            targets.put(key, replicaDataSources.get(i));
+        }
+
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+
+        // 1. Writes, and reads that must see this thread's own writes, always go to the primary.
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly() || ReplicaRoutingContext.isPrimaryForced()) {
+            return PRIMARY_KEY;
+        }
+
+        // 2. Round-robin over the replicas that passed the last health check.
+        List<String> candidates = healthyReplicas;
+        if (candidates.isEmpty()) {
+            return PRIMARY_KEY;
+        }
+        return candidates.get(Math.floorMod(nextReplica.getAndIncrement(), candidates.size()));
+    }
+
+
+    /**
+     * Probes every replica and rebuilds the list of replicas eligible for reads.
+     */
+    public void checkReplicaHealth() {
+        List<String> healthy = new ArrayList<>();
+
+        for (String key : replicaKeys) {
+            if (isHealthy(key, replicas.get(key))) {
+                healthy.add(key);
+            }
+        }
+
+        if (healthy.size() != healthyReplicas.size()) {
+            logger.warn("Healthy read replicas changed: {} of {} available", healthy.size(), replicaKeys.size());
+        }
+        healthyReplicas = List.copyOf(healthy);
+    }
+
+
+    private boolean isHealthy(String key, DataSource replica) {
+        try (Connection connection = replica.getConnection();
+             Statement statement = connection.createStatement()) {
+
+            // pg_is_in_recovery() is false on a primary, so a promoted replica drops out of the read pool.
+            // A replica that has replayed everything it received is not lagging, even if the primary has been idle.
+            statement.setQueryTimeout(2);
+            try (ResultSet rs = statement.executeQuery(
+                    "SELECT pg_is_in_recovery(), " +
+                    "CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+                    "ELSE COALESCE(EXTRACT(EPOCH FROM (now() - pg_last_xact_replay_timestamp())) * 1000, 0) END")) {
+                if (!rs.next() || !rs.getBoolean(1)) {
+                    return false;
+                }
+                return rs.getLong(2) <= maxLagMs;
+            }
+        } catch (Exception e) {
+            logger.debug("Read replica {} failed its health check: {}", key, e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.bankingapp.user_service.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Remembers which users were written recently so that reads about them can be served
+ * from the primary until the replicas have caught up.
+ *
+ * <p>The tracker is always present, even when replica routing is disabled, so services can
+ * record writes without caring how the datasource is wired. Entries expire after the configured
+ * window, which should comfortably exceed the normal replication lag.</p>
+ */
+
+
+@Component
+public class ReadYourWritesTracker {
+
+    private final Map<String, Long> recentWrites = new ConcurrentHashMap<>();
+
+    @Value("${app.datasource.replicas.read-your-writes-window-ms:5000}")
+    private long windowMs;
+
+
+    /**
+     * Records that the user identified by the given key was just written on the primary.
+     *
+     * @param key The user key, in our case the normalized email.
+     */
+    public void recordWrite(String key) {
+        recentWrites.put(key, System.currentTimeMillis() + windowMs);
+    }
+
+
+    /**
+     * @param key The user key, in our case the normalized email.
+     * @return true if the user was written within the read-your-writes window.
+     */
+    public boolean wasRecentlyWritten(String key) {
+        Long expiresAt = recentWrites.get(key);
+        if (expiresAt == null) {
+            return false;
+        }
+        if (expiresAt < System.currentTimeMillis()) {
+            recentWrites.remove(key, expiresAt);
+            return false;
+        }
+        return true;
+    }
+
+
+    // Keeps the map small; keys that are never read again would otherwise stay forever.
+    @Scheduled(fixedDelayString = "${app.datasource.replicas.read-your-writes-window-ms:5000}")
+    void purgeExpired() {
+        long now = System.currentTimeMillis();
+        recentWrites.entrySet().removeIf(entry -> entry.getValue() < now);
+    }
+}
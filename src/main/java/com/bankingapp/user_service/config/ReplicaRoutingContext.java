@@ -0,0 +1,44 @@
+package com.bankingapp.user_service.config;
+
+import java.util.function.Supplier;
+
+/**
+ * Thread-bound hint that pins the current unit of work to the primary datasource.
+ *
+ * <p>Read-only transactions are normally routed to a replica by {@link ReadReplicaRoutingDataSource}.
+ * Callers that must observe their own recent writes (read-your-writes) wrap the work in
+ * {@link #onPrimary(Supplier)} so the lazily acquired connection comes from the primary instead.</p>
+ */
+public final class ReplicaRoutingContext {
+
+    private static final ThreadLocal<Boolean> PRIMARY_FORCED = new ThreadLocal<>();
+
+    private ReplicaRoutingContext() {
+    }
+
+
+    /**
+     * Runs the given work with all connection lookups on this thread routed to the primary.
+     *
+     * @param work The work to run.
+     * @return The value produced by the work.
+     */
+    public static <T> T onPrimary(Supplier<T> work) {
+        Boolean previous = PRIMARY_FORCED.get();
+        PRIMARY_FORCED.set(Boolean.TRUE);
+        try {
+            return work.get();
+        } finally {
+            // Restore the previous state so nested calls do not clear an outer pin.
+            if (previous == null) {
+                PRIMARY_FORCED.remove();
+            } else {
+                PRIMARY_FORCED.set(previous);
+            }
+        }
+    }
+
+    public static boolean isPrimaryForced() {
+        return Boolean.TRUE.equals(PRIMARY_FORCED.get());
+    }
+}
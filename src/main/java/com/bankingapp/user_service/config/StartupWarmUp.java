@@ -0,0 +1,236 @@
+package com.bankingapp.user_service.config;
+
+import com.bankingapp.user_service.dto.JwtResponse;
+import com.bankingapp.user_service.dto.LoginRequest;
+import com.bankingapp.user_service.model.Role;
+import com.bankingapp.user_service.model.RoleMask;
+import com.bankingapp.user_service.model.User;
+import com.bankingapp.user_service.repository.UserRepository;
+import com.bankingapp.user_service.security.JwtUtils;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Runs the login path once, synthetically, before the node reports ready.
+ *
+ * <p>A freshly started JVM serves its first logins slowly: the connection pools open their connections on
+ * demand, the JWT, BCrypt and Jackson code is still interpreted, Hibernate builds the {@code findByEmail} query
+ * on first use and Postgres only switches it to a server-side prepared statement after a few executions per
+ * connection. Without this, the first few hundred requests after a deployment pay for all of that.</p>
+ *
+ * <p>Each step runs a fixed number of times with a synthetic user that is never written: the pools are filled to
+ * their minimum size, tokens are signed and verified, a password is matched, {@code findByEmail} is run for an
+ * email that cannot exist, and a login request and {@link JwtResponse} are (de)serialized. This runs before the
+ * other application runners, and application runners complete before the readiness state changes to
+ * ACCEPTING_TRAFFIC. A step that fails is logged and skipped: the node starts either way.</p>
+ *
+ * <p>The duration of every step, and of the whole warm-up, is published as {@code app.warm-up.duration}.</p>
+ */
+
+
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty(name = "app.warm-up.enabled", havingValue = "true", matchIfMissing = true)
+public class StartupWarmUp implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupWarmUp.class);
+
+    // The .invalid top-level domain is reserved, so no registered user can have this email.
+    private static final String EMAIL = "warm-up@warm-up.invalid";
+    private static final String PASSWORD = "warm-up-password";
+
+    private final DataSource dataSource;
+    private final JwtUtils jwtUtils;
+    private final PasswordEncoder passwordEncoder;
+    private final UserRepository userRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.warm-up.iterations:1000}")
+    private int iterations;
+
+    @Value("${app.warm-up.query-iterations:100}")
+    private int queryIterations;
+
+    // Step name -> duration in milliseconds, in the order the steps ran.
+    private final Map<String, Long> durations = Collections.synchronizedMap(new LinkedHashMap<>());
+
+
+    public StartupWarmUp(DataSource dataSource, JwtUtils jwtUtils, PasswordEncoder passwordEncoder,
+                         UserRepository userRepository, PlatformTransactionManager transactionManager,
+                         ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.dataSource = dataSource;
+        this.jwtUtils = jwtUtils;
+        this.passwordEncoder = passwordEncoder;
+        this.userRepository = userRepository;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+
+        // The same kind of transaction as a login's user load, so it goes to a read replica when they are enabled.
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long start = System.nanoTime();
+
+        User user = syntheticUser();
+        step("pools", this::fillPools);
+        step("jwt", () -> signAndVerify(user));
+        step("password", this::matchPassword);
+        step("query", this::findByEmail);
+        step("json", () -> serialize(user));
+
+        record("total", System.nanoTime() - start);
+        logger.info("Warm-up finished in {} ms {}", durations.get("total"), durations);
+    }
+
+
+    // Opens the minimum number of connections of every pool behind the DataSource, by holding that many at once.
+    private void fillPools() throws SQLException {
+        for (HikariDataSource pool : pools(dataSource)) {
+            int size = Math.max(1, Math.min(pool.getMinimumIdle(), pool.getMaximumPoolSize()));
+            List<Connection> held = new ArrayList<>(size);
+            try {
+                for (int i = 0; i < size; i++) {
+                    held.add(pool.getConnection());
+                }
+            } finally {
+                for (Connection connection : held) {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+
+    private void signAndVerify(User user) {
+        UsernamePasswordAuthenticationToken authentication =
+                new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities());
+        for (int i = 0; i < iterations; i++) {
+            String token = jwtUtils.generateJwtToken(authentication);
+            if (jwtUtils.verifyJwtToken(token) == null) {
+                throw new IllegalStateException("a freshly signed token did not verify");
+            }
+        }
+    }
+
+
+    // BCrypt is slow by design, so one hash and one match are all that is worth doing (and the class loading
+    // and key setup are what the first login would otherwise pay for).
+    private void matchPassword() {
+        String hash = passwordEncoder.encode(PASSWORD);
+        if (!passwordEncoder.matches(PASSWORD, hash)) {
+            throw new IllegalStateException("a freshly hashed password did not match");
+        }
+    }
+
+
+    // Hibernate builds and caches the query plan on the first run; the repeats take the connections they run on
+    // past the driver's prepareThreshold, so those use a server-side prepared statement from the first login.
+    private void findByEmail() {
+        for (int i = 0; i < queryIterations; i++) {
+            readOnlyTransaction.execute(status -> userRepository.findByEmail(EMAIL));
+        }
+    }
+
+
+    private void serialize(User user) throws JsonProcessingException {
+        String loginJson = "{\"email\":\"" + EMAIL + "\",\"password\":\"" + PASSWORD + "\"}";
+        List<String> roles = RoleMask.names(user.getRolesMask());
+        for (int i = 0; i < iterations; i++) {
+            objectMapper.readValue(loginJson, LoginRequest.class);
+            objectMapper.writeValueAsString(new JwtResponse("warm-up", user.getId(), user.getFirstName(), user.getEmail(), roles));
+        }
+    }
+
+
+    private void step(String name, Step step) {
+        long start = System.nanoTime();
+        try {
+            step.run();
+        } catch (Exception e) {
+            logger.warn("Warm-up step '{}' failed, skipping it: {}", name, e.toString());
+        }
+        record(name, System.nanoTime() - start);
+    }
+
+
+    private void record(String name, long nanos) {
+        durations.put(name, TimeUnit.NANOSECONDS.toMillis(nanos));
+        TimeGauge.builder("app.warm-up.duration", durations, TimeUnit.MILLISECONDS, d -> d.getOrDefault(name, 0L))
+                .tag("step", name)
+                .description("Time spent warming up before the node reported ready")
+                .register(meterRegistry);
+    }
+
+
+    private static User syntheticUser() {
+        User user = new User("Warm", "Up", EMAIL, "");
+        user.setId(0L);
+        user.setRoles(Set.of(new Role(Role.ERole.ROLE_USER)));
+        return user;
+    }
+
+
+    // The connection pools behind the (possibly replica- or shard-routing) DataSource.
+    static Set<HikariDataSource> pools(DataSource dataSource) {
+        Set<HikariDataSource> pools = Collections.newSetFromMap(new IdentityHashMap<>());
+        collectPools(dataSource, pools);
+        return pools;
+    }
+
+
+    private static void collectPools(DataSource dataSource, Set<HikariDataSource> pools) {
+        if (dataSource instanceof HikariDataSource pool) {
+            pools.add(pool);
+        } else if (dataSource instanceof DelegatingDataSource delegating && delegating.getTargetDataSource() != null) {
+            collectPools(delegating.getTargetDataSource(), pools);
+        } else if (dataSource instanceof AbstractRoutingDataSource routing) {
+            routing.getResolvedDataSources().values().forEach(target -> collectPools(target, pools));
+            if (routing.getResolvedDefaultDataSource() != null) {
+                collectPools(routing.getResolvedDefaultDataSource(), pools);
+            }
+        }
+    }
+
+
+    @FunctionalInterface
+    private interface Step {
+        void run() throws Exception;
+    }
+}
@@ -5,20 +5,27 @@ import com.bankingapp.user_service.dto.LoginRequest;
 import com.bankingapp.user_service.dto.RegisterRequest;
 import com.bankingapp.user_service.dto.UserInfoResponse;
 
+import com.bankingapp.user_service.model.RoleMask;
 import com.bankingapp.user_service.model.User;
 import com.bankingapp.user_service.security.JwtUtils;
+import com.bankingapp.user_service.security.UserStoreUnavailableException;
 import com.bankingapp.user_service.service.AuthService;
+import com.bankingapp.user_service.session.OpaqueTokenService;
+import com.bankingapp.user_service.throttle.ConcurrencyLimitFilter;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
 import org.springframework.web.bind.annotation.*;
 
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 
 
@@ -37,12 +44,17 @@ public class AuthController{
 
     private final AuthService authService;
     private final JwtUtils jwtUtils;
+    private final OpaqueTokenService opaqueTokenService; // Null unless app.token.mode=opaque.
+    private final long retryAfterSeconds;
 
 
 
-    public AuthController(AuthService authService, JwtUtils jwtUtils){
+    public AuthController(AuthService authService, JwtUtils jwtUtils, ObjectProvider<OpaqueTokenService> opaqueTokenService,
+                          @Value("${app.user-load.retry-after-seconds:5}") long retryAfterSeconds){
         this.authService = authService;
         this.jwtUtils = jwtUtils;
+        this.opaqueTokenService = opaqueTokenService.getIfAvailable();
+        this.retryAfterSeconds = retryAfterSeconds;
     }
 
 
@@ -67,7 +79,7 @@ public class AuthController{
      * Endpoint for user login.
      *
      * @param loginRequest The request body containing user login credentials.
-     * @return A ResponseEntity containing a JWT and user details.
+     * @return A ResponseEntity containing a token (a JWT, or an opaque token if enabled) and user details.
      */
 
     @PostMapping("/login")
@@ -76,18 +88,55 @@ public class AuthController{
         // 1. Authenticate the user using the AuthService.
         Authentication authentication = authService.authenticateUser(loginRequest);
 
-        // 2. If authentication is successful, generate a JWT.
-        String jwt = jwtUtils.generateJwtToken(authentication);
-
-        // 3. Get the user details from the Authentication object.
+        // 2. Get the user details from the Authentication object.
         User userDetails = (User) authentication.getPrincipal();
 
-        // 4. Get the roles and convert them to a list of strings.
-        List<String> roles = userDetails.getAuthorities().stream().map(GrantedAuthority::getAuthority).collect(Collectors.toList());
+        // 3. If authentication is successful, issue a token: an opaque session token if enabled, a JWT otherwise.
+        String jwt = opaqueTokenService != null
+                ? opaqueTokenService.issue(userDetails)
+                : jwtUtils.generateJwtToken(authentication);
+
+        // 4. Get the role names. RoleMask returns a shared, immutable list, so nothing is allocated here.
+        List<String> roles = RoleMask.names(userDetails.getRolesMask());
 
         // 5. Create the response object. consider this as a dto. and our model is not going beyond the controller.
         JwtResponse response = new JwtResponse(jwt, userDetails.getId(), userDetails.getFirstName(), userDetails.getEmail(), roles);
 
         return ResponseEntity.ok(response);
     }
-}
\ No newline at end of file
+
+
+
+
+    /**
+     * Endpoint for logout. Ends the session of an opaque token right away.
+     * JWTs cannot be revoked; they stay valid until they expire and the client simply discards them.
+     *
+     * @param authorization The Authorization header ("Bearer <token>").
+     * @return A success message.
+     */
+
+    @PostMapping("/logout")
+    public ResponseEntity<?> logoutUser(@RequestHeader(value = "Authorization", required = false) String authorization){
+
+        if (opaqueTokenService != null && authorization != null && authorization.startsWith("Bearer ")) {
+            opaqueTokenService.revoke(authorization.substring(7));
+        }
+        return ResponseEntity.ok("User logged out successfully!");
+    }
+
+
+
+    /**
+     * A login that could not check the credentials because the database is unavailable (or the circuit breaker
+     * in front of it is open) fails fast with 503, so clients retry later instead of reporting bad credentials.
+     */
+
+    @ExceptionHandler(UserStoreUnavailableException.class)
+    public ResponseEntity<?> userStoreUnavailable(UserStoreUnavailableException e, HttpServletRequest request){
+        ConcurrencyLimitFilter.markUserStoreRefusal(request);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds))
+                .body("Error: Login is temporarily unavailable, please try again shortly.");
+    }
+}
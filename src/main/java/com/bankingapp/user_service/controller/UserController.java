@@ -0,0 +1,130 @@
+package com.bankingapp.user_service.controller;
+
+import com.bankingapp.user_service.dto.UserInfoResponse;
+import com.bankingapp.user_service.dto.UserLookupRequest;
+import com.bankingapp.user_service.dto.UserLookupResponse;
+import com.bankingapp.user_service.model.User;
+import com.bankingapp.user_service.security.TokenPrincipal;
+import com.bankingapp.user_service.service.UserLookupService;
+import com.bankingapp.user_service.stream.UserChangeStream;
+
+import jakarta.validation.Valid;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+
+/**
+ * Controller for user data endpoints used by authenticated clients and other microservices.
+ */
+
+
+@RestController
+@RequestMapping("/api/users")
+public class UserController{
+
+    private final UserLookupService userLookupService;
+    private final UserChangeStream userChangeStream;
+
+    public UserController(UserLookupService userLookupService, UserChangeStream userChangeStream){
+        this.userLookupService = userLookupService;
+        this.userChangeStream = userChangeStream;
+    }
+
+
+    /**
+     * Endpoint for bulk user lookups, e.g. to resolve the owners of a page of accounts or transactions
+     * in one call instead of one call per user. Restricted to admins and service accounts (see SecurityConfig).
+     *
+     * @param lookupRequest The ids and/or emails to look up, at most {@value UserLookupRequest#MAX_KEYS} of each.
+     * @return The users found, in request order, and the keys that matched no user.
+     */
+
+    @PostMapping("/lookup")
+    public ResponseEntity<UserLookupResponse> lookupUsers(@Valid @RequestBody UserLookupRequest lookupRequest){
+
+        return ResponseEntity.ok(userLookupService.lookup(lookupRequest.getIds(), lookupRequest.getEmails()));
+    }
+
+
+
+    /**
+     * Endpoint streaming user changes as Server-Sent Events, for services that cache user data and must drop it
+     * when a user is disabled, deleted or has their roles changed. Restricted to admins and service accounts.
+     *
+     * <p>Every event is a {@link com.bankingapp.user_service.dto.UserChangeEvent}. A client that reconnects with
+     * the id of the last event it received (the {@code Last-Event-ID} header, which EventSource sends by itself,
+     * or the {@code lastEventId} parameter) resumes after it; if this node cannot resume from there, the first
+     * event is ALL. See {@link UserChangeStream}.</p>
+     *
+     * @return The stream, or 503 if this node has reached its subscriber limit.
+     */
+
+    @GetMapping(path = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamChanges(@RequestHeader(name = "Last-Event-ID", required = false) String lastEventIdHeader,
+                                                    @RequestParam(name = "lastEventId", required = false) String lastEventIdParam,
+                                                    @AuthenticationPrincipal UserDetails principal){
+
+        Long userId = principal instanceof User user ? user.getId()
+                : principal instanceof TokenPrincipal tokenPrincipal ? tokenPrincipal.getId() : null;
+        SseEmitter emitter = userChangeStream.subscribe(lastEventIdHeader != null ? lastEventIdHeader : lastEventIdParam, userId);
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "5").build();
+        }
+        return ResponseEntity.ok().cacheControl(CacheControl.noStore()).body(emitter);
+    }
+
+
+
+    /**
+     * Endpoint for the current user's profile.
+     *
+     * <p>With a JWT, the principal is the User that AuthTokenFilter resolved from the principal cache, so the
+     * profile is built without a query. With an opaque token only the id is known, and the user is read through
+     * the Hibernate second-level cache.</p>
+     *
+     * <p>The response carries a strong ETag derived from the user's row version. A client that sends it back in
+     * If-None-Match gets 304 Not Modified with no body until the user changes.</p>
+     *
+     * @param principal The authenticated user.
+     * @param request   The current request, used for the If-None-Match check.
+     * @return The user's profile, or 304 if the client's copy is current.
+     */
+
+    @GetMapping("/me")
+    public ResponseEntity<UserInfoResponse> currentUser(@AuthenticationPrincipal UserDetails principal, WebRequest request){
+
+        // 1. Resolve the user: already in hand for JWTs, by id for opaque tokens.
+        User user;
+        if (principal instanceof User authenticatedUser) {
+            user = authenticatedUser;
+        } else if (principal instanceof TokenPrincipal tokenPrincipal) {
+            user = userLookupService.findUser(tokenPrincipal.getId()).orElse(null);
+        } else {
+            user = null;
+        }
+        if (user == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        // 2. If the client already has this version, answer 304 without building a body.
+        String eTag = "\"u" + user.getId() + "-v" + user.getVersion() + "\"";
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+
+        // 3. Otherwise send the profile. "no-cache" makes clients revalidate every time, "private" keeps it out of shared caches.
+        UserInfoResponse response = new UserInfoResponse(user.getId(), user.getFirstName(), user.getLastName(), user.getEmail(), user.getRolesMask());
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(response);
+    }
+}
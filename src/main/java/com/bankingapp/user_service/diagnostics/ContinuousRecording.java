@@ -0,0 +1,112 @@
+package com.bankingapp.user_service.diagnostics;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.List;
+
+
+/**
+ * Keeps a JDK Flight Recorder recording running for the lifetime of the application.
+ *
+ * <p>The recording uses the JDK's low-overhead "default" settings plus this application's authentication
+ * events, and only keeps the last {@code max-age} / {@code max-size} of data. When a latency spike is
+ * reported, an admin downloads it through {@link FlightRecordingEndpoint} and opens it in JDK Mission Control;
+ * no profiler needs to be attached, and the events add no metric cardinality.</p>
+ *
+ * <p>The events of the "default" settings that record the JVM's environment, system properties, arguments or the
+ * command lines of processes are turned off: they would put {@code app.jwtSecret} and the datasource password
+ * into every download.</p>
+ */
+
+
+@Component
+@ConditionalOnProperty(name = "app.diagnostics.jfr.enabled", havingValue = "true", matchIfMissing = true)
+public class ContinuousRecording implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContinuousRecording.class);
+
+    private static final List<Class<? extends jdk.jfr.Event>> EVENTS =
+            List.of(TokenAuthenticationEvent.class, JwtEvent.class, PasswordHashEvent.class, UserLoadEvent.class);
+
+    // Events that carry configuration, and with it secrets (the JVM arguments are part of jdk.JVMInformation).
+    static final List<String> SECRET_BEARING_EVENTS =
+            List.of("jdk.InitialEnvironmentVariable", "jdk.InitialSystemProperty", "jdk.JVMInformation", "jdk.SystemProcess");
+
+    @Value("${app.diagnostics.jfr.max-age-ms:900000}")
+    private long maxAgeMs;
+
+    @Value("${app.diagnostics.jfr.max-size-mb:64}")
+    private long maxSizeMb;
+
+    @Value("${app.diagnostics.jfr.threshold-ms:0}")
+    private long thresholdMs;
+
+    private volatile Recording recording;
+
+
+    @Override
+    public void start() {
+        try {
+            Recording started = new Recording(Configuration.getConfiguration("default"));
+            started.setName("banking-api-continuous");
+            started.setToDisk(true);
+            started.setMaxAge(Duration.ofMillis(maxAgeMs));
+            started.setMaxSize(maxSizeMb * 1024 * 1024);
+            for (Class<? extends jdk.jfr.Event> event : EVENTS) {
+                started.enable(event).withThreshold(Duration.ofMillis(thresholdMs));
+            }
+            for (String event : SECRET_BEARING_EVENTS) {
+                started.disable(event);
+            }
+            started.start();
+            recording = started;
+        } catch (IOException | ParseException | IllegalStateException | SecurityException e) {
+            // JFR can be unavailable (e.g. in some native images); the application must still start.
+            logger.warn("Could not start the continuous flight recording: {}", e.getMessage());
+        }
+    }
+
+
+    @Override
+    public void stop() {
+        Recording current = recording;
+        recording = null;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+
+    @Override
+    public boolean isRunning() {
+        return recording != null;
+    }
+
+
+    /**
+     * Writes everything the recording currently holds to a new temporary file.
+     *
+     * @return The file, which the caller must delete, or null if no recording is running.
+     */
+    public Path dump() throws IOException {
+        Recording current = recording;
+        if (current == null) {
+            return null;
+        }
+        Path file = Files.createTempFile("banking-api-", ".jfr");
+        current.dump(file);
+        return file;
+    }
+}
@@ -0,0 +1,77 @@
+package com.bankingapp.user_service.diagnostics;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+
+/**
+ * {@code GET /actuator/flightrecording} downloads the continuous JFR recording as a {@code .jfr} file.
+ *
+ * <p>Like every actuator endpoint except health, it requires ROLE_ADMIN (see {@code SecurityConfig}).</p>
+ */
+
+
+@Component
+@ConditionalOnProperty(name = "app.diagnostics.jfr.enabled", havingValue = "true", matchIfMissing = true)
+@Endpoint(id = "flightrecording")
+public class FlightRecordingEndpoint {
+
+    private final ContinuousRecording continuousRecording;
+
+    public FlightRecordingEndpoint(ContinuousRecording continuousRecording) {
+        this.continuousRecording = continuousRecording;
+    }
+
+
+    @ReadOperation(produces = "application/octet-stream")
+    public WebEndpointResponse<Resource> dump() throws IOException {
+        Path file = continuousRecording.dump();
+        if (file == null) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_SERVICE_UNAVAILABLE);
+        }
+        return new WebEndpointResponse<>(TemporaryFileResource.open(file), WebEndpointResponse.STATUS_OK);
+    }
+
+
+    /**
+     * The content of a temporary file, which is removed from the file system as soon as it is open: whatever
+     * happens to the response, nothing is left behind. Its space is freed when the stream is closed, by Spring once
+     * the body is written, or by the stream's cleaner if the response fails before that.
+     */
+    private static final class TemporaryFileResource extends InputStreamResource {
+
+        private final long length;
+
+        private TemporaryFileResource(InputStream content, long length) {
+            super(content);
+            this.length = length;
+        }
+
+        static TemporaryFileResource open(Path file) throws IOException {
+            try {
+                long length = Files.size(file);
+                // A FileInputStream, unlike Files.newInputStream, closes its descriptor once it is unreachable.
+                return new TemporaryFileResource(new FileInputStream(file.toFile()), length);
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        // InputStreamResource would read the stream to find out.
+        @Override
+        public long contentLength() {
+            return length;
+        }
+    }
+}
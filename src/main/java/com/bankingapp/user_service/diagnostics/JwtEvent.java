@@ -0,0 +1,37 @@
+package com.bankingapp.user_service.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+/**
+ * Signing or verifying a JWT in {@code JwtUtils}.
+ */
+
+
+@Name("bankingapp.Jwt")
+@Label("JWT")
+@Category({"Banking API", "Authentication"})
+@Description("Time spent signing or verifying a JWT")
+@StackTrace(false)
+public class JwtEvent extends Event {
+
+    public static final String SIGN = "sign";
+    public static final String VERIFY = "verify";
+
+    @Label("Operation")
+    @Description("sign or verify")
+    public String operation;
+
+    @Label("Outcome")
+    @Description("ok or rejected")
+    public String outcome;
+
+    @Label("Reason")
+    @Description("Why a token was rejected, e.g. JWT_EXPIRED")
+    public String reason;
+}
@@ -0,0 +1,33 @@
+package com.bankingapp.user_service.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+/**
+ * Hashing or checking a password. With BCrypt this is usually the most expensive step of a login.
+ */
+
+
+@Name("bankingapp.PasswordHash")
+@Label("Password Hash")
+@Category({"Banking API", "Authentication"})
+@Description("Time spent hashing or checking a password")
+@StackTrace(false)
+public class PasswordHashEvent extends Event {
+
+    @Label("Operation")
+    @Description("encode or matches")
+    public String operation;
+
+    @Label("Outcome")
+    @Description("hashed, match or mismatch")
+    public String outcome;
+
+    @Label("Reason")
+    public String reason;
+}
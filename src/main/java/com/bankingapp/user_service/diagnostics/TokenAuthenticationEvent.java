@@ -0,0 +1,29 @@
+package com.bankingapp.user_service.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+/**
+ * One pass of {@code AuthTokenFilter} over a request: token parsing, verification, principal lookup and quota check.
+ */
+
+
+@Name("bankingapp.TokenAuthentication")
+@Label("Token Authentication")
+@Category({"Banking API", "Authentication"})
+@Description("Time spent authenticating a request from its bearer token")
+@StackTrace(false)
+public class TokenAuthenticationEvent extends Event {
+
+    @Label("Outcome")
+    @Description("authenticated, anonymous, rejected, quota-exceeded or unavailable")
+    public String outcome;
+
+    @Label("Reason")
+    public String reason;
+}
@@ -0,0 +1,30 @@
+package com.bankingapp.user_service.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+/**
+ * Resolving a principal in {@code UserDetailsServiceImpl}, from the principal cache or the database.
+ * The email is deliberately not recorded, so recordings can be shared without exposing user data.
+ */
+
+
+@Name("bankingapp.UserLoad")
+@Label("User Load")
+@Category({"Banking API", "Authentication"})
+@Description("Time spent resolving a user by email")
+@StackTrace(false)
+public class UserLoadEvent extends Event {
+
+    @Label("Cache Hit")
+    public boolean cacheHit;
+
+    @Label("Reason")
+    @Description("cache-hit, database, coalesced, primary (read-your-writes), not-found, stale or unavailable")
+    public String reason;
+}
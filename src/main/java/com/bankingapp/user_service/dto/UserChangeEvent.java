@@ -0,0 +1,17 @@
+package com.bankingapp.user_service.dto;
+
+
+/**
+ * The data of one event on {@code GET /api/users/changes}.
+ *
+ * <p>Events only say which user changed, not how: the subscriber drops its copy and re-reads the user
+ * (e.g. with {@code POST /api/users/lookup}) when it next needs it. That way events can never arrive
+ * "out of order" with respect to the data.</p>
+ *
+ * @param op     UPDATE or DELETE for a single user; ALL when everything the subscriber cached about users
+ *               must be dropped (a change that affects every user, or changes the subscriber may have missed).
+ * @param userId The changed user's id (null for ALL).
+ * @param email  The changed user's email (null for ALL).
+ */
+public record UserChangeEvent(String op, Long userId, String email) {
+}
@@ -1,6 +1,7 @@
 package com.bankingapp.user_service.dto;
 
 
+import com.bankingapp.user_service.model.RoleMask;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.Setter;
@@ -32,6 +33,15 @@ public class UserInfoResponse{
         this.roles = roles;
     }
 
+    /**
+     * Builds the response straight from the roles bitmask. This is the constructor used by the
+     * JPQL projections in UserRepository, so no entity has to be loaded.
+     */
+    public UserInfoResponse(Long id, String firstName, String lastName, String email, int rolesMask) {
+        this(id, firstName, lastName, email, RoleMask.names(rolesMask));
+    }
+
+
     public Long getId() {
         return id;
     }
@@ -0,0 +1,38 @@
+package com.bankingapp.user_service.dto;
+
+import jakarta.validation.constraints.Size;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data Transfer Object for bulk user lookups by id and/or email.
+ */
+
+public class UserLookupRequest {
+
+    public static final int MAX_KEYS = 500;
+
+    @Size(max = MAX_KEYS, message = "At most " + MAX_KEYS + " ids can be looked up at once.")
+    private List<Long> ids = new ArrayList<>();
+
+    @Size(max = MAX_KEYS, message = "At most " + MAX_KEYS + " emails can be looked up at once.")
+    private List<String> emails = new ArrayList<>();
+
+
+    public List<Long> getIds() {
+        return ids;
+    }
+
+    public void setIds(List<Long> ids) {
+        this.ids = ids == null ? new ArrayList<>() : ids;
+    }
+
+    public List<String> getEmails() {
+        return emails;
+    }
+
+    public void setEmails(List<String> emails) {
+        this.emails = emails == null ? new ArrayList<>() : emails;
+    }
+}
@@ -0,0 +1,47 @@
+package com.bankingapp.user_service.dto;
+
+import java.util.List;
+
+/**
+ * Data Transfer Object for the result of a bulk user lookup.
+ * Users are listed in the order they were requested (ids first, then emails), each user once.
+ * Keys that matched no user are listed separately.
+ */
+
+public class UserLookupResponse {
+
+    private List<UserInfoResponse> users;
+    private List<Long> missingIds;
+    private List<String> missingEmails;
+
+    public UserLookupResponse(List<UserInfoResponse> users, List<Long> missingIds, List<String> missingEmails) {
+        this.users = users;
+        this.missingIds = missingIds;
+        this.missingEmails = missingEmails;
+    }
+
+
+    public List<UserInfoResponse> getUsers() {
+        return users;
+    }
+
+    public void setUsers(List<UserInfoResponse> users) {
+        this.users = users;
+    }
+
+    public List<Long> getMissingIds() {
+        return missingIds;
+    }
+
+    public void setMissingIds(List<Long> missingIds) {
+        this.missingIds = missingIds;
+    }
+
+    public List<String> getMissingEmails() {
+        return missingEmails;
+    }
+
+    public void setMissingEmails(List<String> missingEmails) {
+        this.missingEmails = missingEmails;
+    }
+}
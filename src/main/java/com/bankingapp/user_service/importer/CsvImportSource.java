@@ -0,0 +1,138 @@
+package com.bankingapp.user_service.importer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+
+/**
+ * Reads an RFC 4180 CSV file with a header row. Columns are matched by name, case-insensitively and ignoring
+ * underscores: {@code email} (required), {@code first_name}, {@code last_name}, {@code password},
+ * {@code password_hash}, {@code roles} (separated by {@code |}) and {@code enabled}. Other columns are ignored.
+ */
+final class CsvImportSource implements ImportSource {
+
+    private final BufferedReader reader;
+    private final List<String> fields = new ArrayList<>();
+    private final StringBuilder field = new StringBuilder();
+
+    private final int columns;
+    private final int email;
+    private final int firstName;
+    private final int lastName;
+    private final int password;
+    private final int passwordHash;
+    private final int roles;
+    private final int enabled;
+
+    private long recordNo;
+
+
+    CsvImportSource(BufferedReader reader) throws IOException {
+        this.reader = reader;
+        if (!readRecord()) {
+            throw new IOException("The CSV file is empty; it needs a header row");
+        }
+
+        List<String> header = new ArrayList<>(fields.size());
+        for (String name : fields) {
+            header.add(name.trim().replace("_", "").toLowerCase(Locale.ROOT));
+        }
+        this.columns = header.size();
+        this.email = header.indexOf("email");
+        this.firstName = header.indexOf("firstname");
+        this.lastName = header.indexOf("lastname");
+        this.password = header.indexOf("password");
+        this.passwordHash = header.indexOf("passwordhash");
+        this.roles = header.indexOf("roles");
+        this.enabled = header.indexOf("enabled");
+
+        if (email < 0) {
+            throw new IOException("The CSV header has no 'email' column: " + fields);
+        }
+    }
+
+
+    @Override
+    public ImportRow next() throws IOException {
+        while (readRecord()) {
+            if (fields.size() == 1 && fields.get(0).isBlank()) {
+                continue; // A blank line.
+            }
+            recordNo++;
+            if (fields.size() != columns) {
+                throw new MalformedRecordException(recordNo,
+                        "expected " + columns + " fields but found " + fields.size());
+            }
+            return new ImportRow(recordNo, get(email), get(firstName), get(lastName), get(password),
+                    get(passwordHash), ImportSource.roleNames(get(roles)), get(enabled));
+        }
+        return null;
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+
+    private String get(int column) {
+        if (column < 0) {
+            return null;
+        }
+        String value = fields.get(column).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+
+    // Reads one record into 'fields'. A quoted field may span several lines.
+    private boolean readRecord() throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            return false;
+        }
+
+        fields.clear();
+        field.setLength(0);
+        boolean quoted = false;
+        int i = 0;
+        while (true) {
+            if (i == line.length()) {
+                if (!quoted) {
+                    break;
+                }
+                line = reader.readLine();
+                if (line == null) {
+                    throw new MalformedRecordException(recordNo + 1, "unterminated quoted field at the end of the file");
+                }
+                field.append('\n');
+                i = 0;
+                continue;
+            }
+
+            char c = line.charAt(i++);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i < line.length() && line.charAt(i) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return true;
+    }
+}
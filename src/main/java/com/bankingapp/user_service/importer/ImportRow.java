@@ -0,0 +1,17 @@
+package com.bankingapp.user_service.importer;
+
+import java.util.List;
+
+
+/**
+ * One record of an import file, as read. Nothing has been validated yet.
+ *
+ * @param recordNo     The 1-based position of the record in the file (not counting a CSV header or blank lines).
+ * @param password     A plaintext password, to be hashed by the importer.
+ * @param passwordHash A bcrypt hash taken over from the legacy system. Takes precedence over {@code password}.
+ * @param roles        Role names, e.g. {@code ROLE_USER}. Empty means ROLE_USER.
+ * @param enabled      {@code true} or {@code false}; {@code null} means enabled.
+ */
+public record ImportRow(long recordNo, String email, String firstName, String lastName,
+                        String password, String passwordHash, List<String> roles, String enabled) {
+}
@@ -0,0 +1,70 @@
+package com.bankingapp.user_service.importer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+
+/**
+ * Streams the records of an import file, one at a time, so files of any size can be imported in constant memory.
+ */
+public interface ImportSource extends Closeable {
+
+    /**
+     * Reads the next record.
+     *
+     * @return The record, or {@code null} at the end of the file.
+     * @throws MalformedRecordException if the record cannot be read. The source is then positioned at the next record.
+     * @throws IOException if the file cannot be read at all.
+     */
+    ImportRow next() throws IOException;
+
+
+    /**
+     * Opens an import file.
+     *
+     * @param file   The file, UTF-8 encoded.
+     * @param format {@code csv} or {@code ndjson}; if blank, it is taken from the file extension.
+     */
+    static ImportSource open(Path file, String format, ObjectMapper objectMapper) throws IOException {
+        String resolved = format == null || format.isBlank() ? extensionOf(file) : format.toLowerCase(Locale.ROOT);
+        if (!resolved.equals("csv") && !resolved.equals("ndjson") && !resolved.equals("jsonl")) {
+            throw new IllegalArgumentException("Unknown import format '" + resolved + "': use csv or ndjson");
+        }
+
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8), 1 << 20);
+        try {
+            return resolved.equals("csv") ? new CsvImportSource(reader) : new NdjsonImportSource(reader, objectMapper);
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+
+    /**
+     * Splits a list of role names written as one value, e.g. {@code "ROLE_USER|ROLE_ADMIN"}.
+     */
+    static List<String> roleNames(String value) {
+        if (value == null || value.isBlank()) {
+            return List.of();
+        }
+        return List.of(value.trim().split("[|;\\s]+"));
+    }
+
+
+    private static String extensionOf(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,20 @@
+package com.bankingapp.user_service.importer;
+
+
+/**
+ * Thrown by an {@link ImportSource} for a record it cannot read. The record is reported as rejected and
+ * the import carries on with the next one.
+ */
+public class MalformedRecordException extends RuntimeException {
+
+    private final long recordNo;
+
+    public MalformedRecordException(long recordNo, String message) {
+        super(message);
+        this.recordNo = recordNo;
+    }
+
+    public long getRecordNo() {
+        return recordNo;
+    }
+}
@@ -0,0 +1,93 @@
+package com.bankingapp.user_service.importer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Reads newline-delimited JSON: one object per line, with the members {@code email}, {@code firstName},
+ * {@code lastName}, {@code password}, {@code passwordHash}, {@code roles} (an array or a {@code |}-separated
+ * string) and {@code enabled}. Snake-case names are accepted too. Other members are ignored.
+ */
+final class NdjsonImportSource implements ImportSource {
+
+    private final BufferedReader reader;
+    private final ObjectMapper objectMapper;
+
+    private long recordNo;
+
+
+    NdjsonImportSource(BufferedReader reader, ObjectMapper objectMapper) {
+        this.reader = reader;
+        this.objectMapper = objectMapper;
+    }
+
+
+    @Override
+    public ImportRow next() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+        } while (line.isBlank());
+        recordNo++;
+
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(line);
+        } catch (JsonProcessingException e) {
+            throw new MalformedRecordException(recordNo, "invalid JSON: " + e.getOriginalMessage());
+        }
+        if (!node.isObject()) {
+            throw new MalformedRecordException(recordNo, "not a JSON object");
+        }
+
+        return new ImportRow(recordNo,
+                text(node, "email", "email"),
+                text(node, "firstName", "first_name"),
+                text(node, "lastName", "last_name"),
+                text(node, "password", "password"),
+                text(node, "passwordHash", "password_hash"),
+                roles(node.get("roles")),
+                text(node, "enabled", "enabled"));
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+
+    private static String text(JsonNode node, String name, String alternativeName) {
+        JsonNode value = node.has(name) ? node.get(name) : node.get(alternativeName);
+        if (value == null || value.isNull() || !value.isValueNode()) {
+            return null;
+        }
+        String text = value.asText().trim();
+        return text.isEmpty() ? null : text;
+    }
+
+
+    private static List<String> roles(JsonNode value) {
+        if (value == null || value.isNull()) {
+            return List.of();
+        }
+        if (!value.isArray()) {
+            return ImportSource.roleNames(value.asText());
+        }
+        List<String> names = new ArrayList<>(value.size());
+        for (JsonNode role : value) {
+            names.add(role.asText().trim());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,67 @@
+package com.bankingapp.user_service.importer;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+
+/**
+ * The rejected-rows report: a CSV file with one line per rejected record ({@code record,email,reason}).
+ *
+ * <p>A resumed import appends to the report of the interrupted one. Rejections are only written once their
+ * batch has been committed, so a record is never reported twice.</p>
+ */
+final class RejectedRowsReport implements Closeable {
+
+    record Rejection(long recordNo, String email, String reason) {
+    }
+
+    private final Path file;
+    private final BufferedWriter writer;
+
+
+    RejectedRowsReport(Path file) throws IOException {
+        this.file = file;
+        boolean isNew = !Files.exists(file) || Files.size(file) == 0;
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (isNew) {
+            writer.write("record,email,reason");
+            writer.newLine();
+        }
+    }
+
+
+    void write(Collection<Rejection> rejections) throws IOException {
+        for (Rejection rejection : rejections) {
+            writer.write(Long.toString(rejection.recordNo()));
+            writer.write(',');
+            writer.write(quote(rejection.email()));
+            writer.write(',');
+            writer.write(quote(rejection.reason()));
+            writer.newLine();
+        }
+        writer.flush();
+    }
+
+
+    Path file() {
+        return file;
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+
+    private static String quote(String value) {
+        return value == null ? "" : '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,15 @@
+package com.bankingapp.user_service.importer;
+
+
+/**
+ * A validated import record, ready to be copied into the staging table.
+ *
+ * @param password The bcrypt hash, or (until the hashing stage has run) the plaintext password.
+ */
+record StagedUser(long recordNo, String email, String firstName, String lastName,
+                  String password, boolean enabled, int rolesMask) {
+
+    StagedUser withPassword(String password) {
+        return new StagedUser(recordNo, email, firstName, lastName, password, enabled, rolesMask);
+    }
+}
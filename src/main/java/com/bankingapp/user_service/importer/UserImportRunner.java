@@ -0,0 +1,433 @@
+package com.bankingapp.user_service.importer;
+
+import com.bankingapp.user_service.dto.RegisterRequest;
+import com.bankingapp.user_service.model.Role;
+import com.bankingapp.user_service.model.RoleMask;
+import com.bankingapp.user_service.model.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+
+/**
+ * Imports users in bulk from a CSV or NDJSON file, e.g. when migrating customers from a legacy IAM.
+ * Runs instead of the web application with the {@code import} profile, and exits when done:
+ *
+ * <pre>
+ * java -jar user-service.jar --spring.profiles.active=import --app.import.file=customers.csv
+ * </pre>
+ *
+ * <p>The file is streamed in batches of {@code app.import.batch-size} records. Each record is validated with the
+ * same rules as a registration (names and email); its password is either taken over as a bcrypt hash
+ * ({@code password_hash}) or hashed here ({@code password}). Plaintext passwords are hashed on all cores,
+ * and the next batch is hashed while the current one is written. Batches are written by
+ * {@link UserImportWriter}: {@code COPY} into a staging table, then a set-based merge into {@code users} and
+ * {@code user_roles}.</p>
+ *
+ * <p>Progress is committed with every batch under a run id (by default derived from the file's name, size and
+ * modification time), so running the same command again after an interruption resumes where it stopped.
+ * Rejected records are listed with their reason in {@code app.import.rejects-file} (by default next to the
+ * input), and a throughput summary is logged at the end.</p>
+ */
+
+
+@Component
+@Profile("import")
+public class UserImportRunner implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserImportRunner.class);
+
+    private static final Pattern BCRYPT_HASH = Pattern.compile("^\\$2[aby]?\\$\\d{2}\\$[./A-Za-z0-9]{53}$");
+    private static final int MAX_BCRYPT_PASSWORD_BYTES = 72;
+    private static final int MAX_EMAIL_LENGTH = 100;
+    private static final int HASH_CHUNK = 64;
+    private static final long PROGRESS_LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final DataSource dataSource;
+    private final PasswordEncoder passwordEncoder;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final ConfigurableApplicationContext context;
+
+    @Value("${app.import.file}")
+    private String file;
+
+    @Value("${app.import.format:}")
+    private String format;
+
+    @Value("${app.import.run-id:}")
+    private String runId;
+
+    @Value("${app.import.rejects-file:}")
+    private String rejectsFile;
+
+    @Value("${app.import.batch-size:10000}")
+    private int batchSize;
+
+    @Value("${app.import.hash-threads:0}")
+    private int hashThreads;
+
+    @Value("${app.import.exit-when-done:true}")
+    private boolean exitWhenDone;
+
+    @Value("${app.sharding.enabled:false}")
+    private boolean shardingEnabled;
+
+
+    public UserImportRunner(DataSource dataSource, PasswordEncoder passwordEncoder, Validator validator,
+                            ObjectMapper objectMapper, ConfigurableApplicationContext context) {
+        this.dataSource = dataSource;
+        this.passwordEncoder = passwordEncoder;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.context = context;
+    }
+
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException, SQLException {
+        // The writer merges whole batches into one database; it does not split them by shard.
+        if (shardingEnabled) {
+            throw new IllegalStateException("The bulk import does not support app.sharding.enabled=true yet");
+        }
+
+        Path input = Path.of(file);
+        String resolvedRunId = runId.isBlank() ? defaultRunId(input) : runId;
+        Path rejects = rejectsFile.isBlank() ? Path.of(file + ".rejected.csv") : Path.of(rejectsFile);
+        int threads = hashThreads > 0 ? hashThreads : Runtime.getRuntime().availableProcessors();
+
+        ExecutorService hashers = Executors.newFixedThreadPool(threads, new HashThreadFactory());
+        try (ImportSource source = ImportSource.open(input, format, objectMapper);
+             RejectedRowsReport report = new RejectedRowsReport(rejects);
+             UserImportWriter writer = new UserImportWriter(dataSource, resolvedRunId, input.toAbsolutePath().toString())) {
+
+            importFile(new Run(resolvedRunId, input, threads, source, report, writer, hashers));
+        } finally {
+            hashers.shutdownNow();
+        }
+
+        if (exitWhenDone) {
+            System.exit(SpringApplication.exit(context, () -> 0));
+        }
+    }
+
+
+    private void importFile(Run run) throws IOException, SQLException {
+        UserImportWriter.Progress progress = run.writer.progress();
+        if (progress.completed()) {
+            logger.info("Import run '{}' already completed ({} imported, {} rejected); nothing to do",
+                    run.id, progress.imported(), progress.rejected());
+            return;
+        }
+
+        // 1. Skip the records an interrupted run already committed.
+        if (progress.recordsDone() > 0) {
+            logger.info("Resuming import run '{}' after record {}", run.id, progress.recordsDone());
+            run.skipped = skip(run.source, progress.recordsDone());
+        } else {
+            logger.info("Starting import run '{}' from {} with {} hashing threads", run.id, run.input, run.threads);
+        }
+
+        // 2. Read and hash batch N+1 while batch N is written.
+        Batch pending = null;
+        boolean endOfFile = false;
+        while (!endOfFile) {
+            Batch batch = readBatch(run.source);
+            endOfFile = batch.endOfFile;
+            startHashing(batch, run);
+
+            if (pending != null) {
+                write(pending, run);
+            }
+            pending = batch;
+        }
+        write(pending, run);
+        run.writer.complete();
+
+        // 3. Summary.
+        double seconds = (System.nanoTime() - run.startedAt) / 1e9;
+        logger.info(String.format(Locale.ROOT,
+                "Import run '%s' finished in %.1f s: %d records read, %d imported, %d rejected (see %s), "
+                        + "%d skipped as done by an earlier attempt. Throughput %.0f records/s; "
+                        + "%d passwords hashed on %d threads (%.0f/s); %.1f s writing to the database, "
+                        + "%.1f s waiting for hashing.",
+                run.id, seconds, run.read, run.imported, run.rejected, run.report.file(), run.skipped,
+                run.read / seconds, run.hashed.get(), run.threads, run.hashed.get() / seconds,
+                run.databaseNanos / 1e9, run.hashWaitNanos / 1e9));
+    }
+
+
+    private static long skip(ImportSource source, long recordsDone) throws IOException {
+        long last = 0;
+        while (last < recordsDone) {
+            try {
+                ImportRow row = source.next();
+                if (row == null) {
+                    break;
+                }
+                last = row.recordNo();
+            } catch (MalformedRecordException e) {
+                last = e.getRecordNo();
+            }
+        }
+        return last;
+    }
+
+
+    private Batch readBatch(ImportSource source) throws IOException {
+        Batch batch = new Batch();
+        while (batch.records < batchSize) {
+            ImportRow row;
+            try {
+                row = source.next();
+            } catch (MalformedRecordException e) {
+                batch.records++;
+                batch.lastRecordNo = e.getRecordNo();
+                batch.rejections.add(new RejectedRowsReport.Rejection(e.getRecordNo(), null, e.getMessage()));
+                continue;
+            }
+            if (row == null) {
+                batch.endOfFile = true;
+                break;
+            }
+
+            batch.records++;
+            batch.lastRecordNo = row.recordNo();
+            stage(row, batch);
+        }
+        return batch;
+    }
+
+
+    // Validates a record and adds it to the batch, or records why it was rejected.
+    private void stage(ImportRow row, Batch batch) {
+        String email = User.normalizeEmail(row.email());
+        String reason = firstViolation("email", email);
+        if (reason == null && email.length() > MAX_EMAIL_LENGTH) {
+            reason = "email is longer than " + MAX_EMAIL_LENGTH + " characters";
+        }
+        if (reason == null) {
+            reason = firstViolation("firstName", row.firstName());
+        }
+        if (reason == null) {
+            reason = firstViolation("lastName", row.lastName());
+        }
+
+        // Existing credentials are carried over as they are; the password policy applies from the next change.
+        String plaintext = null;
+        if (reason == null) {
+            if (row.passwordHash() != null) {
+                if (!BCRYPT_HASH.matcher(row.passwordHash()).matches()) {
+                    reason = "password_hash is not a bcrypt hash";
+                }
+            } else if (row.password() == null) {
+                reason = "no password or password_hash";
+            } else if (row.password().getBytes(StandardCharsets.UTF_8).length > MAX_BCRYPT_PASSWORD_BYTES) {
+                reason = "password is longer than " + MAX_BCRYPT_PASSWORD_BYTES + " bytes";
+            } else {
+                plaintext = row.password();
+            }
+        }
+
+        int rolesMask = RoleMask.bit(Role.ERole.ROLE_USER);
+        if (reason == null && !row.roles().isEmpty()) {
+            rolesMask = 0;
+            for (String name : row.roles()) {
+                try {
+                    rolesMask |= RoleMask.bit(Role.ERole.valueOf(name.toUpperCase(Locale.ROOT)));
+                } catch (IllegalArgumentException e) {
+                    reason = "unknown role '" + name + "'";
+                    break;
+                }
+            }
+        }
+
+        Boolean enabled = parseEnabled(row.enabled());
+        if (reason == null && enabled == null) {
+            reason = "enabled must be true or false";
+        }
+
+        if (reason != null) {
+            batch.rejections.add(new RejectedRowsReport.Rejection(row.recordNo(), row.email(), reason));
+            return;
+        }
+        batch.users.add(new StagedUser(row.recordNo(), email, row.firstName(), row.lastName(),
+                plaintext != null ? plaintext : row.passwordHash(), enabled, rolesMask));
+        batch.plaintext.add(plaintext);
+    }
+
+
+    private String firstViolation(String property, String value) {
+        Set<ConstraintViolation<RegisterRequest>> violations = validator.validateValue(RegisterRequest.class, property, value);
+        return violations.isEmpty() ? null : violations.iterator().next().getMessage();
+    }
+
+
+    private static Boolean parseEnabled(String value) {
+        if (value == null) {
+            return Boolean.TRUE;
+        }
+        return switch (value.toLowerCase(Locale.ROOT)) {
+            case "true", "1", "yes" -> Boolean.TRUE;
+            case "false", "0", "no" -> Boolean.FALSE;
+            default -> null;
+        };
+    }
+
+
+    private void startHashing(Batch batch, Run run) {
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        for (int from = 0; from < batch.users.size(); from += HASH_CHUNK) {
+            int start = from;
+            int end = Math.min(from + HASH_CHUNK, batch.users.size());
+            chunks.add(CompletableFuture.runAsync(() -> hash(batch, start, end, run), run.hashers));
+        }
+        batch.hashing = CompletableFuture.allOf(chunks.toArray(CompletableFuture[]::new));
+    }
+
+
+    // Each chunk only touches its own slots of the lists, so the chunks need no locking.
+    private void hash(Batch batch, int from, int to, Run run) {
+        for (int i = from; i < to; i++) {
+            String plaintext = batch.plaintext.get(i);
+            if (plaintext == null) {
+                continue;
+            }
+            StagedUser user = batch.users.get(i);
+            try {
+                batch.users.set(i, user.withPassword(passwordEncoder.encode(plaintext)));
+                run.hashed.incrementAndGet();
+            } catch (RuntimeException e) {
+                batch.users.set(i, null);
+                batch.rejections.add(new RejectedRowsReport.Rejection(user.recordNo(), user.email(),
+                        "password cannot be hashed: " + e.getMessage()));
+            }
+            batch.plaintext.set(i, null);
+        }
+    }
+
+
+    private void write(Batch batch, Run run) throws IOException, SQLException {
+        long waitStart = System.nanoTime();
+        batch.hashing.join();
+        long writeStart = System.nanoTime();
+        run.hashWaitNanos += writeStart - waitStart;
+
+        List<StagedUser> users = batch.users.stream().filter(Objects::nonNull).toList();
+        List<RejectedRowsReport.Rejection> rejections = new ArrayList<>(batch.rejections);
+        List<RejectedRowsReport.Rejection> conflicts = new ArrayList<>();
+        long inserted = run.writer.write(users, batch.lastRecordNo, rejections.size(), conflicts);
+        run.databaseNanos += System.nanoTime() - writeStart;
+
+        // Only committed batches are reported, so a resumed run never reports a record twice.
+        rejections.addAll(conflicts);
+        rejections.sort(Comparator.comparingLong(RejectedRowsReport.Rejection::recordNo));
+        run.report.write(rejections);
+
+        run.read += batch.records;
+        run.imported += inserted;
+        run.rejected += rejections.size();
+
+        long now = System.nanoTime();
+        if (now - run.lastProgressLog >= PROGRESS_LOG_INTERVAL_NANOS) {
+            run.lastProgressLog = now;
+            double seconds = (now - run.startedAt) / 1e9;
+            logger.info(String.format(Locale.ROOT, "Import progress: record %d, %d imported, %d rejected, %.0f records/s",
+                    batch.lastRecordNo, run.imported, run.rejected, run.read / seconds));
+        }
+    }
+
+
+    private static String defaultRunId(Path input) throws IOException {
+        return input.getFileName() + ":" + Files.size(input) + ":" + Files.getLastModifiedTime(input).toMillis();
+    }
+
+
+    /** The records of one batch, from reading to writing. */
+    private static final class Batch {
+        final List<StagedUser> users = new ArrayList<>();
+        final List<String> plaintext = new ArrayList<>();  // Parallel to users; null where a hash was given.
+        final Queue<RejectedRowsReport.Rejection> rejections = new ConcurrentLinkedQueue<>();
+        CompletableFuture<Void> hashing = CompletableFuture.completedFuture(null);
+        int records;
+        long lastRecordNo;
+        boolean endOfFile;
+    }
+
+
+    /** The state and statistics of one run. */
+    private static final class Run {
+        final String id;
+        final Path input;
+        final int threads;
+        final ImportSource source;
+        final RejectedRowsReport report;
+        final UserImportWriter writer;
+        final ExecutorService hashers;
+        final long startedAt = System.nanoTime();
+        final AtomicLong hashed = new AtomicLong();
+        long lastProgressLog = startedAt;
+        long skipped;
+        long read;
+        long imported;
+        long rejected;
+        long databaseNanos;
+        long hashWaitNanos;
+
+        Run(String id, Path input, int threads, ImportSource source, RejectedRowsReport report,
+            UserImportWriter writer, ExecutorService hashers) {
+            this.id = id;
+            this.input = input;
+            this.threads = threads;
+            this.source = source;
+            this.report = report;
+            this.writer = writer;
+            this.hashers = hashers;
+        }
+    }
+
+
+    private static final class HashThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "user-import-hash-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
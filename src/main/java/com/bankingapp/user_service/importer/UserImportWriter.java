@@ -0,0 +1,248 @@
+package com.bankingapp.user_service.importer;
+
+import com.bankingapp.user_service.model.Role;
+import com.bankingapp.user_service.model.RoleMask;
+import org.postgresql.PGConnection;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Writes validated users to Postgres, one transaction per batch, over a single dedicated connection.
+ *
+ * <p>Each batch is streamed with {@code COPY} into a temporary staging table and merged into {@code users} and
+ * {@code user_roles} with one set-based statement, which also returns the records it did not insert: those whose
+ * email already exists or repeats within the batch, including emails that another transaction took while the
+ * merge ran. The run's progress is updated in the same transaction, so after a crash the import resumes exactly
+ * after the last committed batch, with nothing lost and nothing imported twice.</p>
+ */
+final class UserImportWriter implements Closeable {
+
+    record Progress(long recordsDone, long imported, long rejected, boolean completed) {
+    }
+
+    private static final String CREATE_STAGING = """
+            CREATE TEMPORARY TABLE IF NOT EXISTS user_import_staging (
+                record_no  BIGINT       NOT NULL,
+                email      VARCHAR(100) NOT NULL,
+                first_name VARCHAR(50)  NOT NULL,
+                last_name  VARCHAR(50)  NOT NULL,
+                password   VARCHAR(255) NOT NULL,
+                is_enabled BOOLEAN      NOT NULL,
+                roles_mask INTEGER      NOT NULL
+            ) ON COMMIT DELETE ROWS
+            """;
+
+    private static final String COPY_STAGING = """
+            COPY user_import_staging (record_no, email, first_name, last_name, password, is_enabled, roles_mask)
+            FROM STDIN WITH (FORMAT csv)
+            """;
+
+    // Inserts the users and their user_roles rows, and returns the records that were not inserted: a later record
+    // of an email that repeats in the batch, or the first one if the email is taken (also by an archived user).
+    // ON CONFLICT skips emails inserted by another transaction after the NOT EXISTS checks ran, so those are
+    // found by what was actually inserted, not by the checks. The role bits are passed in, as (name, bit) pairs.
+    private static final String MERGE = """
+            WITH inserted AS (
+                INSERT INTO users (first_name, last_name, email, password, is_enabled, roles_mask)
+                SELECT DISTINCT ON (s.email) s.first_name, s.last_name, s.email, s.password, s.is_enabled, s.roles_mask
+                  FROM user_import_staging s
+                 WHERE NOT EXISTS (SELECT 1 FROM users u WHERE u.email = s.email)
+                   AND NOT EXISTS (SELECT 1 FROM users_archive a WHERE a.email = s.email)
+                 ORDER BY s.email, s.record_no
+                ON CONFLICT (email) DO NOTHING
+                RETURNING id, email, roles_mask
+            ), granted AS (
+                INSERT INTO user_roles (user_id, role_id)
+                SELECT i.id, r.id
+                  FROM inserted i
+                  JOIN unnest(?::text[], ?::int[]) AS b(name, bit) ON (i.roles_mask & b.bit) <> 0
+                  JOIN roles r ON r.name = b.name
+            )
+            SELECT s.record_no, s.email,
+                   (s.occurrence = 1
+                    OR EXISTS (SELECT 1 FROM users u WHERE u.email = s.email)
+                    OR EXISTS (SELECT 1 FROM users_archive a WHERE a.email = s.email)) AS taken
+              FROM (SELECT record_no, email,
+                           row_number() OVER (PARTITION BY email ORDER BY record_no) AS occurrence
+                      FROM user_import_staging) s
+             WHERE s.occurrence > 1 OR NOT EXISTS (SELECT 1 FROM inserted i WHERE i.email = s.email)
+             ORDER BY s.record_no
+            """;
+
+    private final Connection connection;
+    private final String runId;
+    private final StringBuilder copyBuffer = new StringBuilder(1 << 20);
+    private final String[] roleNames;
+    private final Integer[] roleBits;
+
+
+    UserImportWriter(DataSource dataSource, String runId, String source) throws SQLException {
+        this.connection = dataSource.getConnection();
+        this.runId = runId;
+
+        Role.ERole[] roles = Role.ERole.values();
+        this.roleNames = new String[roles.length];
+        this.roleBits = new Integer[roles.length];
+        for (int i = 0; i < roles.length; i++) {
+            roleNames[i] = roles[i].name();
+            roleBits[i] = RoleMask.bit(roles[i]);
+        }
+
+        try {
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(CREATE_STAGING);
+            }
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO user_import_runs (run_id, source) VALUES (?, ?) ON CONFLICT (run_id) DO NOTHING")) {
+                insert.setString(1, runId);
+                insert.setString(2, source);
+                insert.executeUpdate();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+
+    Progress progress() throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT records_done, imported, rejected, completed_at IS NOT NULL FROM user_import_runs WHERE run_id = ?")) {
+            select.setString(1, runId);
+            try (ResultSet rs = select.executeQuery()) {
+                rs.next();
+                Progress progress = new Progress(rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getBoolean(4));
+                connection.commit();
+                return progress;
+            }
+        }
+    }
+
+
+    /**
+     * Imports one batch in one transaction.
+     *
+     * @param users               The batch's valid users, with hashed passwords.
+     * @param lastRecordNo        The last record of the file the batch covers; the run resumes after it.
+     * @param rejectedBeforeMerge How many records of the batch were already rejected while being validated.
+     * @param conflicts           Receives the records that were rejected because their email is taken.
+     * @return The number of users inserted.
+     */
+    long write(List<StagedUser> users, long lastRecordNo, int rejectedBeforeMerge,
+               List<RejectedRowsReport.Rejection> conflicts) throws SQLException, IOException {
+        try {
+            try (Statement statement = connection.createStatement()) {
+                // Skips the per-row notifications of user_roles (see V10__bulk_import).
+                statement.execute("SET LOCAL app.bulk_import = 'on'");
+            }
+
+            long inserted = 0;
+            if (!users.isEmpty()) {
+                copy(users);
+                merge(conflicts);
+                // Every record is either inserted or returned by the merge.
+                inserted = users.size() - conflicts.size();
+            }
+
+            try (PreparedStatement update = connection.prepareStatement("""
+                    UPDATE user_import_runs
+                       SET records_done = ?, imported = imported + ?, rejected = rejected + ?, updated_at = now()
+                     WHERE run_id = ?
+                    """)) {
+                update.setLong(1, lastRecordNo);
+                update.setLong(2, inserted);
+                update.setLong(3, rejectedBeforeMerge + conflicts.size());
+                update.setString(4, runId);
+                update.executeUpdate();
+            }
+
+            connection.commit();
+            return inserted;
+        } catch (SQLException | IOException | RuntimeException e) {
+            conflicts.clear();
+            connection.rollback();
+            throw e;
+        }
+    }
+
+
+    void complete() throws SQLException {
+        try (PreparedStatement update = connection.prepareStatement(
+                "UPDATE user_import_runs SET completed_at = now(), updated_at = now() WHERE run_id = ?")) {
+            update.setString(1, runId);
+            update.executeUpdate();
+        }
+        connection.commit();
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+
+    private void copy(List<StagedUser> users) throws SQLException, IOException {
+        StringBuilder csv = copyBuffer;
+        csv.setLength(0);
+        for (StagedUser user : users) {
+            csv.append(user.recordNo()).append(',');
+            appendQuoted(csv, user.email()).append(',');
+            appendQuoted(csv, user.firstName()).append(',');
+            appendQuoted(csv, user.lastName()).append(',');
+            appendQuoted(csv, user.password()).append(',');
+            csv.append(user.enabled()).append(',');
+            csv.append(user.rolesMask()).append('\n');
+        }
+        connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_STAGING, new StringReader(csv.toString()));
+
+        // Temporary tables have no statistics until analyzed, and the merge plans better with them.
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ANALYZE user_import_staging");
+        }
+    }
+
+
+    private void merge(List<RejectedRowsReport.Rejection> conflicts) throws SQLException {
+        try (PreparedStatement merge = connection.prepareStatement(MERGE)) {
+            merge.setArray(1, connection.createArrayOf("text", roleNames));
+            merge.setArray(2, connection.createArrayOf("int4", roleBits));
+            try (ResultSet rs = merge.executeQuery()) {
+                while (rs.next()) {
+                    conflicts.add(new RejectedRowsReport.Rejection(rs.getLong(1), rs.getString(2),
+                            rs.getBoolean(3) ? "email already exists" : "duplicate email in the file"));
+                }
+            }
+        }
+    }
+
+
+    private static StringBuilder appendQuoted(StringBuilder csv, String value) {
+        csv.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                csv.append('"');
+            }
+            csv.append(c);
+        }
+        return csv.append('"');
+    }
+}
@@ -1,6 +1,8 @@
 package com.bankingapp.user_service.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -15,6 +17,8 @@ import java.util.Objects;
 
 @Entity // Tells JPA that this class is an entity that should be mapped to a database
 @Table(name= "roles") // Specifies the name of the database table.
+@Cacheable // Roles are a tiny, almost static table, so they live in the second-level cache.
+@Cache(usage = CacheConcurrencyStrategy.READ_ONLY, region = "roles") // Roles are inserted but never modified.
 
 public class Role{
 
@@ -33,12 +37,15 @@ public class Role{
     /**
      * An Enumeration for the available roles in the application.
      * Using an enum makes the code cleaner and less error-prone than using raw strings.
+     * Users store their roles as a bitmask of these constants' ordinals (see {@link RoleMask}),
+     * so new roles must only ever be added at the end.
      */
 
 
     public enum ERole{
         ROLE_USER,
-        ROLE_ADMIN
+        ROLE_ADMIN,
+        ROLE_SERVICE     // Other microservices calling our internal APIs (e.g. bulk user lookup).
     }
 
     public Role() {
@@ -0,0 +1,138 @@
+package com.bankingapp.user_service.model;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * Encodes a set of {@link Role.ERole} values as an int bitmask, which is how roles are stored
+ * in the {@code users.roles_mask} column.
+ *
+ * <p>Each role owns bit {@code 1 << ordinal()}. Because the ordinal is persisted, new roles must
+ * only ever be appended to the end of {@link Role.ERole}; reordering or removing a constant would
+ * silently change the meaning of stored masks.</p>
+ *
+ * <p>There are only {@code 2^n} possible masks, so the authority and role-name lists for every
+ * mask are built once and shared. Callers get the same immutable list each time, which means
+ * authorization checks do not allocate.</p>
+ */
+
+
+public final class RoleMask {
+
+    private static final Role.ERole[] ROLES = Role.ERole.values();
+
+    // Indexed by mask value. Built once at class-load time.
+    private static final List<GrantedAuthority>[] AUTHORITIES;
+    private static final List<String>[] NAMES;
+
+    static {
+        int combinations = 1 << ROLES.length;
+
+        @SuppressWarnings("unchecked")
+        List<GrantedAuthority>[] authorities = new List[combinations];
+        @SuppressWarnings("unchecked")
+        List<String>[] names = new List[combinations];
+
+        // One SimpleGrantedAuthority per role, shared by every mask that contains it.
+        GrantedAuthority[] single = new GrantedAuthority[ROLES.length];
+        for (Role.ERole role : ROLES) {
+            single[role.ordinal()] = new SimpleGrantedAuthority(role.name());
+        }
+
+        for (int mask = 0; mask < combinations; mask++) {
+            List<GrantedAuthority> maskAuthorities = new ArrayList<>();
+            List<String> maskNames = new ArrayList<>();
+            for (Role.ERole role : ROLES) {
+                if ((mask & bit(role)) != 0) {
+                    maskAuthorities.add(single[role.ordinal()]);
+                    maskNames.add(role.name());
+                }
+            }
+            authorities[mask] = List.copyOf(maskAuthorities);
+            names[mask] = List.copyOf(maskNames);
+        }
+
+        AUTHORITIES = authorities;
+        NAMES = names;
+    }
+
+    private RoleMask() {
+    }
+
+
+    /**
+     * @return The bit representing the given role.
+     */
+    public static int bit(Role.ERole role) {
+        return 1 << role.ordinal();
+    }
+
+
+    public static int of(Collection<Role.ERole> roles) {
+        int mask = 0;
+        for (Role.ERole role : roles) {
+            mask |= bit(role);
+        }
+        return mask;
+    }
+
+
+    /**
+     * Builds the mask for a collection of Role entities (e.g. the legacy {@code user_roles} association).
+     */
+    public static int ofRoles(Collection<Role> roles) {
+        int mask = 0;
+        for (Role role : roles) {
+            mask |= bit(role.getName());
+        }
+        return mask;
+    }
+
+
+    public static Set<Role.ERole> toSet(int mask) {
+        EnumSet<Role.ERole> roles = EnumSet.noneOf(Role.ERole.class);
+        for (Role.ERole role : ROLES) {
+            if ((mask & bit(role)) != 0) {
+                roles.add(role);
+            }
+        }
+        return roles;
+    }
+
+
+    public static boolean has(int mask, Role.ERole role) {
+        return (mask & bit(role)) != 0;
+    }
+
+
+    /**
+     * @return The shared, immutable authority list for the given mask.
+     */
+    public static List<GrantedAuthority> authorities(int mask) {
+        return AUTHORITIES[checked(mask)];
+    }
+
+
+    /**
+     * @return The shared, immutable list of role names (e.g. "ROLE_USER") for the given mask.
+     */
+    public static List<String> names(int mask) {
+        return NAMES[checked(mask)];
+    }
+
+
+    // Unknown bits can only come from a newer version of the application; refuse them rather than guess.
+    private static int checked(int mask) {
+        if (mask < 0 || mask >= AUTHORITIES.length) {
+            throw new IllegalArgumentException("Unknown role bits in mask: " + Integer.toBinaryString(mask));
+        }
+        return mask;
+    }
+}
@@ -3,16 +3,23 @@ package com.bankingapp.user_service.model;
 import jakarta.persistence.*;
 
 
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.Generated;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
+import org.hibernate.generator.EventType;
 import org.springframework.security.core.GrantedAuthority;  //question
-import org.springframework.security.core.authority.SimpleGrantedAuthority; // question
 import org.springframework.security.core.userdetails.UserDetails; // question
 
 
+import java.time.Instant;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Locale;
 import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 
 /**
@@ -25,6 +32,9 @@ import java.util.stream.Collectors;
 
 @Entity
 @Table(name= "users")
+@Cacheable   // Users are cached in the Hibernate second-level cache (see ehcache.xml).
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "users")  // READ_WRITE keeps the cache consistent when a user is updated.
+@NaturalIdCache(region = "users-by-email")  // Caches the email -> id resolution used by findByEmail.
 public class User implements UserDetails{
 
     @Id
@@ -37,6 +47,7 @@ public class User implements UserDetails{
     @Column(nullable = false, length = 50)
     private String lastName;
 
+    @NaturalId  // The email is the natural key of a user. It is immutable, which is what makes it safe to cache the lookup.
     @Column(nullable = false, unique = true, length = 100) //question: why do we have to specify that email is unique in two places
     private String email;
 
@@ -48,17 +59,59 @@ public class User implements UserDetails{
     private boolean isEnabled = true;
 
 
+    /**
+     * The user's roles as a bitmask of {@link Role.ERole} ordinals (see {@link RoleMask}).
+     * This is what authorization reads; it avoids joining user_roles every time a user is loaded.
+     * Users that predate this column are filled in by the V4__backfill_roles_mask migration.
+     */
+    @Column(name = "roles_mask", nullable = false)
+    private int rolesMask;
+
+
+    /**
+     * When the row was last modified. Maintained by the database (see V6__users_updated_at) and read
+     * back by Hibernate after every insert and update.
+     */
+    @Generated(event = {EventType.INSERT, EventType.UPDATE})
+    @Column(name = "updated_at", insertable = false, updatable = false)
+    private Instant updatedAt;
+
+
+    /**
+     * Incremented on every change to the row, by Hibernate and by the database trigger from V8__users_version.
+     * Used for optimistic locking and as the ETag of the user's profile.
+     */
+    @Version
+    @Column(nullable = false)
+    private long version;
+
+
+    /**
+     * Login bookkeeping, written in batches by {@code LastLoginTracker} with plain SQL. Hibernate never writes
+     * these columns, so an entity update cannot overwrite newer values; on a loaded (or cached) User they
+     * reflect the state at load time.
+     */
+    @Column(name = "last_login_at", insertable = false, updatable = false)
+    private Instant lastLoginAt;
+
+    @Column(name = "login_count", insertable = false, updatable = false)
+    private long loginCount;
+
+
 
     // --- Relationships ---
 
     /**
      * Defines the many-to-many relationship between users and roles.
-     * FetchType.EAGER means that whenever a User is loaded, their Roles are loaded at the same time.
-     * This is acceptable for a small, critical collection like roles. For larger collections, LAZY is preferred.
+     *
+     * <p>This is the legacy role model. It is still written (so that we can roll back), but nothing on the
+     * authentication path reads it any more: {@link #rolesMask} holds the same information without a join.
+     * It is therefore LAZY, so loading a User no longer loads the join table.</p>
      */
 
 
-    @ManyToMany(fetch = FetchType.EAGER)
+    @ManyToMany(fetch = FetchType.LAZY)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "users.roles")  // Cache the role ids too, so a cached user does not trigger the join.
     @JoinTable(
             name = "user_roles",     // The name of the intermediate join table.
             joinColumns = @JoinColumn(name = "user_id"),  // The foreign key column in the join table that links back to this entity (User).
@@ -86,9 +139,48 @@ public class User implements UserDetails{
     public String getLastName() { return lastName; }
     public void setLastName(String lastName) { this.lastName = lastName; }
     public String getEmail() { return email; }
+
+
+    /**
+     * Brings an email address into the form it is stored in (trimmed, lower-case), so that lookups
+     * are case-insensitive and can use the unique email index.
+     */
+    public static String normalizeEmail(String email) {
+        return email == null ? null : email.trim().toLowerCase(Locale.ROOT);
+    }
+
     public void setEmail(String email) { this.email = email; }
     public Set<Role> getRoles() { return roles; }
-    public void setRoles(Set<Role> roles) { this.roles = roles; }
+    public int getRolesMask() { return rolesMask; }
+    public Instant getUpdatedAt() { return updatedAt; }
+    public long getVersion() { return version; }
+    public Instant getLastLoginAt() { return lastLoginAt; }
+    public long getLoginCount() { return loginCount; }
+
+
+    // Keeps the bitmask in step with the legacy association while both are written.
+    public void setRoles(Set<Role> roles) {
+        this.roles = roles;
+        this.rolesMask = RoleMask.ofRoles(roles);
+    }
+
+    public void addRole(Role role) {
+        this.roles.add(role);
+        this.rolesMask |= RoleMask.bit(role.getName());
+    }
+
+
+    /**
+     * Catches changes made directly to the roles collection (getRoles().add(...)) before they are written.
+     * An uninitialized lazy collection has not been touched, so the stored mask is still correct.
+     */
+    @PrePersist
+    @PreUpdate
+    void syncRolesMask() {
+        if (Hibernate.isInitialized(roles)) {
+            this.rolesMask = RoleMask.ofRoles(roles);
+        }
+    }
 
 
 
@@ -107,10 +199,10 @@ public class User implements UserDetails{
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities(){
 
-        // We convert our Set<Role> into a Collection of SimpleGrantedAuthority objects.
-        // Spring Security uses these authorities to enforce role-based access control.
+        // The authorities come from the roles bitmask. RoleMask hands out one shared, immutable list per
+        // mask value, so this call does not allocate no matter how often the security chain asks.
 
-        return roles.stream().map(role -> new SimpleGrantedAuthority(role.getName().name())).collect(Collectors.toList());
+        return RoleMask.authorities(rolesMask);
     }
 
 
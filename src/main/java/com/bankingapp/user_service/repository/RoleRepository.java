@@ -1,7 +1,10 @@
 package com.bankingapp.user_service.repository;
 
 import com.bankingapp.user_service.model.Role;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
@@ -38,7 +41,11 @@ public interface RoleRepository extends JpaRepository<Role, Integer>{
      *
      *         The main purpose of this is to check if our roles table has the roles that we described in enum, this will check and make sure that
      *         no one has removed them.
+     *
+     * <p>The result is kept in the Hibernate query cache, so repeated lookups (one per registration)
+     * do not hit the database. The cache is invalidated automatically whenever the roles table changes.</p>
      */
 
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     Optional<Role> findByName(Role.ERole name);
 }
\ No newline at end of file
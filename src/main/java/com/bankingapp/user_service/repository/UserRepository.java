@@ -1,10 +1,13 @@
 package com.bankingapp.user_service.repository;
 
+import com.bankingapp.user_service.dto.UserInfoResponse;
 import com.bankingapp.user_service.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
-import java.util.Optional;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * The UserRepository interface is a Spring Data JPA repository for the {@link User} entity.
@@ -19,20 +22,9 @@ import java.util.Optional;
  * @see User
  */
 @Repository // Marks this interface as a Spring component for dependency injection and exception translation.
-public interface UserRepository extends JpaRepository<User, Long> {
+public interface UserRepository extends JpaRepository<User, Long>, UserRepositoryCustom {
 
-    /**
-     * Retrieves a User entity by its email address.
-     *
-     * <p>This method is fundamental for the authentication process, as it allows the
-     * UserDetailsService to load a user by their unique username (which is their email in this application).
-     * The query is derived automatically by Spring Data JPA from the method name.</p>
-     *
-     * @param email The email address of the user to find.
-     * @return An {@link Optional} containing the found {@link User} if one exists with the given email,
-     *         or an empty Optional if no such user is found.
-     */
-    Optional<User> findByEmail(String email);
+    // findByEmail(String) is declared in UserRepositoryCustom; it is a cached natural-id lookup.
 
     /**
      * Checks for the existence of a User with the given email address.
@@ -47,4 +39,19 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * @return {@code true} if a user with the given email exists, {@code false} otherwise.
      */
     Boolean existsByEmail(String email);
-}
\ No newline at end of file
+
+
+
+    /**
+     * Fetches the public details of all users matching any of the given ids or emails, in one query.
+     *
+     * <p>The result is projected straight into {@link UserInfoResponse}, so only the needed columns are read
+     * and no entities are loaded into the persistence context. Rows come back in no particular order.</p>
+     *
+     * @param ids    User ids to look up (may be empty).
+     * @param emails Normalized emails to look up (may be empty).
+     */
+    @Query("select new com.bankingapp.user_service.dto.UserInfoResponse(u.id, u.firstName, u.lastName, u.email, u.rolesMask) " +
+           "from User u where u.id in :ids or u.email in :emails")
+    List<UserInfoResponse> findInfoByIdInOrEmailIn(Collection<Long> ids, Collection<String> emails);
+}
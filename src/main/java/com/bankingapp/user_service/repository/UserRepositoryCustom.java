@@ -0,0 +1,29 @@
+package com.bankingapp.user_service.repository;
+
+import com.bankingapp.user_service.model.User;
+
+import java.util.Optional;
+
+/**
+ * Custom query methods for {@link User} that cannot be derived by Spring Data JPA from a method name.
+ *
+ * <p>Spring Data picks up the implementation from {@link UserRepositoryImpl} and exposes these methods
+ * through {@link UserRepository}, so callers do not need to know that they are hand-written.</p>
+ */
+public interface UserRepositoryCustom {
+
+    /**
+     * Retrieves a User entity by its email address.
+     *
+     * <p>This method is fundamental for the authentication process, as it allows the
+     * UserDetailsService to load a user by their unique username (which is their email in this application).
+     * It is implemented as a Hibernate natural-id lookup, so both the email -> id resolution and the
+     * entity itself (including its roles mask) can be served from the second-level cache. On a miss it is a single
+     * select of the users row; the roles collection is not loaded (see LoginStatementCountTest).</p>
+     *
+     * @param email The email address of the user to find.
+     * @return An {@link Optional} containing the found {@link User} if one exists with the given email,
+     *         or an empty Optional if no such user is found.
+     */
+    Optional<User> findByEmail(String email);
+}
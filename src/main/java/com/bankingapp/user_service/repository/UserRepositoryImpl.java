@@ -0,0 +1,29 @@
+package com.bankingapp.user_service.repository;
+
+import com.bankingapp.user_service.model.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+/**
+ * Implementation of {@link UserRepositoryCustom}.
+ * The class name must be the repository interface name plus "Impl" for Spring Data to find it.
+ */
+class UserRepositoryImpl implements UserRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+
+    @Override
+    @Transactional(readOnly = true) // Like the derived queries, run in a (read-only) transaction when called outside one.
+    public Optional<User> findByEmail(String email) {
+        // bySimpleNaturalId consults the natural-id cache first and only queries the database on a miss.
+        return entityManager.unwrap(Session.class)
+                .bySimpleNaturalId(User.class)
+                .loadOptional(email);
+    }
+}
@@ -1,18 +1,22 @@
 package com.bankingapp.user_service.security;
 
+import com.bankingapp.user_service.diagnostics.TokenAuthenticationEvent;
+import com.bankingapp.user_service.model.User;
+import com.bankingapp.user_service.session.OpaqueTokenService;
+import com.bankingapp.user_service.session.Session;
+import com.bankingapp.user_service.throttle.ConcurrencyLimitFilter;
+import com.bankingapp.user_service.throttle.UserQuotaLimiter;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.DisabledException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
-import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
@@ -23,22 +27,43 @@ import java.io.IOException;
 /**
  * A custom security filter that intercepts every HTTP request to validate the JWT token.
  * This filter runs once per request.
+ *
+ * <p>Once the principal is resolved, the request is charged against the user's quota
+ * (see {@link UserQuotaLimiter}). The quota is reported in {@code RateLimit-*} headers,
+ * and requests over quota are rejected with 429 before they reach a controller.</p>
+ *
+ * <p>When opaque tokens are enabled ({@code app.token.mode=opaque}), both opaque tokens and JWTs are accepted,
+ * so switching modes does not log anybody out. Opaque tokens authenticate as a {@link TokenPrincipal}.</p>
+ *
+ * <p>JWTs of disabled users are rejected: disabling a user is delivered to every node's principal cache, so it
+ * takes effect on their next request, not when their token expires.</p>
+ *
+ * <p>While the database is unavailable, JWTs are authenticated with a stale cached principal if there is one
+ * (see {@link UserDetailsServiceImpl#loadUserForToken}); otherwise the request is answered with 503 right away.</p>
+ *
+ * <p>The filter is created in {@link SecurityConfig} and only runs inside the Spring Security chain.</p>
  */
 
 
 
 
-@Component
 public class AuthTokenFilter extends OncePerRequestFilter{
 
     private final JwtUtils jwtUtils;
     private final UserDetailsServiceImpl userDetailsService;
+    private final SecurityEventLogger securityEventLogger;
+    private final UserQuotaLimiter userQuotaLimiter;
+    private final OpaqueTokenService opaqueTokenService; // Null unless app.token.mode=opaque.
+    private final long retryAfterSeconds;
 
-    private static final Logger logger = LoggerFactory.getLogger(AuthTokenFilter.class);
-
-    public AuthTokenFilter(JwtUtils jwtUtils, UserDetailsServiceImpl userDetailsService){
+    public AuthTokenFilter(JwtUtils jwtUtils, UserDetailsServiceImpl userDetailsService, SecurityEventLogger securityEventLogger,
+                           UserQuotaLimiter userQuotaLimiter, OpaqueTokenService opaqueTokenService, long retryAfterSeconds){
         this.jwtUtils = jwtUtils;
         this.userDetailsService = userDetailsService;
+        this.securityEventLogger = securityEventLogger;
+        this.userQuotaLimiter = userQuotaLimiter;
+        this.opaqueTokenService = opaqueTokenService;
+        this.retryAfterSeconds = retryAfterSeconds;
     }
 
 
@@ -60,49 +85,122 @@ public class AuthTokenFilter extends OncePerRequestFilter{
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException{
 
+        TokenAuthenticationEvent event = new TokenAuthenticationEvent();
+        event.begin();
+        event.outcome = "anonymous";
+        event.reason = "no bearer token";
+
+        UserQuotaLimiter.Decision quota = null;
+
         try{
-            // 1. Attempt to parse the JWT from the Authorization header.
+            // 1. Attempt to parse the token (a JWT or an opaque token) from the Authorization header.
             String jwt = parseJwt(request);
+            if (jwt != null) {
+                event.outcome = "rejected";
+                event.reason = "invalid token";
+            }
 
 
-            // 2. If a valid JWT is found.
-            if(jwt != null && jwtUtils.validateJwtToken(jwt)){
-
-                // 3. ...extract the username from the token.
-                String username = jwtUtils.getUserNameFromJwtToken(jwt);
+            // 2. An opaque token resolves to its session with a single lookup; no user needs to be loaded.
+            if(jwt != null && opaqueTokenService != null && OpaqueTokenService.isOpaqueToken(jwt)){
+                Session session = opaqueTokenService.resolve(jwt);
 
-                // 4. Load the user's details from the database.
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+                if(session != null){
+                    setAuthentication(request, new TokenPrincipal(session.userId(), session.rolesMask()));
+                    quota = userQuotaLimiter.tryConsume(session.userId(), session.rolesMask());
 
+                    event.outcome = "authenticated";
+                    event.reason = null;
+                }
+            }
 
-                // 5. Create an Authentication object. This object represents the authenticated user.
+            // 3. Otherwise, if a valid JWT is found (it is verified and parsed only once)...
+            else if(jwt != null){
+                JwtClaims claims = jwtUtils.verifyJwtToken(jwt);
 
-                UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
-                        userDetails,
-                        null, // Credentials are null because we are authenticating with a token, not a password.
-                        userDetails.getAuthorities());
+                if(claims != null){
 
+                    // 4. ...take the username from its claims.
+                    String username = claims.subject();
 
-                // 6. Set details for the authentication from the request (e.g., IP address).
-                authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                    // 5. Load the user's details (usually from the principal cache). The tokens of a disabled user
+                    // stay validly signed until they expire, so refuse them here, like the login does.
+                    User user = userDetailsService.loadUserForToken(username);
+                    if (!user.isEnabled()) {
+                        throw new DisabledException("User is disabled");
+                    }
 
-                // 7. IMPORTANT: Set the Authentication object in the SecurityContext.
-                // This is how we tell Spring Security that the current user is
-                SecurityContextHolder.getContext().setAuthentication(authentication);
+                    // 6. Tell Spring Security who the user is.
+                    setAuthentication(request, user);
 
+                    // 7. Charge the request against the user's quota.
+                    quota = userQuotaLimiter.tryConsume(user.getId(), user.getRolesMask());
 
+                    event.outcome = "authenticated";
+                    event.reason = null;
+                }
             }
+        }catch (UserStoreUnavailableException e){
+            event.outcome = "unavailable";
+            event.reason = e.getMessage();
+            event.commit();
+            ConcurrencyLimitFilter.markUserStoreRefusal(request);
+            response.setHeader("Retry-After", Long.toString(retryAfterSeconds));
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "User store temporarily unavailable");
+            return;
         }catch (Exception e){
-            logger.error("Cannot set user authentication: {}", e.getMessage());
+            securityEventLogger.record(SecurityEvent.AUTHENTICATION_FAILED, "Cannot set user authentication: " + e.getMessage());
+            event.outcome = "rejected";
+            event.reason = e.getClass().getSimpleName();
+        }
+
+
+        // 8. Report the quota, and stop here if it is exhausted.
+        if (quota != null) {
+            response.setHeader("RateLimit-Limit", Integer.toString(quota.limit()));
+            response.setHeader("RateLimit-Remaining", Integer.toString(quota.remaining()));
+            response.setHeader("RateLimit-Reset", Long.toString(quota.resetSeconds()));
+
+            if (!quota.allowed()) {
+                event.outcome = "quota-exceeded";
+                event.commit();
+                response.setHeader("Retry-After", Long.toString(quota.resetSeconds()));
+                response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), "Request quota exceeded");
+                return;
+            }
         }
 
 
-        //8. Continue the filter chain.
+        // The event covers authentication only, not the rest of the request.
+        event.commit();
+
+        //9. Continue the filter chain.
         // This passes the request along to the next filter and eventually to the controller.
         filterChain.doFilter(request, response);
 
     }
 
+    /**
+     * Creates an Authentication object for the user and sets it in the SecurityContext.
+     */
+    private void setAuthentication(HttpServletRequest request, UserDetails userDetails){
+
+        // Create an Authentication object. This object represents the authenticated user.
+        UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
+                userDetails,
+                null, // Credentials are null because we are authenticating with a token, not a password.
+                userDetails.getAuthorities());
+
+
+        // Set details for the authentication from the request (e.g., IP address).
+        authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+
+        // IMPORTANT: Set the Authentication object in the SecurityContext.
+        // This is how we tell Spring Security that the current user is authenticated.
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+    }
+
+
     @Override
     protected boolean shouldNotFilter(HttpServletRequest request){
         String path = request.getRequestURI();
@@ -0,0 +1,752 @@
+package com.bankingapp.user_service.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+
+/**
+ * A {@link JwtCodec} specialised for the tokens this service issues: HS512, with the claims {@code sub},
+ * {@code iat}, {@code exp} and {@code roles} and a {@code kid} header.
+ *
+ * <p>jjwt builds every token through Jackson maps, {@code Date}s and several intermediate strings, and parses
+ * every token back into maps. This codec instead:</p>
+ * <ul>
+ *     <li>writes the header once, at startup, and the claims straight into a byte buffer;</li>
+ *     <li>keeps one initialised {@link Mac} and a set of buffers per thread, so verifying allocates little more
+ *         than the subject string and the {@link JwtClaims};</li>
+ *     <li>checks the signature before reading anything else, and then reads the claims with a small streaming
+ *         reader that skips members it does not know.</li>
+ * </ul>
+ *
+ * <p>It writes byte-for-byte the same tokens as {@link JjwtCodec} and accepts everything jjwt issued for us,
+ * including tokens from before the {@code roles} claim and the {@code kid} header were added.</p>
+ */
+
+
+@Component
+@ConditionalOnProperty(name = "app.jwt.codec", havingValue = "compact")
+public class CompactJwtCodec implements JwtCodec {
+
+    static final int MAX_TOKEN_LENGTH = 8192;
+
+    private static final String MAC_ALGORITHM = "HmacSHA512";
+    private static final int SIGNATURE_LENGTH = 64;
+    private static final int SIGNATURE_CHARS = 86;  // 64 bytes in unpadded base64url
+
+    private static final byte[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DECODE = new byte[128];
+
+    static {
+        Arrays.fill(DECODE, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DECODE[ALPHABET[i]] = (byte) i;
+        }
+    }
+
+    // Member names, in the order jjwt writes them.
+    private static final byte[] CLAIMS_START = ascii("{\"sub\":\"");
+    private static final byte[] CLAIMS_IAT = ascii("\",\"iat\":");
+    private static final byte[] CLAIMS_EXP = ascii(",\"exp\":");
+    private static final byte[] CLAIMS_ROLES = ascii(",\"roles\":");
+
+    private static final int SUB = 0;
+    private static final int IAT = 1;
+    private static final int EXP = 2;
+    private static final int NBF = 3;
+    private static final int ROLES = 4;
+    private static final byte[][] CLAIM_NAMES = {ascii("sub"), ascii("iat"), ascii("exp"), ascii("nbf"), ascii("roles")};
+
+    private static final int ALG = 0;
+    private static final int KID = 1;
+    private static final byte[][] HEADER_NAMES = {ascii("alg"), ascii("kid")};
+    private static final byte[] HS512 = ascii("HS512");
+
+    private final SecretKeySpec key;
+
+    // The header we issue, base64url-encoded and followed by the '.'.
+    private final byte[] issuedHeader;
+
+    // Headers we know without parsing: ours, and the one jjwt issued before the kid header existed.
+    private final byte[][] knownHeaders;
+    private final String[] knownHeaderKeyIds;
+
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+
+    public CompactJwtCodec(@Value("${app.jwtSecret}") String jwtSecret, @Value("${app.jwt.key-id:1}") String keyId) {
+        byte[] secret = jwtSecret.getBytes(StandardCharsets.UTF_8);
+        if (secret.length < SIGNATURE_LENGTH) {
+            // The same rule jjwt applies when signing (RFC 7518, section 3.2), but enforced at startup.
+            throw new IllegalStateException("app.jwtSecret must be at least " + SIGNATURE_LENGTH
+                    + " bytes for HS512, but is " + secret.length + " bytes");
+        }
+        this.key = new SecretKeySpec(secret, MAC_ALGORITHM);
+
+        StringBuilder header = new StringBuilder("{\"kid\":\"");
+        appendJsonEscaped(header, keyId);
+        header.append("\",\"alg\":\"HS512\"}");
+
+        byte[] ownHeader = base64Url(header.toString().getBytes(StandardCharsets.UTF_8));
+        this.issuedHeader = Arrays.copyOf(ownHeader, ownHeader.length + 1);
+        this.issuedHeader[ownHeader.length] = '.';
+        this.knownHeaders = new byte[][]{ownHeader, base64Url(ascii("{\"alg\":\"HS512\"}"))};
+        this.knownHeaderKeyIds = new String[]{keyId, null};
+
+        scratch.get(); // Fail at startup, not on the first request, if HmacSHA512 is unavailable.
+    }
+
+
+    @Override
+    public String encode(String subject, long issuedAt, long expiresAt, int rolesMask) {
+        Scratch s = scratch.get();
+
+        // 1. The claims, as JSON. A char takes at most 6 bytes once escaped.
+        byte[] json = s.json(CLAIMS_START.length + subject.length() * 6 + 80);
+        int n = put(json, 0, CLAIMS_START);
+        n = putEscaped(json, n, subject);
+        n = put(json, n, CLAIMS_IAT);
+        n = putLong(json, n, issuedAt);
+        n = put(json, n, CLAIMS_EXP);
+        n = putLong(json, n, expiresAt);
+        n = put(json, n, CLAIMS_ROLES);
+        n = putLong(json, n, rolesMask);
+        json[n++] = '}';
+
+        // 2. header.claims, then the signature over it.
+        byte[] token = s.token(issuedHeader.length + encodedLength(n) + 1 + SIGNATURE_CHARS);
+        System.arraycopy(issuedHeader, 0, token, 0, issuedHeader.length);
+        int t = base64UrlEncode(json, n, token, issuedHeader.length);
+
+        sign(s, token, t);
+        token[t++] = '.';
+        t = base64UrlEncode(s.expectedSignature, SIGNATURE_LENGTH, token, t);
+
+        return new String(token, 0, t, StandardCharsets.US_ASCII);
+    }
+
+
+    @Override
+    public JwtClaims decode(String token) {
+        if (token == null || token.isBlank()) {
+            throw new InvalidJwtException(SecurityEvent.JWT_EMPTY, "JWT string is empty");
+        }
+        int length = token.length();
+        if (length > MAX_TOKEN_LENGTH) {
+            throw malformed("JWT is longer than " + MAX_TOKEN_LENGTH + " characters");
+        }
+
+        // 1. Copy the token into the thread's buffer, finding the two dots on the way.
+        Scratch s = scratch.get();
+        byte[] bytes = s.token(length);
+        int firstDot = -1;
+        int secondDot = -1;
+        for (int i = 0; i < length; i++) {
+            char c = token.charAt(i);
+            if (c == '.') {
+                if (firstDot < 0) {
+                    firstDot = i;
+                } else if (secondDot < 0) {
+                    secondDot = i;
+                } else {
+                    throw malformed("JWT must have exactly three parts");
+                }
+            } else if (c >= 128 || DECODE[c] < 0) {
+                throw malformed("JWT contains a character that is not base64url");
+            }
+            bytes[i] = (byte) c;
+        }
+        if (secondDot < 0) {
+            throw malformed("JWT must have exactly three parts");
+        }
+        if (secondDot == length - 1) {
+            throw new InvalidJwtException(SecurityEvent.JWT_UNSUPPORTED, "Unsigned JWTs are not supported");
+        }
+
+        // 2. The signature, before anything of the token is parsed.
+        if (length - secondDot - 1 != SIGNATURE_CHARS
+                || base64UrlDecode(bytes, secondDot + 1, length, s.signature) != SIGNATURE_LENGTH) {
+            throw invalidSignature();
+        }
+        sign(s, bytes, secondDot);
+        if (!MessageDigest.isEqual(s.expectedSignature, s.signature)) {
+            throw invalidSignature();
+        }
+
+        // 3. The header and the claims.
+        String tokenKeyId = readHeader(s, bytes, firstDot);
+        return readClaims(s, bytes, firstDot + 1, secondDot, tokenKeyId);
+    }
+
+
+    private void sign(Scratch s, byte[] input, int length) {
+        try {
+            s.mac.update(input, 0, length);
+            s.mac.doFinal(s.expectedSignature, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    private String readHeader(Scratch s, byte[] bytes, int end) {
+        for (int i = 0; i < knownHeaders.length; i++) {
+            if (regionEquals(bytes, 0, end, knownHeaders[i])) {
+                return knownHeaderKeyIds[i];
+            }
+        }
+
+        // Any other header (e.g. from before a key rotation) is read, and must still say HS512.
+        JsonReader reader = s.read(bytes, 0, end);
+        boolean hs512 = false;
+        String tokenKeyId = null;
+        reader.beginObject();
+        while (reader.nextMember()) {
+            switch (reader.readName(HEADER_NAMES)) {
+                case ALG -> hs512 = reader.readStringEquals(HS512);
+                case KID -> tokenKeyId = reader.readString();
+                default -> reader.skipValue();
+            }
+        }
+        reader.endOfInput();
+
+        if (!hs512) {
+            throw new InvalidJwtException(SecurityEvent.JWT_UNSUPPORTED, "Only HS512 JWTs are supported");
+        }
+        return tokenKeyId;
+    }
+
+
+    private static JwtClaims readClaims(Scratch s, byte[] bytes, int from, int to, String tokenKeyId) {
+        JsonReader reader = s.read(bytes, from, to);
+        String subject = null;
+        long issuedAt = 0;
+        long expiresAt = 0;
+        long notBefore = 0;
+        int rolesMask = 0;
+
+        reader.beginObject();
+        while (reader.nextMember()) {
+            switch (reader.readName(CLAIM_NAMES)) {
+                case SUB -> subject = reader.readString();
+                case IAT -> issuedAt = reader.readLong();
+                case EXP -> expiresAt = reader.readLong();
+                case NBF -> notBefore = reader.readLong();
+                case ROLES -> rolesMask = (int) reader.readLong();
+                default -> reader.skipValue();
+            }
+        }
+        reader.endOfInput();
+
+        if (subject == null) {
+            throw malformed("JWT has no subject");
+        }
+
+        // The same checks, without clock skew, as jjwt.
+        long now = System.currentTimeMillis();
+        if (expiresAt != 0 && now > expiresAt * 1000) {
+            throw new InvalidJwtException(SecurityEvent.JWT_EXPIRED, "JWT expired at epoch second " + expiresAt);
+        }
+        if (notBefore != 0 && now < notBefore * 1000) {
+            throw new InvalidJwtException(SecurityEvent.JWT_EXPIRED, "JWT is not valid before epoch second " + notBefore);
+        }
+
+        return new JwtClaims(subject, issuedAt, expiresAt, rolesMask, tokenKeyId);
+    }
+
+
+    private static InvalidJwtException malformed(String message) {
+        return new InvalidJwtException(SecurityEvent.JWT_MALFORMED, message);
+    }
+
+    private static InvalidJwtException invalidSignature() {
+        return new InvalidJwtException(SecurityEvent.JWT_INVALID_SIGNATURE, "JWT signature does not match");
+    }
+
+
+    // ---------------------------------------------------------------- per-thread state
+
+
+    private final class Scratch {
+
+        final Mac mac;
+        final byte[] expectedSignature = new byte[SIGNATURE_LENGTH];
+        final byte[] signature = new byte[SIGNATURE_LENGTH];
+        final JsonReader reader = new JsonReader();
+        private byte[] token = new byte[512];
+        private byte[] json = new byte[512];
+
+        Scratch() {
+            try {
+                mac = Mac.getInstance(MAC_ALGORITHM);
+                mac.init(key);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Cannot initialise " + MAC_ALGORITHM, e);
+            }
+        }
+
+        byte[] token(int length) {
+            if (token.length < length) {
+                token = new byte[Math.max(length, token.length * 2)];
+            }
+            return token;
+        }
+
+        byte[] json(int length) {
+            if (json.length < length) {
+                json = new byte[Math.max(length, json.length * 2)];
+            }
+            return json;
+        }
+
+        // Decodes a base64url segment of the token into the JSON buffer and points the reader at it.
+        JsonReader read(byte[] bytes, int from, int to) {
+            byte[] buffer = json((to - from) * 3 / 4 + 3);
+            int length = base64UrlDecode(bytes, from, to, buffer);
+            if (length < 0) {
+                throw malformed("JWT part is not valid base64url");
+            }
+            reader.reset(buffer, length);
+            return reader;
+        }
+    }
+
+
+    /**
+     * A minimal streaming reader over one JSON object held in a byte array. It reads exactly what a JWT header
+     * or claims set needs and skips everything else.
+     */
+    static final class JsonReader {
+
+        private static final byte[] NULL = ascii("null");
+        private static final byte[] TRUE = ascii("true");
+        private static final byte[] FALSE = ascii("false");
+
+        private byte[] buffer;
+        private int pos;
+        private int end;
+        private boolean firstMember;
+
+        void reset(byte[] buffer, int end) {
+            this.buffer = buffer;
+            this.pos = 0;
+            this.end = end;
+        }
+
+        void beginObject() {
+            skipWhitespace();
+            expect('{');
+            firstMember = true;
+        }
+
+        /** Moves to the next member of the object; false once the object is closed. */
+        boolean nextMember() {
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return false;
+            }
+            if (!firstMember) {
+                expect(',');
+                skipWhitespace();
+            }
+            firstMember = false;
+            return true;
+        }
+
+        /** Reads a member name and its colon. Returns the index of the name in {@code names}, or -1. */
+        int readName(byte[][] names) {
+            expect('"');
+            int start = pos;
+            int stop = skipStringBody();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            for (int i = 0; i < names.length; i++) {
+                if (regionEquals(buffer, start, stop, names[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        String readString() {
+            if (peek() != '"') {
+                expectLiteral(NULL);
+                return null;
+            }
+            pos++;
+            int start = pos;
+            boolean escaped = false;
+            while (true) {
+                if (pos >= end) {
+                    throw malformed("Unterminated string");
+                }
+                byte b = buffer[pos];
+                if (b == '"') {
+                    break;
+                }
+                if (b == '\\') {
+                    escaped = true;
+                    pos++;
+                }
+                pos++;
+            }
+            int stop = pos++;
+            return escaped ? unescape(start, stop) : new String(buffer, start, stop - start, StandardCharsets.UTF_8);
+        }
+
+        boolean readStringEquals(byte[] expected) {
+            if (peek() != '"') {
+                skipValue();
+                return false;
+            }
+            pos++;
+            int start = pos;
+            int stop = skipStringBody();
+            return regionEquals(buffer, start, stop, expected);
+        }
+
+        /** Reads an integer. A fraction (allowed for NumericDate) is truncated; an exponent is not accepted. */
+        long readLong() {
+            boolean negative = peek() == '-';
+            if (negative) {
+                pos++;
+            }
+            int start = pos;
+            long value = 0;
+            while (pos < end && buffer[pos] >= '0' && buffer[pos] <= '9') {
+                int digit = buffer[pos++] - '0';
+                if (value > (Long.MAX_VALUE - digit) / 10) {
+                    throw malformed("Number out of range");
+                }
+                value = value * 10 + digit;
+            }
+            if (pos == start) {
+                throw malformed("Expected a number");
+            }
+            if (pos < end && buffer[pos] == '.') {
+                pos++;
+                while (pos < end && buffer[pos] >= '0' && buffer[pos] <= '9') {
+                    pos++;
+                }
+            }
+            if (pos < end && (buffer[pos] == 'e' || buffer[pos] == 'E')) {
+                throw malformed("Numbers with an exponent are not supported");
+            }
+            return negative ? -value : value;
+        }
+
+        void skipValue() {
+            byte b = peek();
+            switch (b) {
+                case '"' -> {
+                    pos++;
+                    skipStringBody();
+                }
+                case '{', '[' -> skipContainer();
+                case 't' -> expectLiteral(TRUE);
+                case 'f' -> expectLiteral(FALSE);
+                case 'n' -> expectLiteral(NULL);
+                default -> {
+                    int start = pos;
+                    while (pos < end && isNumberChar(buffer[pos])) {
+                        pos++;
+                    }
+                    if (pos == start) {
+                        throw malformed("Unexpected character in JSON");
+                    }
+                }
+            }
+        }
+
+        void endOfInput() {
+            skipWhitespace();
+            if (pos != end) {
+                throw malformed("Unexpected data after the JSON object");
+            }
+        }
+
+        // Moves past the closing quote of a string whose opening quote was consumed. Returns the end of its body.
+        private int skipStringBody() {
+            while (pos < end) {
+                byte b = buffer[pos];
+                if (b == '"') {
+                    return pos++;
+                }
+                pos += b == '\\' ? 2 : 1;
+            }
+            throw malformed("Unterminated string");
+        }
+
+        private void skipContainer() {
+            int depth = 0;
+            do {
+                if (pos >= end) {
+                    throw malformed("Unterminated object or array");
+                }
+                byte b = buffer[pos++];
+                if (b == '"') {
+                    skipStringBody();
+                } else if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    depth--;
+                }
+            } while (depth > 0);
+        }
+
+        private String unescape(int start, int stop) {
+            StringBuilder out = new StringBuilder(stop - start);
+            int run = start;
+            int i = start;
+            while (i < stop) {
+                if (buffer[i] != '\\') {
+                    i++;
+                    continue;
+                }
+                out.append(new String(buffer, run, i - run, StandardCharsets.UTF_8));
+                if (i + 1 >= stop) {
+                    throw malformed("Invalid escape in string");
+                }
+                byte escape = buffer[i + 1];
+                i += 2;
+                switch (escape) {
+                    case '"', '\\', '/' -> out.append((char) escape);
+                    case 'b' -> out.append('\b');
+                    case 'f' -> out.append('\f');
+                    case 'n' -> out.append('\n');
+                    case 'r' -> out.append('\r');
+                    case 't' -> out.append('\t');
+                    case 'u' -> {
+                        if (i + 4 > stop) {
+                            throw malformed("Invalid escape in string");
+                        }
+                        int c = 0;
+                        for (int k = 0; k < 4; k++) {
+                            int digit = Character.digit(buffer[i + k], 16);
+                            if (digit < 0) {
+                                throw malformed("Invalid escape in string");
+                            }
+                            c = c * 16 + digit;
+                        }
+                        out.append((char) c);
+                        i += 4;
+                    }
+                    default -> throw malformed("Invalid escape in string");
+                }
+                run = i;
+            }
+            out.append(new String(buffer, run, stop - run, StandardCharsets.UTF_8));
+            return out.toString();
+        }
+
+        private void expectLiteral(byte[] literal) {
+            if (!regionEquals(buffer, pos, Math.min(pos + literal.length, end), literal)) {
+                throw malformed("Unexpected value in JSON");
+            }
+            pos += literal.length;
+        }
+
+        private void expect(char c) {
+            if (pos >= end || buffer[pos] != c) {
+                throw malformed("Expected '" + c + "' in JSON");
+            }
+            pos++;
+        }
+
+        private byte peek() {
+            if (pos >= end) {
+                throw malformed("Unexpected end of JSON");
+            }
+            return buffer[pos];
+        }
+
+        private void skipWhitespace() {
+            while (pos < end && (buffer[pos] == ' ' || buffer[pos] == '\t' || buffer[pos] == '\n' || buffer[pos] == '\r')) {
+                pos++;
+            }
+        }
+
+        private static boolean isNumberChar(byte b) {
+            return (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E';
+        }
+    }
+
+
+    // ---------------------------------------------------------------- encoding helpers
+
+
+    private static int put(byte[] out, int at, byte[] bytes) {
+        System.arraycopy(bytes, 0, out, at, bytes.length);
+        return at + bytes.length;
+    }
+
+
+    private static int putLong(byte[] out, int at, long value) {
+        if (value < 0) {
+            out[at++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value / 10; v > 0; v /= 10) {
+            digits++;
+        }
+        for (int i = at + digits - 1; i >= at; i--) {
+            out[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return at + digits;
+    }
+
+
+    // Writes a string as UTF-8, escaped the way Jackson escapes it.
+    private static int putEscaped(byte[] out, int at, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out[at++] = '\\';
+                out[at++] = (byte) c;
+            } else if (c < 0x20) {
+                at = putControlEscape(out, at, c);
+            } else if (c < 0x80) {
+                out[at++] = (byte) c;
+            } else if (c < 0x800) {
+                out[at++] = (byte) (0xC0 | (c >> 6));
+                out[at++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                out[at++] = (byte) (0xF0 | (cp >> 18));
+                out[at++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                out[at++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                out[at++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                out[at++] = '?';
+            } else {
+                out[at++] = (byte) (0xE0 | (c >> 12));
+                out[at++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[at++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return at;
+    }
+
+
+    private static int putControlEscape(byte[] out, int at, char c) {
+        out[at++] = '\\';
+        switch (c) {
+            case '\b' -> out[at++] = 'b';
+            case '\t' -> out[at++] = 't';
+            case '\n' -> out[at++] = 'n';
+            case '\f' -> out[at++] = 'f';
+            case '\r' -> out[at++] = 'r';
+            default -> {
+                out[at++] = 'u';
+                out[at++] = '0';
+                out[at++] = '0';
+                out[at++] = (byte) Character.forDigit(c >> 4, 16);
+                out[at++] = (byte) Character.toUpperCase(Character.forDigit(c & 0xF, 16));
+            }
+        }
+        return at;
+    }
+
+
+    private static void appendJsonEscaped(StringBuilder out, String value) {
+        byte[] buffer = new byte[value.length() * 6];
+        int length = putEscaped(buffer, 0, value);
+        out.append(new String(buffer, 0, length, StandardCharsets.UTF_8));
+    }
+
+
+    private static int encodedLength(int bytes) {
+        return (bytes * 4 + 2) / 3;
+    }
+
+
+    private static byte[] base64Url(byte[] bytes) {
+        byte[] out = new byte[encodedLength(bytes.length)];
+        base64UrlEncode(bytes, bytes.length, out, 0);
+        return out;
+    }
+
+
+    // Unpadded base64url. Returns the position after the last character written.
+    private static int base64UrlEncode(byte[] in, int length, byte[] out, int at) {
+        int i = 0;
+        for (; i + 3 <= length; i += 3) {
+            int bits = (in[i] & 0xFF) << 16 | (in[i + 1] & 0xFF) << 8 | (in[i + 2] & 0xFF);
+            out[at++] = ALPHABET[bits >>> 18];
+            out[at++] = ALPHABET[(bits >>> 12) & 0x3F];
+            out[at++] = ALPHABET[(bits >>> 6) & 0x3F];
+            out[at++] = ALPHABET[bits & 0x3F];
+        }
+        int remaining = length - i;
+        if (remaining == 1) {
+            int bits = (in[i] & 0xFF) << 16;
+            out[at++] = ALPHABET[bits >>> 18];
+            out[at++] = ALPHABET[(bits >>> 12) & 0x3F];
+        } else if (remaining == 2) {
+            int bits = (in[i] & 0xFF) << 16 | (in[i + 1] & 0xFF) << 8;
+            out[at++] = ALPHABET[bits >>> 18];
+            out[at++] = ALPHABET[(bits >>> 12) & 0x3F];
+            out[at++] = ALPHABET[(bits >>> 6) & 0x3F];
+        }
+        return at;
+    }
+
+
+    // Decodes unpadded base64url whose characters were already checked. Returns the byte count, or -1.
+    private static int base64UrlDecode(byte[] in, int from, int to, byte[] out) {
+        int at = 0;
+        int i = from;
+        for (; i + 4 <= to; i += 4) {
+            int bits = DECODE[in[i]] << 18 | DECODE[in[i + 1]] << 12 | DECODE[in[i + 2]] << 6 | DECODE[in[i + 3]];
+            out[at++] = (byte) (bits >> 16);
+            out[at++] = (byte) (bits >> 8);
+            out[at++] = (byte) bits;
+        }
+        int remaining = to - i;
+        if (remaining == 1) {
+            return -1;
+        }
+        if (remaining >= 2) {
+            int bits = DECODE[in[i]] << 18 | DECODE[in[i + 1]] << 12;
+            if (remaining == 3) {
+                bits |= DECODE[in[i + 2]] << 6;
+            }
+            out[at++] = (byte) (bits >> 16);
+            if (remaining == 3) {
+                out[at++] = (byte) (bits >> 8);
+            }
+        }
+        return at;
+    }
+
+
+    private static boolean regionEquals(byte[] bytes, int from, int to, byte[] expected) {
+        if (to - from != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (bytes[from + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,55 @@
+package com.bankingapp.user_service.security;
+
+import com.bankingapp.user_service.diagnostics.PasswordHashEvent;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+
+/**
+ * A PasswordEncoder that delegates to another encoder and emits a {@link PasswordHashEvent}
+ * for every hash and check, so slow logins can be attributed to BCrypt in a flight recording.
+ */
+
+
+public class InstrumentedPasswordEncoder implements PasswordEncoder {
+
+    private final PasswordEncoder delegate;
+
+    public InstrumentedPasswordEncoder(PasswordEncoder delegate) {
+        this.delegate = delegate;
+    }
+
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        PasswordHashEvent event = new PasswordHashEvent();
+        event.begin();
+
+        String encoded = delegate.encode(rawPassword);
+
+        event.operation = "encode";
+        event.outcome = "hashed";
+        event.commit();
+        return encoded;
+    }
+
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        PasswordHashEvent event = new PasswordHashEvent();
+        event.begin();
+
+        boolean matches = delegate.matches(rawPassword, encodedPassword);
+
+        event.operation = "matches";
+        event.outcome = matches ? "match" : "mismatch";
+        event.reason = encodedPassword == null || encodedPassword.isEmpty() ? "no stored hash" : null;
+        event.commit();
+        return matches;
+    }
+
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+}
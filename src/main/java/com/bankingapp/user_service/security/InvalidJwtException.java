@@ -0,0 +1,21 @@
+package com.bankingapp.user_service.security;
+
+
+/**
+ * Thrown by a {@link JwtCodec} when a token is rejected.
+ *
+ * <p>Rejections are expected under a token-spray attack, so no stack trace is captured.</p>
+ */
+public class InvalidJwtException extends RuntimeException {
+
+    private final SecurityEvent reason;
+
+    public InvalidJwtException(SecurityEvent reason, String message) {
+        super(message, null, false, false);
+        this.reason = reason;
+    }
+
+    public SecurityEvent getReason() {
+        return reason;
+    }
+}
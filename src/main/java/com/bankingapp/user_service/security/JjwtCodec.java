@@ -0,0 +1,94 @@
+package com.bankingapp.user_service.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.jsonwebtoken.security.Keys;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+
+/**
+ * The default {@link JwtCodec}, built on jjwt's generic builder and parser.
+ */
+
+
+@Component
+@ConditionalOnProperty(name = "app.jwt.codec", havingValue = "jjwt", matchIfMissing = true)
+public class JjwtCodec implements JwtCodec {
+
+    static final String ROLES_CLAIM = "roles";
+
+    private final SecretKey key;
+    private final String keyId;
+    private final JwtParser parser;
+
+
+    public JjwtCodec(@Value("${app.jwtSecret}") String jwtSecret, @Value("${app.jwt.key-id:1}") String keyId) {
+        // The signing key is derived from the secret string.
+        this.key = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+        this.keyId = keyId;
+        this.parser = Jwts.parserBuilder().setSigningKey(key).build();
+    }
+
+
+    @Override
+    public String encode(String subject, long issuedAt, long expiresAt, int rolesMask) {
+        return Jwts.builder()
+                .setHeaderParam("kid", keyId)            // Identifies the signing key, for key rotation
+                .setSubject(subject)                     // Set the "subject" of the token (who it's for)
+                .setIssuedAt(new Date(issuedAt * 1000))  // Set the token issuance date
+                .setExpiration(new Date(expiresAt * 1000))   // Set the expiration date
+                .claim(ROLES_CLAIM, rolesMask)
+                .signWith(key, SignatureAlgorithm.HS512) // Sign the token with our key and a strong algorithm
+                .compact();  // Build the token and serialize it to a compact, URL-safe string
+    }
+
+
+    @Override
+    public JwtClaims decode(String token) {
+        Jws<Claims> jws;
+        try {
+            jws = parser.parseClaimsJws(token);
+        } catch (io.jsonwebtoken.security.SecurityException e) {
+            throw new InvalidJwtException(SecurityEvent.JWT_INVALID_SIGNATURE, e.getMessage());
+        } catch (MalformedJwtException e) {
+            throw new InvalidJwtException(SecurityEvent.JWT_MALFORMED, e.getMessage());
+        } catch (ExpiredJwtException e) {
+            throw new InvalidJwtException(SecurityEvent.JWT_EXPIRED, e.getMessage());
+        } catch (UnsupportedJwtException e) {
+            throw new InvalidJwtException(SecurityEvent.JWT_UNSUPPORTED, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            throw new InvalidJwtException(SecurityEvent.JWT_EMPTY, e.getMessage());
+        } catch (JwtException e) {
+            throw new InvalidJwtException(SecurityEvent.JWT_MALFORMED, e.getMessage());
+        }
+
+        Claims claims = jws.getBody();
+        if (claims.getSubject() == null) {
+            throw new InvalidJwtException(SecurityEvent.JWT_MALFORMED, "JWT has no subject");
+        }
+        Number roles = claims.get(ROLES_CLAIM, Number.class);
+        return new JwtClaims(claims.getSubject(),
+                epochSeconds(claims.getIssuedAt()),
+                epochSeconds(claims.getExpiration()),
+                roles != null ? roles.intValue() : 0,
+                jws.getHeader().getKeyId());
+    }
+
+
+    private static long epochSeconds(Date date) {
+        return date != null ? date.getTime() / 1000 : 0;
+    }
+}
@@ -0,0 +1,15 @@
+package com.bankingapp.user_service.security;
+
+
+/**
+ * The claims of a verified JWT.
+ *
+ * @param subject   The user's email ({@code sub}).
+ * @param issuedAt  When the token was issued, in epoch seconds ({@code iat}); 0 if absent.
+ * @param expiresAt When the token expires, in epoch seconds ({@code exp}); 0 if absent.
+ * @param rolesMask The user's roles as a {@link com.bankingapp.user_service.model.RoleMask} when the token was
+ *                  issued ({@code roles}); 0 for tokens issued before the claim existed.
+ * @param keyId     The id of the signing key ({@code kid} header), or {@code null} if absent.
+ */
+public record JwtClaims(String subject, long issuedAt, long expiresAt, int rolesMask, String keyId) {
+}
@@ -0,0 +1,32 @@
+package com.bankingapp.user_service.security;
+
+
+/**
+ * Signs and verifies the HS512 JWTs issued by this service. Selected with {@code app.jwt.codec}.
+ *
+ * <p>All implementations read and write the same tokens: a token issued by one is accepted by the other,
+ * so the codec can be switched without logging anybody out.</p>
+ */
+public interface JwtCodec {
+
+    /**
+     * Issues a signed token.
+     *
+     * @param subject   The user's email.
+     * @param issuedAt  Epoch seconds.
+     * @param expiresAt Epoch seconds.
+     * @param rolesMask The user's roles as a RoleMask.
+     * @return The compact serialization of the token.
+     */
+    String encode(String subject, long issuedAt, long expiresAt, int rolesMask);
+
+
+    /**
+     * Verifies a token and returns its claims.
+     *
+     * @param token The compact serialization of the token.
+     * @return The claims; never {@code null}.
+     * @throws InvalidJwtException if the token is malformed, badly signed, expired or unsupported.
+     */
+    JwtClaims decode(String token);
+}
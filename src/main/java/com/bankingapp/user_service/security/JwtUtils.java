@@ -1,21 +1,17 @@
 package com.bankingapp.user_service.security;
 
+import com.bankingapp.user_service.diagnostics.JwtEvent;
 import com.bankingapp.user_service.model.User;
-import io.jsonwebtoken.*;
-import io.jsonwebtoken.security.Keys;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
 
-import javax.crypto.SecretKey;
-import java.util.Date;
-
 
 /**
  * Utility class for handling JWT (JSON Web Token) operations such as
  * generation, validation, and parsing.
+ *
+ * <p>The tokens themselves are signed and parsed by the configured {@link JwtCodec} ({@code app.jwt.codec}).</p>
  */
 
 
@@ -23,11 +19,14 @@ import java.util.Date;
 @Component
 public class JwtUtils{
 
-    private final static Logger logger = LoggerFactory.getLogger(JwtUtils.class);
-
+    // Invalid tokens are reported through the rate-limited security event log, not logged one by one.
+    private final SecurityEventLogger securityEventLogger;
+    private final JwtCodec jwtCodec;
 
-    @Value("${app.jwtSecret}")
-    private String jwtSecret;
+    public JwtUtils(SecurityEventLogger securityEventLogger, JwtCodec jwtCodec) {
+        this.securityEventLogger = securityEventLogger;
+        this.jwtCodec = jwtCodec;
+    }
 
 
 
@@ -46,20 +45,21 @@ public class JwtUtils{
 
     public String generateJwtToken(Authentication authentication){
 
+        JwtEvent event = new JwtEvent();
+        event.begin();
+
         // The principal is the User object since our UserDetails is our User entity.
         User userPrincipal = (User) authentication.getPrincipal();
 
+        // JWT timestamps are in seconds.
+        long now = System.currentTimeMillis();
+        String token = jwtCodec.encode(userPrincipal.getUsername(), now / 1000, (now + jwtExpirationMs) / 1000,
+                userPrincipal.getRolesMask());
 
-        // The signing key is derived from the secret string.
-        SecretKey key = Keys.hmacShaKeyFor(jwtSecret.getBytes());
-
-
-        return Jwts.builder()
-                .setSubject((userPrincipal.getUsername()))   // Set the "subject" of the token (who it's for)
-                .setIssuedAt(new Date())     // Set the token issuance date
-                .setExpiration(new Date((new Date()).getTime()+ jwtExpirationMs))   // Set the expiration date
-                .signWith(key, SignatureAlgorithm.HS512)   // Sign the token with our key and a strong algorithm
-                .compact();  // Build the token and serialize it to a compact, URL-safe string
+        event.operation = JwtEvent.SIGN;
+        event.outcome = "ok";
+        event.commit();
+        return token;
     }
 
 
@@ -72,13 +72,12 @@ public class JwtUtils{
      *
      * @param token The JWT string.
      * @return The username (subject) from the token.
+     * @throws InvalidJwtException if the token is not valid.
      */
 
 
     public String getUserNameFromJwtToken(String token){
-        SecretKey key = Keys.hmacShaKeyFor(jwtSecret.getBytes());
-
-        return Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token).getBody().getSubject();
+        return jwtCodec.decode(token).subject();
     }
 
 
@@ -92,23 +91,36 @@ public class JwtUtils{
 
 
     public boolean validateJwtToken(String authToken) {
-        SecretKey key = Keys.hmacShaKeyFor(jwtSecret.getBytes());
+        return verifyJwtToken(authToken) != null;
+    }
+
+
+
+    /**
+     * Validates a JWT token and returns its claims, so that callers verify and parse it only once.
+     *
+     * @param authToken The JWT string to validate.
+     * @return The claims if the token is valid, {@code null} otherwise.
+     */
+
+
+    public JwtClaims verifyJwtToken(String authToken) {
+        JwtEvent event = new JwtEvent();
+        event.begin();
+        event.operation = JwtEvent.VERIFY;
 
         try{
-            Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(authToken);
-            return true;
-        }catch (SecurityException e){
-            logger.error("Invalid JWT signature: {}", e.getMessage());
-        }catch (MalformedJwtException e){
-            logger.error("Invalid JWT token: {}", e.getMessage());
-        }catch (ExpiredJwtException e) {
-            logger.error("JWT token is expired: {}", e.getMessage());
-        } catch (UnsupportedJwtException e) {
-            logger.error("JWT token is unsupported: {}", e.getMessage());
-        } catch (IllegalArgumentException e) {
-            logger.error("JWT claims string is empty: {}", e.getMessage());
+            JwtClaims claims = jwtCodec.decode(authToken);
+            event.outcome = "ok";
+            event.commit();
+            return claims;
+        }catch (InvalidJwtException e){
+            securityEventLogger.record(e.getReason(), e.getMessage());
+
+            event.outcome = "rejected";
+            event.reason = e.getReason().name();
+            event.commit();
+            return null;
         }
-
-        return false;
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,11 @@
 package com.bankingapp.user_service.security;
 
+import com.bankingapp.user_service.session.OpaqueTokenService;
+import com.bankingapp.user_service.throttle.UserQuotaLimiter;
+import jakarta.servlet.DispatcherType;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -40,15 +46,26 @@ public class SecurityConfig{
 
     private final UserDetailsServiceImpl userDetailsService;
     private final JwtUtils jwtUtils;
+    private final SecurityEventLogger securityEventLogger;
+    private final UserQuotaLimiter userQuotaLimiter;
+    private final ObjectProvider<OpaqueTokenService> opaqueTokenService;
 
-    public SecurityConfig(UserDetailsServiceImpl userDetailsService, JwtUtils jwtUtils) {
+    @Value("${app.user-load.retry-after-seconds:5}")
+    private long retryAfterSeconds;
+
+    public SecurityConfig(UserDetailsServiceImpl userDetailsService, JwtUtils jwtUtils, SecurityEventLogger securityEventLogger,
+                          UserQuotaLimiter userQuotaLimiter, ObjectProvider<OpaqueTokenService> opaqueTokenService) {
         this.userDetailsService = userDetailsService;
         this.jwtUtils = jwtUtils;
+        this.securityEventLogger = securityEventLogger;
+        this.userQuotaLimiter = userQuotaLimiter;
+        this.opaqueTokenService = opaqueTokenService;
     }
 
     @Bean
     public PasswordEncoder passwordEncoder(){
-        return new BCryptPasswordEncoder();
+        // Instrumented so that BCrypt time shows up as PasswordHashEvents in flight recordings.
+        return new InstrumentedPasswordEncoder(new BCryptPasswordEncoder());
     }
 
 
@@ -71,7 +88,20 @@ public class SecurityConfig{
 
     @Bean
     public AuthTokenFilter authenticationJwtTokenFilter() {
-        return new AuthTokenFilter(jwtUtils, userDetailsService);
+        return new AuthTokenFilter(jwtUtils, userDetailsService, securityEventLogger, userQuotaLimiter,
+                opaqueTokenService.getIfAvailable(), retryAfterSeconds);
+    }
+
+
+    /**
+     * Spring Boot registers every Filter bean with the servlet container. The JWT filter must only run
+     * inside the security chain, otherwise it would run (and charge the quota) twice per request.
+     */
+    @Bean
+    public FilterRegistrationBean<AuthTokenFilter> authenticationJwtTokenFilterRegistration(AuthTokenFilter authenticationJwtTokenFilter) {
+        FilterRegistrationBean<AuthTokenFilter> registration = new FilterRegistrationBean<>(authenticationJwtTokenFilter);
+        registration.setEnabled(false);
+        return registration;
     }
 
 
@@ -103,8 +133,15 @@ public class SecurityConfig{
 
         http.authorizeHttpRequests(
 
-                auth -> auth   // Permit all requests to the authentication endpoints (e.g., /api/auth/register, /api/auth/login).
+                auth -> auth   // The dispatch that completes a change stream (see UserChangeStream) belongs to a request that was already authorized.
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+                        // Permit all requests to the authentication endpoints (e.g., /api/auth/register, /api/auth/login).
                         .requestMatchers("/api/auth/**").permitAll()
+                        // Health checks must work without a token; all other actuator endpoints are for admins only.
+                        .requestMatchers("/actuator/health/**").permitAll()
+                        .requestMatchers("/actuator/**").hasRole("ADMIN")
+                        // Bulk lookups and the change stream expose other users' details, so only admins and other services may use them.
+                        .requestMatchers("/api/users/lookup", "/api/users/changes").hasAnyRole("ADMIN", "SERVICE")
                         // Require authentication for any other request.
                         .anyRequest().authenticated()
         );
@@ -0,0 +1,13 @@
+package com.bankingapp.user_service.security;
+
+/**
+ * The kinds of security failures reported through {@link SecurityEventLogger}.
+ */
+public enum SecurityEvent {
+    JWT_INVALID_SIGNATURE,
+    JWT_MALFORMED,
+    JWT_EXPIRED,
+    JWT_UNSUPPORTED,
+    JWT_EMPTY,
+    AUTHENTICATION_FAILED
+}
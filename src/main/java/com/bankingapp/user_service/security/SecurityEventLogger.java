@@ -0,0 +1,90 @@
+package com.bankingapp.user_service.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Logs security failures (invalid tokens, failed authentications) without letting an attacker
+ * flood the logs.
+ *
+ * <p>Only the first few events of each interval are written as individual lines, with their details.
+ * Everything after that is only counted, and once per interval a single summary line reports how
+ * many events of each kind occurred. A token-spray attack therefore costs a handful of log lines
+ * per interval instead of one line per request.</p>
+ *
+ * <p>Lines are written in {@code key=value} form to the {@code security.events} logger, so they can
+ * be routed and parsed separately from the application log.</p>
+ */
+
+
+@Component
+public class SecurityEventLogger {
+
+    private static final Logger logger = LoggerFactory.getLogger("security.events");
+
+    private static final SecurityEvent[] EVENTS = SecurityEvent.values();
+
+    private final LongAdder[] counts = new LongAdder[EVENTS.length];
+    private final AtomicInteger individualBudget = new AtomicInteger();
+
+    private final int individualPerInterval;
+    private final long intervalMs;
+
+
+    public SecurityEventLogger(@Value("${app.security-log.individual-per-interval:10}") int individualPerInterval,
+                               @Value("${app.security-log.summary-interval-ms:10000}") long intervalMs) {
+        this.individualPerInterval = individualPerInterval;
+        this.intervalMs = intervalMs;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+        individualBudget.set(individualPerInterval);
+    }
+
+
+    /**
+     * Records a security event. Cheap enough to call on every request.
+     *
+     * @param event  The kind of event.
+     * @param detail A short description (e.g. the exception message). Only logged while within the per-interval budget.
+     */
+    public void record(SecurityEvent event, String detail) {
+        counts[event.ordinal()].increment();
+
+        if (individualBudget.get() > 0 && individualBudget.getAndDecrement() > 0) {
+            logger.warn("security_event={} detail=\"{}\"", event, detail);
+        }
+    }
+
+
+    /**
+     * Writes one summary line for the interval that just ended, if anything happened in it.
+     */
+    @Scheduled(fixedRateString = "${app.security-log.summary-interval-ms:10000}")
+    public void flushSummary() {
+        StringBuilder summary = new StringBuilder();
+        long total = 0;
+
+        for (SecurityEvent event : EVENTS) {
+            long count = counts[event.ordinal()].sumThenReset();
+            if (count > 0) {
+                summary.append(' ').append(event.name().toLowerCase()).append('=').append(count);
+                total += count;
+            }
+        }
+
+        int logged = individualPerInterval - Math.max(individualBudget.getAndSet(individualPerInterval), 0);
+
+        if (total > 0) {
+            logger.warn("security_event_summary interval_ms={} total={} logged_individually={}{}",
+                    intervalMs, total, logged, summary);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.bankingapp.user_service.security;
+
+import com.bankingapp.user_service.model.RoleMask;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+
+
+/**
+ * The principal of a request authenticated with an opaque token.
+ *
+ * <p>It is built from the session alone (user id and roles), so authenticating such a request needs
+ * no user lookup at all. Code that needs more than the id and roles loads the user by id.</p>
+ */
+
+
+public class TokenPrincipal implements UserDetails {
+
+    private final long id;
+    private final int rolesMask;
+
+    public TokenPrincipal(long id, int rolesMask) {
+        this.id = id;
+        this.rolesMask = rolesMask;
+    }
+
+
+    public long getId() { return id; }
+    public int getRolesMask() { return rolesMask; }
+
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return RoleMask.authorities(rolesMask);
+    }
+
+
+    // There is no password for a token session.
+    @Override
+    public String getPassword() {
+        return null;
+    }
+
+
+    // The email is not part of the session, so the user id stands in as the name.
+    @Override
+    public String getUsername() {
+        return Long.toString(id);
+    }
+}
@@ -1,17 +1,53 @@
 package com.bankingapp.user_service.security;
 
+import com.bankingapp.user_service.archive.ArchivedUser;
+import com.bankingapp.user_service.archive.UserArchive;
+import com.bankingapp.user_service.cache.CachedPrincipal;
+import com.bankingapp.user_service.cache.CoalescedLoadTimeoutException;
+import com.bankingapp.user_service.cache.PrincipalCache;
+import com.bankingapp.user_service.cache.SingleFlight;
+import com.bankingapp.user_service.config.ReadYourWritesTracker;
+import com.bankingapp.user_service.config.ReplicaRoutingContext;
+import com.bankingapp.user_service.diagnostics.UserLoadEvent;
 import com.bankingapp.user_service.model.User;
 import com.bankingapp.user_service.repository.UserRepository;
+import com.bankingapp.user_service.throttle.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Optional;
 
 /**
  * Service implementation for loading user-specific data.
  * This class is a core part of Spring Security's authentication process. It is responsible
  * for fetching a user from the database and wrapping it in a UserDetails object.
+ *
+ * <p>Loaded users are kept in the {@link PrincipalCache}, which is kept coherent across nodes
+ * through Postgres LISTEN/NOTIFY, so most token-authenticated requests never reach the database.</p>
+ *
+ * <p>On a cache miss, concurrent loads of the same email (e.g. a client firing many parallel requests
+ * with a fresh token) are coalesced by a {@link SingleFlight}, so they share one database query.</p>
+ *
+ * <p>Database loads run with a short transaction timeout behind a {@link CircuitBreaker}. When loads fail or
+ * are slow, the breaker opens and loads fail fast with {@link UserStoreUnavailableException} instead of piling
+ * up on the connection pool. Logins then get a 503; token-authenticated requests
+ * ({@link #loadUserForToken}) are served from the principal cache instead, as long as the cached principal is
+ * not older than {@code app.cache.principals.max-staleness-ms}.</p>
+ *
+ * <p>A user who is not in the users table may have been archived for inactivity. A login is then checked against
+ * the archived row (an {@link ArchivedUser}, which is never cached), and {@code AuthService} moves the user back
+ * from the {@link UserArchive} once the password has been verified.</p>
  */
 
 
@@ -19,9 +55,56 @@ import org.springframework.transaction.annotation.Transactional;
 public class UserDetailsServiceImpl implements UserDetailsService{
 
     private final UserRepository userRepository;
+    private final UserArchive userArchive;
+    private final ReadYourWritesTracker readYourWritesTracker;
+    private final PrincipalCache principalCache;
+    private final TransactionTemplate readOnlyTransaction;
+    private final SingleFlight<LoadKey, User> userLoads;
+    private final CircuitBreaker circuitBreaker;
+    private final long maxStalenessMs;
+    private final Counter staleServed;
 
-    public UserDetailsServiceImpl(UserRepository userRepository){
+    public UserDetailsServiceImpl(UserRepository userRepository, UserArchive userArchive, ReadYourWritesTracker readYourWritesTracker,
+                                  PrincipalCache principalCache, PlatformTransactionManager transactionManager,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${app.user-load.coalescing-timeout-ms:3000}") long coalescingTimeoutMs,
+                                  @Value("${app.user-load.timeout-seconds:2}") int timeoutSeconds,
+                                  @Value("${app.user-load.circuit-breaker.failure-threshold:5}") int failureThreshold,
+                                  @Value("${app.user-load.circuit-breaker.slow-call-ms:1000}") long slowCallMs,
+                                  @Value("${app.user-load.circuit-breaker.open-ms:5000}") long openMs,
+                                  @Value("${app.cache.principals.max-staleness-ms:600000}") long maxStalenessMs){
         this.userRepository = userRepository;
+        this.userArchive = userArchive;
+        this.readYourWritesTracker = readYourWritesTracker;
+        this.principalCache = principalCache;
+        this.maxStalenessMs = maxStalenessMs;
+
+        // Read-only, so it can be served by a read replica when replica routing is enabled.
+        // The timeout is applied to the query itself, so a stuck database cannot hold a login thread for long.
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.readOnlyTransaction.setTimeout(timeoutSeconds);
+
+        this.circuitBreaker = new CircuitBreaker(failureThreshold, slowCallMs, openMs);
+        Gauge.builder("app.user.load.circuit-breaker.state", circuitBreaker, breaker -> breaker.state().ordinal())
+                .description("State of the user load circuit breaker: 0 closed, 1 open, 2 half-open").register(meterRegistry);
+        FunctionCounter.builder("app.user.load.circuit-breaker.opened", circuitBreaker, CircuitBreaker::openedCount)
+                .description("Times the user load circuit breaker opened").register(meterRegistry);
+        FunctionCounter.builder("app.user.load.circuit-breaker.rejected", circuitBreaker, CircuitBreaker::rejectedCount)
+                .description("User loads rejected without a query while the circuit breaker was open").register(meterRegistry);
+        this.staleServed = Counter.builder("app.user.load.stale")
+                .description("Token authentications served a stale cached principal while the database was unavailable")
+                .register(meterRegistry);
+
+        this.userLoads = new SingleFlight<>(coalescingTimeoutMs);
+        FunctionCounter.builder("app.user.load.executed", userLoads, SingleFlight::executedCount)
+                .description("User loads that queried the database").register(meterRegistry);
+        FunctionCounter.builder("app.user.load.coalesced", userLoads, SingleFlight::coalescedCount)
+                .description("User loads that joined a query already in flight for the same email").register(meterRegistry);
+        FunctionCounter.builder("app.user.load.coalesced.timeouts", userLoads, SingleFlight::timedOutCount)
+                .description("Coalesced user loads that gave up waiting").register(meterRegistry);
+        Gauge.builder("app.user.load.in-flight", userLoads, SingleFlight::inFlightCount)
+                .description("Emails currently being loaded from the database").register(meterRegistry);
     }
 
 
@@ -29,22 +112,131 @@ public class UserDetailsServiceImpl implements UserDetailsService{
      * Locates the user based on the username (in our case, the email).
      * This method is called by the AuthenticationManager during the authentication process.
      *
-     * @param email The email identifying the user whose data is required.
+     * @param username The email identifying the user whose data is required. It is matched case-insensitively.
      * @return a fully populated user record (never {@code null}). Our User entity implements UserDetails.
      * @throws UsernameNotFoundException if the user could not be found or the user has no
      *                                   GrantedAuthority.
+     * @throws UserStoreUnavailableException if the database is unavailable or the circuit breaker is open.
      */
 
 
 
     @Override
-    @Transactional // Ensures that the user's roles (a lazy collection by default) are fetched within the transaction.
-    public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException{
-        User user = userRepository.findByEmail(email).orElseThrow(() -> new UsernameNotFoundException("User Not Found with email: " + email));
+    public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException{
+        return loadUser(username, false);
+    }
+
+
+    /**
+     * Like {@link #loadUserByUsername}, for requests that already carry a valid token: while the database is
+     * unavailable, a cached principal that is past its TTL but within the staleness cutoff is served instead.
+     *
+     * @throws UserStoreUnavailableException if the database is unavailable and no usable cached principal exists.
+     */
+    public User loadUserForToken(String username) throws UsernameNotFoundException{
+        User user = loadUser(username, true);
+        if (user instanceof ArchivedUser) {
+            // Only a login brings an archived user back.
+            throw new UsernameNotFoundException("User is archived: " + username);
+        }
+        return user;
+    }
+
+
+    private User loadUser(String username, boolean allowStale) {
+        UserLoadEvent event = new UserLoadEvent();
+        event.begin();
+        String email = User.normalizeEmail(username);
+
+        // 1. Serve the user from the principal cache when we can. No transaction (and no connection) is needed for that.
+        CachedPrincipal cached = principalCache.get(email);
+        if (cached != null) {
+            event.cacheHit = true;
+            event.reason = "cache-hit";
+            event.commit();
+            return cached.user();
+        }
+
+        // 2. Load it, sharing the query with any other thread loading the same email right now.
+        // The leader overwrites the reason with where it loaded from; followers keep "coalesced".
+        // Only loads that started under the same stamp are shared: a load that started before the user was last
+        // invalidated may have read the old row, which must not be handed to a request that started afterwards.
+        event.reason = "coalesced";
+        long stamp = principalCache.stamp(email);
+        try {
+            return userLoads.execute(new LoadKey(email, stamp), () -> loadAndCache(email, stamp, event));
+        } catch (UsernameNotFoundException e) {
+            event.reason = "not-found";
+            throw e;
+        } catch (UserStoreUnavailableException | CoalescedLoadTimeoutException e) {
+            CachedPrincipal stale = allowStale ? principalCache.getStale(email, maxStalenessMs) : null;
+            if (stale != null) {
+                event.reason = "stale";
+                staleServed.increment();
+                return stale.user();
+            }
+            event.reason = "unavailable";
+            throw e instanceof UserStoreUnavailableException unavailable
+                    ? unavailable : new UserStoreUnavailableException(e.getMessage(), e);
+        } finally {
+            event.commit();
+        }
+    }
+
+
+    // The stamp was taken before reading, so that an invalidation racing with the read keeps the result out of the cache.
+    private User loadAndCache(String email, long stamp, UserLoadEvent event) {
+        User user = loadThroughCircuitBreaker(email, event);
+        if (!(user instanceof ArchivedUser)) {
+            principalCache.putIfUnchanged(email, user, stamp);
+        }
 
         return user;
     }
 
 
+    private User loadThroughCircuitBreaker(String email, UserLoadEvent event) {
+        if (!circuitBreaker.tryAcquire()) {
+            throw new UserStoreUnavailableException("User store circuit breaker is open", null);
+        }
+
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            User user = loadFromDatabase(email, event);
+            failed = false;
+            return user;
+        } catch (UsernameNotFoundException e) {
+            failed = false; // The database answered.
+            throw e;
+        } catch (DataAccessException | TransactionException e) {
+            throw new UserStoreUnavailableException("Could not load user: " + e.getMessage(), e);
+        } finally {
+            circuitBreaker.onResult(System.nanoTime() - start, failed);
+        }
+    }
+
+
+    private User loadFromDatabase(String email, UserLoadEvent event) {
+        // A user who just registered may not have reached the replicas yet, so read them from the primary.
+        if (readYourWritesTracker.wasRecentlyWritten(email)) {
+            event.reason = "primary";
+            return ReplicaRoutingContext.onPrimary(() -> findUser(email));
+        }
 
+        event.reason = "database";
+        return findUser(email);
+    }
+
+
+    private User findUser(String email) {
+        Optional<User> user = readOnlyTransaction.execute(status -> userRepository.findByEmail(email)
+                .or(() -> userArchive.findForLogin(email)));
+        return user.orElseThrow(() -> new UsernameNotFoundException("User Not Found with email: " + email));
+    }
+
+
+    // Concurrent loads of the same email are shared only if no invalidation of it happened in between.
+    private record LoadKey(String email, long stamp) {
+    }
 }
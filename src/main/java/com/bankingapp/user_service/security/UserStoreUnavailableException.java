@@ -0,0 +1,17 @@
+package com.bankingapp.user_service.security;
+
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
+
+/**
+ * Thrown by {@link UserDetailsServiceImpl} when a user cannot be loaded because the database is failing, slow,
+ * or shielded by the open circuit breaker. It says nothing about the credentials, so callers answer with 503.
+ *
+ * <p>It extends {@link InternalAuthenticationServiceException} so that the authentication provider passes it on
+ * unchanged instead of turning it into a "bad credentials" failure.</p>
+ */
+public class UserStoreUnavailableException extends InternalAuthenticationServiceException {
+
+    public UserStoreUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
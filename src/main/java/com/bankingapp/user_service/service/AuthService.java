@@ -1,10 +1,16 @@
 package com.bankingapp.user_service.service;
 
+import com.bankingapp.user_service.archive.ArchivedUser;
+import com.bankingapp.user_service.archive.UserArchive;
+import com.bankingapp.user_service.config.ReadYourWritesTracker;
 import com.bankingapp.user_service.dto.RegisterRequest;
 import com.bankingapp.user_service.model.Role;
 import com.bankingapp.user_service.model.User;
 import com.bankingapp.user_service.repository.RoleRepository;
 import com.bankingapp.user_service.repository.UserRepository;
+import com.bankingapp.user_service.security.UserStoreUnavailableException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.security.authentication.LockedException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -33,18 +39,27 @@ public class AuthService{
     private final RoleRepository roleRepository;
     private final PasswordEncoder passwordEncoder;
     private final AuthenticationManager authenticationManager;
+    private final ReadYourWritesTracker readYourWritesTracker;
+    private final LastLoginTracker lastLoginTracker;
+    private final UserArchive userArchive;
 
 
     public AuthService(
             UserRepository userRepository,
             RoleRepository roleRepository,
             PasswordEncoder passwordEncoder,
-            AuthenticationManager authenticationManager
+            AuthenticationManager authenticationManager,
+            ReadYourWritesTracker readYourWritesTracker,
+            LastLoginTracker lastLoginTracker,
+            UserArchive userArchive
     ){
         this.userRepository = userRepository;
         this.roleRepository = roleRepository;
         this.passwordEncoder = passwordEncoder;
         this.authenticationManager = authenticationManager;
+        this.readYourWritesTracker = readYourWritesTracker;
+        this.lastLoginTracker = lastLoginTracker;
+        this.userArchive = userArchive;
     }
 
 
@@ -59,8 +74,9 @@ public class AuthService{
     @Transactional    // This annotation ensures the entire method runs within a single database transaction.
     public void registerUser(RegisterRequest registerRequest){
 
-        // 1. Validate if the email is already in use.
-        if(userRepository.existsByEmail(registerRequest.getEmail())){
+        // 1. Validate if the email is already in use, also by an archived account. Emails are stored normalized (lower-case).
+        String email = User.normalizeEmail(registerRequest.getEmail());
+        if(userRepository.existsByEmail(email) || userArchive.isArchived(email)){
 
             throw new RuntimeException("Error: Email is already in use!");
         }
@@ -70,7 +86,7 @@ public class AuthService{
         User user = new User();
         user.setFirstName(registerRequest.getFirstName());
         user.setLastName(registerRequest.getLastName());
-        user.setEmail(registerRequest.getEmail());
+        user.setEmail(email);
 
         // 3. Encode the password before saving.
 
@@ -93,6 +109,9 @@ public class AuthService{
 
         userRepository.save(user);  // provided by jpa
 
+        // 6. Make the user's first login read from the primary, in case the replicas are still catching up.
+        readYourWritesTracker.recordWrite(user.getEmail());
+
     }
 
 
@@ -116,10 +135,31 @@ public class AuthService{
 
         // If authentication is successful, the returned Authentication object will be populated
         // with the user's details (the User object) and their authorities (roles).
+        User user = (User) authentication.getPrincipal();
+        if (user instanceof ArchivedUser) {
+            restoreArchived(user);
+        }
         SecurityContextHolder.getContext().setAuthentication(authentication);
 
+        // Record the login. This is written behind in batches, so it adds no database write to the login.
+        lastLoginTracker.recordLogin(user.getId());
+
         // For now, we return the authentication object. Later, we'll use this to generate a JWT.
         return authentication;
     }
 
-}
\ No newline at end of file
+
+    // The user was authenticated against their archived row, so the password checked out: move them back.
+    private void restoreArchived(User user) {
+        try {
+            if (!userArchive.restore(user.getEmail()) && userArchive.isArchived(user.getEmail())) {
+                // Someone registered the email while the account was archived; the new account owns it now.
+                throw new LockedException("Archived account cannot be restored");
+            }
+        } catch (DataAccessException e) {
+            throw new UserStoreUnavailableException("Could not restore archived user: " + e.getMessage(), e);
+        }
+        // The user was just written to the primary; the replicas may not have them yet.
+        readYourWritesTracker.recordWrite(user.getEmail());
+    }
+}
@@ -0,0 +1,251 @@
+package com.bankingapp.user_service.service;
+
+import com.bankingapp.user_service.shard.ShardDirectory;
+import com.bankingapp.user_service.shard.ShardIds;
+import com.bankingapp.user_service.shard.ShardRoutingContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Records successful logins ({@code users.last_login_at} and {@code users.login_count}) without a database
+ * write on the login path.
+ *
+ * <p>Logins are merged in memory per user (count and latest time), and every flush interval all pending users
+ * are written with a single {@code UPDATE ... FROM unnest(...)} statement. A user who logs in fifty times
+ * between two flushes therefore costs one row update, not fifty. Pending logins are also flushed on graceful
+ * shutdown; a crash loses at most one interval of bookkeeping, which is acceptable for these columns.</p>
+ *
+ * <p>If a flush fails, its logins are merged back and retried with the next flush. So that a long database outage
+ * cannot exhaust the heap, at most {@code app.login-tracking.max-pending-users} users are kept pending: logins of
+ * further users are dropped (and counted), while users already pending keep accumulating theirs.</p>
+ *
+ * <p>With sharding enabled, each shard gets its own statement. Logins of users whose bucket is being moved to
+ * another shard stay pending until the move is over, so that they are not written to the old copy.</p>
+ */
+
+
+@Component
+public class LastLoginTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(LastLoginTracker.class);
+
+    private static final long WARNING_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    // GREATEST ignores NULLs, so a user's first login simply sets the column.
+    private static final String FLUSH_SQL = """
+            UPDATE users u
+               SET login_count = u.login_count + p.logins,
+                   last_login_at = GREATEST(u.last_login_at, to_timestamp(p.last_login_ms / 1000.0))
+              FROM unnest(?::bigint[], ?::bigint[], ?::bigint[]) AS p(user_id, logins, last_login_ms)
+             WHERE u.id = p.user_id
+            """;
+
+    private record PendingLogins(long count, long lastLoginMillis) {
+
+        PendingLogins merge(PendingLogins other) {
+            return new PendingLogins(count + other.count, Math.max(lastLoginMillis, other.lastLoginMillis));
+        }
+    }
+
+    private final ConcurrentHashMap<Long, PendingLogins> pending = new ConcurrentHashMap<>();
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardDirectory shardDirectory; // Null unless app.sharding.enabled=true.
+    private final int maxUsersPerStatement;
+    private final int maxPendingUsers;
+
+    private final Counter recordedLogins;
+    private final Counter droppedLogins;
+    private final Counter flushedUsers;
+    private final Counter failedFlushes;
+    private final Timer flushTimer;
+
+    // Failed flushes since the last one that succeeded, and when a failure may be logged again (so that a flaky
+    // database does not log one per interval). Only used by flush(), which is synchronized.
+    private long failuresInARow;
+    private boolean failureLogged;
+    private long nextWarningNanos = System.nanoTime();
+
+
+    public LastLoginTracker(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry, ObjectProvider<ShardDirectory> shardDirectory,
+                            @Value("${app.login-tracking.max-users-per-statement:5000}") int maxUsersPerStatement,
+                            @Value("${app.login-tracking.max-pending-users:100000}") int maxPendingUsers) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardDirectory = shardDirectory.getIfAvailable();
+        this.maxUsersPerStatement = maxUsersPerStatement;
+        this.maxPendingUsers = maxPendingUsers;
+
+        this.recordedLogins = Counter.builder("app.login-tracking.recorded")
+                .description("Successful logins recorded").register(meterRegistry);
+        this.droppedLogins = Counter.builder("app.login-tracking.dropped")
+                .description("Logins not written because app.login-tracking.max-pending-users users were pending")
+                .register(meterRegistry);
+        this.flushedUsers = Counter.builder("app.login-tracking.flushed")
+                .description("User rows updated by login flushes").register(meterRegistry);
+        this.failedFlushes = Counter.builder("app.login-tracking.failures")
+                .description("Login flushes that failed and will be retried").register(meterRegistry);
+        this.flushTimer = Timer.builder("app.login-tracking.flush")
+                .description("Time spent writing pending logins").register(meterRegistry);
+        Gauge.builder("app.login-tracking.pending", pending, Map::size)
+                .description("Users with logins not yet written to the database").register(meterRegistry);
+    }
+
+
+    /**
+     * Records a successful login. Never touches the database.
+     *
+     * @param userId The id of the user who logged in.
+     */
+    public void recordLogin(long userId) {
+        addPending(userId, new PendingLogins(1, System.currentTimeMillis()));
+        recordedLogins.increment();
+    }
+
+
+    // Merges into a pending user, or adds a new one if fewer than max-pending-users are pending. The size check
+    // and the insert are not atomic, so the limit can be overshot by the number of concurrent callers.
+    private void addPending(long userId, PendingLogins logins) {
+        if (pending.size() < maxPendingUsers) {
+            pending.merge(userId, logins, PendingLogins::merge);
+        } else if (pending.computeIfPresent(userId, (id, current) -> current.merge(logins)) == null) {
+            droppedLogins.increment(logins.count());
+        }
+    }
+
+
+    /**
+     * Writes all pending logins. Runs every {@code app.login-tracking.flush-interval-ms} and on shutdown.
+     * Synchronized so that the shutdown flush never overlaps a scheduled one.
+     */
+    @Scheduled(fixedDelayString = "${app.login-tracking.flush-interval-ms:5000}")
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        // Take each entry out atomically: a login recorded after its removal simply starts a new entry.
+        List<Long> userIds = new ArrayList<>(pending.size());
+        List<PendingLogins> logins = new ArrayList<>(pending.size());
+        Iterator<Long> keys = pending.keySet().iterator();
+        while (keys.hasNext()) {
+            Long userId = keys.next();
+            PendingLogins taken = pending.remove(userId);
+            if (taken != null) {
+                userIds.add(userId);
+                logins.add(taken);
+            }
+        }
+
+        if (shardDirectory == null) {
+            flush(userIds, logins, null);
+            return;
+        }
+
+        Map<Integer, List<Long>> idsByShard = new TreeMap<>();
+        Map<Integer, List<PendingLogins>> loginsByShard = new TreeMap<>();
+        for (int i = 0; i < userIds.size(); i++) {
+            long userId = userIds.get(i);
+            int bucket = ShardIds.bucketOf(userId);
+            if (bucket >= 0 && shardDirectory.isMoving(bucket)) {
+                addPending(userId, logins.get(i));
+                continue;
+            }
+            int shard = shardDirectory.shardOfId(userId);
+            idsByShard.computeIfAbsent(shard, s -> new ArrayList<>()).add(userId);
+            loginsByShard.computeIfAbsent(shard, s -> new ArrayList<>()).add(logins.get(i));
+        }
+        idsByShard.forEach((shard, ids) -> flush(ids, loginsByShard.get(shard), shard));
+    }
+
+
+    private void flush(List<Long> userIds, List<PendingLogins> logins, Integer shard) {
+        for (int from = 0; from < userIds.size(); from += maxUsersPerStatement) {
+            int to = Math.min(from + maxUsersPerStatement, userIds.size());
+            List<Long> batchIds = userIds.subList(from, to);
+            List<PendingLogins> batchLogins = logins.subList(from, to);
+            try {
+                flushTimer.record(() -> {
+                    if (shard == null) {
+                        write(batchIds, batchLogins);
+                    } else {
+                        ShardRoutingContext.onShard(shard, () -> write(batchIds, batchLogins));
+                    }
+                });
+                flushedUsers.increment(batchIds.size());
+                if (failureLogged) {
+                    logger.info("Writing pending logins again, after {} failed attempts", failuresInARow);
+                    failureLogged = false;
+                }
+                failuresInARow = 0;
+            } catch (DataAccessException e) {
+                failedFlushes.increment();
+                // Once per outage, and at most once a minute: the failures meter counts every one.
+                long now = System.nanoTime();
+                if (failuresInARow++ == 0 && now - nextWarningNanos >= 0) {
+                    logger.warn("Could not write {} pending logins, retrying with every flush until it works: {}",
+                            batchIds.size(), e.getMessage());
+                    failureLogged = true;
+                    nextWarningNanos = now + WARNING_INTERVAL_NANOS;
+                }
+                for (int i = 0; i < batchIds.size(); i++) {
+                    addPending(batchIds.get(i), batchLogins.get(i));
+                }
+            }
+        }
+    }
+
+
+    @PreDestroy
+    void flushOnShutdown() {
+        flush();
+        if (!pending.isEmpty()) {
+            logger.warn("Discarding logins of {} users that could not be written before shutdown", pending.size());
+        }
+    }
+
+
+    private int write(List<Long> userIds, List<PendingLogins> logins) {
+        int size = userIds.size();
+        Long[] ids = userIds.toArray(new Long[0]);
+        Long[] counts = new Long[size];
+        Long[] lastLogins = new Long[size];
+        for (int i = 0; i < size; i++) {
+            counts[i] = logins.get(i).count();
+            lastLogins[i] = logins.get(i).lastLoginMillis();
+        }
+
+        return jdbcTemplate.update(FLUSH_SQL, ps -> {
+            Connection connection = ps.getConnection();
+            ps.setArray(1, bigintArray(connection, ids));
+            ps.setArray(2, bigintArray(connection, counts));
+            ps.setArray(3, bigintArray(connection, lastLogins));
+        });
+    }
+
+
+    private static Array bigintArray(Connection connection, Long[] values) throws SQLException {
+        return connection.createArrayOf("bigint", values);
+    }
+}
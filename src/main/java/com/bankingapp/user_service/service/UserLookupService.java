@@ -0,0 +1,144 @@
+package com.bankingapp.user_service.service;
+
+import com.bankingapp.user_service.archive.UserArchive;
+import com.bankingapp.user_service.cache.UserInfoCache;
+import com.bankingapp.user_service.dto.UserInfoResponse;
+import com.bankingapp.user_service.dto.UserLookupResponse;
+import com.bankingapp.user_service.model.User;
+import com.bankingapp.user_service.repository.UserRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+
+/**
+ * Service class for looking up many users at once, for other microservices that need owner
+ * details for a list of accounts or transactions.
+ *
+ * <p>Users found in the {@link UserInfoCache} are served from memory. All the others are fetched
+ * with a single set-based query, however many were requested. Users archived for inactivity are
+ * served from the {@link UserArchive} (one more query, only if some keys matched no active user) and stay
+ * archived: a lookup by another service is not activity of the user.</p>
+ */
+
+
+@Service
+public class UserLookupService {
+
+    private final UserRepository userRepository;
+    private final UserInfoCache userInfoCache;
+    private final UserArchive userArchive;
+
+    public UserLookupService(UserRepository userRepository, UserInfoCache userInfoCache, UserArchive userArchive) {
+        this.userRepository = userRepository;
+        this.userInfoCache = userInfoCache;
+        this.userArchive = userArchive;
+    }
+
+
+    /**
+     * Looks up users by id and/or email.
+     *
+     * @param ids    User ids, in the order the caller wants them back.
+     * @param emails Emails (matched case-insensitively), in the order the caller wants them back.
+     * @return The users in request order (ids first, then emails, each user once), and the keys that matched nobody.
+     */
+    @Transactional(readOnly = true)  // Read-only, so it can be served by a read replica.
+    public UserLookupResponse lookup(List<Long> ids, List<String> emails) {
+
+        // 1. Drop duplicates, keeping the request order.
+        Set<Long> requestedIds = new LinkedHashSet<>(ids);
+        Set<String> requestedEmails = new LinkedHashSet<>();
+        for (String email : emails) {
+            requestedEmails.add(User.normalizeEmail(email));
+        }
+
+        // 2. Take what we can from the cache, and collect what is missing.
+        Map<Long, UserInfoResponse> foundById = new HashMap<>();
+        Map<String, UserInfoResponse> foundByEmail = new HashMap<>();
+        List<Long> idsToLoad = new ArrayList<>();
+        List<String> emailsToLoad = new ArrayList<>();
+
+        for (Long id : requestedIds) {
+            UserInfoResponse cached = userInfoCache.getById(id);
+            if (cached != null) {
+                foundById.put(id, cached);
+            } else {
+                idsToLoad.add(id);
+            }
+        }
+        for (String email : requestedEmails) {
+            UserInfoResponse cached = userInfoCache.getByEmail(email);
+            if (cached != null) {
+                foundByEmail.put(email, cached);
+            } else {
+                emailsToLoad.add(email);
+            }
+        }
+
+        // 3. Load everything that was not cached with one query, then whatever is still missing from the archive, and cache it.
+        if (!idsToLoad.isEmpty() || !emailsToLoad.isEmpty()) {
+            long stamp = userInfoCache.invalidationStamp();
+            List<UserInfoResponse> loaded = new ArrayList<>(userRepository.findInfoByIdInOrEmailIn(idsToLoad, emailsToLoad));
+            for (UserInfoResponse user : loaded) {
+                foundById.put(user.getId(), user);
+                foundByEmail.put(user.getEmail(), user);
+            }
+
+            List<Long> idsNotActive = idsToLoad.stream().filter(id -> !foundById.containsKey(id)).toList();
+            List<String> emailsNotActive = emailsToLoad.stream().filter(email -> !foundByEmail.containsKey(email)).toList();
+            if (!idsNotActive.isEmpty() || !emailsNotActive.isEmpty()) {
+                for (UserInfoResponse user : userArchive.findInfo(idsNotActive, emailsNotActive)) {
+                    foundById.putIfAbsent(user.getId(), user);
+                    foundByEmail.putIfAbsent(user.getEmail(), user);
+                    loaded.add(user);
+                }
+            }
+            userInfoCache.putAllIfUnchanged(loaded, stamp);
+        }
+
+        // 4. Assemble the result in request order.
+        List<UserInfoResponse> users = new ArrayList<>(requestedIds.size() + requestedEmails.size());
+        Set<Long> added = new HashSet<>();
+        List<Long> missingIds = new ArrayList<>();
+        List<String> missingEmails = new ArrayList<>();
+
+        for (Long id : requestedIds) {
+            UserInfoResponse user = foundById.get(id);
+            if (user == null) {
+                missingIds.add(id);
+            } else if (added.add(user.getId())) {
+                users.add(user);
+            }
+        }
+        for (String email : requestedEmails) {
+            UserInfoResponse user = foundByEmail.get(email);
+            if (user == null) {
+                missingEmails.add(email);
+            } else if (added.add(user.getId())) {
+                users.add(user);
+            }
+        }
+
+        return new UserLookupResponse(users, missingIds, missingEmails);
+    }
+
+
+
+    /**
+     * Loads a single user by id. {@code findById} goes through the Hibernate second-level cache,
+     * so this usually does not query the database.
+     */
+    @Transactional(readOnly = true)
+    public Optional<User> findUser(long id) {
+        return userRepository.findById(id);
+    }
+}
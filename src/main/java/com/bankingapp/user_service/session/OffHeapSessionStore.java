@@ -0,0 +1,444 @@
+package com.bankingapp.user_service.session;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.locks.StampedLock;
+
+
+/**
+ * A hash table of sessions that lives outside the Java heap.
+ *
+ * <p>Each entry is a fixed 40-byte slot in a direct {@link ByteBuffer}: the 128-bit token key, the user id,
+ * the expiry, the roles bitmask and a state word. There are no per-entry objects, so a million sessions cost
+ * about 40 MB of native memory and nothing for the garbage collector to trace.</p>
+ *
+ * <p>The table is split into segments, each an open-addressing table with linear probing and its own
+ * {@link StampedLock}. Lookups use an optimistic read and only fall back to the read lock if a writer
+ * interfered. Keys are expected to be uniformly random (they are hashes of random tokens), so the low
+ * bits of the key are used directly as the hash.</p>
+ */
+
+
+public class OffHeapSessionStore {
+
+    static final int SLOT_BYTES = 40;
+
+    private static final int KEY_HI = 0;
+    private static final int KEY_LO = 8;
+    private static final int USER_ID = 16;
+    private static final int EXPIRES_AT = 24;
+    private static final int ROLES_MASK = 32;
+    private static final int STATE = 36;
+
+    private static final int EMPTY = 0;
+    private static final int LIVE = 1;
+    private static final int STALE = 2;      // Live, but must be re-checked against the database before use.
+    private static final int REMOVED = 3;    // Tombstone, so probing continues past it.
+
+    private static final int FILE_MAGIC = 0x42534553; // "BSES"
+    private static final int FILE_VERSION = 1;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+
+
+    /**
+     * @param segmentCount           Number of independently locked segments; must be a power of two.
+     * @param initialSlotsPerSegment Initial capacity of each segment; must be a power of two. Segments grow as needed.
+     */
+    public OffHeapSessionStore(int segmentCount, int initialSlotsPerSegment) {
+        if (Integer.bitCount(segmentCount) != 1 || Integer.bitCount(initialSlotsPerSegment) != 1) {
+            throw new IllegalArgumentException("Segment count and slots per segment must be powers of two");
+        }
+        this.segments = new Segment[segmentCount];
+        this.segmentMask = segmentCount - 1;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(initialSlotsPerSegment);
+        }
+    }
+
+
+    public void put(long keyHi, long keyLo, long userId, int rolesMask, long expiresAtMillis) {
+        segmentFor(keyLo).put(keyHi, keyLo, userId, rolesMask, expiresAtMillis, LIVE);
+    }
+
+
+    /**
+     * @return The session for the key, or null if there is none or it has expired.
+     */
+    public Session get(long keyHi, long keyLo, long nowMillis) {
+        return segmentFor(keyLo).get(keyHi, keyLo, nowMillis);
+    }
+
+
+    /**
+     * Counts how often sessions were marked stale in the key's segment. Read it before re-checking a stale
+     * session against the database, and pass it to {@link #refresh}.
+     */
+    public long staleMarks(long keyLo) {
+        return segmentFor(keyLo).staleMarks;
+    }
+
+
+    /**
+     * Updates the roles of a stale session and marks it as checked again, unless sessions of its segment were
+     * marked stale since {@code staleMarks} was read: the user may have changed again after the re-check read them.
+     *
+     * @return true if the session was marked as checked.
+     */
+    public boolean refresh(long keyHi, long keyLo, int rolesMask, long staleMarks) {
+        return segmentFor(keyLo).refresh(keyHi, keyLo, rolesMask, staleMarks);
+    }
+
+
+    public boolean remove(long keyHi, long keyLo) {
+        return segmentFor(keyLo).remove(keyHi, keyLo);
+    }
+
+
+    /**
+     * Removes every session of the given user. This scans the whole table, so it is meant for rare events.
+     *
+     * @return The number of sessions removed.
+     */
+    public int removeUser(long userId) {
+        int removed = 0;
+        for (Segment segment : segments) {
+            removed += segment.updateWhere(userId, REMOVED);
+        }
+        return removed;
+    }
+
+
+    /**
+     * Marks every session of the given user (or of all users, if {@code userId} is negative) as stale.
+     */
+    public void markStale(long userId) {
+        for (Segment segment : segments) {
+            segment.updateWhere(userId, STALE);
+        }
+    }
+
+
+    /**
+     * Removes all sessions that have expired and compacts the segments.
+     */
+    public void purgeExpired(long nowMillis) {
+        for (Segment segment : segments) {
+            segment.purge(nowMillis);
+        }
+    }
+
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.live;
+        }
+        return size;
+    }
+
+
+    /**
+     * @return The native memory held by the table.
+     */
+    public long offHeapBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.table.capacity();
+        }
+        return bytes;
+    }
+
+
+    /**
+     * Writes all unexpired sessions to the stream. Stale sessions are written as stale.
+     *
+     * @return The number of sessions written.
+     */
+    public int writeTo(DataOutputStream out, long nowMillis) throws IOException {
+        out.writeInt(FILE_MAGIC);
+        out.writeInt(FILE_VERSION);
+
+        int written = 0;
+        for (Segment segment : segments) {
+            ByteBuffer copy = segment.snapshot();
+            for (int offset = 0; offset < copy.capacity(); offset += SLOT_BYTES) {
+                int state = copy.getInt(offset + STATE);
+                if ((state == LIVE || state == STALE) && copy.getLong(offset + EXPIRES_AT) > nowMillis) {
+                    out.writeBoolean(true);
+                    out.writeLong(copy.getLong(offset + KEY_HI));
+                    out.writeLong(copy.getLong(offset + KEY_LO));
+                    out.writeLong(copy.getLong(offset + USER_ID));
+                    out.writeLong(copy.getLong(offset + EXPIRES_AT));
+                    out.writeInt(copy.getInt(offset + ROLES_MASK));
+                    out.writeBoolean(state == STALE);
+                    written++;
+                }
+            }
+        }
+        out.writeBoolean(false);
+        return written;
+    }
+
+
+    /**
+     * Loads sessions written by {@link #writeTo}, skipping those that have expired since.
+     *
+     * @param markStale If true, every loaded session is re-checked against the database on first use.
+     * @return The number of sessions loaded.
+     */
+    public int readFrom(DataInputStream in, long nowMillis, boolean markStale) throws IOException {
+        if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+            throw new IOException("Not a session store file, or written by an incompatible version");
+        }
+
+        int loaded = 0;
+        while (in.readBoolean()) {
+            long keyHi = in.readLong();
+            long keyLo = in.readLong();
+            long userId = in.readLong();
+            long expiresAt = in.readLong();
+            int rolesMask = in.readInt();
+            boolean stale = in.readBoolean() || markStale;
+            if (expiresAt > nowMillis) {
+                segmentFor(keyLo).put(keyHi, keyLo, userId, rolesMask, expiresAt, stale ? STALE : LIVE);
+                loaded++;
+            }
+        }
+        return loaded;
+    }
+
+
+    private Segment segmentFor(long keyLo) {
+        // The low bits pick the slot within a segment, so use high bits to pick the segment.
+        return segments[(int) (keyLo >>> 40) & segmentMask];
+    }
+
+
+    private static final class Segment {
+
+        private final StampedLock lock = new StampedLock();
+        private volatile ByteBuffer table;
+        private int used;           // Live, stale and removed slots; they all lengthen probe sequences.
+        private volatile int live;  // Live and stale slots.
+        private volatile long staleMarks;  // Incremented, under the write lock, whenever sessions are marked stale.
+
+        Segment(int slots) {
+            this.table = allocate(slots);
+        }
+
+
+        Session get(long keyHi, long keyLo, long nowMillis) {
+            long stamp = lock.tryOptimisticRead();
+            Session session = find(table, keyHi, keyLo, nowMillis);
+            if (lock.validate(stamp)) {
+                return session;
+            }
+
+            stamp = lock.readLock();
+            try {
+                return find(table, keyHi, keyLo, nowMillis);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+
+        // May run concurrently with a writer (optimistic read); the result is then discarded by the caller.
+        // The probe is bounded by the table size, so it terminates even if it sees a half-written table.
+        private static Session find(ByteBuffer table, long keyHi, long keyLo, long nowMillis) {
+            int slots = table.capacity() / SLOT_BYTES;
+            int mask = slots - 1;
+            int index = (int) keyLo & mask;
+
+            for (int probes = 0; probes < slots; probes++, index = (index + 1) & mask) {
+                int offset = index * SLOT_BYTES;
+                int state = table.getInt(offset + STATE);
+                if (state == EMPTY) {
+                    return null;
+                }
+                if ((state == LIVE || state == STALE)
+                        && table.getLong(offset + KEY_LO) == keyLo && table.getLong(offset + KEY_HI) == keyHi) {
+                    long expiresAt = table.getLong(offset + EXPIRES_AT);
+                    if (expiresAt <= nowMillis) {
+                        return null;
+                    }
+                    return new Session(table.getLong(offset + USER_ID), table.getInt(offset + ROLES_MASK), expiresAt, state == STALE);
+                }
+            }
+            return null;
+        }
+
+
+        void put(long keyHi, long keyLo, long userId, int rolesMask, long expiresAtMillis, int state) {
+            long stamp = lock.writeLock();
+            try {
+                // Keep at least a quarter of the slots empty so that probe sequences stay short.
+                int slots = table.capacity() / SLOT_BYTES;
+                if ((used + 1) * 4L > slots * 3L) {
+                    rebuild(live * 2 >= slots ? slots * 2 : slots, Long.MIN_VALUE);
+                }
+
+                int offset = locate(table, keyHi, keyLo);
+                int previous = table.getInt(offset + STATE);
+                if (previous == EMPTY) {
+                    used++;
+                }
+                if (previous != LIVE && previous != STALE) {
+                    live++;
+                }
+                write(table, offset, keyHi, keyLo, userId, rolesMask, expiresAtMillis, state);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+
+        boolean refresh(long keyHi, long keyLo, int rolesMask, long expectedStaleMarks) {
+            long stamp = lock.writeLock();
+            try {
+                int offset = locate(table, keyHi, keyLo);
+                if (staleMarks != expectedStaleMarks || table.getInt(offset + STATE) != STALE) {
+                    return false;
+                }
+                table.putInt(offset + ROLES_MASK, rolesMask);
+                table.putInt(offset + STATE, LIVE);
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+
+        boolean remove(long keyHi, long keyLo) {
+            long stamp = lock.writeLock();
+            try {
+                int offset = locate(table, keyHi, keyLo);
+                int state = table.getInt(offset + STATE);
+                if (state == LIVE || state == STALE) {
+                    table.putInt(offset + STATE, REMOVED);
+                    live--;
+                    return true;
+                }
+                return false;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+
+        // Sets the state of all sessions of a user (or of everyone, if userId < 0). Returns how many were changed.
+        int updateWhere(long userId, int newState) {
+            long stamp = lock.writeLock();
+            try {
+                int changed = 0;
+                for (int offset = 0; offset < table.capacity(); offset += SLOT_BYTES) {
+                    int state = table.getInt(offset + STATE);
+                    if ((state == LIVE || state == STALE) && (userId < 0 || table.getLong(offset + USER_ID) == userId)) {
+                        table.putInt(offset + STATE, newState);
+                        changed++;
+                    }
+                }
+                if (newState == REMOVED) {
+                    live -= changed;
+                } else if (newState == STALE && changed > 0) {
+                    staleMarks++;
+                }
+                return changed;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+
+        void purge(long nowMillis) {
+            long stamp = lock.writeLock();
+            try {
+                int slots = table.capacity() / SLOT_BYTES;
+                rebuild(slots, nowMillis);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+
+        ByteBuffer snapshot() {
+            long stamp = lock.readLock();
+            try {
+                ByteBuffer copy = ByteBuffer.allocate(table.capacity()).order(table.order());
+                copy.put(table.duplicate().clear());
+                return copy;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+
+        // Re-inserts all unexpired sessions into a fresh table, dropping tombstones. Caller holds the write lock.
+        private void rebuild(int slots, long nowMillis) {
+            ByteBuffer old = table;
+            ByteBuffer fresh = allocate(slots);
+            int count = 0;
+
+            for (int offset = 0; offset < old.capacity(); offset += SLOT_BYTES) {
+                int state = old.getInt(offset + STATE);
+                if ((state == LIVE || state == STALE) && old.getLong(offset + EXPIRES_AT) > nowMillis) {
+                    long keyHi = old.getLong(offset + KEY_HI);
+                    long keyLo = old.getLong(offset + KEY_LO);
+                    write(fresh, locate(fresh, keyHi, keyLo), keyHi, keyLo, old.getLong(offset + USER_ID),
+                            old.getInt(offset + ROLES_MASK), old.getLong(offset + EXPIRES_AT), state);
+                    count++;
+                }
+            }
+
+            table = fresh;
+            used = count;
+            live = count;
+        }
+
+
+        // Returns the offset of the key's slot, or of the first empty or removed slot where it can be inserted.
+        private static int locate(ByteBuffer table, long keyHi, long keyLo) {
+            int mask = table.capacity() / SLOT_BYTES - 1;
+            int index = (int) keyLo & mask;
+            int firstFree = -1;
+
+            while (true) {
+                int offset = index * SLOT_BYTES;
+                int state = table.getInt(offset + STATE);
+                if (state == EMPTY) {
+                    return firstFree >= 0 ? firstFree : offset;
+                }
+                if (state == REMOVED) {
+                    if (firstFree < 0) {
+                        firstFree = offset;
+                    }
+                } else if (table.getLong(offset + KEY_LO) == keyLo && table.getLong(offset + KEY_HI) == keyHi) {
+                    return offset;
+                }
+                index = (index + 1) & mask;
+            }
+        }
+
+
+        private static void write(ByteBuffer table, int offset, long keyHi, long keyLo, long userId, int rolesMask,
+                                  long expiresAtMillis, int state) {
+            table.putLong(offset + KEY_HI, keyHi);
+            table.putLong(offset + KEY_LO, keyLo);
+            table.putLong(offset + USER_ID, userId);
+            table.putLong(offset + EXPIRES_AT, expiresAtMillis);
+            table.putInt(offset + ROLES_MASK, rolesMask);
+            // Written last, so a concurrent optimistic reader never sees a live slot with a half-written key.
+            table.putInt(offset + STATE, state);
+        }
+
+
+        private static ByteBuffer allocate(int slots) {
+            return ByteBuffer.allocateDirect(slots * SLOT_BYTES).order(ByteOrder.nativeOrder());
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.bankingapp.user_service.session;
+
+import com.bankingapp.user_service.cache.UserChange;
+import com.bankingapp.user_service.cache.UserChangeListener;
+import com.bankingapp.user_service.model.User;
+import com.bankingapp.user_service.repository.UserRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Optional;
+
+
+/**
+ * Issues and resolves opaque reference tokens, the alternative to JWTs when {@code app.token.mode=opaque}.
+ *
+ * <p>A token is 128 random bits, base64url-encoded into 22 characters (an HS512 JWT for a typical user is well
+ * over 200). The token itself carries no data: it is a key into the {@link OffHeapSessionStore}, which holds
+ * the user id, roles bitmask and expiry. Resolving a token is one SHA-256 and one hash table lookup.
+ * The store is keyed by the SHA-256 of the token rather than the token itself, so neither memory dumps nor
+ * the optional persistence file contain usable tokens.</p>
+ *
+ * <p>Sessions are revoked explicitly on logout and when the user is deleted. When a user is updated, their
+ * sessions are marked stale and re-checked against the database on next use, which picks up role changes and
+ * disabled accounts without logging the user out for every profile edit. If notifications may have been missed
+ * ({@link #onAllUsersChanged()}), every session is marked stale.</p>
+ *
+ * <p>If {@code app.token.opaque.persistence-file} is set, sessions are written to that file periodically and on
+ * shutdown and read back on startup, so a restart does not log everybody out. Restored sessions are treated as
+ * stale, since changes may have happened while the node was down.</p>
+ */
+
+
+@Component
+@ConditionalOnProperty(name = "app.token.mode", havingValue = "opaque")
+public class OpaqueTokenService implements UserChangeListener, SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(OpaqueTokenService.class);
+
+    private static final int TOKEN_BYTES = 16;
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final OffHeapSessionStore store;
+    private final UserRepository userRepository;
+    private final SecureRandom random = new SecureRandom();
+
+    @Value("${app.token.opaque.ttl-ms:${app.jwtExpirationMs}}")
+    private long ttlMs;
+
+    @Value("${app.token.opaque.persistence-file:}")
+    private String persistenceFile;
+
+    private volatile boolean running;
+
+
+    public OpaqueTokenService(UserRepository userRepository, MeterRegistry meterRegistry,
+                              @Value("${app.token.opaque.segments:64}") int segments,
+                              @Value("${app.token.opaque.initial-slots-per-segment:1024}") int initialSlotsPerSegment) {
+        this.userRepository = userRepository;
+        this.store = new OffHeapSessionStore(segments, initialSlotsPerSegment);
+
+        Gauge.builder("app.sessions.active", store, OffHeapSessionStore::size)
+                .description("Opaque token sessions held by this node").register(meterRegistry);
+        Gauge.builder("app.sessions.off-heap", store, OffHeapSessionStore::offHeapBytes)
+                .baseUnit("bytes").description("Native memory used by the session store").register(meterRegistry);
+    }
+
+
+    /**
+     * Creates a session for the user and returns its token.
+     */
+    public String issue(User user) {
+        byte[] token = new byte[TOKEN_BYTES];
+        random.nextBytes(token);
+
+        ByteBuffer key = key(token);
+        store.put(key.getLong(0), key.getLong(8), user.getId(), user.getRolesMask(), System.currentTimeMillis() + ttlMs);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+    }
+
+
+    /**
+     * @return The session for the token, or null if the token is unknown, expired, revoked or belongs to a user
+     *         who no longer exists or was disabled.
+     */
+    public Session resolve(String token) {
+        byte[] raw = decode(token);
+        if (raw == null) {
+            return null;
+        }
+
+        ByteBuffer key = key(raw);
+        long keyHi = key.getLong(0);
+        long keyLo = key.getLong(8);
+
+        Session session = store.get(keyHi, keyLo, System.currentTimeMillis());
+        if (session == null || !session.stale()) {
+            return session;
+        }
+
+        // The user changed since this session was issued: pick up the current roles, or revoke it.
+        // If the user changes again while we read them, the session stays stale and the next request re-checks it.
+        long staleMarks = store.staleMarks(keyLo);
+        Optional<User> user = userRepository.findById(session.userId());
+        if (user.isEmpty() || !user.get().isEnabled()) {
+            store.remove(keyHi, keyLo);
+            return null;
+        }
+        store.refresh(keyHi, keyLo, user.get().getRolesMask(), staleMarks);
+        return new Session(session.userId(), user.get().getRolesMask(), session.expiresAtMillis(), false);
+    }
+
+
+    /**
+     * Ends the session of the given token, e.g. on logout.
+     *
+     * @return true if there was such a session.
+     */
+    public boolean revoke(String token) {
+        byte[] raw = decode(token);
+        if (raw == null) {
+            return false;
+        }
+        ByteBuffer key = key(raw);
+        return store.remove(key.getLong(0), key.getLong(8));
+    }
+
+
+    /**
+     * @return true if the string has the shape of an opaque token (as opposed to a JWT, which contains dots).
+     */
+    public static boolean isOpaqueToken(String token) {
+        return token.length() == 22 && token.indexOf('.') < 0;
+    }
+
+
+    @Override
+    public void onUserChanged(UserChange change) {
+        if (change.isDelete()) {
+            store.removeUser(change.userId());
+        } else {
+            store.markStale(change.userId());
+        }
+    }
+
+
+    @Override
+    public void onAllUsersChanged() {
+        store.markStale(-1);
+    }
+
+
+    @Scheduled(fixedDelayString = "${app.token.opaque.purge-interval-ms:60000}")
+    void purgeAndPersist() {
+        store.purgeExpired(System.currentTimeMillis());
+        if (running) {
+            persist();
+        }
+    }
+
+
+    @Override
+    public void start() {
+        if (StringUtils.hasText(persistenceFile)) {
+            Path file = Path.of(persistenceFile);
+            if (Files.exists(file)) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                    int loaded = store.readFrom(in, System.currentTimeMillis(), true);
+                    logger.info("Restored {} sessions from {}", loaded, file);
+                } catch (IOException e) {
+                    logger.warn("Could not restore sessions from {}: {}", file, e.getMessage());
+                }
+            }
+        }
+        running = true;
+    }
+
+
+    @Override
+    public void stop() {
+        running = false;
+        persist();
+    }
+
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+
+    private void persist() {
+        if (!StringUtils.hasText(persistenceFile)) {
+            return;
+        }
+
+        // Write to a temporary file and move it into place, so a crash never leaves a truncated file behind.
+        Path file = Path.of(persistenceFile);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            store.writeTo(out, System.currentTimeMillis());
+        } catch (IOException e) {
+            logger.warn("Could not persist sessions to {}: {}", file, e.getMessage());
+            return;
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not persist sessions to {}: {}", file, e.getMessage());
+        }
+    }
+
+
+    private static byte[] decode(String token) {
+        if (token == null || !isOpaqueToken(token)) {
+            return null;
+        }
+        try {
+            return Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+
+    private static ByteBuffer key(byte[] token) {
+        return ByteBuffer.wrap(SHA_256.get().digest(token));
+    }
+}
@@ -0,0 +1,13 @@
+package com.bankingapp.user_service.session;
+
+
+/**
+ * What an opaque token resolves to.
+ *
+ * @param userId          The id of the user the token was issued to.
+ * @param rolesMask       The user's roles as a {@code RoleMask} bitmask.
+ * @param expiresAtMillis When the token stops being valid (epoch millis).
+ * @param stale           True if the user changed since the session was last checked against the database.
+ */
+public record Session(long userId, int rolesMask, long expiresAtMillis, boolean stale) {
+}
@@ -0,0 +1,14 @@
+package com.bankingapp.user_service.shard;
+
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+
+/**
+ * Thrown when a transaction that is already pinned to one shard asks for another (see {@link ShardRoutingContext}).
+ * This is a programming error: work on users of different shards must run in separate transactions.
+ */
+public class CrossShardTransactionException extends InvalidDataAccessApiUsageException {
+
+    public CrossShardTransactionException(int pinnedShard, int requestedShard) {
+        super("Transaction is pinned to shard " + pinnedShard + " and cannot use shard " + requestedShard);
+    }
+}
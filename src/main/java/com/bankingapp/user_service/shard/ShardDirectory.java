@@ -0,0 +1,131 @@
+package com.bankingapp.user_service.shard;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+
+
+/**
+ * The bucket -> shard map, read from the {@code shard_buckets} table on shard 0 and refreshed periodically.
+ *
+ * <p>The first node that starts with sharding enabled fills the table: buckets are spread round-robin over
+ * the configured shards if shard 0 holds no users yet, and all stay on shard 0 otherwise (to be spread later by
+ * the rebalancer, see {@link ShardRebalancer}). Users whose ids predate sharding always live on shard 0.</p>
+ *
+ * <p>While a bucket is being moved, its writes are refused with a transient error; reads keep going to the
+ * source shard until the move is complete.</p>
+ */
+
+
+public class ShardDirectory {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardDirectory.class);
+
+    private static final String SEED_SQL = """
+            INSERT INTO shard_buckets (bucket, shard_id)
+            SELECT b, CASE WHEN EXISTS (SELECT 1 FROM users) THEN 0 ELSE b % ? END
+              FROM generate_series(0, 1023) AS b
+             WHERE NOT EXISTS (SELECT 1 FROM shard_buckets)
+            ON CONFLICT (bucket) DO NOTHING
+            """;
+
+    private record Layout(int[] shardOfBucket, boolean[] moving) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int shardCount;
+    private volatile Layout layout;
+
+
+    public ShardDirectory(DataSource directoryDataSource, int shardCount) {
+        this.jdbcTemplate = new JdbcTemplate(directoryDataSource);
+        this.shardCount = shardCount;
+
+        int seeded = jdbcTemplate.update(SEED_SQL, shardCount);
+        if (seeded > 0) {
+            logger.info("Created the shard directory with {} buckets over {} shards", seeded, shardCount);
+        }
+        this.layout = load();
+    }
+
+
+    /**
+     * Re-reads the directory, so that moves made by the rebalancer are picked up.
+     * A directory that cannot be read or does not fit the configuration leaves the current one in place.
+     */
+    @Scheduled(fixedDelayString = "${app.sharding.directory-refresh-ms:5000}")
+    public void refresh() {
+        try {
+            layout = load();
+        } catch (DataAccessException | IllegalStateException e) {
+            logger.warn("Keeping the current shard directory, could not reload it: {}", e.getMessage());
+        }
+    }
+
+
+    private Layout load() {
+        int[] shardOfBucket = new int[ShardIds.BUCKETS];
+        boolean[] moving = new boolean[ShardIds.BUCKETS];
+        Arrays.fill(shardOfBucket, -1);
+
+        jdbcTemplate.query("SELECT bucket, shard_id, moving_to FROM shard_buckets", rs -> {
+            int bucket = rs.getInt(1);
+            shardOfBucket[bucket] = rs.getInt(2);
+            rs.getInt(3);
+            moving[bucket] = !rs.wasNull();
+        });
+
+        for (int bucket = 0; bucket < ShardIds.BUCKETS; bucket++) {
+            if (shardOfBucket[bucket] < 0 || shardOfBucket[bucket] >= shardCount) {
+                throw new IllegalStateException("Bucket " + bucket + " is on shard " + shardOfBucket[bucket]
+                        + ", but only " + shardCount + " shards are configured");
+            }
+        }
+        return new Layout(shardOfBucket, moving);
+    }
+
+
+    public int shardCount() {
+        return shardCount;
+    }
+
+
+    /**
+     * @param email A normalized email.
+     */
+    public int shardOfEmail(String email) {
+        return shardOfBucket(ShardIds.bucketOf(email));
+    }
+
+
+    public int shardOfId(long id) {
+        int bucket = ShardIds.bucketOf(id);
+        return bucket < 0 ? 0 : shardOfBucket(bucket);
+    }
+
+
+    public int shardOfBucket(int bucket) {
+        return layout.shardOfBucket()[bucket];
+    }
+
+
+    public boolean isMoving(int bucket) {
+        return layout.moving()[bucket];
+    }
+
+
+    /**
+     * @throws TransientDataAccessResourceException if the bucket is being moved to another shard right now.
+     */
+    public void checkWritable(int bucket) {
+        if (isMoving(bucket)) {
+            throw new TransientDataAccessResourceException("Bucket " + bucket + " is being moved to another shard, retry shortly");
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.bankingapp.user_service.shard;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+
+/**
+ * The layout of sharded user ids, and the hash that places a user in a bucket.
+ *
+ * <p>Every normalized email hashes to one of {@link #BUCKETS} buckets, and the {@link ShardDirectory} maps each
+ * bucket to a shard. Buckets never change; rebalancing moves whole buckets between shards. A user's id carries
+ * the bucket, so an id lookup finds the shard without knowing the email:</p>
+ *
+ * <pre>
+ *   bit 52      1 (a sharded id; ids below 2^52 predate sharding)
+ *   bits 42-51  bucket (0..1023)
+ *   bits 5-41   per-shard sequence value
+ *   bits 0-4    shard that created the id, so ids never collide when buckets move
+ * </pre>
+ *
+ * <p>All ids stay below 2^53, so they are exact in JavaScript clients. Ids are assigned by the
+ * {@code users_assign_sharded_id} trigger (see V11__sharding.sql); {@link #bucketOf(String)} must match its
+ * {@code user_bucket} SQL function, which is why the hash is a plain MD5 of the UTF-8 email.</p>
+ */
+
+
+public final class ShardIds {
+
+    public static final int BUCKETS = 1024;
+    public static final int MAX_SHARDS = 32;
+
+    static final long SHARDED_FLAG = 1L << 52;
+    static final int BUCKET_SHIFT = 42;
+
+    private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private ShardIds() {
+    }
+
+
+    /**
+     * @param email A normalized email.
+     * @return The bucket the email belongs to.
+     */
+    public static int bucketOf(String email) {
+        byte[] digest = MD5.get().digest(email.getBytes(StandardCharsets.UTF_8));
+        // The low 10 bits of the first four digest bytes, read big-endian (as the SQL function does).
+        return ((digest[2] & 0xFF) << 8 | (digest[3] & 0xFF)) & (BUCKETS - 1);
+    }
+
+
+    /**
+     * @return The bucket encoded in a sharded id, or -1 for an id that predates sharding.
+     */
+    public static int bucketOf(long id) {
+        if ((id & SHARDED_FLAG) == 0 || id >= SHARDED_FLAG << 1) {
+            return -1;
+        }
+        return (int) (id >>> BUCKET_SHIFT) & (BUCKETS - 1);
+    }
+
+
+    /**
+     * @return The smallest sharded id in the bucket; all ids of the bucket are in [first(bucket), first(bucket + 1)),
+     * and first(BUCKETS) is 2^53.
+     */
+    static long firstIdOf(int bucket) {
+        return SHARDED_FLAG + ((long) bucket << BUCKET_SHIFT);
+    }
+}
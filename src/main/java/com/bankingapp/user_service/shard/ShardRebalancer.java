@@ -0,0 +1,369 @@
+package com.bankingapp.user_service.shard;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+
+
+/**
+ * Moves buckets between shards until every shard holds the same number of buckets (give or take one), e.g. after
+ * a shard was added to {@code app.sharding.urls}. Runs instead of the web application with the {@code rebalance}
+ * profile and the same sharding settings as the application, then exits:
+ *
+ * <pre>
+ * java -jar user-service.jar --spring.profiles.active=rebalance --app.sharding.enabled=true --app.sharding.urls=...
+ * </pre>
+ *
+ * <p>The application keeps running while a bucket moves:</p>
+ * <ol>
+ *   <li>The bucket is marked as moving in the directory. Once every node has reloaded the directory
+ *       ({@code app.rebalance.settle-ms}), nobody writes to it any more; reads continue on the source shard.</li>
+ *   <li>Its users and their roles are copied to the target shard, keeping their ids, in batches.</li>
+ *   <li>The directory is switched to the target shard. After another settle period, when no node reads from the
+ *       source any more, the bucket is deleted there.</li>
+ * </ol>
+ *
+ * <p>Every step can be repeated, so running the tool again after an interruption finishes the interrupted move
+ * and cleans up rows left behind. Buckets holding users whose ids predate sharding cannot be found by id on any
+ * shard but 0, so they are never moved.</p>
+ */
+
+
+@Component
+@Profile("rebalance")
+public class ShardRebalancer implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardRebalancer.class);
+
+    private static final String COLUMNS =
+            "id, first_name, last_name, email, password, is_enabled, roles_mask, updated_at, version, last_login_at, login_count";
+
+    private static final String INSERT_USER = "INSERT INTO users (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) "
+            + "ON CONFLICT (id) DO NOTHING";
+
+    private static final String INSERT_ROLE = "INSERT INTO user_roles (user_id, role_id) "
+            + "SELECT ?, id FROM roles WHERE name = ? ON CONFLICT DO NOTHING";
+
+    private record Move(int bucket, int from, int to) {
+    }
+
+    private final ShardRoutingDataSource shards;
+    private final ShardDirectory directory;
+    private final ConfigurableApplicationContext context;
+
+    @Value("${app.rebalance.dry-run:false}")
+    private boolean dryRun;
+
+    @Value("${app.rebalance.max-buckets:0}")
+    private int maxBuckets;
+
+    @Value("${app.rebalance.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${app.rebalance.settle-ms:12000}")
+    private long settleMs;
+
+    @Value("${app.rebalance.exit-when-done:true}")
+    private boolean exitWhenDone;
+
+
+    public ShardRebalancer(ShardRoutingDataSource shards, ShardDirectory directory, ConfigurableApplicationContext context) {
+        this.shards = shards;
+        this.directory = directory;
+        this.context = context;
+    }
+
+
+    @Override
+    public void run(ApplicationArguments args) throws SQLException, InterruptedException {
+        long start = System.nanoTime();
+
+        // 1. Finish what an interrupted run left behind.
+        List<Move> moves = new ArrayList<>(pendingMoves());
+        if (!moves.isEmpty()) {
+            logger.info("Resuming {} interrupted bucket moves", moves.size());
+        }
+        if (!dryRun) {
+            deleteLeftovers();
+        }
+
+        // 2. Plan the moves that even out the number of buckets per shard.
+        List<Move> planned = plan(pinnedBuckets());
+        if (maxBuckets > 0 && planned.size() > maxBuckets) {
+            planned = planned.subList(0, maxBuckets);
+        }
+        moves.addAll(planned);
+        for (Move move : planned) {
+            logger.info("Plan: bucket {} from shard {} to shard {}", move.bucket(), move.from(), move.to());
+        }
+        if (dryRun || moves.isEmpty()) {
+            logger.info("{} bucket moves planned{}", planned.size(), dryRun ? " (dry run, nothing moved)" : "");
+            exit();
+            return;
+        }
+
+        // 3. Move them one by one.
+        long users = 0;
+        for (Move move : moves) {
+            users += move(move);
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        logger.info(String.format(Locale.ROOT, "Moved %d buckets (%d users) in %.1f s", moves.size(), users, seconds));
+        exit();
+    }
+
+
+    private void exit() {
+        if (exitWhenDone) {
+            System.exit(SpringApplication.exit(context, () -> 0));
+        }
+    }
+
+
+    private List<Move> pendingMoves() throws SQLException {
+        List<Move> moves = new ArrayList<>();
+        try (Connection connection = shards.shard(0).getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT bucket, shard_id, moving_to FROM shard_buckets WHERE moving_to IS NOT NULL ORDER BY bucket")) {
+            while (rs.next()) {
+                moves.add(new Move(rs.getInt(1), rs.getInt(2), rs.getInt(3)));
+            }
+        }
+        return moves;
+    }
+
+
+    /**
+     * Buckets that still hold users with pre-sharding ids. Those users can only be found by id on shard 0.
+     */
+    private BitSet pinnedBuckets() throws SQLException {
+        BitSet pinned = new BitSet(ShardIds.BUCKETS);
+        try (Connection connection = shards.shard(0).getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT DISTINCT user_bucket(email) FROM users WHERE id < ?")) {
+            statement.setLong(1, ShardIds.firstIdOf(0));
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    pinned.set(rs.getInt(1));
+                }
+            }
+        }
+        if (!pinned.isEmpty()) {
+            logger.info("{} buckets hold users created before sharding and stay on shard 0", pinned.cardinality());
+        }
+        return pinned;
+    }
+
+
+    /**
+     * Moves buckets from the shards with the most buckets to those with the fewest, highest bucket numbers first,
+     * until all shards hold 1024 / N buckets (the first 1024 % N shards one more).
+     */
+    private List<Move> plan(BitSet pinned) {
+        int shardCount = directory.shardCount();
+        List<Deque<Integer>> movable = new ArrayList<>();
+        int[] owned = new int[shardCount];
+        for (int shard = 0; shard < shardCount; shard++) {
+            movable.add(new ArrayDeque<>());
+        }
+        for (int bucket = 0; bucket < ShardIds.BUCKETS; bucket++) {
+            int shard = directory.shardOfBucket(bucket);
+            owned[shard]++;
+            if (!pinned.get(bucket) && !directory.isMoving(bucket)) {
+                movable.get(shard).push(bucket);
+            }
+        }
+
+        List<Move> moves = new ArrayList<>();
+        for (int to = 0; to < shardCount; to++) {
+            int target = ShardIds.BUCKETS / shardCount + (to < ShardIds.BUCKETS % shardCount ? 1 : 0);
+            for (int from = 0; from < shardCount && owned[to] < target; from++) {
+                int fromTarget = ShardIds.BUCKETS / shardCount + (from < ShardIds.BUCKETS % shardCount ? 1 : 0);
+                while (owned[from] > fromTarget && owned[to] < target && !movable.get(from).isEmpty()) {
+                    moves.add(new Move(movable.get(from).pop(), from, to));
+                    owned[from]--;
+                    owned[to]++;
+                }
+            }
+        }
+        return moves;
+    }
+
+
+    private long move(Move move) throws SQLException, InterruptedException {
+        long start = System.nanoTime();
+        DataSource source = shards.shard(move.from());
+        DataSource target = shards.shard(move.to());
+
+        // 1. Stop writes to the bucket on every node.
+        updateDirectory("UPDATE shard_buckets SET moving_to = ? WHERE bucket = ?", move.to(), move.bucket());
+        Thread.sleep(settleMs);
+
+        // 2. Copy it.
+        long copied = copy(move.bucket(), source, target);
+        long expected = count(source, move.bucket());
+        long present = count(target, move.bucket());
+        if (present < expected) {
+            throw new IllegalStateException("Bucket " + move.bucket() + ": " + expected + " users on shard " + move.from()
+                    + " but only " + present + " on shard " + move.to() + " after copying");
+        }
+
+        // 3. Switch reads and writes over, then drop the old copy once nobody reads it any more.
+        updateDirectory("UPDATE shard_buckets SET shard_id = ?, moving_to = NULL WHERE bucket = ?", move.to(), move.bucket());
+        Thread.sleep(settleMs);
+        delete(source, move.bucket());
+
+        logger.info(String.format(Locale.ROOT, "Moved bucket %d (%d users) from shard %d to shard %d in %.1f s",
+                move.bucket(), copied, move.from(), move.to(), (System.nanoTime() - start) / 1e9));
+        return copied;
+    }
+
+
+    private void updateDirectory(String sql, int shard, int bucket) throws SQLException {
+        try (Connection connection = shards.shard(0).getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setInt(1, shard);
+            statement.setInt(2, bucket);
+            statement.executeUpdate();
+        }
+        directory.refresh();
+    }
+
+
+    /**
+     * Copies the bucket batch by batch, each batch (users and their roles) in one target transaction.
+     * Rows that are already there, from an interrupted attempt, are skipped.
+     */
+    private long copy(int bucket, DataSource source, DataSource target) throws SQLException {
+        long copied = 0;
+        long after = ShardIds.firstIdOf(bucket) - 1;
+        long end = ShardIds.firstIdOf(bucket + 1);
+
+        try (Connection from = source.getConnection(); Connection to = target.getConnection()) {
+            to.setAutoCommit(false);
+            while (true) {
+                long lastId = after;
+                List<Long> ids = new ArrayList<>(batchSize);
+
+                try (PreparedStatement select = from.prepareStatement(
+                        "SELECT " + COLUMNS + " FROM users WHERE id > ? AND id < ? ORDER BY id LIMIT ?");
+                     PreparedStatement insert = to.prepareStatement(INSERT_USER)) {
+                    select.setLong(1, after);
+                    select.setLong(2, end);
+                    select.setInt(3, batchSize);
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next()) {
+                            for (int column = 1; column <= 11; column++) {
+                                insert.setObject(column, rs.getObject(column));
+                            }
+                            insert.addBatch();
+                            lastId = rs.getLong(1);
+                            ids.add(lastId);
+                        }
+                    }
+                    if (ids.isEmpty()) {
+                        break;
+                    }
+
+                    // Role grants of users that nobody has cached on the target; see V10__bulk_import.sql.
+                    try (Statement statement = to.createStatement()) {
+                        statement.execute("SET LOCAL app.bulk_import = 'on'");
+                    }
+                    insert.executeBatch();
+                }
+                copyRoles(from, to, after, lastId);
+                to.commit();
+
+                copied += ids.size();
+                after = lastId;
+            }
+        }
+        return copied;
+    }
+
+
+    private static void copyRoles(Connection from, Connection to, long after, long upTo) throws SQLException {
+        try (PreparedStatement select = from.prepareStatement(
+                "SELECT ur.user_id, r.name FROM user_roles ur JOIN roles r ON r.id = ur.role_id WHERE ur.user_id > ? AND ur.user_id <= ?");
+             PreparedStatement insert = to.prepareStatement(INSERT_ROLE)) {
+            select.setLong(1, after);
+            select.setLong(2, upTo);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    insert.setLong(1, rs.getLong(1));
+                    insert.setString(2, rs.getString(2));
+                    insert.addBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+    }
+
+
+    private static long count(DataSource dataSource, int bucket) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT count(*) FROM users WHERE id >= ? AND id < ?")) {
+            statement.setLong(1, ShardIds.firstIdOf(bucket));
+            statement.setLong(2, ShardIds.firstIdOf(bucket + 1));
+            try (ResultSet rs = statement.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+
+
+    private static long delete(DataSource dataSource, int bucket) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            long deleted;
+            try (PreparedStatement roles = connection.prepareStatement("DELETE FROM user_roles WHERE user_id >= ? AND user_id < ?");
+                 PreparedStatement users = connection.prepareStatement("DELETE FROM users WHERE id >= ? AND id < ?")) {
+                for (PreparedStatement statement : List.of(roles, users)) {
+                    statement.setLong(1, ShardIds.firstIdOf(bucket));
+                    statement.setLong(2, ShardIds.firstIdOf(bucket + 1));
+                }
+                roles.executeUpdate();
+                deleted = users.executeUpdate();
+            }
+            connection.commit();
+            return deleted;
+        }
+    }
+
+
+    /**
+     * Deletes the copies of buckets that a shard no longer owns, left behind by a run interrupted after the switch.
+     */
+    private void deleteLeftovers() throws SQLException {
+        for (int shard = 0; shard < directory.shardCount(); shard++) {
+            for (int bucket = 0; bucket < ShardIds.BUCKETS; bucket++) {
+                if (directory.shardOfBucket(bucket) != shard && !directory.isMoving(bucket)
+                        && count(shards.shard(shard), bucket) > 0) {
+                    logger.info("Deleting {} users of bucket {} left behind on shard {}",
+                            delete(shards.shard(shard), bucket), bucket, shard);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.bankingapp.user_service.shard;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Supplier;
+
+
+/**
+ * Thread-bound choice of the shard that the next connection is taken from (see {@link ShardRoutingDataSource}).
+ *
+ * <p>A transaction can only ever use one connection, so it is pinned to the first shard it touches: either the
+ * one named by {@link #onShard}, or shard 0 if its first statement was not routed at all. Asking for another
+ * shard inside the same transaction fails with {@link CrossShardTransactionException} instead of silently
+ * reading or writing the wrong database. The pin follows the transaction through suspension and is released
+ * when the transaction completes.</p>
+ */
+public final class ShardRoutingContext {
+
+    private static final ThreadLocal<Integer> SHARD = new ThreadLocal<>();
+
+    // Key of the transaction resource that holds the shard a transaction is pinned to.
+    private static final Object TRANSACTION_SHARD = new Object();
+
+    private ShardRoutingContext() {
+    }
+
+
+    /**
+     * Runs the given work with all connection lookups on this thread routed to the given shard.
+     *
+     * @throws CrossShardTransactionException if the current transaction is already pinned to another shard.
+     */
+    public static <T> T onShard(int shard, Supplier<T> work) {
+        pinTransaction(shard);
+
+        Integer previous = SHARD.get();
+        SHARD.set(shard);
+        try {
+            return work.get();
+        } finally {
+            // Restore the previous state so nested calls do not clear an outer choice.
+            if (previous == null) {
+                SHARD.remove();
+            } else {
+                SHARD.set(previous);
+            }
+        }
+    }
+
+
+    /**
+     * @return The shard the current transaction is pinned to, else the one chosen by {@link #onShard}, else null.
+     */
+    static Integer currentShard() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            Integer pinned = (Integer) TransactionSynchronizationManager.getResource(TRANSACTION_SHARD);
+            if (pinned != null) {
+                return pinned;
+            }
+        }
+        return SHARD.get();
+    }
+
+
+    /**
+     * Pins the current transaction, if any, to the shard. Does nothing outside a transaction.
+     */
+    static void pinTransaction(int shard) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+
+        Integer pinned = (Integer) TransactionSynchronizationManager.getResource(TRANSACTION_SHARD);
+        if (pinned == null) {
+            TransactionSynchronizationManager.bindResource(TRANSACTION_SHARD, shard);
+            TransactionSynchronizationManager.registerSynchronization(new PinSynchronization(shard));
+        } else if (pinned != shard) {
+            throw new CrossShardTransactionException(pinned, shard);
+        }
+    }
+
+
+    /**
+     * Keeps the pin attached to its transaction: unbound while the transaction is suspended, and released at the end.
+     */
+    private record PinSynchronization(int shard) implements TransactionSynchronization {
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResourceIfPossible(TRANSACTION_SHARD);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(TRANSACTION_SHARD, shard);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(TRANSACTION_SHARD);
+        }
+    }
+}
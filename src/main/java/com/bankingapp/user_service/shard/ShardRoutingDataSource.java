@@ -0,0 +1,63 @@
+package com.bankingapp.user_service.shard;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A routing DataSource that hands out connections to the shard chosen through {@link ShardRoutingContext}.
+ *
+ * <p>Like {@code ReadReplicaRoutingDataSource}, the lookup key is resolved when a physical connection is
+ * requested, so this DataSource must be wrapped in a {@code LazyConnectionDataSourceProxy}: the connection is
+ * then fetched on the first statement, after the repository layer has chosen the shard.</p>
+ *
+ * <p>Work that names no shard (Flyway, reference data such as roles) goes to shard 0. A transaction is pinned
+ * to whichever shard served its connection.</p>
+ */
+
+
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    private final List<DataSource> shards;
+
+
+    public ShardRoutingDataSource(List<DataSource> shards) {
+        this.shards = List.copyOf(shards);
+
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            targets.put(i, shards.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(0));
+        setLenientFallback(false);
+    }
+
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Integer shard = ShardRoutingContext.currentShard();
+        if (shard == null) {
+            shard = 0;
+        }
+        ShardRoutingContext.pinTransaction(shard);
+        return shard;
+    }
+
+
+    public int shardCount() {
+        return shards.size();
+    }
+
+
+    /**
+     * @return The shard's own DataSource, for work that must bypass routing (migrations, rebalancing).
+     */
+    public DataSource shard(int shard) {
+        return shards.get(shard);
+    }
+}
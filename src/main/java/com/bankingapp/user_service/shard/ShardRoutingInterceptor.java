@@ -0,0 +1,164 @@
+package com.bankingapp.user_service.shard;
+
+import com.bankingapp.user_service.model.User;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * Routes every {@code UserRepository} call to the shard that holds the user, so that the rest of the application
+ * does not know about shards at all.
+ *
+ * <ul>
+ *   <li>Lookups by email ({@code findByEmail}, {@code existsByEmail}) go to the shard of the email's bucket.
+ *       Emails must be normalized, as everywhere else.</li>
+ *   <li>Lookups by id ({@code findById}, ...) go to the shard of the bucket encoded in the id.</li>
+ *   <li>{@code save} and {@code delete} go to the shard of the user's id, or of its email for a new user.
+ *       Writes to a bucket that is being moved are refused.</li>
+ *   <li>Bulk lookups ({@code findAllById}, {@code findInfoByIdInOrEmailIn}) are split by shard, and each part
+ *       runs in its own read-only transaction; the results are concatenated.</li>
+ * </ul>
+ *
+ * <p>Any other repository method has no shard key and is refused rather than silently answered from one shard.</p>
+ */
+
+
+class ShardRoutingInterceptor implements MethodInterceptor {
+
+    private final ObjectProvider<ShardDirectory> directory;
+    private final ObjectProvider<PlatformTransactionManager> transactionManager;
+    private volatile TransactionTemplate partTransaction;
+
+
+    ShardRoutingInterceptor(ObjectProvider<ShardDirectory> directory, ObjectProvider<PlatformTransactionManager> transactionManager) {
+        this.directory = directory;
+        this.transactionManager = transactionManager;
+    }
+
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (invocation.getMethod().getDeclaringClass() == Object.class) {
+            return invocation.proceed();
+        }
+
+        ShardDirectory shards = directory.getObject();
+        Object[] args = invocation.getArguments();
+
+        return switch (invocation.getMethod().getName()) {
+            case "findByEmail", "existsByEmail" -> onShard(shards.shardOfEmail((String) args[0]), invocation);
+            case "findById", "existsById", "getReferenceById", "getById", "getOne" -> onShard(shards.shardOfId((Long) args[0]), invocation);
+            case "deleteById" -> {
+                checkWritable(shards, ShardIds.bucketOf((Long) args[0]));
+                yield onShard(shards.shardOfId((Long) args[0]), invocation);
+            }
+            case "save", "saveAndFlush", "delete" -> {
+                User user = (User) args[0];
+                int bucket = user.getId() != null ? ShardIds.bucketOf(user.getId()) : ShardIds.bucketOf(user.getEmail());
+                checkWritable(shards, bucket);
+                yield onShard(user.getId() != null ? shards.shardOfId(user.getId()) : shards.shardOfEmail(user.getEmail()), invocation);
+            }
+            case "findAllById" -> scatter(invocation, splitIds(shards, (Iterable<?>) args[0]), null);
+            case "findInfoByIdInOrEmailIn" -> scatter(invocation, splitIds(shards, (Collection<?>) args[0]),
+                    splitEmails(shards, (Collection<?>) args[1]));
+            default -> throw new UnsupportedOperationException(
+                    "UserRepository." + invocation.getMethod().getName() + " has no shard key and is not supported with sharding");
+        };
+    }
+
+
+    private static void checkWritable(ShardDirectory shards, int bucket) {
+        if (bucket >= 0) {
+            shards.checkWritable(bucket);
+        }
+    }
+
+
+    private static Object onShard(int shard, MethodInvocation invocation) {
+        return ShardRoutingContext.onShard(shard, () -> proceed(invocation));
+    }
+
+
+    /**
+     * Runs the method once per shard with that shard's share of the keys. Both maps are keyed by shard; a method
+     * with a single key collection passes null as {@code emailsByShard}.
+     */
+    private Object scatter(MethodInvocation invocation, Map<Integer, List<Object>> idsByShard, Map<Integer, List<Object>> emailsByShard) {
+        TreeMap<Integer, Object[]> argsByShard = new TreeMap<>();
+        idsByShard.forEach((shard, ids) -> argsByShard.put(shard, emailsByShard == null ? new Object[]{ids} : new Object[]{ids, List.of()}));
+        if (emailsByShard != null) {
+            emailsByShard.forEach((shard, emails) -> {
+                List<Object> ids = idsByShard.getOrDefault(shard, List.of());
+                argsByShard.put(shard, new Object[]{ids, emails});
+            });
+        }
+
+        ProxyMethodInvocation proxyInvocation = (ProxyMethodInvocation) invocation;
+        List<Object> results = new ArrayList<>();
+
+        // A single shard that the current transaction may use anyway does not need a transaction of its own.
+        Integer current = ShardRoutingContext.currentShard();
+        if (argsByShard.size() == 1 && (current == null || current.equals(argsByShard.firstKey()))) {
+            int shard = argsByShard.firstKey();
+            results.addAll((Collection<?>) onShard(shard, proxyInvocation.invocableClone(argsByShard.get(shard))));
+            return results;
+        }
+
+        TransactionTemplate transaction = partTransaction();
+        argsByShard.forEach((shard, shardArgs) -> results.addAll((Collection<?>) transaction.execute(
+                status -> onShard(shard, proxyInvocation.invocableClone(shardArgs)))));
+        return results;
+    }
+
+
+    private static Map<Integer, List<Object>> splitIds(ShardDirectory shards, Iterable<?> ids) {
+        Map<Integer, List<Object>> byShard = new TreeMap<>();
+        for (Object id : ids) {
+            byShard.computeIfAbsent(shards.shardOfId((Long) id), shard -> new ArrayList<>()).add(id);
+        }
+        return byShard;
+    }
+
+
+    private static Map<Integer, List<Object>> splitEmails(ShardDirectory shards, Collection<?> emails) {
+        Map<Integer, List<Object>> byShard = new TreeMap<>();
+        for (Object email : emails) {
+            byShard.computeIfAbsent(shards.shardOfEmail((String) email), shard -> new ArrayList<>()).add(email);
+        }
+        return byShard;
+    }
+
+
+    private TransactionTemplate partTransaction() {
+        TransactionTemplate template = partTransaction;
+        if (template == null) {
+            template = new TransactionTemplate(transactionManager.getObject());
+            template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            template.setReadOnly(true);
+            partTransaction = template;
+        }
+        return template;
+    }
+
+
+    private static Object proceed(MethodInvocation invocation) {
+        try {
+            return invocation.proceed();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.bankingapp.user_service.shard;
+
+import com.bankingapp.user_service.repository.UserRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import org.flywaydb.core.Flyway;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Spreads users over several databases ("shards") by a hash of their email (see {@link ShardIds}).
+ *
+ * <p>This configuration is only active when {@code app.sharding.enabled=true}. Shard 0 is the regular
+ * {@code spring.datasource.*} database; {@code app.sharding.urls} lists the others, in order, and they share its
+ * credentials. Every shard gets the full schema, and the {@code UserRepository} is wrapped by a
+ * {@link ShardRoutingInterceptor}, so callers keep using it exactly as before. Sharding replaces read replica
+ * routing; the two cannot be enabled together.</p>
+ *
+ * <p>Shards can be added by appending their URL to {@code app.sharding.urls} and running the
+ * {@link ShardRebalancer}. The order of the list must never change: every database records which shard it is,
+ * and startup fails if that does not match.</p>
+ */
+
+
+@Configuration
+@ConditionalOnProperty(name = "app.sharding.enabled", havingValue = "true")
+public class ShardingConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardingConfig.class);
+
+    @Value("${app.sharding.urls:}")
+    private List<String> shardUrls;
+
+    @Value("${app.sharding.pool-size:10}")
+    private int shardPoolSize;
+
+    @Value("${app.datasource.replicas.enabled:false}")
+    private boolean replicasEnabled;
+
+
+    /**
+     * Shard 0, built from the regular {@code spring.datasource.*} settings.
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource shardZeroDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("shard-0");
+        return dataSource;
+    }
+
+
+    @Bean
+    public ShardRoutingDataSource shardRoutingDataSource(HikariDataSource shardZeroDataSource, DataSourceProperties properties) {
+        if (replicasEnabled) {
+            throw new IllegalStateException("app.sharding.enabled and app.datasource.replicas.enabled cannot both be true");
+        }
+
+        List<DataSource> shards = new ArrayList<>();
+        shards.add(shardZeroDataSource);
+        for (String url : shardUrls) {
+            if (url.isBlank()) {
+                continue;
+            }
+            HikariDataSource shard = new HikariDataSource();
+            shard.setPoolName("shard-" + shards.size());
+            shard.setJdbcUrl(url.trim());
+            shard.setUsername(properties.determineUsername());
+            shard.setPassword(properties.determinePassword());
+            shard.setDriverClassName(properties.determineDriverClassName());
+            shard.setMaximumPoolSize(shardPoolSize);
+            shard.setConnectionTimeout(shardZeroDataSource.getConnectionTimeout());
+            shards.add(shard);
+        }
+        if (shards.size() > ShardIds.MAX_SHARDS) {
+            throw new IllegalStateException("At most " + ShardIds.MAX_SHARDS + " shards are supported, got " + shards.size());
+        }
+
+        ShardRoutingDataSource routing = new ShardRoutingDataSource(shards);
+        routing.afterPropertiesSet();
+        return routing;
+    }
+
+
+    /**
+     * The DataSource used by JPA and everything else in the application.
+     * The lazy proxy defers the routing decision until the first statement is executed.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ShardRoutingDataSource shardRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(shardRoutingDataSource);
+    }
+
+
+    /**
+     * Migrates every shard with the application's Flyway settings, then checks (or, the first time, records)
+     * which shard each database is. Archived users are not sharded, so the archive must be empty.
+     */
+    @Bean
+    public FlywayMigrationStrategy shardedFlywayMigrationStrategy(ShardRoutingDataSource shardRoutingDataSource) {
+        return flyway -> {
+            for (int shard = 0; shard < shardRoutingDataSource.shardCount(); shard++) {
+                DataSource dataSource = shardRoutingDataSource.shard(shard);
+                Flyway.configure().configuration(flyway.getConfiguration()).dataSource(dataSource).load().migrate();
+                registerIdentity(dataSource, shard);
+                checkNoArchivedUsers(dataSource, shard);
+            }
+            logger.info("Migrated {} shards", shardRoutingDataSource.shardCount());
+        };
+    }
+
+
+    private static void registerIdentity(DataSource dataSource, int shard) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("INSERT INTO shard_identity (shard_id) VALUES (?) ON CONFLICT DO NOTHING", shard);
+        int recorded = jdbcTemplate.queryForObject("SELECT shard_id FROM shard_identity", Integer.class);
+        if (recorded != shard) {
+            throw new IllegalStateException("The database configured as shard " + shard + " is shard " + recorded
+                    + "; the order of app.sharding.urls must not change");
+        }
+    }
+
+
+    private static void checkNoArchivedUsers(DataSource dataSource, int shard) {
+        Long archived = new JdbcTemplate(dataSource).queryForObject("SELECT count(*) FROM users_archive", Long.class);
+        if (archived != null && archived > 0) {
+            throw new IllegalStateException("Shard " + shard + " has " + archived + " archived users, which sharded "
+                    + "routing cannot find; move them back to the users table before enabling app.sharding.enabled");
+        }
+    }
+
+
+    @Bean
+    @DependsOn("flywayInitializer")
+    public ShardDirectory shardDirectory(ShardRoutingDataSource shardRoutingDataSource) {
+        return new ShardDirectory(shardRoutingDataSource.shard(0), shardRoutingDataSource.shardCount());
+    }
+
+
+    /**
+     * Adds the {@link ShardRoutingInterceptor} to the {@code UserRepository} proxy, inside its transaction advice.
+     * Static, like every BeanPostProcessor, so that it does not pull this configuration in early.
+     */
+    @Bean
+    static BeanPostProcessor shardRoutingUserRepositoryPostProcessor(ObjectProvider<ShardDirectory> shardDirectory,
+                                                                     ObjectProvider<PlatformTransactionManager> transactionManager) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean && factoryBean.getObjectType() == UserRepository.class) {
+                    ShardRoutingInterceptor interceptor = new ShardRoutingInterceptor(shardDirectory, transactionManager);
+                    factoryBean.addRepositoryFactoryCustomizer(factory ->
+                            factory.addRepositoryProxyPostProcessor((proxyFactory, repositoryInformation) -> proxyFactory.addAdvice(interceptor)));
+                }
+                return bean;
+            }
+        };
+    }
+}
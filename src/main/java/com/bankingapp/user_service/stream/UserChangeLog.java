@@ -0,0 +1,69 @@
+package com.bankingapp.user_service.stream;
+
+import com.bankingapp.user_service.cache.UserChange;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * The most recent user changes, numbered 1, 2, 3, ... in a fixed-size ring.
+ *
+ * <p>Every subscriber of the {@link UserChangeStream} reads from this one log at its own position, so the
+ * log costs the same whether one or a thousand subscribers follow it. Once a position has been overwritten
+ * it cannot be resumed from, and {@link #readAfter} says so.</p>
+ */
+final class UserChangeLog {
+
+    record Entry(long sequence, UserChange change) {
+    }
+
+    private final UserChange[] ring;
+    private final int mask;
+    private long lastSequence; // Guarded by this; 0 while the log is empty.
+
+
+    /**
+     * @param capacity The number of changes kept; rounded up to a power of two.
+     */
+    UserChangeLog(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.ring = new UserChange[size];
+        this.mask = size - 1;
+    }
+
+
+    synchronized long append(UserChange change) {
+        lastSequence++;
+        ring[(int) (lastSequence & mask)] = change;
+        return lastSequence;
+    }
+
+
+    synchronized long lastSequence() {
+        return lastSequence;
+    }
+
+
+    /**
+     * @return Up to {@code max} changes after {@code sequence}, oldest first; empty if there are none yet, and
+     *         {@code null} if changes right after {@code sequence} have already been overwritten.
+     */
+    synchronized List<Entry> readAfter(long sequence, int max) {
+        long oldest = Math.max(1, lastSequence - ring.length + 1);
+        if (sequence + 1 < oldest || sequence > lastSequence) {
+            return null;
+        }
+        long to = Math.min(lastSequence, sequence + max);
+        List<Entry> entries = new ArrayList<>((int) (to - sequence));
+        for (long s = sequence + 1; s <= to; s++) {
+            entries.add(new Entry(s, ring[(int) (s & mask)]));
+        }
+        return entries;
+    }
+
+
+    int capacity() {
+        return ring.length;
+    }
+}
@@ -0,0 +1,398 @@
+package com.bankingapp.user_service.stream;
+
+import com.bankingapp.user_service.cache.PgNotifyUserChangeSubscriber;
+import com.bankingapp.user_service.cache.UserChange;
+import com.bankingapp.user_service.cache.UserChangeListener;
+import com.bankingapp.user_service.dto.UserChangeEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Streams user changes to other services as Server-Sent Events ({@code GET /api/users/changes}), so that they can
+ * drop cached user data (e.g. a disabled user or revoked roles) as soon as it changes instead of polling.
+ *
+ * <p>The changes come from the same {@code user_changes} notifications that keep this node's caches coherent
+ * (see {@link PgNotifyUserChangeSubscriber}), and are appended once to a bounded {@link UserChangeLog}.
+ * Subscribers only hold a position in that log: a small pool of dispatcher threads writes each subscriber the
+ * changes after its position, one subscriber at a time, so the cost of a change is one append plus one
+ * write per subscriber.</p>
+ *
+ * <p>Event ids are positions in this node's log. A client that reconnects with {@code Last-Event-ID} resumes
+ * right after it. When that is impossible (the id comes from another node or from before a restart, or it is
+ * older than the log), and whenever a subscriber reads so slowly that the log laps it, the subscriber gets an
+ * {@code ALL} event and continues from the end of the log: nothing is buffered per subscriber, so a slow
+ * consumer cannot make this node run out of memory.</p>
+ *
+ * <p>Writes block until the client has taken the data. A client that stops reading would hold a dispatcher
+ * thread until the container's own write timeout, so every write has a deadline
+ * ({@code app.user-changes.send-timeout-ms}): a subscriber whose write is still in progress after it is dropped,
+ * and the dispatcher gets a thread in place of the one stuck in the write until that write returns. The emitter
+ * cannot be completed while its write is in progress, so it is completed with an error once the write returns.</p>
+ */
+
+
+@Component
+public class UserChangeStream implements UserChangeListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserChangeStream.class);
+
+    // After this many events, a subscriber's dispatcher thread moves on to other subscribers.
+    private static final int MAX_EVENTS_PER_DRAIN = 256;
+
+    // Values of Subscriber.sendStartedNanos other than the start time of the write in progress.
+    private static final long NOT_SENDING = Long.MIN_VALUE;
+    private static final long STALLED = Long.MIN_VALUE + 1;
+
+    private final UserChangeLog log;
+    // Prefix of every event id, different on every node and after every restart.
+    private final String epoch = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ThreadPoolExecutor dispatcher;
+    private final int maxSubscribers;
+    private final long streamTimeoutMs;
+    private final long sendTimeoutMs;
+
+    private final Counter resets;
+    private final Counter rejected;
+    private final Counter stalled;
+
+
+    public UserChangeStream(MeterRegistry meterRegistry,
+                            @Value("${app.user-changes.replay-size:4096}") int replaySize,
+                            @Value("${app.user-changes.max-subscribers:1000}") int maxSubscribers,
+                            @Value("${app.user-changes.stream-timeout-ms:1800000}") long streamTimeoutMs,
+                            @Value("${app.user-changes.dispatch-threads:4}") int dispatchThreads,
+                            @Value("${app.user-changes.send-timeout-ms:10000}") long sendTimeoutMs) {
+        this.log = new UserChangeLog(replaySize);
+        this.maxSubscribers = maxSubscribers;
+        this.streamTimeoutMs = streamTimeoutMs;
+        this.sendTimeoutMs = sendTimeoutMs;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.dispatcher = new ThreadPoolExecutor(dispatchThreads, dispatchThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "user-change-stream-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Gauge.builder("app.user-changes.subscribers", subscribers, Set::size)
+                .description("Open user change streams").register(meterRegistry);
+        this.resets = Counter.builder("app.user-changes.resets")
+                .description("Subscribers told to drop everything because they could not resume or fell behind")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("app.user-changes.rejected")
+                .description("Subscriptions rejected because app.user-changes.max-subscribers was reached")
+                .register(meterRegistry);
+        this.stalled = Counter.builder("app.user-changes.stalled")
+                .description("Subscribers dropped because a write to them took longer than app.user-changes.send-timeout-ms")
+                .register(meterRegistry);
+    }
+
+
+    /**
+     * Opens a stream.
+     *
+     * @param lastEventId The id of the last event the client received, or {@code null} for a new client.
+     * @param userId      The id of the subscribing user, whose stream is closed when they change (so that they
+     *                    reconnect and are authenticated again), or {@code null}.
+     * @return The stream, or {@code null} if this node has reached its subscriber limit.
+     */
+    public SseEmitter subscribe(String lastEventId, Long userId) {
+        if (subscribers.size() >= maxSubscribers) {
+            rejected.increment();
+            return null;
+        }
+
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        Subscriber subscriber = new Subscriber(emitter, userId);
+
+        long resumeAfter = parseSequence(lastEventId);
+        if (resumeAfter >= 0 && log.readAfter(resumeAfter, 0) != null) {
+            subscriber.position = resumeAfter;
+        } else {
+            // New clients get ALL too: it tells them where they are, and they have nothing cached to drop anyway.
+            subscriber.position = log.lastSequence();
+            subscriber.resetPending = true;
+            if (lastEventId != null) {
+                resets.increment();
+            }
+        }
+
+        emitter.onCompletion(() -> subscriber.closed(null));
+        emitter.onError(subscriber::closed);
+        emitter.onTimeout(emitter::complete);  // The client reconnects and resumes.
+        subscribers.add(subscriber);
+        subscriber.signal();
+        return emitter;
+    }
+
+
+    @Override
+    public void onUserChanged(UserChange change) {
+        log.append(change);
+        subscribers.forEach(Subscriber::signal);
+    }
+
+
+    @Override
+    public void onAllUsersChanged() {
+        log.append(new UserChange(UserChange.ALL, 0, ""));
+        subscribers.forEach(Subscriber::signal);
+    }
+
+
+    /**
+     * Sends a comment to every subscriber that has no event to send right now, so that idle streams are not
+     * closed by proxies and disconnected clients are noticed.
+     */
+    @Scheduled(fixedDelayString = "${app.user-changes.heartbeat-ms:15000}")
+    public void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.heartbeatDue.set(true);
+            subscriber.signal();
+        }
+    }
+
+
+    /**
+     * Drops every subscriber whose write has been in progress for longer than {@code app.user-changes.send-timeout-ms},
+     * and replaces the dispatcher thread stuck in that write until it returns.
+     */
+    @Scheduled(fixedDelayString = "${app.user-changes.send-timeout-ms:10000}")
+    public void dropStalledSubscribers() {
+        long now = System.nanoTime();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.dropIfStalled(now);
+        }
+    }
+
+
+    // The number of dispatcher threads, including those standing in for threads stuck in a stalled write.
+    int dispatchThreads() {
+        return dispatcher.getMaximumPoolSize();
+    }
+
+
+    private synchronized void resizeDispatcher(int delta) {
+        int size = dispatcher.getMaximumPoolSize() + delta;
+        // The core size may never exceed the maximum.
+        if (delta > 0) {
+            dispatcher.setMaximumPoolSize(size);
+            dispatcher.setCorePoolSize(size);
+        } else {
+            dispatcher.setCorePoolSize(size);
+            dispatcher.setMaximumPoolSize(size);
+        }
+    }
+
+
+    @PreDestroy
+    void closeAll() {
+        dispatcher.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+    }
+
+
+    private String eventId(long sequence) {
+        return epoch + "-" + sequence;
+    }
+
+
+    // -1 if the id is missing, malformed, or was not issued by this node since its last start.
+    private long parseSequence(String eventId) {
+        if (eventId == null) {
+            return -1;
+        }
+        int separator = eventId.lastIndexOf('-');
+        if (separator < 0 || !epoch.equals(eventId.substring(0, separator))) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(eventId.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+
+    private static UserChangeEvent toEvent(UserChange change) {
+        return change.affectsAllUsers()
+                ? new UserChangeEvent(UserChange.ALL, null, null)
+                : new UserChangeEvent(change.operation(), change.userId(), change.email());
+    }
+
+
+    /**
+     * One open stream. {@link #drain()} runs on at most one dispatcher thread at a time: {@link #signal()} only
+     * schedules it when the work counter goes from 0 to 1, and the running drain loops until it has seen every
+     * signal. Its events are therefore written in order, never concurrently.
+     */
+    private final class Subscriber {
+
+        final SseEmitter emitter;
+        final Long userId;
+        final AtomicBoolean heartbeatDue = new AtomicBoolean();
+        private final AtomicInteger work = new AtomicInteger();
+        // When the write in progress started, NOT_SENDING, or STALLED once the subscriber was dropped for it.
+        private final AtomicLong sendStartedNanos = new AtomicLong(NOT_SENDING);
+        private volatile boolean closed;
+
+        // Only used by the draining thread (and before the first signal).
+        long position;
+        boolean resetPending;
+
+        Subscriber(SseEmitter emitter, Long userId) {
+            this.emitter = emitter;
+            this.userId = userId;
+        }
+
+
+        void signal() {
+            if (!closed && work.getAndIncrement() == 0) {
+                schedule();
+            }
+        }
+
+
+        private void schedule() {
+            try {
+                dispatcher.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                closed(e);  // Shutting down.
+            }
+        }
+
+
+        private void drain() {
+            int missed = 1;
+            while (!closed) {
+                boolean more;
+                try {
+                    more = sendAvailable();
+                } catch (IOException | IllegalStateException e) {
+                    // The client went away (or the stream was completed meanwhile).
+                    closed(e);
+                    emitter.completeWithError(e);
+                    return;
+                }
+                if (more) {
+                    schedule();  // Let the other subscribers have the thread; we keep our claim on the work counter.
+                    return;
+                }
+                missed = work.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+
+        // Returns whether more events are waiting.
+        private boolean sendAvailable() throws IOException {
+            boolean sent = false;
+            if (resetPending) {
+                resetPending = false;
+                sendAll(position);
+                sent = true;
+            }
+
+            List<UserChangeLog.Entry> entries = log.readAfter(position, MAX_EVENTS_PER_DRAIN);
+            if (entries == null) {
+                // Lapped by the log: the changes we have not sent are gone.
+                resets.increment();
+                position = log.lastSequence();
+                sendAll(position);
+                return false;
+            }
+
+            for (UserChangeLog.Entry entry : entries) {
+                send(SseEmitter.event().id(eventId(entry.sequence())).data(toEvent(entry.change()), MediaType.APPLICATION_JSON));
+                position = entry.sequence();
+                sent = true;
+
+                if (userId != null && entry.change().userId() == userId) {
+                    // The subscriber's own account changed (e.g. disabled); make them authenticate again.
+                    closed(null);
+                    emitter.complete();
+                    return false;
+                }
+            }
+
+            if (heartbeatDue.getAndSet(false) && !sent) {
+                send(SseEmitter.event().comment("keep-alive"));
+            }
+            return entries.size() == MAX_EVENTS_PER_DRAIN;
+        }
+
+
+        private void sendAll(long sequence) throws IOException {
+            send(SseEmitter.event().id(eventId(sequence)).data(new UserChangeEvent(UserChange.ALL, null, null), MediaType.APPLICATION_JSON));
+        }
+
+
+        private void send(SseEmitter.SseEventBuilder event) throws IOException {
+            sendStartedNanos.set(System.nanoTime());
+            boolean dropped;
+            try {
+                emitter.send(event);
+            } finally {
+                dropped = sendStartedNanos.getAndSet(NOT_SENDING) == STALLED;
+                if (dropped) {
+                    resizeDispatcher(-1);  // This thread is back; the one standing in for it is no longer needed.
+                }
+            }
+            if (dropped) {
+                throw new IOException("Write to subscriber took longer than " + sendTimeoutMs + " ms");
+            }
+        }
+
+
+        // Called by the watchdog. The compare-and-set decides between it and the write returning in time.
+        void dropIfStalled(long now) {
+            long started = sendStartedNanos.get();
+            if (started == NOT_SENDING || started == STALLED || now - started < TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs)
+                    || !sendStartedNanos.compareAndSet(started, STALLED)) {
+                return;
+            }
+            stalled.increment();
+            resizeDispatcher(1);
+            closed(null);
+            logger.warn("Dropped a user change subscriber that has not taken a write for {} ms", sendTimeoutMs);
+        }
+
+
+        void closed(Throwable error) {
+            closed = true;
+            subscribers.remove(this);
+            if (error != null) {
+                logger.debug("User change stream closed: {}", error.getMessage());
+            }
+        }
+    }
+}
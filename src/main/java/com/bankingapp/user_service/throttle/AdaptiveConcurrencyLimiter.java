@@ -0,0 +1,161 @@
+package com.bankingapp.user_service.throttle;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * A concurrency limit that adapts to observed latency (a simplified "gradient" limiter).
+ *
+ * <p>The limiter keeps two latency averages: a long-term one that tracks what latency looks like
+ * when the service is healthy, and the average of the most recent sample window. When recent latency
+ * rises above the long-term baseline, requests are queueing somewhere (CPU, connection pool, BCrypt),
+ * so the limit shrinks in proportion. When latency is back at the baseline, the limit grows again by
+ * roughly the square root of the current limit per window. Errors reported by {@link #release} count
+ * as an overload signal and halve the limit.</p>
+ *
+ * <p>{@link #tryAcquire()} and {@link #release} are lock-free. The limit is recalculated at most once per
+ * sample window, by whichever thread notices that the window has ended.</p>
+ */
+
+
+public class AdaptiveConcurrencyLimiter {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long windowNanos;
+    private final double tolerance;     // How much slower than the baseline still counts as healthy (e.g. 1.5x).
+    private final double smoothing;     // How far each window moves the limit towards its new target (0..1].
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+
+    // Current sample window.
+    private final AtomicLong windowStart;
+    private final LongAdder windowRttSum = new LongAdder();
+    private final LongAdder windowSamples = new LongAdder();
+    private final LongAdder windowDrops = new LongAdder();
+    private volatile int windowMaxInFlight;
+
+    // Long-term baseline, only touched by the thread that closes a window.
+    private double longRttNanos;
+
+    private final LongAdder rejected = new LongAdder();
+
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long windowMillis,
+                                      double tolerance, double smoothing) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(initialLimit, maxLimit));
+        this.windowNanos = windowMillis * 1_000_000L;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.windowStart = new AtomicLong(System.nanoTime());
+    }
+
+
+    /**
+     * Claims a slot for one request.
+     *
+     * @return true if the request may proceed, in which case {@link #release} must be called when it is done;
+     *         false if the limit is reached and the request should be rejected.
+     */
+    public boolean tryAcquire() {
+        int current = inFlight.incrementAndGet();
+        if (current > limit) {
+            inFlight.decrementAndGet();
+            rejected.increment();
+            return false;
+        }
+        if (current > windowMaxInFlight) {
+            windowMaxInFlight = current; // A racy maximum is fine; it is only used as a hint.
+        }
+        return true;
+    }
+
+
+    /**
+     * Returns the slot claimed by {@link #tryAcquire()} and records how the request went.
+     *
+     * @param rttNanos How long the request took.
+     * @param dropped  True if the request failed in a way that suggests overload (e.g. a 5xx or a timeout).
+     */
+    public void release(long rttNanos, boolean dropped) {
+        inFlight.decrementAndGet();
+
+        if (dropped) {
+            windowDrops.increment();
+        } else {
+            windowRttSum.add(rttNanos);
+            windowSamples.increment();
+        }
+
+        long start = windowStart.get();
+        long now = System.nanoTime();
+        if (now - start >= windowNanos && windowStart.compareAndSet(start, now)) {
+            closeWindow();
+        }
+    }
+
+
+    /**
+     * Returns the slot claimed by {@link #tryAcquire()} without recording anything, for a request whose outcome
+     * says nothing about this node's capacity.
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+
+    // Only one thread at a time gets here (guarded by the CAS on windowStart).
+    private void closeWindow() {
+        long samples = windowSamples.sumThenReset();
+        long rttSum = windowRttSum.sumThenReset();
+        long drops = windowDrops.sumThenReset();
+        int maxInFlight = windowMaxInFlight;
+        windowMaxInFlight = 0;
+
+        int current = limit;
+        double target;
+
+        if (drops > 0) {
+            // Errors are the strongest overload signal: back off multiplicatively.
+            target = current / 2.0;
+        } else if (samples == 0) {
+            return;
+        } else {
+            double shortRtt = (double) rttSum / samples;
+            longRttNanos = longRttNanos == 0 ? shortRtt : longRttNanos * 0.95 + shortRtt * 0.05;
+
+            // gradient < 1 when recent latency is above the (tolerated) baseline.
+            double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / shortRtt));
+
+            // Only grow if we actually used the current limit; an idle service learns nothing about capacity.
+            double headroom = maxInFlight * 2 >= current ? Math.sqrt(current) : 0;
+            target = current * gradient + headroom;
+
+            // Let the baseline recover slowly if latency has been high for a long time (e.g. a slower dependency).
+            if (gradient < 1.0) {
+                longRttNanos = longRttNanos * 0.99 + shortRtt * 0.01;
+            }
+        }
+
+        double smoothed = current * (1 - smoothing) + target * smoothing;
+        limit = (int) Math.max(minLimit, Math.min(maxLimit, Math.round(smoothed)));
+    }
+
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+}
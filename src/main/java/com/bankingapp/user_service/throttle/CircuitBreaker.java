@@ -0,0 +1,125 @@
+package com.bankingapp.user_service.throttle;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * A consecutive-failure circuit breaker.
+ *
+ * <p>While CLOSED, every call is let through. After {@code failureThreshold} calls in a row failed or took
+ * longer than the slow-call threshold, the breaker OPENs and rejects every call for {@code openMillis}, so a
+ * struggling dependency gets room to recover instead of a growing queue of callers. After that, the first
+ * caller becomes a HALF_OPEN trial: if it succeeds the breaker closes again, otherwise it re-opens for another
+ * period. Other callers are rejected while the trial runs.</p>
+ *
+ * <p>Callers report every call they were let through to {@link #onResult}, including the ones that failed.
+ * All transitions are lock-free; the state and the time it was entered change together in one CAS.</p>
+ */
+
+
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private record Status(State state, long sinceNanos) {
+    }
+
+    private static final Status CLOSED = new Status(State.CLOSED, 0);
+
+    private final int failureThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+
+    private final AtomicReference<Status> status = new AtomicReference<>(CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder opened = new LongAdder();
+
+
+    public CircuitBreaker(int failureThreshold, long slowCallMillis, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.slowCallNanos = slowCallMillis * 1_000_000L;
+        this.openNanos = openMillis * 1_000_000L;
+    }
+
+
+    /**
+     * Asks whether a call may go ahead.
+     *
+     * @return true if it may, in which case its outcome must be reported to {@link #onResult};
+     *         false if the breaker is open and the caller should fail fast.
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(System.nanoTime());
+    }
+
+
+    /**
+     * Reports the outcome of a call that {@link #tryAcquire()} let through.
+     *
+     * @param elapsedNanos How long the call took. A call slower than the slow-call threshold counts as a failure.
+     * @param failed       Whether the call failed.
+     */
+    public void onResult(long elapsedNanos, boolean failed) {
+        onResult(elapsedNanos, failed, System.nanoTime());
+    }
+
+
+    boolean tryAcquire(long now) {
+        Status current = status.get();
+        if (current.state() == State.CLOSED) {
+            return true;
+        }
+
+        // Exactly one caller wins the CAS and becomes the trial; everybody else keeps failing fast.
+        if (current.state() == State.OPEN && now - current.sinceNanos() >= openNanos
+                && status.compareAndSet(current, new Status(State.HALF_OPEN, now))) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+
+    void onResult(long elapsedNanos, boolean failed, long now) {
+        if (!failed && elapsedNanos <= slowCallNanos) {
+            consecutiveFailures.set(0);
+            Status current = status.get();
+            if (current.state() == State.HALF_OPEN) {
+                status.compareAndSet(current, CLOSED);
+            }
+            return;
+        }
+
+        Status current = status.get();
+        if (current.state() == State.HALF_OPEN) {
+            open(current, now); // The trial failed.
+        } else if (consecutiveFailures.incrementAndGet() >= failureThreshold && current.state() == State.CLOSED) {
+            open(current, now);
+        }
+    }
+
+
+    private void open(Status expected, long now) {
+        if (status.compareAndSet(expected, new Status(State.OPEN, now))) {
+            consecutiveFailures.set(0);
+            opened.increment();
+        }
+    }
+
+
+    public State state() {
+        return status.get().state();
+    }
+
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    public long openedCount() {
+        return opened.sum();
+    }
+}
@@ -0,0 +1,74 @@
+package com.bankingapp.user_service.throttle;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+
+/**
+ * Creates the adaptive concurrency limiters for the "auth" and "api" lanes and registers
+ * {@link ConcurrencyLimitFilter} in front of every other filter, including Spring Security's.
+ */
+
+
+@Configuration
+@ConditionalOnProperty(name = "app.concurrency-limit.enabled", havingValue = "true", matchIfMissing = true)
+public class ConcurrencyLimitConfig {
+
+    @Value("${app.concurrency-limit.window-ms:1000}")
+    private long windowMs;
+
+    @Value("${app.concurrency-limit.tolerance:1.5}")
+    private double tolerance;
+
+    @Value("${app.concurrency-limit.smoothing:0.2}")
+    private double smoothing;
+
+
+    @Bean
+    public AdaptiveConcurrencyLimiter authLaneLimiter(
+            @Value("${app.concurrency-limit.auth.initial-limit:16}") int initial,
+            @Value("${app.concurrency-limit.auth.min-limit:2}") int min,
+            @Value("${app.concurrency-limit.auth.max-limit:64}") int max,
+            MeterRegistry meterRegistry) {
+        return registerMetrics(new AdaptiveConcurrencyLimiter(initial, min, max, windowMs, tolerance, smoothing), "auth", meterRegistry);
+    }
+
+
+    @Bean
+    public AdaptiveConcurrencyLimiter apiLaneLimiter(
+            @Value("${app.concurrency-limit.api.initial-limit:100}") int initial,
+            @Value("${app.concurrency-limit.api.min-limit:10}") int min,
+            @Value("${app.concurrency-limit.api.max-limit:400}") int max,
+            MeterRegistry meterRegistry) {
+        return registerMetrics(new AdaptiveConcurrencyLimiter(initial, min, max, windowMs, tolerance, smoothing), "api", meterRegistry);
+    }
+
+
+    @Bean
+    public FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilter(AdaptiveConcurrencyLimiter authLaneLimiter,
+                                                                                 AdaptiveConcurrencyLimiter apiLaneLimiter) {
+        FilterRegistrationBean<ConcurrencyLimitFilter> registration =
+                new FilterRegistrationBean<>(new ConcurrencyLimitFilter(authLaneLimiter, apiLaneLimiter));
+        // Spring Security's filter chain is registered at order -100; we must run before it.
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+
+
+    private static AdaptiveConcurrencyLimiter registerMetrics(AdaptiveConcurrencyLimiter limiter, String lane, MeterRegistry registry) {
+        Gauge.builder("app.concurrency.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                .tag("lane", lane).description("Current adaptive concurrency limit").register(registry);
+        Gauge.builder("app.concurrency.in-flight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                .tag("lane", lane).description("Requests currently being processed").register(registry);
+        FunctionCounter.builder("app.concurrency.rejected", limiter, AdaptiveConcurrencyLimiter::getRejectedCount)
+                .tag("lane", lane).description("Requests rejected with 503").register(registry);
+        return limiter;
+    }
+}
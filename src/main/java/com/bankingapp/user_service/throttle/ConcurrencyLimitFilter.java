@@ -0,0 +1,90 @@
+package com.bankingapp.user_service.throttle;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+
+/**
+ * Sheds load with 503 before any expensive work is done, using one adaptive limiter per lane.
+ *
+ * <p>The "auth" lane covers {@code /api/auth/**}, which is dominated by BCrypt, and the "api" lane
+ * covers everything else. Because each lane has its own limit, a login surge can only exhaust its own lane
+ * and cannot starve authenticated API traffic (and the other way round).</p>
+ *
+ * <p>This filter is registered ahead of Spring Security's filter chain (see {@link ConcurrencyLimitConfig}),
+ * so a rejected request costs neither token parsing nor a user lookup.</p>
+ */
+
+
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private static final String USER_STORE_REFUSAL = ConcurrencyLimitFilter.class.getName() + ".USER_STORE_REFUSAL";
+
+    private final AdaptiveConcurrencyLimiter authLane;
+    private final AdaptiveConcurrencyLimiter apiLane;
+
+    public ConcurrencyLimitFilter(AdaptiveConcurrencyLimiter authLane, AdaptiveConcurrencyLimiter apiLane) {
+        this.authLane = authLane;
+        this.apiLane = apiLane;
+    }
+
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+
+        AdaptiveConcurrencyLimiter lane = request.getRequestURI().startsWith("/api/auth/") ? authLane : apiLane;
+
+        // 1. Reject immediately if the lane is full. The client should retry shortly, ideally elsewhere.
+        if (!lane.tryAcquire()) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader("Retry-After", "1");
+            response.setContentType("text/plain");
+            response.getWriter().write("Server is busy, please retry.");
+            return;
+        }
+
+        // 2. Otherwise run the request and feed its latency (or failure) back into the limiter.
+        long start = System.nanoTime();
+        boolean dropped = true;
+        boolean refused = false;
+        try {
+            filterChain.doFilter(request, response);
+            refused = request.getAttribute(USER_STORE_REFUSAL) != null;
+            dropped = response.getStatus() >= 500;
+        } finally {
+            if (refused) {
+                lane.release();
+            } else {
+                lane.release(System.nanoTime() - start, dropped);
+            }
+        }
+    }
+
+
+    /**
+     * Marks the request as refused because the user store is unavailable, for whoever answers it with 503.
+     *
+     * <p>Such a refusal is not overload of this node, and the user store's own circuit breaker deals with it:
+     * counting it as a drop would shrink the limit to its minimum during a database outage and throttle the
+     * requests the principal cache can still serve. Any other 5xx, whatever its headers, still counts.</p>
+     */
+    public static void markUserStoreRefusal(HttpServletRequest request) {
+        request.setAttribute(USER_STORE_REFUSAL, Boolean.TRUE);
+    }
+
+
+    // Health checks must answer even when the node is saturated, otherwise the load balancer would remove it.
+    // Change streams stay open for many minutes while costing next to nothing; their "latency" would only
+    // confuse the limiter. The number of streams has its own limit (app.user-changes.max-subscribers).
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        return uri.startsWith("/actuator/health") || uri.equals("/api/users/changes");
+    }
+}
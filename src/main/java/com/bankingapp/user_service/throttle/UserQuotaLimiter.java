@@ -0,0 +1,198 @@
+package com.bankingapp.user_service.throttle;
+
+import com.bankingapp.user_service.model.Role;
+import com.bankingapp.user_service.model.RoleMask;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Per-user request quotas for authenticated API calls, with a higher quota for admins and service accounts.
+ *
+ * <p>Each user has a token bucket implemented as GCRA (generic cell rate algorithm): the whole bucket is
+ * one {@link AtomicLong} holding the "theoretical arrival time" (TAT) of the next request. A request is
+ * allowed if it would not push the TAT more than one burst ahead of now, and it is recorded with a single
+ * CAS. Refill is implicit in the passage of time, so there is no background refill and no lock.</p>
+ *
+ * <p>A bucket whose TAT is in the past is full, which is exactly the state of a bucket that does not exist.
+ * The TAT never runs more than one burst ahead of the last request, so a bucket that has not been touched for
+ * the longest burst tolerance is full and expires without changing behaviour. The buckets are additionally
+ * capped at {@code app.quota.max-tracked-users}; when all of them are in use, Caffeine evicts one in O(1) to
+ * make room, so a new user is always metered. An evicted bucket that was not yet full gives its user a fresh
+ * burst, which is counted as {@code app.quota.evicted}.</p>
+ */
+
+
+@Component
+public class UserQuotaLimiter {
+
+    private final boolean enabled;
+    private final Quota userQuota;
+    private final Quota adminQuota;
+
+    private final Ticker ticker;
+    private final Cache<Long, Bucket> buckets;
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+
+    @Autowired
+    public UserQuotaLimiter(@Value("${app.quota.enabled:true}") boolean enabled,
+                            @Value("${app.quota.user.requests-per-minute:600}") int userRequestsPerMinute,
+                            @Value("${app.quota.user.burst:60}") int userBurst,
+                            @Value("${app.quota.admin.requests-per-minute:3000}") int adminRequestsPerMinute,
+                            @Value("${app.quota.admin.burst:300}") int adminBurst,
+                            @Value("${app.quota.max-tracked-users:100000}") int maxTrackedUsers,
+                            MeterRegistry meterRegistry) {
+        this(enabled, userRequestsPerMinute, userBurst, adminRequestsPerMinute, adminBurst, maxTrackedUsers, meterRegistry,
+                Ticker.systemTicker(), ForkJoinPool.commonPool());
+    }
+
+
+    // The ticker must be the clock of the TATs; maintenance (expiry and eviction) runs on the given executor.
+    UserQuotaLimiter(boolean enabled, int userRequestsPerMinute, int userBurst, int adminRequestsPerMinute, int adminBurst,
+                     int maxTrackedUsers, MeterRegistry meterRegistry, Ticker ticker, Executor maintenance) {
+        this.enabled = enabled;
+        this.userQuota = new Quota(userRequestsPerMinute, userBurst);
+        this.adminQuota = new Quota(adminRequestsPerMinute, adminBurst);
+        this.ticker = ticker;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxTrackedUsers)
+                .expireAfterAccess(Duration.ofNanos(Math.max(userQuota.burstToleranceNanos, adminQuota.burstToleranceNanos)))
+                .ticker(ticker)
+                .executor(maintenance)
+                .<Long, Bucket>evictionListener((userId, bucket, cause) -> {
+                    if (cause == RemovalCause.SIZE && bucket.tat.get() - ticker.read() > 0) {
+                        evicted.increment();
+                    }
+                })
+                .build();
+
+        FunctionCounter.builder("app.quota.rejected", rejected, LongAdder::sum)
+                .description("Requests rejected with 429 because the user exceeded their quota").register(meterRegistry);
+        FunctionCounter.builder("app.quota.evicted", evicted, LongAdder::sum)
+                .description("Partially used buckets evicted to make room for other users").register(meterRegistry);
+        Gauge.builder("app.quota.tracked-users", buckets, Cache::estimatedSize)
+                .description("Users with a partially used quota").register(meterRegistry);
+    }
+
+
+    /**
+     * Consumes one request from the user's quota.
+     *
+     * @param userId    The id of the authenticated user.
+     * @param rolesMask The user's roles as a {@link RoleMask} bitmask; admins and services get a larger quota.
+     * @return The decision, including the values for the {@code RateLimit-*} headers, or null if quotas are disabled.
+     */
+    public Decision tryConsume(long userId, int rolesMask) {
+        if (!enabled) {
+            return null;
+        }
+        boolean privileged = RoleMask.has(rolesMask, Role.ERole.ROLE_ADMIN) || RoleMask.has(rolesMask, Role.ERole.ROLE_SERVICE);
+        Quota quota = privileged ? adminQuota : userQuota;
+        return tryConsume(userId, quota);
+    }
+
+
+    Decision tryConsume(Long userId, Quota quota) {
+        long now = ticker.read();
+        Bucket bucket = buckets.getIfPresent(userId);
+        if (bucket == null || bucket.quota != quota) {
+            // A new user, or a user whose role (and therefore quota) changed.
+            bucket = buckets.asMap().compute(userId, (id, old) -> old != null && old.quota == quota ? old : new Bucket(quota, now));
+        }
+        return bucket.tryConsume(now, rejected);
+    }
+
+
+    long trackedUsers() {
+        buckets.cleanUp();
+        return buckets.estimatedSize();
+    }
+
+
+    /**
+     * A quota: {@code requestsPerMinute} sustained, with up to {@code burst} requests at once.
+     */
+    static final class Quota {
+
+        final int burst;
+        final long emissionIntervalNanos;   // Time to earn back one request.
+        final long burstToleranceNanos;     // How far ahead of now the TAT may run.
+
+        Quota(int requestsPerMinute, int burst) {
+            this.burst = burst;
+            this.emissionIntervalNanos = TimeUnit.MINUTES.toNanos(1) / requestsPerMinute;
+            this.burstToleranceNanos = emissionIntervalNanos * burst;
+        }
+    }
+
+
+    private static final class Bucket {
+
+        final Quota quota;
+        final AtomicLong tat;
+
+        // A TAT of "now" means the bucket starts full.
+        Bucket(Quota quota, long now) {
+            this.quota = quota;
+            this.tat = new AtomicLong(now);
+        }
+
+        Decision tryConsume(long now, LongAdder rejected) {
+            long interval = quota.emissionIntervalNanos;
+            long tolerance = quota.burstToleranceNanos;
+
+            while (true) {
+                long current = tat.get();
+                long base = current - now < 0 ? now : current;
+                long next = base + interval;
+                long ahead = next - now;
+
+                if (ahead > tolerance) {
+                    rejected.increment();
+                    // The request would fit once the TAT has drained back to within the tolerance.
+                    return new Decision(false, quota.burst, 0, ahead - tolerance);
+                }
+                if (tat.compareAndSet(current, next)) {
+                    int remaining = (int) ((tolerance - ahead) / interval);
+                    return new Decision(true, quota.burst, remaining, ahead);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * The outcome of a quota check.
+     *
+     * @param allowed    Whether the request may proceed.
+     * @param limit      The burst size, reported as {@code RateLimit-Limit}.
+     * @param remaining  Requests that could be made right now, reported as {@code RateLimit-Remaining}.
+     * @param resetNanos If allowed, when the bucket is full again; if rejected, when the next request would be allowed.
+     */
+    public record Decision(boolean allowed, int limit, int remaining, long resetNanos) {
+
+        /**
+         * @return {@link #resetNanos()} rounded up to whole seconds, as used by {@code RateLimit-Reset} and {@code Retry-After}.
+         */
+        public long resetSeconds() {
+            return (resetNanos + 999_999_999L) / 1_000_000_000L;
+        }
+    }
+}
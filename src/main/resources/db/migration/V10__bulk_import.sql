@@ -0,0 +1,34 @@
+-- ===================================================================
+-- Bulk user import (see UserImportRunner).
+-- ===================================================================
+-- One row per import run. Each batch is merged and its progress recorded in the same transaction,
+-- so an interrupted import resumes exactly after the last committed batch.
+
+CREATE TABLE IF NOT EXISTS user_import_runs (
+    run_id       VARCHAR(255) PRIMARY KEY,
+    source       TEXT         NOT NULL,
+    records_done BIGINT       NOT NULL DEFAULT 0,
+    imported     BIGINT       NOT NULL DEFAULT 0,
+    rejected     BIGINT       NOT NULL DEFAULT 0,
+    started_at   TIMESTAMPTZ  NOT NULL DEFAULT now(),
+    updated_at   TIMESTAMPTZ  NOT NULL DEFAULT now(),
+    completed_at TIMESTAMPTZ
+);
+
+-- The importer only grants roles to users it has just inserted, which no node can have cached.
+-- It sets app.bulk_import for its own transactions, so millions of role grants do not turn into
+-- millions of notifications. Every other write to user_roles still publishes its change.
+CREATE OR REPLACE FUNCTION notify_user_roles_change() RETURNS trigger AS $$
+DECLARE
+    changed_user_id BIGINT := COALESCE(NEW.user_id, OLD.user_id);
+BEGIN
+    IF TG_OP = 'INSERT' AND current_setting('app.bulk_import', true) = 'on' THEN
+        RETURN NULL;
+    END IF;
+
+    PERFORM pg_notify('user_changes', 'UPDATE:' || u.id || ':' || u.email)
+    FROM users u
+    WHERE u.id = changed_user_id;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
@@ -0,0 +1,51 @@
+-- ===================================================================
+-- Optional hash sharding of users (see ShardingConfig and ShardIds).
+-- ===================================================================
+-- Runs on every shard. Nothing changes for an unsharded deployment: shard_identity stays empty there,
+-- and the id trigger leaves ids alone.
+
+-- Which shard this database is. Written once by the application when sharding is enabled, and checked
+-- on every startup, so a reordered app.sharding.urls list cannot route users to the wrong database.
+CREATE TABLE IF NOT EXISTS shard_identity (
+    singleton BOOLEAN PRIMARY KEY DEFAULT TRUE CHECK (singleton),  -- At most one row.
+    shard_id  INTEGER NOT NULL CHECK (shard_id >= 0 AND shard_id < 32)
+);
+
+-- The bucket -> shard directory. Only the copy on shard 0 is used. moving_to is set while the
+-- rebalancer copies a bucket to another shard; writes to the bucket are refused until it is cleared.
+CREATE TABLE IF NOT EXISTS shard_buckets (
+    bucket    INTEGER PRIMARY KEY CHECK (bucket >= 0 AND bucket < 1024),
+    shard_id  INTEGER NOT NULL,
+    moving_to INTEGER
+);
+
+-- Must match ShardIds.bucketOf(String): the low 10 bits of the first four bytes of MD5(email).
+CREATE OR REPLACE FUNCTION user_bucket(email TEXT) RETURNS INTEGER AS $$
+    SELECT ('x' || substr(md5(email), 1, 8))::bit(32)::integer & 1023;
+$$ LANGUAGE sql IMMUTABLE STRICT;
+
+-- On a sharded database, turns the identity value into a sharded id: flag, bucket, sequence, creating shard.
+-- Ids that are already sharded (e.g. users copied here by the rebalancer) are kept as they are.
+CREATE OR REPLACE FUNCTION assign_sharded_user_id() RETURNS trigger AS $$
+DECLARE
+    this_shard INTEGER;
+BEGIN
+    IF NEW.id >= (1::bigint << 52) THEN
+        RETURN NEW;
+    END IF;
+
+    SELECT shard_id INTO this_shard FROM shard_identity;
+    IF FOUND THEN
+        NEW.id := (1::bigint << 52)
+                | (user_bucket(NEW.email)::bigint << 42)
+                | ((NEW.id & ((1::bigint << 37) - 1)) << 5)
+                | this_shard;
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS users_assign_sharded_id ON users;
+CREATE TRIGGER users_assign_sharded_id
+    BEFORE INSERT ON users
+    FOR EACH ROW EXECUTE FUNCTION assign_sharded_user_id();
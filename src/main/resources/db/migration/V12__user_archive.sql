@@ -0,0 +1,22 @@
+-- ===================================================================
+-- Cold archive for idle accounts (see UserArchivalJob and UserArchive).
+-- ===================================================================
+-- Accounts without a login for app.archive.inactive-days are moved here in batches, so that the users
+-- table and its email indexes only hold accounts that are actually used. An archived user is moved back
+-- on their next login, with the same id, version and login bookkeeping, so nothing about them changes.
+
+CREATE TABLE IF NOT EXISTS users_archive (
+    id            BIGINT       PRIMARY KEY,
+    first_name    VARCHAR(50)  NOT NULL,
+    last_name     VARCHAR(50)  NOT NULL,
+    email         VARCHAR(100) NOT NULL UNIQUE,
+    password      VARCHAR(255) NOT NULL,
+    is_enabled    BOOLEAN      NOT NULL,
+    roles_mask    INTEGER      NOT NULL,
+    updated_at    TIMESTAMPTZ  NOT NULL,
+    version       BIGINT       NOT NULL,
+    last_login_at TIMESTAMPTZ,
+    login_count   BIGINT       NOT NULL,
+    role_ids      INTEGER[]    NOT NULL,  -- The user's user_roles rows, restored with the user.
+    archived_at   TIMESTAMPTZ  NOT NULL DEFAULT now()
+);
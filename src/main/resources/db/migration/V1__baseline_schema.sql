@@ -0,0 +1,30 @@
+-- ===================================================================
+-- Baseline schema: roles, users and the user_roles join table.
+-- ===================================================================
+-- This matches what Hibernate's ddl-auto=update used to create. Every statement is idempotent,
+-- so it can run both against an empty database and against one that ddl-auto already created
+-- (spring.flyway.baseline-version=0 makes sure this script runs in both cases).
+
+CREATE TABLE IF NOT EXISTS roles (
+    id   INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name VARCHAR(20) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS users (
+    id         BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    first_name VARCHAR(50)  NOT NULL,
+    last_name  VARCHAR(50)  NOT NULL,
+    email      VARCHAR(100) NOT NULL UNIQUE,
+    password   VARCHAR(255) NOT NULL,
+    is_enabled BOOLEAN      NOT NULL DEFAULT TRUE,
+    roles_mask INTEGER      NOT NULL DEFAULT 0
+);
+
+-- Databases created before the bitmask role model do not have this column yet.
+ALTER TABLE users ADD COLUMN IF NOT EXISTS roles_mask INTEGER NOT NULL DEFAULT 0;
+
+CREATE TABLE IF NOT EXISTS user_roles (
+    user_id BIGINT  NOT NULL REFERENCES users (id),
+    role_id INTEGER NOT NULL REFERENCES roles (id),
+    PRIMARY KEY (user_id, role_id)
+);
@@ -0,0 +1,15 @@
+-- ===================================================================
+-- Indexes the login and authentication queries rely on.
+-- ===================================================================
+
+-- Emails are stored lower-case from now on (see User.normalizeEmail), so that lookups are
+-- case-insensitive and the unique index on email from V1 also makes them unique in any capitalization.
+-- Existing rows are normalized first; if two accounts differ only in case, this fails on that index and
+-- the duplicates have to be resolved by hand.
+UPDATE users SET email = lower(email) WHERE email <> lower(email);
+
+-- Login is a natural-id load of the whole row by email, which the unique index on email from V1 serves.
+
+-- Loading a user's roles from the join table filters by user_id. The primary key only serves that
+-- lookup if user_id is its first column, which depends on how the table was originally created.
+CREATE INDEX IF NOT EXISTS user_roles_user_id_idx ON user_roles (user_id);
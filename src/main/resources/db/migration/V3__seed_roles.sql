@@ -0,0 +1,7 @@
+-- ===================================================================
+-- Default roles (replaces the find-then-save seeding that ran on every startup).
+-- ===================================================================
+-- Idempotent: roles that already exist are left alone.
+
+INSERT INTO roles (name) VALUES ('ROLE_USER'), ('ROLE_ADMIN')
+ON CONFLICT (name) DO NOTHING;
@@ -0,0 +1,15 @@
+-- ===================================================================
+-- Fill users.roles_mask from the user_roles join table.
+-- ===================================================================
+-- Bits are 1 << Role.ERole.ordinal(): ROLE_USER = 1, ROLE_ADMIN = 2 (see RoleMask).
+-- Only users without a mask are touched, so the result is the same however often it runs.
+
+UPDATE users u
+SET roles_mask = m.mask
+FROM (SELECT ur.user_id,
+             bit_or(CASE r.name WHEN 'ROLE_USER' THEN 1 WHEN 'ROLE_ADMIN' THEN 2 ELSE 0 END) AS mask
+      FROM user_roles ur
+      JOIN roles r ON r.id = ur.role_id
+      GROUP BY ur.user_id) m
+WHERE u.id = m.user_id
+  AND u.roles_mask = 0;
@@ -0,0 +1,51 @@
+-- ===================================================================
+-- Publish user changes on the 'user_changes' channel (Postgres LISTEN/NOTIFY).
+-- ===================================================================
+-- Every node LISTENs on this channel and evicts its cached copy of the user (see
+-- PgNotifyUserChangeSubscriber). Because the triggers live in the database, every write is covered,
+-- including manual SQL and bulk jobs, not just writes made through Hibernate.
+--
+-- Payload: '<operation>:<user id>:<email>', e.g. 'UPDATE:42:jane@example.com'.
+-- 'ALL:0:' means that every cached user must be dropped (used when the roles table changes).
+-- NOTIFY is transactional: the message is delivered on commit and dropped on rollback.
+-- Inserts are not published, because a user that did not exist cannot be cached anywhere.
+
+CREATE OR REPLACE FUNCTION notify_user_change() RETURNS trigger AS $$
+BEGIN
+    PERFORM pg_notify('user_changes', TG_OP || ':' || OLD.id || ':' || OLD.email);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION notify_user_roles_change() RETURNS trigger AS $$
+DECLARE
+    changed_user_id BIGINT := COALESCE(NEW.user_id, OLD.user_id);
+BEGIN
+    PERFORM pg_notify('user_changes', 'UPDATE:' || u.id || ':' || u.email)
+    FROM users u
+    WHERE u.id = changed_user_id;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION notify_roles_change() RETURNS trigger AS $$
+BEGIN
+    PERFORM pg_notify('user_changes', 'ALL:0:');
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS users_notify_change ON users;
+CREATE TRIGGER users_notify_change
+    AFTER UPDATE OR DELETE ON users
+    FOR EACH ROW EXECUTE FUNCTION notify_user_change();
+
+DROP TRIGGER IF EXISTS user_roles_notify_change ON user_roles;
+CREATE TRIGGER user_roles_notify_change
+    AFTER INSERT OR UPDATE OR DELETE ON user_roles
+    FOR EACH ROW EXECUTE FUNCTION notify_user_roles_change();
+
+DROP TRIGGER IF EXISTS roles_notify_change ON roles;
+CREATE TRIGGER roles_notify_change
+    AFTER UPDATE OR DELETE ON roles
+    FOR EACH STATEMENT EXECUTE FUNCTION notify_roles_change();
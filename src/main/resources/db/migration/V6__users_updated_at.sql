@@ -0,0 +1,22 @@
+-- ===================================================================
+-- Track when each user row was last modified.
+-- ===================================================================
+-- Used to reconcile the principal snapshot (see PrincipalSnapshot) against the database on startup.
+-- The trigger keeps the column correct for every write, including manual SQL, and leaves it alone
+-- for updates that do not actually change the row.
+
+ALTER TABLE users ADD COLUMN IF NOT EXISTS updated_at TIMESTAMPTZ NOT NULL DEFAULT now();
+
+CREATE OR REPLACE FUNCTION touch_user_updated_at() RETURNS trigger AS $$
+BEGIN
+    IF NEW IS DISTINCT FROM OLD THEN
+        NEW.updated_at := now();
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS users_touch_updated_at ON users;
+CREATE TRIGGER users_touch_updated_at
+    BEFORE UPDATE ON users
+    FOR EACH ROW EXECUTE FUNCTION touch_user_updated_at();
@@ -0,0 +1,7 @@
+-- ===================================================================
+-- Role for service accounts of other microservices (e.g. for the bulk user lookup API).
+-- ===================================================================
+-- Its roles_mask bit is 1 << 2, the ordinal of ROLE_SERVICE in Role.ERole.
+
+INSERT INTO roles (name) VALUES ('ROLE_SERVICE')
+ON CONFLICT (name) DO NOTHING;
@@ -0,0 +1,18 @@
+-- ===================================================================
+-- Row version for users, used for optimistic locking and for the ETag of /api/users/me.
+-- ===================================================================
+-- Hibernate increments the version on every update it makes (@Version on User.version).
+-- The trigger from V6 now does the same for every other write (manual SQL, bulk jobs), so the version
+-- changes whenever the row changes. For Hibernate's own updates both agree on OLD.version + 1.
+
+ALTER TABLE users ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+
+CREATE OR REPLACE FUNCTION touch_user_updated_at() RETURNS trigger AS $$
+BEGIN
+    IF NEW IS DISTINCT FROM OLD THEN
+        NEW.updated_at := now();
+        NEW.version := OLD.version + 1;
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
@@ -0,0 +1,19 @@
+-- ===================================================================
+-- Last login time and login count, written behind by LastLoginTracker.
+-- ===================================================================
+-- These columns are bookkeeping, not part of the user's identity: writing them must neither bump
+-- the row version (which would change the /api/users/me ETag after every login) nor evict the user from
+-- every node's caches. Both triggers are therefore restricted to the columns that matter.
+
+ALTER TABLE users ADD COLUMN IF NOT EXISTS last_login_at TIMESTAMPTZ;
+ALTER TABLE users ADD COLUMN IF NOT EXISTS login_count BIGINT NOT NULL DEFAULT 0;
+
+DROP TRIGGER IF EXISTS users_touch_updated_at ON users;
+CREATE TRIGGER users_touch_updated_at
+    BEFORE UPDATE OF first_name, last_name, email, password, is_enabled, roles_mask ON users
+    FOR EACH ROW EXECUTE FUNCTION touch_user_updated_at();
+
+DROP TRIGGER IF EXISTS users_notify_change ON users;
+CREATE TRIGGER users_notify_change
+    AFTER UPDATE OF first_name, last_name, email, password, is_enabled, roles_mask OR DELETE ON users
+    FOR EACH ROW EXECUTE FUNCTION notify_user_change();
@@ -0,0 +1,90 @@
+package com.bankingapp.user_service;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+/**
+ * Databases of their own for tests that need a real Postgres, on the server of {@code spring.datasource.url}
+ * (with its credentials, so the configured user needs CREATEDB).
+ *
+ * <p>Typical use: {@link #recreate} in a static {@code @BeforeAll}, and {@link #url} in a
+ * {@code @DynamicPropertySource} to point {@code spring.datasource.url} (or another datasource) at it.</p>
+ */
+public final class TestDatabases {
+
+    // Databases are dropped WITH (FORCE), so anything that does not look like a test database is refused.
+    private static final String NAME_PATTERN = "user_service_[a-z0-9_]+_test(_[0-9]+)?";
+
+
+    private TestDatabases() {
+    }
+
+
+    /**
+     * Drops (terminating any connections to them) and creates the given databases.
+     *
+     * @param databases Names of the form {@code user_service_<name>_test}, optionally followed by {@code _<n>}.
+     */
+    public static void recreate(String... databases) throws SQLException {
+        for (String database : databases) {
+            if (!database.matches(NAME_PATTERN)) {
+                throw new IllegalArgumentException("Not a test database name: " + database);
+            }
+        }
+
+        Properties properties = properties();
+        try (Connection connection = DriverManager.getConnection(serverUrl(properties) + "postgres",
+                properties.getProperty("spring.datasource.username"), properties.getProperty("spring.datasource.password"));
+             Statement statement = connection.createStatement()) {
+            for (String database : databases) {
+                statement.execute("DROP DATABASE IF EXISTS " + database + " WITH (FORCE)");
+                statement.execute("CREATE DATABASE " + database);
+            }
+        }
+    }
+
+
+    /**
+     * @return The JDBC URL of the database on the configured server.
+     */
+    public static String url(String database) {
+        return serverUrl(properties()) + database;
+    }
+
+
+    /**
+     * @return An unpooled DataSource for the database, with the configured credentials. For setting up and inspecting
+     *         test data outside the application.
+     */
+    public static DataSource dataSource(String database) {
+        Properties properties = properties();
+        return new DriverManagerDataSource(url(database),
+                properties.getProperty("spring.datasource.username"), properties.getProperty("spring.datasource.password"));
+    }
+
+
+    private static Properties properties() {
+        try {
+            return PropertiesLoaderUtils.loadProperties(new ClassPathResource("application.properties"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    // jdbc:postgresql://host:port/database -> jdbc:postgresql://host:port/
+    private static String serverUrl(Properties properties) {
+        String url = properties.getProperty("spring.datasource.url");
+        return url.substring(0, url.lastIndexOf('/') + 1);
+    }
+}
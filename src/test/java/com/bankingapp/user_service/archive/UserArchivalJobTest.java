@@ -0,0 +1,155 @@
+package com.bankingapp.user_service.archive;
+
+import com.bankingapp.user_service.TestDatabases;
+import com.bankingapp.user_service.dto.LoginRequest;
+import com.bankingapp.user_service.dto.RegisterRequest;
+import com.bankingapp.user_service.dto.UserLookupResponse;
+import com.bankingapp.user_service.model.User;
+import com.bankingapp.user_service.service.AuthService;
+import com.bankingapp.user_service.service.LastLoginTracker;
+import com.bankingapp.user_service.service.UserLookupService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs against a database of its own (see {@link TestDatabases}).
+ */
+@SpringBootTest(properties = {"app.archive.enabled=true", "app.archive.initial-delay-ms=3600000", "app.archive.batch-size=2"})
+class UserArchivalJobTest {
+
+    private static final String DATABASE = "user_service_archive_test";
+    private static final String PASSWORD = "Password1!";
+
+    @Autowired
+    private UserArchivalJob userArchivalJob;
+
+    @Autowired
+    private AuthService authService;
+
+    @Autowired
+    private UserLookupService userLookupService;
+
+    @Autowired
+    private LastLoginTracker lastLoginTracker;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+
+    @BeforeAll
+    static void createDatabase() throws SQLException {
+        TestDatabases.recreate(DATABASE);
+    }
+
+
+    @DynamicPropertySource
+    static void databaseUrl(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> TestDatabases.url(DATABASE));
+    }
+
+
+    @AfterEach
+    void clearSecurityContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+
+    @Test
+    void archivesIdleUsersAndRestoresThemOnLogin() {
+        register("active@archive.test");
+        // The trigger would set updated_at to now, and a user is only idle without logins and without changes.
+        jdbcTemplate.execute("ALTER TABLE users DISABLE TRIGGER users_touch_updated_at");
+        for (int i = 0; i < 5; i++) {
+            register("idle" + i + "@archive.test");
+            jdbcTemplate.update("UPDATE users SET last_login_at = now() - interval '400 days', updated_at = now() - interval '400 days' "
+                    + "WHERE email = ?", "idle" + i + "@archive.test");
+        }
+        jdbcTemplate.execute("ALTER TABLE users ENABLE TRIGGER users_touch_updated_at");
+        Map<String, Object> idleBefore = jdbcTemplate.queryForMap("SELECT id, version FROM users WHERE email = 'idle0@archive.test'");
+        // The report takes the row count from the planner statistics, which autovacuum would only update later.
+        jdbcTemplate.execute("ANALYZE users");
+
+        // 1. A run moves the idle users (in three batches of at most two) and leaves the active one.
+        ArchivalReport report = userArchivalJob.archiveIdleUsers(Instant.now());
+        assertEquals(5, report.archived());
+        assertEquals(6, report.before().rows());
+        assertEquals(1, report.after().rows());
+        assertTrue(report.reindexed(), "five of six users is well above the reindex threshold");
+        assertEquals(1, count("SELECT count(*) FROM users WHERE email = 'active@archive.test'"));
+        assertEquals(5, count("SELECT count(*) FROM users_archive"));
+        assertEquals(0, count("SELECT count(*) FROM user_roles WHERE user_id = " + idleBefore.get("id")));
+
+        // 2. Archived emails stay taken, and other services still see the archived users, which stay archived.
+        assertThrows(RuntimeException.class, () -> register("idle1@archive.test"));
+        UserLookupResponse lookup = userLookupService.lookup(List.of((Long) idleBefore.get("id")), List.of("IDLE2@archive.test"));
+        assertEquals(2, lookup.getUsers().size());
+        assertTrue(lookup.getMissingIds().isEmpty() && lookup.getMissingEmails().isEmpty());
+        assertEquals(5, count("SELECT count(*) FROM users_archive"));
+
+        // 3. A login with the wrong password restores nothing and writes nothing.
+        assertThrows(BadCredentialsException.class, () -> authService.authenticateUser(login("idle0@archive.test", "Wrong1!")));
+        assertEquals(5, count("SELECT count(*) FROM users_archive"));
+        assertEquals(0, count("SELECT count(*) FROM users WHERE email = 'idle0@archive.test'"));
+
+        // 4. Logging in brings the user back unchanged: same id, version and roles.
+        Authentication authentication = authService.authenticateUser(login("idle0@archive.test", PASSWORD));
+        User user = (User) authentication.getPrincipal();
+        assertEquals(idleBefore.get("id"), user.getId());
+        assertEquals(idleBefore.get("version"), user.getVersion());
+        assertFalse(user.getAuthorities().isEmpty());
+        assertEquals(1, count("SELECT count(*) FROM user_roles WHERE user_id = " + user.getId()));
+        assertEquals(4, count("SELECT count(*) FROM users_archive"));
+
+        // 5. The login is recorded like any other, once it is written.
+        assertEquals(1, count("SELECT count(*) FROM users WHERE email = 'idle0@archive.test' AND last_login_at < now() - interval '399 days'"));
+        lastLoginTracker.flush();
+        assertEquals(1, count("SELECT count(*) FROM users WHERE email = 'idle0@archive.test' AND last_login_at > now() - interval '1 minute'"));
+
+        // 6. The restored user just logged in, so the next run leaves them alone.
+        assertNotNull(userArchivalJob.archiveIdleUsers(Instant.now()));
+        assertEquals(1, count("SELECT count(*) FROM users WHERE email = 'idle0@archive.test'"));
+    }
+
+
+    private void register(String email) {
+        RegisterRequest request = new RegisterRequest();
+        request.setFirstName("Idle");
+        request.setLastName("User");
+        request.setEmail(email);
+        request.setPassword(PASSWORD);
+        authService.registerUser(request);
+    }
+
+
+    private static LoginRequest login(String email, String password) {
+        LoginRequest request = new LoginRequest();
+        request.setEmail(email);
+        request.setPassword(password);
+        return request;
+    }
+
+
+    private long count(String sql) {
+        return jdbcTemplate.queryForObject(sql, Long.class);
+    }
+}
@@ -0,0 +1,44 @@
+package com.bankingapp.user_service.cache;
+
+import com.bankingapp.user_service.model.User;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class PrincipalCacheTest {
+
+    private static final String EMAIL = "jo@example.com";
+
+    // A TTL of zero: every entry is past it as soon as it is cached.
+    private final PrincipalCache cache = new PrincipalCache(100, 0, 60_000);
+
+
+    @Test
+    void entriesPastTheirTtlAreStillServedAsStale() {
+        cache.putIfUnchanged(EMAIL, user(), cache.stamp(EMAIL));
+
+        assertNull(cache.get(EMAIL));
+        assertNotNull(cache.getStale(EMAIL, 60_000));
+    }
+
+
+    // invalidateAll runs when change notifications may have been missed, e.g. the disabling of this user.
+    @Test
+    void invalidatedEntriesAreNotServedAsStale() {
+        cache.putIfUnchanged(EMAIL, user(), cache.stamp(EMAIL));
+        cache.invalidateAll();
+        assertNull(cache.getStale(EMAIL, 60_000));
+
+        cache.putIfUnchanged(EMAIL, user(), cache.stamp(EMAIL));
+        cache.invalidate(EMAIL);
+        assertNull(cache.getStale(EMAIL, 60_000));
+    }
+
+
+    private static User user() {
+        User user = new User("Jo", "Example", EMAIL, "{noop}password");
+        user.setId(1L);
+        return user;
+    }
+}
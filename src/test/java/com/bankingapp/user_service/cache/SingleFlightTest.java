@@ -0,0 +1,131 @@
+package com.bankingapp.user_service.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    @Test
+    void concurrentCallsForTheSameKeyShareOneLoad() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>(5000);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(pool.submit(() -> singleFlight.execute("a@b.com", () -> {
+                    loads.incrementAndGet();
+                    await(release);
+                    return "user";
+                })));
+            }
+
+            // Let every caller arrive before the leader finishes.
+            waitUntil(() -> singleFlight.coalescedCount() == 7);
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals("user", result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+            assertEquals(1, singleFlight.executedCount());
+            assertEquals(0, singleFlight.inFlightCount());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+
+    @Test
+    void followersSeeTheLeadersException() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>(5000);
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("database down");
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+
+        try {
+            Future<?> leader = pool.submit(() -> singleFlight.execute("k", () -> {
+                await(release);
+                throw failure;
+            }));
+            waitUntil(() -> singleFlight.inFlightCount() == 1);
+            Future<?> follower = pool.submit(() -> singleFlight.execute("k", () -> "never called"));
+            waitUntil(() -> singleFlight.coalescedCount() == 1);
+            release.countDown();
+
+            Exception leaderError = assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+            Exception followerError = assertThrows(Exception.class, () -> follower.get(5, TimeUnit.SECONDS));
+            assertSame(failure, leaderError.getCause());
+            assertSame(failure, followerError.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+
+    @Test
+    void followersGiveUpAfterTheTimeout() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>(50);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+
+        try {
+            pool.submit(() -> singleFlight.execute("k", () -> {
+                await(release);
+                return "late";
+            }));
+            waitUntil(() -> singleFlight.inFlightCount() == 1);
+
+            assertThrows(CoalescedLoadTimeoutException.class, () -> singleFlight.execute("k", () -> "never called"));
+            assertEquals(1, singleFlight.timedOutCount());
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+
+    @Test
+    void aNewLoadStartsOnceTheFlightHasLanded() {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>(1000);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals(1, singleFlight.execute("k", loads::incrementAndGet));
+        assertEquals(2, singleFlight.execute("k", loads::incrementAndGet));
+        assertEquals(0, singleFlight.coalescedCount());
+    }
+
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void waitUntil(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Condition not met within 5 seconds");
+            }
+            Thread.sleep(1);
+        }
+    }
+}
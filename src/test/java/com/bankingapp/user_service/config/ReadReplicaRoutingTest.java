@@ -0,0 +1,128 @@
+package com.bankingapp.user_service.config;
+
+import com.bankingapp.user_service.TestDatabases;
+import com.bankingapp.user_service.dto.RegisterRequest;
+import com.bankingapp.user_service.service.AuthService;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Runs the application with replica routing against two local databases (see {@link TestDatabases}): one is the
+ * primary, the other stands in for a replica. It gets the schema but none of the rows written through the
+ * application, so where a read went shows in what it finds.
+ *
+ * <p>A local database is not in recovery, which the health check would take for a promoted replica, so the stand-in
+ * shadows {@code pg_is_in_recovery()} with a function that says it is.</p>
+ */
+@SpringBootTest(properties = {"app.datasource.replicas.enabled=true", "app.datasource.replicas.health-check-interval-ms=3600000",
+        "app.warm-up.enabled=false"})
+class ReadReplicaRoutingTest {
+
+    private static final String PRIMARY = "user_service_replica_routing_test_0";
+    private static final String REPLICA = "user_service_replica_routing_test_1";
+    private static final String PASSWORD = "Password1!";
+
+    @Autowired
+    private ReadReplicaRoutingDataSource routingDataSource;
+
+    @Autowired
+    private AuthService authService;
+
+    @Autowired
+    private UserDetailsService userDetailsService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+
+    @BeforeAll
+    static void createDatabases() throws SQLException {
+        TestDatabases.recreate(PRIMARY, REPLICA);
+        Flyway.configure().dataSource(TestDatabases.dataSource(REPLICA)).load().migrate();
+
+        JdbcTemplate replica = new JdbcTemplate(TestDatabases.dataSource(REPLICA));
+        replica.execute("CREATE FUNCTION public.pg_is_in_recovery() RETURNS boolean LANGUAGE sql AS 'SELECT true'");
+        // pg_catalog is searched first unless it is listed explicitly.
+        replica.execute("ALTER DATABASE " + REPLICA + " SET search_path = public, pg_catalog");
+    }
+
+
+    @DynamicPropertySource
+    static void databaseUrls(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> TestDatabases.url(PRIMARY));
+        registry.add("app.datasource.replicas.urls", () -> TestDatabases.url(REPLICA));
+    }
+
+
+    @Test
+    void readOnlyTransactionsGoToTheReplica() {
+        assertEquals(REPLICA, currentDatabase(true));
+        assertEquals(PRIMARY, currentDatabase(false));
+        assertEquals(PRIMARY, ReplicaRoutingContext.onPrimary(() -> currentDatabase(true)));
+    }
+
+
+    @Test
+    void recentlyWrittenUsersAreReadFromThePrimary() {
+        register("fresh@replica.test");
+        assertEquals("fresh@replica.test", userDetailsService.loadUserByUsername("fresh@replica.test").getUsername());
+
+        // The same row, but written behind the tracker's back: the read goes to the replica, which does not have it.
+        jdbcTemplate.update("INSERT INTO users (first_name, last_name, email, password, is_enabled, roles_mask) " +
+                "SELECT first_name, last_name, 'untracked@replica.test', password, is_enabled, roles_mask FROM users WHERE email = ?",
+                "fresh@replica.test");
+        assertThrows(UsernameNotFoundException.class, () -> userDetailsService.loadUserByUsername("untracked@replica.test"));
+    }
+
+
+    @Test
+    void readsFailOverToThePrimaryWhileTheReplicaIsUnreachable() {
+        JdbcTemplate primary = new JdbcTemplate(TestDatabases.dataSource(PRIMARY));
+        try {
+            primary.execute("ALTER DATABASE " + REPLICA + " ALLOW_CONNECTIONS false");
+            primary.queryForList("SELECT pg_terminate_backend(pid) FROM pg_stat_activity WHERE datname = ?", REPLICA);
+            routingDataSource.checkReplicaHealth();
+            assertEquals(PRIMARY, currentDatabase(true));
+        } finally {
+            primary.execute("ALTER DATABASE " + REPLICA + " ALLOW_CONNECTIONS true");
+        }
+
+        routingDataSource.checkReplicaHealth();
+        assertEquals(REPLICA, currentDatabase(true), "the replica is back in rotation once it passes a check");
+    }
+
+
+    private String currentDatabase(boolean readOnly) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(readOnly);
+        return transaction.execute(status -> jdbcTemplate.queryForObject("SELECT current_database()", String.class));
+    }
+
+
+    private void register(String email) {
+        RegisterRequest request = new RegisterRequest();
+        request.setFirstName("Fresh");
+        request.setLastName("User");
+        request.setEmail(email);
+        request.setPassword(PASSWORD);
+        authService.registerUser(request);
+    }
+}
@@ -0,0 +1,78 @@
+package com.bankingapp.user_service.diagnostics;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.core.io.Resource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContinuousRecordingTest {
+
+    private final ContinuousRecording recording = new ContinuousRecording();
+
+
+    @BeforeEach
+    void start() {
+        ReflectionTestUtils.setField(recording, "maxAgeMs", 60_000L);
+        ReflectionTestUtils.setField(recording, "maxSizeMb", 16L);
+        recording.start();
+    }
+
+
+    @AfterEach
+    void stop() {
+        recording.stop();
+    }
+
+
+    @Test
+    void dumpsDoNotContainTheConfiguration() throws IOException {
+        Path file = recording.dump();
+        try {
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            assertFalse(events.isEmpty());
+            for (RecordedEvent event : events) {
+                assertFalse(ContinuousRecording.SECRET_BEARING_EVENTS.contains(event.getEventType().getName()),
+                        "the dump contains " + event.getEventType().getName());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+
+    @Test
+    void downloadsLeaveNoFileBehind() throws IOException {
+        List<Path> before = dumpFiles();
+
+        WebEndpointResponse<Resource> response = new FlightRecordingEndpoint(recording).dump();
+
+        // Gone before the response is written, so also if writing it fails.
+        assertEquals(before, dumpFiles());
+        try (InputStream content = response.getBody().getInputStream()) {
+            assertEquals(response.getBody().contentLength(), content.readAllBytes().length);
+        }
+        assertTrue(response.getBody().contentLength() > 0);
+    }
+
+
+    private static List<Path> dumpFiles() throws IOException {
+        try (Stream<Path> files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(file -> file.getFileName().toString().matches("banking-api-.*\\.jfr")).sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.bankingapp.user_service.importer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CsvImportSourceTest {
+
+    @Test
+    void readsColumnsByNameWhateverTheirOrder() throws IOException {
+        CsvImportSource source = open("""
+                Roles,LastName,email,first_name,password,extra
+                ROLE_USER|ROLE_ADMIN,Lee,ann@x.com,Ann,secret123,ignored
+                """);
+
+        assertEquals(new ImportRow(1, "ann@x.com", "Ann", "Lee", "secret123", null,
+                List.of("ROLE_USER", "ROLE_ADMIN"), null), source.next());
+        assertNull(source.next());
+    }
+
+
+    @Test
+    void handlesQuotesEmbeddedCommasAndLineBreaks() throws IOException {
+        CsvImportSource source = open("email,first_name,last_name,password\n"
+                + "\"a@x.com\",\"Jo \"\"JJ\"\"\",\"Doe, Jr\",\"multi\nline\"\n"
+                + "\n"
+                + "b@x.com,Bo,Lee,pw\n");
+
+        ImportRow first = source.next();
+        assertEquals("Jo \"JJ\"", first.firstName());
+        assertEquals("Doe, Jr", first.lastName());
+        assertEquals("multi\nline", first.password());
+
+        // The blank line is skipped, and does not count as a record.
+        assertEquals(2, source.next().recordNo());
+        assertNull(source.next());
+    }
+
+
+    @Test
+    void reportsARecordWithTheWrongNumberOfFieldsAndCarriesOn() throws IOException {
+        CsvImportSource source = open("""
+                email,first_name,last_name
+                a@x.com,Ann
+                b@x.com,Bo,Lee
+                """);
+
+        MalformedRecordException e = assertThrows(MalformedRecordException.class, source::next);
+        assertEquals(1, e.getRecordNo());
+        assertEquals("b@x.com", source.next().email());
+    }
+
+
+    @Test
+    void requiresAnEmailColumn() {
+        assertThrows(IOException.class, () -> open("name,password\n"));
+    }
+
+
+    private static CsvImportSource open(String csv) throws IOException {
+        return new CsvImportSource(new BufferedReader(new StringReader(csv)));
+    }
+}
@@ -0,0 +1,110 @@
+package com.bankingapp.user_service.importer;
+
+import com.bankingapp.user_service.TestDatabases;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs against a database of its own (see {@link TestDatabases}).
+ */
+@SpringBootTest(properties = "app.warm-up.enabled=false")
+class UserImportWriterTest {
+
+    private static final String DATABASE = "user_service_import_writer_test";
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+
+    @BeforeAll
+    static void createDatabase() throws SQLException {
+        TestDatabases.recreate(DATABASE);
+    }
+
+
+    @DynamicPropertySource
+    static void databaseUrl(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> TestDatabases.url(DATABASE));
+    }
+
+
+    @Test
+    void reportsEveryRecordItDoesNotInsert() throws Exception {
+        jdbcTemplate.update("INSERT INTO users (first_name, last_name, email, password) VALUES ('Old', 'User', 'old@import.test', 'x')");
+
+        try (UserImportWriter writer = new UserImportWriter(dataSource, "existing-and-repeated", "test")) {
+            List<RejectedRowsReport.Rejection> conflicts = new ArrayList<>();
+            long inserted = writer.write(List.of(user(1, "new@import.test"), user(2, "old@import.test"),
+                    user(3, "new@import.test")), 3, 1, conflicts);
+
+            assertEquals(1, inserted);
+            assertEquals(List.of(new RejectedRowsReport.Rejection(2, "old@import.test", "email already exists"),
+                    new RejectedRowsReport.Rejection(3, "new@import.test", "duplicate email in the file")), conflicts);
+            assertEquals(new UserImportWriter.Progress(3, 1, 3, false), writer.progress());
+        }
+    }
+
+
+    @Test
+    void countsEmailsTakenWhileTheMergeRuns() throws Exception {
+        try (Connection other = dataSource.getConnection();
+             UserImportWriter writer = new UserImportWriter(dataSource, "concurrent-insert", "test")) {
+            // Not yet committed, so the merge's checks do not see it, and its insert waits for the outcome.
+            other.setAutoCommit(false);
+            try (Statement statement = other.createStatement()) {
+                statement.execute("INSERT INTO users (first_name, last_name, email, password) "
+                        + "VALUES ('Other', 'Writer', 'raced@import.test', 'x')");
+            }
+
+            List<RejectedRowsReport.Rejection> conflicts = new ArrayList<>();
+            CompletableFuture<Long> inserted = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return writer.write(List.of(user(1, "raced@import.test"), user(2, "free@import.test")), 2, 0, conflicts);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            awaitLockWait();
+            other.commit();
+
+            assertEquals(1, inserted.get(10, TimeUnit.SECONDS));
+            assertEquals(List.of(new RejectedRowsReport.Rejection(1, "raced@import.test", "email already exists")), conflicts);
+            assertEquals(new UserImportWriter.Progress(2, 1, 1, false), writer.progress());
+        }
+    }
+
+
+    private void awaitLockWait() throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (jdbcTemplate.queryForObject("SELECT count(*) FROM pg_stat_activity WHERE datname = current_database() "
+                + "AND wait_event_type = 'Lock'", Long.class) == 0) {
+            assertTrue(System.nanoTime() < deadline, "timed out waiting for the merge to wait for the other insert");
+            Thread.sleep(20);
+        }
+    }
+
+
+    private static StagedUser user(long recordNo, String email) {
+        return new StagedUser(recordNo, email, "Imported", "User", "{noop}secret", true, 1);
+    }
+}
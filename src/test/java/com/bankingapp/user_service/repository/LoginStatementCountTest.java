@@ -0,0 +1,112 @@
+package com.bankingapp.user_service.repository;
+
+import com.bankingapp.user_service.cache.PrincipalCache;
+import com.bankingapp.user_service.TestDatabases;
+import com.bankingapp.user_service.dto.LoginRequest;
+import com.bankingapp.user_service.dto.RegisterRequest;
+import com.bankingapp.user_service.model.User;
+import com.bankingapp.user_service.service.AuthService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Counts the SQL statements a login sends, using Hibernate's statistics (hibernate.generate_statistics).
+ *
+ * <p>Runs against a database of its own (see {@link TestDatabases}).</p>
+ */
+@SpringBootTest(properties = "app.warm-up.enabled=false")
+class LoginStatementCountTest {
+
+    private static final String DATABASE = "user_service_login_statements_test";
+    private static final String EMAIL = "jo@statements.test";
+    private static final String PASSWORD = "Password1!";
+
+    @Autowired
+    private AuthService authService;
+
+    @Autowired
+    private PrincipalCache principalCache;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+
+    @BeforeAll
+    static void createDatabase() throws SQLException {
+        TestDatabases.recreate(DATABASE);
+    }
+
+
+    @DynamicPropertySource
+    static void databaseUrl(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> TestDatabases.url(DATABASE));
+    }
+
+
+    @AfterEach
+    void clearSecurityContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+
+    @Test
+    void aLoginSendsAtMostOneStatement() {
+        register();
+        SessionFactory sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        Statistics statistics = sessionFactory.getStatistics();
+
+        // 1. Nothing cached: the user is read by email in one statement, and their roles come from the roles mask
+        //    rather than from user_roles.
+        sessionFactory.getCache().evictAllRegions();
+        principalCache.invalidateAll();
+        statistics.clear();
+        User user = login();
+        assertEquals(1, statistics.getPrepareStatementCount(), "statements of a cold login");
+        assertEquals(0, statistics.getCollectionLoadCount(), "collections loaded by a cold login");
+        assertEquals(1, user.getAuthorities().size());
+
+        // 2. Only the principal cache was cleared: the natural-id and entity caches answer, with no statement.
+        principalCache.invalidateAll();
+        statistics.clear();
+        login();
+        assertEquals(0, statistics.getPrepareStatementCount(), "statements of a login served by the second-level cache");
+
+        // 3. Everything cached.
+        statistics.clear();
+        login();
+        assertEquals(0, statistics.getPrepareStatementCount(), "statements of a login served by the principal cache");
+    }
+
+
+    private void register() {
+        RegisterRequest request = new RegisterRequest();
+        request.setFirstName("Jo");
+        request.setLastName("Statements");
+        request.setEmail(EMAIL);
+        request.setPassword(PASSWORD);
+        authService.registerUser(request);
+    }
+
+
+    private User login() {
+        LoginRequest request = new LoginRequest();
+        request.setEmail(EMAIL);
+        request.setPassword(PASSWORD);
+        Authentication authentication = authService.authenticateUser(request);
+        return (User) authentication.getPrincipal();
+    }
+}
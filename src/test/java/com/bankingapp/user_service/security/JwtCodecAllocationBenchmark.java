@@ -0,0 +1,52 @@
+package com.bankingapp.user_service.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Compares how many bytes one JWT verification allocates with each codec, using HotSpot's per-thread allocation
+ * counter after both codecs have been warmed up.
+ *
+ * <p>What is allocated depends on JIT compilation and escape analysis, so this is not part of the regular build:
+ * run it with {@code mvn -Pbenchmark test}.</p>
+ */
+class JwtCodecAllocationBenchmark {
+
+    private static final String SECRET = "k".repeat(64);
+    private static final long NOW = System.currentTimeMillis() / 1000;
+
+    private final JwtCodec jjwt = new JjwtCodec(SECRET, "1");
+    private final JwtCodec compact = new CompactJwtCodec(SECRET, "1");
+
+
+    @Test
+    void compactCodecAllocatesLessPerVerification() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        String token = jjwt.encode("someone.with.a.long.name@example.com", NOW, NOW + 600, 3);
+        long jjwtBytes = bytesPerDecode(threads, jjwt, token);
+        long compactBytes = bytesPerDecode(threads, compact, token);
+
+        assertTrue(compactBytes * 5 < jjwtBytes, "compact " + compactBytes + " vs jjwt " + jjwtBytes + " bytes/op");
+    }
+
+
+    private static long bytesPerDecode(com.sun.management.ThreadMXBean threads, JwtCodec codec, String token) {
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < 20_000; i++) {
+            codec.decode(token);
+        }
+        int iterations = 10_000;
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            codec.decode(token);
+        }
+        return (threads.getThreadAllocatedBytes(threadId) - before) / iterations;
+    }
+}
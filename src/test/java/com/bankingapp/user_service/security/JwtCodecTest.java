@@ -0,0 +1,131 @@
+package com.bankingapp.user_service.security;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JwtCodecTest {
+
+    private static final String SECRET = "k".repeat(64);
+    private static final long NOW = System.currentTimeMillis() / 1000;
+
+    private final JwtCodec jjwt = new JjwtCodec(SECRET, "1");
+    private final JwtCodec compact = new CompactJwtCodec(SECRET, "1");
+
+
+    @Test
+    void bothCodecsWriteTheSameToken() {
+        assertEquals(jjwt.encode("jo@x.com", NOW, NOW + 60, 3), compact.encode("jo@x.com", NOW, NOW + 60, 3));
+        assertEquals(jjwt.encode("zoë\"\\\n@x.com", NOW, NOW + 60, 0), compact.encode("zoë\"\\\n@x.com", NOW, NOW + 60, 0));
+    }
+
+
+    @Test
+    void eachCodecReadsTheOthersTokens() {
+        JwtClaims expected = new JwtClaims("jo@x.com", NOW, NOW + 60, 5, "1");
+
+        assertEquals(expected, compact.decode(jjwt.encode("jo@x.com", NOW, NOW + 60, 5)));
+        assertEquals(expected, jjwt.decode(compact.encode("jo@x.com", NOW, NOW + 60, 5)));
+    }
+
+
+    @Test
+    void readsTokensIssuedBeforeTheRolesClaimAndKeyId() {
+        String legacy = Jwts.builder()
+                .setSubject("jo@x.com")
+                .setIssuedAt(new Date(NOW * 1000))
+                .setExpiration(new Date((NOW + 60) * 1000))
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)), SignatureAlgorithm.HS512)
+                .compact();
+
+        JwtClaims claims = compact.decode(legacy);
+        assertEquals(new JwtClaims("jo@x.com", NOW, NOW + 60, 0, null), claims);
+        assertEquals(claims, jjwt.decode(legacy));
+    }
+
+
+    @Test
+    void readsHeadersAndClaimsItDoesNotKnow() {
+        String token = Jwts.builder()
+                .setHeaderParam("kid", "old-key")
+                .setHeaderParam("typ", "JWT")
+                .setSubject("jo@x.com")
+                .setExpiration(new Date((NOW + 60) * 1000))
+                .claim("scopes", new String[]{"a", "b"})
+                .claim("meta", java.util.Map.of("nested", java.util.List.of(1, true)))
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)), SignatureAlgorithm.HS512)
+                .compact();
+
+        JwtClaims claims = compact.decode(token);
+        assertEquals("jo@x.com", claims.subject());
+        assertEquals("old-key", claims.keyId());
+        assertEquals(0, claims.issuedAt());
+    }
+
+
+    @Test
+    void bothCodecsRejectTheSameTokensForTheSameReason() {
+        String valid = compact.encode("jo@x.com", NOW, NOW + 60, 1);
+        String tampered = valid.substring(0, valid.length() - 2) + (valid.endsWith("AA") ? "BA" : "AA");
+        String otherKey = new CompactJwtCodec("x".repeat(64), "1").encode("jo@x.com", NOW, NOW + 60, 1);
+        String expired = compact.encode("jo@x.com", NOW - 120, NOW - 60, 1);
+        String unsigned = valid.substring(0, valid.lastIndexOf('.') + 1);
+
+        for (JwtCodec codec : new JwtCodec[]{jjwt, compact}) {
+            assertRejected(codec, tampered, SecurityEvent.JWT_INVALID_SIGNATURE);
+            assertRejected(codec, otherKey, SecurityEvent.JWT_INVALID_SIGNATURE);
+            assertRejected(codec, expired, SecurityEvent.JWT_EXPIRED);
+            assertRejected(codec, unsigned, SecurityEvent.JWT_UNSUPPORTED);
+            assertRejected(codec, "not-a-jwt", SecurityEvent.JWT_MALFORMED);
+            assertRejected(codec, "", SecurityEvent.JWT_EMPTY);
+        }
+    }
+
+
+    @Test
+    void compactCodecRejectsOtherAlgorithmsEvenWhenCorrectlySigned() {
+        // A token whose header claims HS256 but which carries a valid HS512 signature must still be refused.
+        String header = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString("{\"alg\":\"HS256\"}".getBytes(StandardCharsets.US_ASCII));
+        String valid = compact.encode("jo@x.com", NOW, NOW + 60, 1);
+        String claims = valid.substring(valid.indexOf('.') + 1, valid.lastIndexOf('.'));
+        String resigned = resign(header + "." + claims);
+
+        assertRejected(compact, resigned, SecurityEvent.JWT_UNSUPPORTED);
+    }
+
+
+    @Test
+    void compactCodecRefusesAWeakSecret() {
+        assertThrows(IllegalStateException.class, () -> new CompactJwtCodec("too-short", "1"));
+    }
+
+
+    private static String resign(String signingInput) {
+        try {
+            javax.crypto.Mac mac = javax.crypto.Mac.getInstance("HmacSHA512");
+            mac.init(new javax.crypto.spec.SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA512"));
+            byte[] signature = mac.doFinal(signingInput.getBytes(StandardCharsets.US_ASCII));
+            return signingInput + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+        } catch (java.security.GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    private static void assertRejected(JwtCodec codec, String token, SecurityEvent reason) {
+        InvalidJwtException e = assertThrows(InvalidJwtException.class, () -> codec.decode(token),
+                codec.getClass().getSimpleName() + " accepted " + token);
+        assertEquals(reason, e.getReason(), codec.getClass().getSimpleName() + ": " + e.getMessage());
+        assertNull(e.getCause());
+    }
+}
@@ -0,0 +1,44 @@
+package com.bankingapp.user_service.service;
+
+import com.bankingapp.user_service.shard.ShardDirectory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LastLoginTrackerTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @SuppressWarnings("unchecked")
+    private final LastLoginTracker tracker =
+            new LastLoginTracker(jdbcTemplate, meterRegistry, mock(ObjectProvider.class), 100, 2);
+
+
+    @Test
+    void pendingUsersAreCappedWhileFlushesFail() {
+        when(jdbcTemplate.update(anyString(), any(PreparedStatementSetter.class)))
+                .thenThrow(new DataAccessResourceFailureException("database down"));
+
+        tracker.recordLogin(1);
+        tracker.recordLogin(2);
+        tracker.flush();
+        tracker.recordLogin(3);  // A new user beyond the cap: dropped.
+        tracker.recordLogin(1);  // A user already pending: merged.
+        tracker.flush();
+
+        assertEquals(2, meterRegistry.get("app.login-tracking.pending").gauge().value());
+        assertEquals(1, meterRegistry.get("app.login-tracking.dropped").counter().count());
+        assertEquals(2, meterRegistry.get("app.login-tracking.failures").counter().count());
+    }
+}
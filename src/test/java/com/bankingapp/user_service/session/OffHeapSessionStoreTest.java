@@ -0,0 +1,131 @@
+package com.bankingapp.user_service.session;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapSessionStoreTest {
+
+    private static final long NOW = 1_000_000L;
+
+
+    @Test
+    void storesAndExpiresSessions() {
+        OffHeapSessionStore store = new OffHeapSessionStore(4, 16);
+        store.put(1, 2, 42, 3, NOW + 1000);
+
+        Session session = store.get(1, 2, NOW);
+        assertEquals(new Session(42, 3, NOW + 1000, false), session);
+        assertNull(store.get(1, 3, NOW));
+        assertNull(store.get(1, 2, NOW + 1000));
+    }
+
+
+    @Test
+    void growsBeyondItsInitialCapacity() {
+        OffHeapSessionStore store = new OffHeapSessionStore(2, 4);
+        SplittableRandom random = new SplittableRandom(7);
+        long[][] keys = new long[10_000][2];
+
+        for (int i = 0; i < keys.length; i++) {
+            keys[i][0] = random.nextLong();
+            keys[i][1] = random.nextLong();
+            store.put(keys[i][0], keys[i][1], i, 1, NOW + 1000);
+        }
+
+        assertEquals(keys.length, store.size());
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(i, store.get(keys[i][0], keys[i][1], NOW).userId());
+        }
+    }
+
+
+    @Test
+    void removesSingleSessionsAndAllSessionsOfAUser() {
+        OffHeapSessionStore store = new OffHeapSessionStore(4, 16);
+        store.put(1, 1, 42, 1, NOW + 1000);
+        store.put(2, 2, 42, 1, NOW + 1000);
+        store.put(3, 3, 7, 1, NOW + 1000);
+
+        assertTrue(store.remove(1, 1));
+        assertFalse(store.remove(1, 1));
+        assertNull(store.get(1, 1, NOW));
+
+        assertEquals(1, store.removeUser(42));
+        assertNull(store.get(2, 2, NOW));
+        assertNotNull(store.get(3, 3, NOW));
+        assertEquals(1, store.size());
+    }
+
+
+    @Test
+    void staleSessionsAreRefreshedWithNewRoles() {
+        OffHeapSessionStore store = new OffHeapSessionStore(4, 16);
+        store.put(1, 1, 42, 1, NOW + 1000);
+        store.put(2, 2, 7, 1, NOW + 1000);
+
+        store.markStale(42);
+        assertTrue(store.get(1, 1, NOW).stale());
+        assertFalse(store.get(2, 2, NOW).stale());
+
+        assertTrue(store.refresh(1, 1, 3, store.staleMarks(1)));
+        assertEquals(new Session(42, 3, NOW + 1000, false), store.get(1, 1, NOW));
+    }
+
+
+    @Test
+    void refreshIsRefusedIfTheSessionWasMarkedStaleMeanwhile() {
+        OffHeapSessionStore store = new OffHeapSessionStore(1, 16);
+        store.put(1, 1, 42, 1, NOW + 1000);
+        store.markStale(42);
+
+        // A re-check reads the user, then the user changes again before the re-check marks the session checked.
+        long staleMarks = store.staleMarks(1);
+        store.markStale(42);
+
+        assertFalse(store.refresh(1, 1, 3, staleMarks));
+        assertEquals(new Session(42, 1, NOW + 1000, true), store.get(1, 1, NOW));
+    }
+
+
+    @Test
+    void purgeDropsExpiredSessionsAndTombstones() {
+        OffHeapSessionStore store = new OffHeapSessionStore(1, 16);
+        store.put(1, 1, 1, 1, NOW + 10);
+        store.put(2, 2, 2, 1, NOW + 1000);
+        store.put(3, 3, 3, 1, NOW + 1000);
+        store.remove(3, 3);
+
+        store.purgeExpired(NOW + 100);
+
+        assertEquals(1, store.size());
+        assertNotNull(store.get(2, 2, NOW + 100));
+    }
+
+
+    @Test
+    void survivesAWriteAndReadRoundTrip() throws Exception {
+        OffHeapSessionStore store = new OffHeapSessionStore(4, 16);
+        store.put(1, 1, 42, 3, NOW + 1000);
+        store.put(2, 2, 7, 1, NOW + 10);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        assertEquals(2, store.writeTo(new DataOutputStream(bytes), NOW));
+
+        OffHeapSessionStore restored = new OffHeapSessionStore(4, 16);
+        int loaded = restored.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), NOW + 100, true);
+
+        assertEquals(1, loaded);
+        assertEquals(new Session(42, 3, NOW + 1000, true), restored.get(1, 1, NOW + 100));
+    }
+}
@@ -0,0 +1,38 @@
+package com.bankingapp.user_service.shard;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardIdsTest {
+
+    @Test
+    void bucketsNeverChange() {
+        // Every user is stored under these buckets; a different hash would make them unreachable.
+        assertEquals(616, ShardIds.bucketOf("jo@x.com"));
+        assertEquals(133, ShardIds.bucketOf("zoë@example.com"));
+        assertEquals(226, ShardIds.bucketOf("a@b.c"));
+    }
+
+
+    @Test
+    void readsTheBucketBackFromIdsBuiltLikeTheTrigger() {
+        for (int bucket : new int[]{0, 1, 616, ShardIds.BUCKETS - 1}) {
+            long sequence = (1L << 37) - 1;
+            long id = (1L << 52) | ((long) bucket << 42) | (sequence << 5) | (ShardIds.MAX_SHARDS - 1);
+
+            assertEquals(bucket, ShardIds.bucketOf(id));
+            assertTrue(id >= ShardIds.firstIdOf(bucket) && id < ShardIds.firstIdOf(bucket + 1));
+            assertTrue(id < 1L << 53, "ids must stay exact in JavaScript");
+        }
+    }
+
+
+    @Test
+    void idsFromBeforeShardingHaveNoBucket() {
+        assertEquals(-1, ShardIds.bucketOf(1L));
+        assertEquals(-1, ShardIds.bucketOf((1L << 52) - 1));
+        assertEquals(-1, ShardIds.bucketOf(1L << 53));
+    }
+}
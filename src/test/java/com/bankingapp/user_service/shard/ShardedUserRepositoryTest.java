@@ -0,0 +1,225 @@
+package com.bankingapp.user_service.shard;
+
+import com.bankingapp.user_service.TestDatabases;
+import com.bankingapp.user_service.dto.RegisterRequest;
+import com.bankingapp.user_service.dto.UserInfoResponse;
+import com.bankingapp.user_service.model.User;
+import com.bankingapp.user_service.repository.UserRepository;
+import com.bankingapp.user_service.service.AuthService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the application against three local databases standing in for shards (see {@link TestDatabases}).
+ */
+@SpringBootTest(properties = "app.sharding.enabled=true")
+class ShardedUserRepositoryTest {
+
+    private static final int SHARDS = 3;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private AuthService authService;
+
+    @Autowired
+    private ShardRoutingDataSource shards;
+
+    @Autowired
+    private ShardDirectory directory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ConfigurableApplicationContext context;
+
+
+    @BeforeAll
+    static void createShardDatabases() throws SQLException {
+        for (int shard = 0; shard < SHARDS; shard++) {
+            TestDatabases.recreate(databaseName(shard));
+        }
+    }
+
+
+    @DynamicPropertySource
+    static void shardUrls(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> TestDatabases.url(databaseName(0)));
+        registry.add("app.sharding.urls", () -> TestDatabases.url(databaseName(1)) + "," + TestDatabases.url(databaseName(2)));
+    }
+
+
+    @Test
+    void routesEveryUserToTheShardOfItsBucket() {
+        Set<Integer> usedShards = new HashSet<>();
+        for (User user : saveUsers("route", 60)) {
+            int bucket = ShardIds.bucketOf(user.getEmail());
+            int shard = directory.shardOfBucket(bucket);
+            usedShards.add(shard);
+
+            assertEquals(bucket, ShardIds.bucketOf(user.getId()), "the id carries the email's bucket");
+            assertEquals(bucket, shardJdbc(0).queryForObject("SELECT user_bucket(?)", Integer.class, user.getEmail()),
+                    "Java and SQL agree on the bucket");
+            for (int other = 0; other < SHARDS; other++) {
+                assertEquals(other == shard ? 1 : 0, countById(other, user.getId()), "stored on exactly one shard");
+            }
+
+            assertEquals(user.getId(), userRepository.findByEmail(user.getEmail()).orElseThrow().getId());
+            assertEquals(user.getEmail(), userRepository.findById(user.getId()).orElseThrow().getEmail());
+            assertTrue(userRepository.existsByEmail(user.getEmail()));
+        }
+        assertEquals(SHARDS, usedShards.size());
+    }
+
+
+    @Test
+    void bulkLookupsGatherFromAllShards() {
+        List<User> users = saveUsers("bulk", 30);
+        List<Long> ids = users.subList(0, 15).stream().map(User::getId).toList();
+        List<String> emails = users.subList(15, 30).stream().map(User::getEmail).toList();
+
+        List<UserInfoResponse> found = userRepository.findInfoByIdInOrEmailIn(ids, emails);
+        assertEquals(30, found.size());
+        assertEquals(30, userRepository.findAllById(users.stream().map(User::getId).toList()).size());
+
+        // Also from inside a transaction, whose shard the parts must not take over.
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        assertEquals(30, transaction.execute(status -> userRepository.findInfoByIdInOrEmailIn(ids, emails)).size());
+    }
+
+
+    @Test
+    void refusesToMixShardsInOneTransaction() {
+        List<User> users = saveUsers("mix", 20);
+        User first = users.get(0);
+        User other = users.stream()
+                .filter(user -> directory.shardOfId(user.getId()) != directory.shardOfId(first.getId()))
+                .findFirst().orElseThrow();
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        assertThrows(CrossShardTransactionException.class, () -> transaction.executeWithoutResult(status -> {
+            userRepository.findById(first.getId());
+            userRepository.findById(other.getId());
+        }));
+    }
+
+
+    @Test
+    void rebalancerMovesBucketsWithTheirUsers() throws Exception {
+        // 1. Unbalance the directory with ten empty buckets of shard 1 handed to shard 0 (no user moves for that).
+        List<Integer> emptyOnShardOne = new ArrayList<>();
+        for (int bucket = ShardIds.BUCKETS - 1; emptyOnShardOne.size() < 10; bucket--) {
+            if (directory.shardOfBucket(bucket) == 1 && countBucket(1, bucket) == 0) {
+                emptyOnShardOne.add(bucket);
+            }
+        }
+        for (int bucket : emptyOnShardOne) {
+            shardJdbc(0).update("UPDATE shard_buckets SET shard_id = 0 WHERE bucket = ?", bucket);
+        }
+        directory.refresh();
+
+        // 2. The rebalancer gives shard 1 the ten highest buckets of shard 0 back; register a user in each of them.
+        List<Integer> expectedMoves = new ArrayList<>();
+        for (int bucket = ShardIds.BUCKETS - 1; expectedMoves.size() < 10; bucket--) {
+            if (directory.shardOfBucket(bucket) == 0) {
+                expectedMoves.add(bucket);
+            }
+        }
+        List<String> movedEmails = new ArrayList<>();
+        for (int bucket : expectedMoves) {
+            String email = emailInBucket("move", bucket);
+            authService.registerUser(registerRequest(email));
+            movedEmails.add(email);
+        }
+
+        // 3. Rebalance.
+        ShardRebalancer rebalancer = new ShardRebalancer(shards, directory, context);
+        ReflectionTestUtils.setField(rebalancer, "batchSize", 3);
+        ReflectionTestUtils.setField(rebalancer, "settleMs", 0L);
+        rebalancer.run(null);
+
+        // 4. The users now live on shard 1, with their ids and roles, and are still found both ways.
+        for (String email : movedEmails) {
+            int bucket = ShardIds.bucketOf(email);
+            assertEquals(1, directory.shardOfBucket(bucket));
+            assertEquals(0, countBucket(0, bucket));
+            assertEquals(1, countBucket(1, bucket));
+
+            long id = shardJdbc(1).queryForObject("SELECT id FROM users WHERE email = ?", Long.class, email);
+            assertEquals(1, shardJdbc(1).queryForObject("SELECT count(*) FROM user_roles WHERE user_id = ?", Integer.class, id));
+            assertEquals(id, userRepository.findByEmail(email).orElseThrow().getId());
+            assertEquals(email, userRepository.findById(id).orElseThrow().getEmail());
+        }
+    }
+
+
+    private List<User> saveUsers(String prefix, int count) {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            users.add(userRepository.save(new User("First", "Last", prefix + i + "@shard.test", "not-a-real-hash")));
+        }
+        return users;
+    }
+
+
+    private static String emailInBucket(String prefix, int bucket) {
+        for (int i = 0; ; i++) {
+            String email = prefix + i + "@shard.test";
+            if (ShardIds.bucketOf(email) == bucket) {
+                return email;
+            }
+        }
+    }
+
+
+    private static RegisterRequest registerRequest(String email) {
+        RegisterRequest request = new RegisterRequest();
+        request.setFirstName("Moving");
+        request.setLastName("User");
+        request.setEmail(email);
+        request.setPassword("Password1!");
+        return request;
+    }
+
+
+    private JdbcTemplate shardJdbc(int shard) {
+        return new JdbcTemplate(shards.shard(shard));
+    }
+
+
+    private int countById(int shard, long id) {
+        return shardJdbc(shard).queryForObject("SELECT count(*) FROM users WHERE id = ?", Integer.class, id);
+    }
+
+
+    private int countBucket(int shard, int bucket) {
+        return shardJdbc(shard).queryForObject("SELECT count(*) FROM users WHERE id >= ? AND id < ?", Integer.class,
+                ShardIds.firstIdOf(bucket), ShardIds.firstIdOf(bucket + 1));
+    }
+
+
+    private static String databaseName(int shard) {
+        return "user_service_shard_test_" + shard;
+    }
+}
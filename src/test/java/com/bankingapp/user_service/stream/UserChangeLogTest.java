@@ -0,0 +1,51 @@
+package com.bankingapp.user_service.stream;
+
+import com.bankingapp.user_service.cache.UserChange;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserChangeLogTest {
+
+    @Test
+    void readsChangesAfterAPositionInOrder() {
+        UserChangeLog log = new UserChangeLog(8);
+        assertTrue(log.readAfter(0, 10).isEmpty());
+
+        for (long id = 1; id <= 5; id++) {
+            assertEquals(id, log.append(change(id)));
+        }
+
+        List<UserChangeLog.Entry> entries = log.readAfter(2, 10);
+        assertEquals(List.of(3L, 4L, 5L), entries.stream().map(UserChangeLog.Entry::sequence).toList());
+        assertEquals(3L, entries.get(0).change().userId());
+        assertEquals(2, log.readAfter(0, 2).size(), "at most max entries");
+        assertTrue(log.readAfter(5, 10).isEmpty());
+    }
+
+
+    @Test
+    void refusesPositionsItCanNoLongerResumeFrom() {
+        UserChangeLog log = new UserChangeLog(5);
+        assertEquals(8, log.capacity(), "rounded up to a power of two");
+
+        for (long id = 1; id <= 20; id++) {
+            log.append(change(id));
+        }
+
+        // 13..20 are kept, so a subscriber at 12 or later can continue; one at 11 missed change 12.
+        assertEquals(8, log.readAfter(12, 100).size());
+        assertEquals(13L, log.readAfter(12, 100).get(0).change().userId());
+        assertNull(log.readAfter(11, 100));
+        assertNull(log.readAfter(21, 100), "a position from the future (e.g. before a restart) cannot be resumed");
+    }
+
+
+    private static UserChange change(long userId) {
+        return new UserChange("UPDATE", userId, "user" + userId + "@example.com");
+    }
+}
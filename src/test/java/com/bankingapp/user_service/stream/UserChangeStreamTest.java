@@ -0,0 +1,176 @@
+package com.bankingapp.user_service.stream;
+
+import com.bankingapp.user_service.TestDatabases;
+import com.bankingapp.user_service.cache.UserChange;
+import com.bankingapp.user_service.dto.LoginRequest;
+import com.bankingapp.user_service.model.Role;
+import com.bankingapp.user_service.model.User;
+import com.bankingapp.user_service.repository.RoleRepository;
+import com.bankingapp.user_service.repository.UserRepository;
+import com.bankingapp.user_service.security.JwtUtils;
+import com.bankingapp.user_service.service.AuthService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Streams changes over real connections, so that a client that stops reading fills the socket buffers and
+ * blocks the write. Runs against a database of its own (see {@link TestDatabases}).
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"app.user-changes.dispatch-threads=1", "app.user-changes.send-timeout-ms=500",
+                "app.user-changes.heartbeat-ms=3600000", "app.warm-up.enabled=false",
+                // HS512 needs a key of at least 64 bytes.
+                "app.jwtSecret=user-change-stream-test-secret-user-change-stream-test-secret-0123"})
+class UserChangeStreamTest {
+
+    private static final String DATABASE = "user_service_change_stream_test";
+    private static final String EMAIL = "service@stream.test";
+    private static final String PASSWORD = "Password1!";
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserChangeStream userChangeStream;
+
+    @Autowired
+    private AuthService authService;
+
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private String token;
+
+
+    @BeforeAll
+    static void createDatabase() throws SQLException {
+        TestDatabases.recreate(DATABASE);
+    }
+
+
+    @DynamicPropertySource
+    static void databaseUrl(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> TestDatabases.url(DATABASE));
+    }
+
+
+    @BeforeEach
+    void logIn() {
+        if (userRepository.findByEmail(EMAIL).isEmpty()) {
+            User user = new User("Change", "Consumer", EMAIL, passwordEncoder.encode(PASSWORD));
+            user.setRoles(Set.of(roleRepository.findByName(Role.ERole.ROLE_ADMIN).orElseThrow()));
+            userRepository.save(user);
+        }
+        LoginRequest request = new LoginRequest();
+        request.setEmail(EMAIL);
+        request.setPassword(PASSWORD);
+        token = jwtUtils.generateJwtToken(authService.authenticateUser(request));
+    }
+
+
+    @Test
+    void aClientThatStopsReadingDoesNotHoldTheDispatcher() throws Exception {
+        try (Socket stalled = new Socket()) {
+            // A small receive window, so that the socket buffers fill up quickly.
+            stalled.setReceiveBufferSize(4096);
+            stalled.connect(new InetSocketAddress("localhost", port));
+            stalled.setSoTimeout(5000);
+            // Reads up to the first event, so that the stream is open, and then stops reading.
+            assertFirstEventIsAll(subscribe(stalled));
+
+            // Far more than the socket buffers hold: the only dispatcher thread blocks writing them.
+            String padding = "x".repeat(64 * 1024);
+            for (int i = 0; i < 256; i++) {
+                userChangeStream.onUserChanged(new UserChange("UPDATE", 1_000_000 + i, padding + i + "@stream.test"));
+            }
+
+            await(() -> stalledCount() == 1);
+            assertEquals(0, subscribers(), "the stalled subscriber is dropped");
+            assertEquals(2, userChangeStream.dispatchThreads(), "a thread stands in for the one stuck in the write");
+
+            // New subscribers are still served, although the original dispatcher thread is still stuck.
+            try (Socket reader = new Socket("localhost", port)) {
+                reader.setSoTimeout(5000);
+                assertFirstEventIsAll(subscribe(reader));
+            }
+        }
+
+        // Closing the stalled connection fails its write, which gives the thread back.
+        await(() -> userChangeStream.dispatchThreads() == 1);
+    }
+
+
+    private BufferedReader subscribe(Socket socket) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(("GET /api/users/changes HTTP/1.1\r\n" +
+                "Host: localhost\r\n" +
+                "Accept: text/event-stream\r\n" +
+                "Authorization: Bearer " + token + "\r\n" +
+                "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+
+    // The response is chunked, and the data of an event may come in a chunk of its own: the first JSON line is it.
+    private static void assertFirstEventIsAll(BufferedReader lines) throws IOException {
+        String line;
+        do {
+            line = lines.readLine();
+        } while (line != null && !line.contains("{"));
+        assertTrue(line != null && line.contains("\"ALL\""), "the first event is ALL: " + line);
+    }
+
+
+    private double subscribers() {
+        return meterRegistry.get("app.user-changes.subscribers").gauge().value();
+    }
+
+
+    private double stalledCount() {
+        return meterRegistry.get("app.user-changes.stalled").counter().count();
+    }
+
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out waiting for the condition");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.bankingapp.user_service.stress;
+
+import com.bankingapp.user_service.archive.UserArchive;
+import com.bankingapp.user_service.cache.PrincipalCache;
+import com.bankingapp.user_service.cache.UserChange;
+import com.bankingapp.user_service.config.ReadYourWritesTracker;
+import com.bankingapp.user_service.model.Role;
+import com.bankingapp.user_service.model.RoleMask;
+import com.bankingapp.user_service.model.User;
+import com.bankingapp.user_service.security.AuthTokenFilter;
+import com.bankingapp.user_service.security.CompactJwtCodec;
+import com.bankingapp.user_service.security.JwtUtils;
+import com.bankingapp.user_service.security.SecurityEventLogger;
+import com.bankingapp.user_service.security.UserDetailsServiceImpl;
+import com.bankingapp.user_service.throttle.UserQuotaLimiter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+
+/**
+ * Logins and token-authenticated requests racing with an admin who disables, re-enables and changes the roles
+ * of the same user, through the real {@link UserDetailsServiceImpl}, {@link PrincipalCache} and
+ * {@link AuthTokenFilter} over an in-memory users table.
+ *
+ * <p>The property checked is linearizability with respect to delivered changes: once a change notification has
+ * been handled on this node, no request that starts afterwards may act on an older row. In particular, no
+ * request may be authenticated as a user whose disabling was already delivered.</p>
+ */
+class AuthPathStressTest {
+
+    private static final String EMAIL = "jo@example.com";
+    private static final int USER = RoleMask.bit(Role.ERole.ROLE_USER);
+    private static final int ADMIN = USER | RoleMask.bit(Role.ERole.ROLE_ADMIN);
+
+    // A slow "database", so that concurrent loads of the user overlap and coalesce.
+    private final InMemoryUsers users = new InMemoryUsers(TimeUnit.MICROSECONDS.toNanos(200));
+    private final PrincipalCache principalCache = new PrincipalCache(100, 60_000, 60_000);
+    private final UserDetailsServiceImpl userDetailsService = new UserDetailsServiceImpl(users.repository(),
+            mock(UserArchive.class, withSettings().stubOnly()), new ReadYourWritesTracker(), principalCache,
+            mock(PlatformTransactionManager.class, withSettings().stubOnly()), new SimpleMeterRegistry(),
+            3000, 2, 5, 1000, 5000, 60_000);
+    private final JwtUtils jwtUtils = new JwtUtils(new SecurityEventLogger(10, 10_000), new CompactJwtCodec("k".repeat(64), "1"));
+    private final AuthTokenFilter filter = new AuthTokenFilter(jwtUtils, userDetailsService, new SecurityEventLogger(10, 10_000),
+            new UserQuotaLimiter(false, 600, 60, 3000, 300, 1000, new SimpleMeterRegistry()), null, 5);
+
+    // The latest row whose change notification has been handled.
+    private final AtomicReference<User> delivered = new AtomicReference<>();
+
+
+    @Test
+    void noRequestActsOnAChangeThatWasAlreadyDelivered() {
+        ReflectionTestUtils.setField(jwtUtils, "jwtExpirationMs", 600_000);
+        delivered.set(users.insert(1, EMAIL, USER));
+        User tokenOwner = delivered.get();
+        String token = jwtUtils.generateJwtToken(new UsernamePasswordAuthenticationToken(tokenOwner, null, tokenOwner.getAuthorities()));
+
+        long steps = StressHarness.hammer(StressHarness.THREADS, thread -> {
+            if (thread == 0) {
+                administer();
+            } else if (thread % 2 == 1) {
+                authenticateToken(token);
+            } else {
+                login();
+            }
+        });
+        assertTrue(steps > 0);
+    }
+
+
+    // Disable, enable, promote, demote, in turn.
+    private void administer() {
+        User current = delivered.get();
+        User updated;
+        if (current.getRolesMask() == ADMIN) {
+            updated = users.update(EMAIL, user -> user.setRoles(roles(USER)));
+        } else if (!current.isEnabled()) {
+            updated = users.update(EMAIL, user -> user.setEnabled(true));
+        } else if (current.getVersion() % 4 == 2) {
+            updated = users.update(EMAIL, user -> user.setRoles(roles(ADMIN)));
+        } else {
+            updated = users.update(EMAIL, user -> user.setEnabled(false));
+        }
+        principalCache.onUserChanged(new UserChange("UPDATE", updated.getId(), EMAIL));
+        delivered.set(updated);
+    }
+
+
+    private void authenticateToken(String token) throws Exception {
+        User mustSee = delivered.get();
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/users/me");
+        request.addHeader("Authorization", "Bearer " + token);
+        AtomicReference<Authentication> authenticated = new AtomicReference<>();
+        try {
+            filter.doFilter(request, new MockHttpServletResponse(),
+                    (req, res) -> authenticated.set(SecurityContextHolder.getContext().getAuthentication()));
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+
+        Authentication authentication = authenticated.get();
+        if (authentication == null) {
+            return;  // Only acceptable while the user is disabled, which the principal check below cannot see.
+        }
+        User principal = (User) authentication.getPrincipal();
+        if (!principal.isEnabled()) {
+            throw new AssertionError("Authenticated a disabled user (version " + principal.getVersion() + ")");
+        }
+        checkNotOlder(principal, mustSee, "token");
+    }
+
+
+    private void login() {
+        User mustSee = delivered.get();
+        User loaded = (User) userDetailsService.loadUserByUsername(EMAIL);
+        checkNotOlder(loaded, mustSee, "login");
+    }
+
+
+    private static void checkNotOlder(User seen, User mustSee, String path) {
+        if (seen.getVersion() < mustSee.getVersion()) {
+            throw new AssertionError(path + " saw version " + seen.getVersion() + " (enabled=" + seen.isEnabled()
+                    + ", roles=" + seen.getRolesMask() + ") after version " + mustSee.getVersion() + " (enabled="
+                    + mustSee.isEnabled() + ", roles=" + mustSee.getRolesMask() + ") was delivered");
+        }
+    }
+
+
+    private static Set<Role> roles(int mask) {
+        return RoleMask.toSet(mask).stream().map(Role::new).collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,138 @@
+package com.bankingapp.user_service.stress;
+
+import com.bankingapp.user_service.model.Role;
+import com.bankingapp.user_service.model.RoleMask;
+import com.bankingapp.user_service.service.LastLoginTracker;
+import com.bankingapp.user_service.shard.ShardDirectory;
+import com.bankingapp.user_service.throttle.UserQuotaLimiter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+
+/**
+ * The counters of the auth path: per-user quotas and login bookkeeping.
+ */
+class CounterStressTest {
+
+    private static final int USER = RoleMask.bit(Role.ERole.ROLE_USER);
+    private static final int BURST = 20;
+
+
+    // Concurrent requests of one user share one quota: exactly the burst is let through, no more (lost CAS
+    // updates) and no less (spurious rejections). At 60 requests per minute nothing refills within a round.
+    @Test
+    void concurrentRequestsGetExactlyTheBurst() {
+        class Round {
+            final UserQuotaLimiter limiter = new UserQuotaLimiter(true, 60, BURST, 600, 50, 1000, new SimpleMeterRegistry());
+            final AtomicInteger allowed = new AtomicInteger();
+
+            void consume(int requests) {
+                for (int i = 0; i < requests; i++) {
+                    if (limiter.tryConsume(1, USER).allowed()) {
+                        allowed.incrementAndGet();
+                    }
+                }
+            }
+        }
+
+        StressHarness.rounds(Round::new,
+                round -> round.allowed.get() == BURST ? "burst" : round.allowed.get() < BURST ? "too few" : "too many",
+                Set.of("burst"),
+                round -> round.consume(BURST / 2),
+                round -> round.consume(BURST / 2),
+                round -> round.consume(BURST / 2),
+                round -> round.consume(BURST / 2));
+    }
+
+
+    // Logins recorded while flushes run (and some fail and are merged back) are all written exactly once.
+    @Test
+    void everyRecordedLoginIsWrittenExactlyOnce() {
+        int users = 8;
+        AtomicLongArray recorded = new AtomicLongArray(users);
+        FlushStandIn database = new FlushStandIn(users);
+        ObjectProvider<ShardDirectory> noSharding = mock(ObjectProvider.class, withSettings().stubOnly());
+        LastLoginTracker tracker = new LastLoginTracker(database, new SimpleMeterRegistry(), noSharding, 3, Integer.MAX_VALUE);
+
+        StressHarness.hammer(StressHarness.THREADS, thread -> {
+            if (thread == 0) {
+                tracker.flush();
+            } else {
+                int user = ThreadLocalRandom.current().nextInt(users);
+                tracker.recordLogin(user);
+                recorded.incrementAndGet(user);
+            }
+        });
+
+        database.failureRate = 0;
+        tracker.flush();
+        for (int user = 0; user < users; user++) {
+            assertEquals(recorded.get(user), database.written.get(user), "logins of user " + user);
+        }
+    }
+
+
+    /**
+     * Applies the login flush statement to an array of login counts, and fails some of the statements.
+     */
+    private static final class FlushStandIn extends JdbcTemplate {
+
+        final AtomicLongArray written;
+        volatile double failureRate = 0.2;
+
+        FlushStandIn(int users) {
+            this.written = new AtomicLongArray(users);
+        }
+
+
+        @Override
+        public int update(String sql, PreparedStatementSetter setter) {
+            if (ThreadLocalRandom.current().nextDouble() < failureRate) {
+                throw new DataAccessResourceFailureException("stand-in failure");
+            }
+
+            // The statement binds three arrays: user ids, login counts and last login times.
+            List<Long[]> arrays = new ArrayList<>(3);
+            Connection connection = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        if (method.getName().equals("createArrayOf")) {
+                            arrays.add((Long[]) args[1]);
+                        }
+                        return null;
+                    });
+            PreparedStatement statement = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                    (proxy, method, args) -> method.getName().equals("getConnection") ? connection : null);
+            try {
+                setter.setValues(statement);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+
+            Long[] ids = arrays.get(0);
+            Long[] counts = arrays.get(1);
+            for (int i = 0; i < ids.length; i++) {
+                written.addAndGet(ids[i].intValue(), counts[i]);
+            }
+            return ids.length;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.bankingapp.user_service.stress;
+
+import com.bankingapp.user_service.model.Role;
+import com.bankingapp.user_service.model.RoleMask;
+import com.bankingapp.user_service.model.User;
+import com.bankingapp.user_service.repository.UserRepository;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+
+/**
+ * An in-process stand-in for the users table.
+ *
+ * <p>Every write commits a new copy of the row with the next version, like an UPDATE, so a User returned by a
+ * read is a snapshot that never changes afterwards. A read returns the row as it was when the read started, after
+ * {@code readDelayNanos}: that widens the window between a load's read and what it then does with the result,
+ * which is where the races of the auth path are.</p>
+ */
+final class InMemoryUsers {
+
+    private final ConcurrentHashMap<String, User> byEmail = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, User> byId = new ConcurrentHashMap<>();
+    private final long readDelayNanos;
+
+
+    InMemoryUsers(long readDelayNanos) {
+        this.readDelayNanos = readDelayNanos;
+    }
+
+
+    User insert(long id, String email, int rolesMask) {
+        User user = new User("Stress", "Test", email, "{noop}password");
+        user.setId(id);
+        user.setEnabled(true);
+        user.setRoles(RoleMask.toSet(rolesMask).stream().map(Role::new).collect(Collectors.toSet()));
+        commit(user);
+        return user;
+    }
+
+
+    /**
+     * Applies the change to a copy of the user and commits it with the next version.
+     *
+     * @return The committed row.
+     */
+    synchronized User update(String email, Consumer<User> change) {
+        User current = byEmail.get(email);
+        User next = new User(current.getFirstName(), current.getLastName(), current.getEmail(), current.getPassword());
+        next.setId(current.getId());
+        next.setEnabled(current.isEnabled());
+        next.setRoles(current.getRoles());
+        change.accept(next);
+        ReflectionTestUtils.setField(next, "version", current.getVersion() + 1);
+        commit(next);
+        return next;
+    }
+
+
+    Optional<User> findByEmail(String email) {
+        return delayed(byEmail.get(email));
+    }
+
+
+    Optional<User> findById(long id) {
+        return delayed(byId.get(id));
+    }
+
+
+    /**
+     * @return A UserRepository whose lookups read this table. It records no invocations, so it can be hammered.
+     */
+    UserRepository repository() {
+        UserRepository repository = mock(UserRepository.class, withSettings().stubOnly());
+        when(repository.findByEmail(anyString())).thenAnswer(invocation -> findByEmail(invocation.getArgument(0)));
+        when(repository.findById(any())).thenAnswer(invocation -> findById(invocation.<Long>getArgument(0)));
+        return repository;
+    }
+
+
+    // The row is read when the query starts, and arrives after the delay.
+    private Optional<User> delayed(User row) {
+        LockSupport.parkNanos(readDelayNanos);
+        return Optional.ofNullable(row);
+    }
+
+
+    private void commit(User user) {
+        byEmail.put(user.getEmail(), user);
+        byId.put(user.getId(), user);
+    }
+}
@@ -0,0 +1,48 @@
+package com.bankingapp.user_service.stress;
+
+import com.bankingapp.user_service.security.CompactJwtCodec;
+import com.bankingapp.user_service.security.JjwtCodec;
+import com.bankingapp.user_service.security.JwtClaims;
+import com.bankingapp.user_service.security.JwtCodec;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/**
+ * Tokens signed and verified concurrently by one codec instance, as every request thread does. The codecs keep
+ * per-thread MACs and buffers; a token must never be verified with, or decoded into, another thread's state.
+ */
+class JwtCodecStressTest {
+
+    private static final String SECRET = "k".repeat(64);
+    private static final long NOW = System.currentTimeMillis() / 1000;
+
+
+    @Test
+    void compactCodecRoundTripsUnderConcurrency() {
+        roundTripsUnderConcurrency(new CompactJwtCodec(SECRET, "1"));
+    }
+
+
+    @Test
+    void jjwtCodecRoundTripsUnderConcurrency() {
+        roundTripsUnderConcurrency(new JjwtCodec(SECRET, "1"));
+    }
+
+
+    private static void roundTripsUnderConcurrency(JwtCodec codec) {
+        StressHarness.hammer(StressHarness.THREADS, thread -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            // Subjects of different lengths, so that a buffer shared by mistake shows up as a garbled token.
+            String subject = "user" + thread + "-" + "x".repeat(random.nextInt(40)) + "@example.com";
+            int roles = random.nextInt(8);
+            long expiresAt = NOW + 60 + random.nextInt(1000);
+
+            JwtClaims claims = codec.decode(codec.encode(subject, NOW, expiresAt, roles));
+            assertEquals(new JwtClaims(subject, NOW, expiresAt, roles, "1"), claims);
+        });
+    }
+}
@@ -0,0 +1,52 @@
+package com.bankingapp.user_service.stress;
+
+import com.bankingapp.user_service.cache.UserChange;
+import com.bankingapp.user_service.model.Role;
+import com.bankingapp.user_service.model.RoleMask;
+import com.bankingapp.user_service.model.User;
+import com.bankingapp.user_service.session.OpaqueTokenService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Opaque token sessions being re-checked against the database while the user is disabled.
+ */
+class OpaqueSessionStressTest {
+
+    private static final String EMAIL = "jo@example.com";
+
+
+    // A session is stale after a role change. One request re-checks it (reading the user, then marking the session
+    // checked) while an admin disables the user. Afterwards the token must no longer resolve: a re-check that read
+    // the user before the disable must not mark the session as checked after the disable was delivered.
+    @Test
+    void aRecheckRacingADisableNeverRevivesTheSession() {
+        class Round {
+            final InMemoryUsers users = new InMemoryUsers(TimeUnit.MICROSECONDS.toNanos(50));
+            final OpaqueTokenService sessions = new OpaqueTokenService(users.repository(), new SimpleMeterRegistry(), 1, 16);
+            final String token;
+
+            Round() {
+                ReflectionTestUtils.setField(sessions, "ttlMs", 600_000L);
+                User user = users.insert(1, EMAIL, RoleMask.bit(Role.ERole.ROLE_USER));
+                token = sessions.issue(user);
+                users.update(EMAIL, u -> u.setRoles(Set.of(new Role(Role.ERole.ROLE_USER), new Role(Role.ERole.ROLE_ADMIN))));
+                sessions.onUserChanged(new UserChange("UPDATE", 1, EMAIL));
+            }
+        }
+
+        StressHarness.rounds(Round::new,
+                round -> round.sessions.resolve(round.token) == null ? "revoked" : "still authenticated",
+                Set.of("revoked"),
+                round -> round.sessions.resolve(round.token),
+                round -> {
+                    round.users.update(EMAIL, user -> user.setEnabled(false));
+                    round.sessions.onUserChanged(new UserChange("UPDATE", 1, EMAIL));
+                });
+    }
+}
@@ -0,0 +1,87 @@
+package com.bankingapp.user_service.stress;
+
+import com.bankingapp.user_service.cache.CachedPrincipal;
+import com.bankingapp.user_service.cache.PrincipalCache;
+import com.bankingapp.user_service.cache.UserChange;
+import com.bankingapp.user_service.model.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Loads racing with invalidations in the {@link PrincipalCache}. A change is "delivered" once the change
+ * notification's {@code onUserChanged} has returned.
+ */
+class PrincipalCacheStressTest {
+
+    private static final String EMAIL = "jo@example.com";
+
+
+    // One load and one update, started together. Whatever the interleaving, the cache must not be left holding
+    // the row from before the update: that principal would be served until its TTL runs out.
+    @Test
+    void aLoadRacingAnUpdateNeverLeavesTheOldRowCached() {
+        class Round {
+            final InMemoryUsers users = new InMemoryUsers(0);
+            final PrincipalCache cache = new PrincipalCache(100, 60_000, 60_000);
+
+            Round() {
+                users.insert(1, EMAIL, 1);
+            }
+        }
+
+        StressHarness.rounds(Round::new,
+                round -> {
+                    CachedPrincipal cached = round.cache.get(EMAIL);
+                    if (cached == null) {
+                        return "not cached";
+                    }
+                    return cached.user().getVersion() == round.users.findByEmail(EMAIL).orElseThrow().getVersion()
+                            ? "current row cached" : "old row cached";
+                },
+                Set.of("not cached", "current row cached"),
+                round -> {
+                    long stamp = round.cache.stamp(EMAIL);
+                    User user = round.users.findByEmail(EMAIL).orElseThrow();
+                    round.cache.putIfUnchanged(EMAIL, user, stamp);
+                },
+                round -> {
+                    User updated = round.users.update(EMAIL, user -> user.setEnabled(false));
+                    round.cache.onUserChanged(new UserChange("UPDATE", updated.getId(), EMAIL));
+                });
+    }
+
+
+    // Loaders, updaters and readers on one key. A read that starts after an update was delivered must not see
+    // an older row, not even for the instant between a stale put and its undo.
+    @Test
+    void readsNeverSeeARowOlderThanTheLastDeliveredChange() {
+        InMemoryUsers users = new InMemoryUsers(0);
+        PrincipalCache cache = new PrincipalCache(100, 60_000, 60_000);
+        long id = users.insert(1, EMAIL, 1).getId();
+        AtomicLong delivered = new AtomicLong();
+
+        long steps = StressHarness.hammer(StressHarness.THREADS, thread -> {
+            if (thread == 0) {
+                User updated = users.update(EMAIL, user -> user.setFirstName("v"));
+                cache.onUserChanged(new UserChange("UPDATE", id, EMAIL));
+                delivered.accumulateAndGet(updated.getVersion(), Math::max);
+            } else if (thread % 2 == 1) {
+                long stamp = cache.stamp(EMAIL);
+                cache.putIfUnchanged(EMAIL, users.findByEmail(EMAIL).orElseThrow(), stamp);
+            } else {
+                long mustSee = delivered.get();
+                CachedPrincipal cached = cache.get(EMAIL);
+                if (cached != null && cached.user().getVersion() < mustSee) {
+                    throw new AssertionError("Read version " + cached.user().getVersion()
+                            + " after version " + mustSee + " was delivered");
+                }
+            }
+        });
+        assertTrue(steps > 0);
+    }
+}
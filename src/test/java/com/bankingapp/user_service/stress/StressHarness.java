@@ -0,0 +1,186 @@
+package com.bankingapp.user_service.stress;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+
+/**
+ * A small jcstress-style harness for the concurrency stress tests in this package.
+ *
+ * <p>{@link #rounds} runs the same few actors against a fresh state over and over, releasing them at the same
+ * moment, and lets an arbiter name the outcome each round leaves behind. A single unacceptable outcome fails the
+ * test, with the histogram of everything observed. {@link #hammer} runs workers in a loop against shared state,
+ * for invariants that the workers check themselves (e.g. "a read that started after this write sees it").</p>
+ *
+ * <p>Both run for {@code -Dstress.seconds} (1 by default; the {@code stress} Maven profile runs much longer),
+ * with at least twice as many threads as cores, so that the scheduler preempts them at arbitrary points.</p>
+ */
+final class StressHarness {
+
+    static final long DURATION_NANOS = (long) (Double.parseDouble(System.getProperty("stress.seconds", "1")) * 1e9);
+    static final int THREADS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+    private static final int MIN_ROUNDS = 100;
+
+
+    private StressHarness() {
+    }
+
+
+    /**
+     * Runs the actors concurrently against a fresh state per round until the time is up.
+     *
+     * @param newState   Creates the state of one round.
+     * @param arbiter    Names the outcome of a round, once all actors are done.
+     * @param acceptable The outcomes that are allowed; any other fails the test.
+     * @return How often each outcome was observed.
+     */
+    @SafeVarargs
+    static <S> Map<String, Long> rounds(Supplier<S> newState, Function<S, String> arbiter, Set<String> acceptable,
+                                       Consumer<S>... actors) {
+        Map<String, Long> outcomes = new TreeMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(actors.length);
+        try {
+            long deadline = System.nanoTime() + DURATION_NANOS;
+            for (long round = 0; round < MIN_ROUNDS || System.nanoTime() - deadline < 0; round++) {
+                S state = newState.get();
+
+                // Every actor spins until all of them are running, so that they really start together.
+                AtomicInteger waiting = new AtomicInteger(actors.length);
+                List<Future<?>> running = new ArrayList<>(actors.length);
+                for (Consumer<S> actor : actors) {
+                    running.add(executor.submit(() -> {
+                        waiting.decrementAndGet();
+                        while (waiting.get() > 0) {
+                            Thread.yield();  // Not onSpinWait: there may be fewer cores than actors.
+                        }
+                        actor.accept(state);
+                    }));
+                }
+                for (Future<?> actor : running) {
+                    await(actor);
+                }
+
+                String outcome = arbiter.apply(state);
+                outcomes.merge(outcome, 1L, Long::sum);
+                if (!acceptable.contains(outcome)) {
+                    fail("Unacceptable outcome '" + outcome + "' in round " + round + "; observed " + outcomes);
+                }
+            }
+            return outcomes;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+
+    /**
+     * A worker of {@link #hammer}.
+     */
+    @FunctionalInterface
+    interface Worker {
+
+        /**
+         * Does one step of work. Throwing (including a failed assertion) stops all workers and fails the test.
+         *
+         * @param thread The index of the worker's thread, to give threads different roles.
+         */
+        void step(int thread) throws Exception;
+    }
+
+
+    /**
+     * Runs the worker on {@code threads} threads in a loop until the time is up or a step fails.
+     *
+     * @return The number of steps run.
+     */
+    static long hammer(int threads, Worker worker) {
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicInteger waiting = new AtomicInteger(threads);
+        long[] steps = new long[threads];
+
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            int thread = i;
+            workers.add(new Thread(() -> {
+                waiting.decrementAndGet();
+                while (waiting.get() > 0) {
+                    Thread.yield();  // Not onSpinWait: there may be fewer cores than actors.
+                }
+                try {
+                    while (!stop.get()) {
+                        worker.step(thread);
+                        steps[thread]++;
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                    stop.set(true);
+                }
+            }, "stress-" + i));
+        }
+        workers.forEach(Thread::start);
+
+        long deadline = System.nanoTime() + DURATION_NANOS;
+        while (!stop.get() && System.nanoTime() - deadline < 0) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        stop.set(true);
+        for (Thread thread : workers) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        Throwable error = failure.get();
+        if (error instanceof Error assertion) {
+            throw assertion;
+        }
+        if (error != null) {
+            throw new AssertionError("Stress worker failed", error);
+        }
+        long total = 0;
+        for (long count : steps) {
+            total += count;
+        }
+        return total;
+    }
+
+
+    private static void await(Future<?> actor) {
+        try {
+            actor.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new AssertionError("Actor failed", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AssertionError("Interrupted", e);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.bankingapp.user_service.throttle;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long WINDOW_MS = 20;
+
+
+    @Test
+    void rejectsRequestsBeyondTheLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 60_000, 1.5, 0.2);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(1, limiter.getRejectedCount());
+
+        limiter.release(FAST, false);
+        assertTrue(limiter.tryAcquire());
+        assertEquals(2, limiter.getInFlight());
+    }
+
+
+    @Test
+    void limitShrinksWhenLatencyRisesAboveTheBaseline() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 2, 100, WINDOW_MS, 1.5, 1.0);
+
+        runWindow(limiter, FAST, 20);
+        int healthyLimit = limiter.getLimit();
+
+        runWindow(limiter, SLOW, 20);
+        assertTrue(limiter.getLimit() < healthyLimit, "limit should drop, was " + limiter.getLimit());
+    }
+
+
+    @Test
+    void limitGrowsWhileLatencyStaysHealthyAndTheLimitIsUsed() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 2, 100, WINDOW_MS, 1.5, 1.0);
+
+        for (int i = 0; i < 5; i++) {
+            runWindow(limiter, FAST, limiter.getLimit());
+        }
+        assertTrue(limiter.getLimit() > 10, "limit should grow, was " + limiter.getLimit());
+    }
+
+
+    @Test
+    void errorsHalveTheLimitButNotBelowTheMinimum() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(16, 4, 100, WINDOW_MS, 1.5, 1.0);
+
+        assertTrue(limiter.tryAcquire());
+        Thread.sleep(WINDOW_MS + 5);
+        limiter.release(FAST, true);
+        assertEquals(8, limiter.getLimit());
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire());
+            Thread.sleep(WINDOW_MS + 5);
+            limiter.release(FAST, true);
+        }
+        assertEquals(4, limiter.getLimit());
+    }
+
+
+    // Fills the limiter with `concurrency` requests and completes them, the last one after the window has elapsed,
+    // so that the window closes with every sample in it.
+    private static void runWindow(AdaptiveConcurrencyLimiter limiter, long rttNanos, int concurrency) throws InterruptedException {
+        for (int i = 0; i < concurrency; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        for (int i = 1; i < concurrency; i++) {
+            limiter.release(rttNanos, false);
+        }
+        Thread.sleep(WINDOW_MS + 5);
+        limiter.release(rttNanos, false);
+    }
+}
@@ -0,0 +1,94 @@
+package com.bankingapp.user_service.throttle;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // Opens after 3 failures in a row, calls over 100 ms count as failures, stays open for 1 s.
+    private final CircuitBreaker breaker = new CircuitBreaker(3, 100, 1_000);
+
+
+    @Test
+    void opensAfterConsecutiveFailuresOnly() {
+        long now = 10_000 * MS;
+
+        fail(now);
+        fail(now);
+        breaker.onResult(MS, false, now); // A success in between starts the count over.
+        fail(now);
+        fail(now);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+
+        fail(now);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire(now + 999 * MS));
+        assertEquals(1, breaker.rejectedCount());
+        assertEquals(1, breaker.openedCount());
+    }
+
+
+    @Test
+    void slowCallsCountAsFailures() {
+        long now = 10_000 * MS;
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.tryAcquire(now));
+            breaker.onResult(101 * MS, false, now);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+
+
+    @Test
+    void letsOneTrialThroughAfterTheOpenPeriodAndClosesIfItSucceeds() {
+        long now = 10_000 * MS;
+        openAt(now);
+
+        long later = now + 1_000 * MS;
+        assertTrue(breaker.tryAcquire(later));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire(later), "only one trial at a time");
+
+        breaker.onResult(MS, false, later);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertTrue(breaker.tryAcquire(later));
+    }
+
+
+    @Test
+    void reopensForAnotherPeriodIfTheTrialFails() {
+        long now = 10_000 * MS;
+        openAt(now);
+
+        long later = now + 1_500 * MS;
+        assertTrue(breaker.tryAcquire(later));
+        breaker.onResult(MS, true, later);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire(later + 999 * MS));
+        assertTrue(breaker.tryAcquire(later + 1_000 * MS));
+        assertEquals(2, breaker.openedCount());
+    }
+
+
+    private void openAt(long now) {
+        for (int i = 0; i < 3; i++) {
+            fail(now);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+
+
+    private void fail(long now) {
+        assertTrue(breaker.tryAcquire(now));
+        breaker.onResult(MS, true, now);
+    }
+}
@@ -0,0 +1,62 @@
+package com.bankingapp.user_service.throttle;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ConcurrencyLimitFilterTest {
+
+    private static final long WINDOW_MS = 20;
+
+    private final AdaptiveConcurrencyLimiter authLane = new AdaptiveConcurrencyLimiter(16, 4, 100, WINDOW_MS, 1.5, 1.0);
+    private final AdaptiveConcurrencyLimiter apiLane = new AdaptiveConcurrencyLimiter(16, 4, 100, WINDOW_MS, 1.5, 1.0);
+    private final ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(authLane, apiLane);
+
+
+    @Test
+    void serverErrorsShrinkTheLimit() throws Exception {
+        runWindow((request, response) -> ((HttpServletResponse) response).setStatus(500));
+        assertEquals(8, apiLane.getLimit());
+        assertEquals(0, apiLane.getInFlight());
+    }
+
+
+    // What the AuthTokenFilter answers while the user-store breaker is open.
+    @Test
+    void userStoreRefusalsDoNotShrinkTheLimit() throws Exception {
+        runWindow((request, response) -> {
+            ConcurrencyLimitFilter.markUserStoreRefusal((HttpServletRequest) request);
+            ((HttpServletResponse) response).setStatus(503);
+            ((HttpServletResponse) response).setHeader("Retry-After", "5");
+        });
+        assertEquals(16, apiLane.getLimit());
+        assertEquals(0, apiLane.getInFlight());
+    }
+
+
+    // E.g. another handler, or a proxy's error page, under overload.
+    @Test
+    void otherServiceUnavailableResponsesShrinkTheLimit() throws Exception {
+        runWindow((request, response) -> {
+            ((HttpServletResponse) response).setStatus(503);
+            ((HttpServletResponse) response).setHeader("Retry-After", "5");
+        });
+        assertEquals(8, apiLane.getLimit());
+        assertEquals(0, apiLane.getInFlight());
+    }
+
+
+    // Five requests with the given outcome, then a successful one once the window has elapsed, which closes it.
+    private void runWindow(FilterChain chain) throws Exception {
+        for (int i = 0; i < 5; i++) {
+            filter.doFilter(new MockHttpServletRequest("GET", "/api/users/me"), new MockHttpServletResponse(), chain);
+        }
+        Thread.sleep(WINDOW_MS + 5);
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/users/me"), new MockHttpServletResponse(), (request, response) -> { });
+    }
+}
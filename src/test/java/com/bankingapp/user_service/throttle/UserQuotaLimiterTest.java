@@ -0,0 +1,91 @@
+package com.bankingapp.user_service.throttle;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserQuotaLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong clock = new AtomicLong();
+    // 60 requests per minute (one per second), bursts of up to 5, for at most 3 users at a time.
+    private final UserQuotaLimiter limiter = new UserQuotaLimiter(true, 60, 5, 600, 50, 3, new SimpleMeterRegistry(),
+            clock::get, Runnable::run);
+    private final UserQuotaLimiter.Quota quota = new UserQuotaLimiter.Quota(60, 5);
+
+
+    @Test
+    void allowsABurstThenRejectsUntilTheBucketRefills() {
+        long now = 1_000 * SECOND;
+
+        for (int i = 4; i >= 0; i--) {
+            UserQuotaLimiter.Decision decision = consume(1L, now);
+            assertTrue(decision.allowed());
+            assertEquals(i, decision.remaining());
+        }
+
+        UserQuotaLimiter.Decision rejected = consume(1L, now);
+        assertFalse(rejected.allowed());
+        assertEquals(0, rejected.remaining());
+        assertEquals(1, rejected.resetSeconds());
+
+        // One request is earned back per second.
+        assertTrue(consume(1L, now + SECOND).allowed());
+        assertFalse(consume(1L, now + SECOND).allowed());
+    }
+
+
+    @Test
+    void usersHaveIndependentBuckets() {
+        long now = 1_000 * SECOND;
+        for (int i = 0; i < 5; i++) {
+            consume(1L, now);
+        }
+
+        assertFalse(consume(1L, now).allowed());
+        assertTrue(consume(2L, now).allowed());
+    }
+
+
+    @Test
+    void bucketsExpireOnceTheyHaveRefilled() {
+        long now = 1_000 * SECOND;
+        consume(1L, now);
+        consume(2L, now);
+        consume(3L, now + 4 * SECOND);
+        assertEquals(3, limiter.trackedUsers());
+
+        // The first two have refilled by now (a burst of 5 takes 5 seconds), the third has not.
+        clock.set(now + 6 * SECOND);
+        assertEquals(1, limiter.trackedUsers());
+    }
+
+
+    // When every bucket is in use, one of them is evicted in favour of the new user, who is metered like anybody else.
+    @Test
+    void newUsersAreMeteredWhenEveryBucketIsBusy() {
+        long now = 1_000 * SECOND;
+        consume(1L, now);
+        consume(2L, now);
+        consume(3L, now);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(consume(4L, now).allowed());
+        }
+        assertFalse(consume(4L, now).allowed());
+        assertEquals(3, limiter.trackedUsers());
+    }
+
+
+    private UserQuotaLimiter.Decision consume(long userId, long now) {
+        clock.set(now);
+        return limiter.tryConsume(userId, quota);
+    }
+}